@@ -10,6 +10,7 @@ package com.amlogic.asplayer.jni.wrapper;
 
 import android.media.MediaFormat;
 import android.media.tv.tuner.Tuner;
+import android.net.Uri;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.Surface;
@@ -26,6 +27,7 @@ import com.amlogic.asplayer.api.ASPlayer;
 import com.amlogic.asplayer.api.Version;
 import com.amlogic.asplayer.api.VideoParams;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -147,6 +149,62 @@ public class JniASPlayerWrapper implements IASPlayer {
         return native_writeData(inputBuffer, timeoutMillSecond);
     }
 
+    @Override
+    public int writeData(ByteBuffer buffer, long timeoutMillSecond) {
+        if (buffer == null) {
+            return ErrorCode.ERROR_INVALID_PARAMS;
+        }
+
+        int ret;
+        if (buffer.isDirect()) {
+            // native side reads directly from the buffer address, no copy
+            ret = native_writeData(buffer, buffer.position(), buffer.remaining(), timeoutMillSecond);
+        } else if (buffer.hasArray()) {
+            InputBuffer inputBuffer = new InputBuffer(buffer.array(),
+                    buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            ret = native_writeData(inputBuffer, timeoutMillSecond);
+        } else {
+            return ErrorCode.ERROR_INVALID_PARAMS;
+        }
+
+        if (ret > 0) {
+            buffer.position(buffer.position() + ret);
+        }
+        return ret;
+    }
+
+    @Override
+    public int writeData(InputBuffer[] buffers, int count, long timeoutMillSecond) {
+        if (buffers == null || count < 0 || count > buffers.length) {
+            return ErrorCode.ERROR_INVALID_PARAMS;
+        }
+
+        int total = 0;
+        int ret = ErrorCode.ERROR_RETRY;
+        for (int i = 0; i < count; i++) {
+            InputBuffer inputBuffer = buffers[i];
+            if (inputBuffer == null) {
+                return total > 0 ? total : ErrorCode.ERROR_INVALID_PARAMS;
+            } else if (inputBuffer.mBufferSize == 0) {
+                continue;
+            }
+
+            // only block while nothing is written, return as soon as some data is accepted
+            ret = native_writeData(inputBuffer, total > 0 ? 0 : timeoutMillSecond);
+            if (ret <= 0) {
+                break;
+            }
+
+            total += ret;
+            inputBuffer.mOffset += ret;
+            inputBuffer.mBufferSize -= ret;
+            if (inputBuffer.mBufferSize > 0) {
+                break;
+            }
+        }
+        return total > 0 ? total : ret;
+    }
+
     @Override
     public int flush() {
         return native_flush();
@@ -157,6 +215,19 @@ public class JniASPlayerWrapper implements IASPlayer {
         return native_flushDvr();
     }
 
+    /**
+     * Not supported by the native player, data is written with writeData.
+     */
+    @Override
+    public int setDataSource(Uri uri) {
+        return ErrorCode.ERROR_INVALID_OPERATION;
+    }
+
+    @Override
+    public int seekDataSource(long positionInBytes) {
+        return ErrorCode.ERROR_INVALID_OPERATION;
+    }
+
     @Override
     public int setWorkMode(int mode) {
         return native_setWorkMode(mode);
@@ -474,6 +545,7 @@ public class JniASPlayerWrapper implements IASPlayer {
     private native int native_flush();
     private native int native_flushDvr();
     private native int native_writeData(InputBuffer buffer, long timeoutMillSecond);
+    private native int native_writeData(ByteBuffer buffer, int offset, int size, long timeoutMillSecond);
     private native int native_setSurface(Surface surface);
     private native int native_setAudioMute(boolean mute);
     private native int native_setAudioVolume(int volume);
@@ -551,6 +551,35 @@ asplayer_write_data(JNIEnv* env, jobject jniASPlayerWrapperObj,
     return ret;
 }
 
+jni_asplayer_result
+asplayer_write_direct_data(JNIEnv* env, jobject jniASPlayerWrapperObj, jobject jByteBuffer,
+                           jint jOffset, jint jSize, jlong jTimeoutMillSecond) {
+    if (env == nullptr) {
+        return JNI_ASPLAYER_ERROR_INVALID_OBJECT;
+    }
+
+    BaseJniASPlayerWrapper *player = getASPlayer(env, jniASPlayerWrapperObj);
+    if (player == nullptr) {
+        LOG_GET_PLAYER_FAILED();
+        return JNI_ASPLAYER_ERROR_INVALID_OBJECT;
+    }
+
+    void *bufferAddr = jByteBuffer != nullptr ? env->GetDirectBufferAddress(jByteBuffer) : nullptr;
+    if (bufferAddr == nullptr) {
+        ALOGE("[%s/%d] failed to writeData, not a direct buffer", __func__, __LINE__);
+        return JNI_ASPLAYER_ERROR_INVALID_PARAMS;
+    }
+
+    // pass buffer address to JniASPlayer directly, no copy here
+    jni_asplayer_input_buffer inputBuffer;
+    inputBuffer.buf_data = bufferAddr;
+    inputBuffer.offset = (int32_t) jOffset;
+    inputBuffer.buf_size = (int32_t) jSize;
+
+    uint64_t timeout_us = jTimeoutMillSecond;
+    return player->writeData(&inputBuffer, timeout_us);
+}
+
 jni_asplayer_result
 asplayer_set_surface(JNIEnv* env, jobject jniASPlayerWrapperObj, jobject jSurface) {
     LOG_FUNCTION_ENTER();
@@ -84,6 +84,10 @@ jni_asplayer_result
 asplayer_write_data(JNIEnv *env, jobject jniASPlayerWrapperObj, jobject jInputBuffer,
                     jlong jTimeoutMillSecond);
 
+jni_asplayer_result
+asplayer_write_direct_data(JNIEnv *env, jobject jniASPlayerWrapperObj, jobject jByteBuffer,
+                           jint jOffset, jint jSize, jlong jTimeoutMillSecond);
+
 jni_asplayer_result
 asplayer_set_surface(JNIEnv *env, jobject jniASPlayerWrapperObj, jobject jSurface);
 
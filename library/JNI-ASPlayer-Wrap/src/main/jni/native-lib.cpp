@@ -214,6 +214,13 @@ native_write_data(JNIEnv* env, jobject thiz, jobject jInputBuffer, jlong jTimeou
     return result;
 }
 
+static jint
+native_write_direct_data(JNIEnv* env, jobject thiz, jobject jByteBuffer,
+                         jint jOffset, jint jSize, jlong jTimeoutMillSecond) {
+    jint result = asplayer_write_direct_data(env, thiz, jByteBuffer, jOffset, jSize, jTimeoutMillSecond);
+    return result;
+}
+
 static jint
 native_set_surface(JNIEnv* env, jobject thiz, jobject jSurface) {
     jni_asplayer_result result = asplayer_set_surface(env, thiz, jSurface);
@@ -454,6 +461,7 @@ static JNINativeMethod methods[] = {
         {"native_flush", "()I", (void*)native_flush },
         {"native_flushDvr", "()I", (void*)native_flush_dvr },
         {"native_writeData", "(Lcom/amlogic/asplayer/api/InputBuffer;J)I", (void*)native_write_data },
+        {"native_writeData", "(Ljava/nio/ByteBuffer;IIJ)I", (void*)native_write_direct_data },
         {"native_setSurface", "(Landroid/view/Surface;)I", (void*)native_set_surface },
         {"native_setAudioMute", "(Z)I", (void*)native_set_audio_mute },
         {"native_setAudioVolume", "(I)I", (void*)native_set_audio_volume },
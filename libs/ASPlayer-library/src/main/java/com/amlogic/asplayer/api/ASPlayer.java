@@ -12,6 +12,7 @@ import android.content.Context;
 import android.media.AudioTrack;
 import android.media.MediaFormat;
 import android.media.tv.tuner.Tuner;
+import android.net.Uri;
 import android.os.Bundle;
 import android.os.Looper;
 import android.text.TextUtils;
@@ -29,6 +30,7 @@ import com.amlogic.asplayer.core.ASPlayerLog;
 import com.amlogic.asplayer.core.BaseAppContext;
 import com.amlogic.asplayer.core.Constant;
 
+import java.nio.ByteBuffer;
 import java.util.concurrent.atomic.AtomicInteger;
 
 
@@ -98,6 +100,23 @@ public class ASPlayer implements IASPlayer {
         }
     }
 
+    /**
+     * Add a playback listener, with its own delivery of {@link TsPlaybackListener.PtsEvent}.
+     * PtsEvent of every frame may be too many for listeners only displaying a position.
+     *
+     * @param ptsDeliveryMode {@link PtsDeliveryMode}
+     * @param ptsIntervalMs minimum interval between PtsEvent deliveries, for
+     *                      {@link PtsDeliveryMode#LATEST} and {@link PtsDeliveryMode#BATCHED}
+     */
+    public void addPlaybackListener(TsPlaybackListener listener, int ptsDeliveryMode,
+                                    long ptsIntervalMs) {
+        ASPlayerLog.i("%s addPlaybackListener start, ptsDeliveryMode: %d, interval: %d",
+                getTag(), ptsDeliveryMode, ptsIntervalMs);
+        if (mPlayer != null) {
+            mPlayer.addPlaybackListener(listener, ptsDeliveryMode, ptsIntervalMs);
+        }
+    }
+
     @Override
     public void removePlaybackListener(TsPlaybackListener listener) {
         ASPlayerLog.i("%s removePlaybackListener start", getTag());
@@ -200,6 +219,54 @@ public class ASPlayer implements IASPlayer {
         return mPlayer.writeData(inputBuffer, timeoutMillSecond);
     }
 
+    /**
+     * Write data to ASPlayer instance.
+     * It will only work when TS input's source type is TS_MEMORY.
+     * Data between position and limit of buffer is written, buffer may be a direct buffer.
+     * On success, the position of buffer is advanced by the size written.
+     *
+     * @param buffer
+     * @param timeoutMillSecond
+     *
+     * @return the actual buffer size written successfully or an error code,
+     *  {@link #INFO_ERROR_RETRY},
+     *  {@link #INFO_BUSY},
+     *  {@link #INFO_INVALID_PARAMS},
+     *  {@link #INFO_INVALID_OPERATION}
+     */
+    @Override
+    public int writeData(ByteBuffer buffer, long timeoutMillSecond) {
+        if (mPlayer == null) {
+            return ErrorCode.ERROR_INVALID_OPERATION;
+        }
+        return mPlayer.writeData(buffer, timeoutMillSecond);
+    }
+
+    /**
+     * Write several data buffers to ASPlayer instance in one call.
+     * It will only work when TS input's source type is TS_MEMORY.
+     * Buffers are written in order, writing stops at the first buffer which is not fully consumed.
+     * For each buffer, mOffset is advanced and mBufferSize is decreased by the size written,
+     * so the remaining data of every buffer can be submitted again.
+     *
+     * @param buffers
+     * @param count number of buffers to write, starting from buffers[0]
+     * @param timeoutMillSecond
+     *
+     * @return the total buffer size written successfully or an error code if nothing is written,
+     *  {@link #INFO_ERROR_RETRY},
+     *  {@link #INFO_BUSY},
+     *  {@link #INFO_INVALID_PARAMS},
+     *  {@link #INFO_INVALID_OPERATION}
+     */
+    @Override
+    public int writeData(InputBuffer[] buffers, int count, long timeoutMillSecond) {
+        if (mPlayer == null) {
+            return ErrorCode.ERROR_INVALID_OPERATION;
+        }
+        return mPlayer.writeData(buffers, count, timeoutMillSecond);
+    }
+
     public int writeData(int inputBufferType, byte[] buffer, int offset, int size, long timeoutMillSecond) {
         if (mPlayer == null) {
             return ErrorCode.ERROR_INVALID_OPERATION;
@@ -225,6 +292,31 @@ public class ASPlayer implements IASPlayer {
         return mPlayer.flushDvr();
     }
 
+    /**
+     * Set the uri ASPlayer reads ts data from, instead of the application calling
+     * writeData. Data is read on a dedicated thread, sized from the fill level of the
+     * DVR playback buffer. Only for {@link InputSourceType#TS_MEMORY}.
+     *
+     * @param uri local file or fifo, null to stop reading
+     */
+    @Override
+    public int setDataSource(Uri uri) {
+        ASPlayerLog.i("%s setDataSource start, uri: %s", getTag(), uri);
+        if (mPlayer == null) {
+            return ErrorCode.ERROR_INVALID_OPERATION;
+        }
+        return mPlayer.setDataSource(uri);
+    }
+
+    @Override
+    public int seekDataSource(long positionInBytes) {
+        ASPlayerLog.i("%s seekDataSource start, position: %d", getTag(), positionInBytes);
+        if (mPlayer == null) {
+            return ErrorCode.ERROR_INVALID_OPERATION;
+        }
+        return mPlayer.seekDataSource(positionInBytes);
+    }
+
     /**
      * Set work mode of ASPlayer instance.
      *
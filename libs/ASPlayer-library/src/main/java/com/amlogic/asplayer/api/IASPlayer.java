@@ -10,6 +10,7 @@ package com.amlogic.asplayer.api;
 
 import android.media.AudioTrack;
 import android.media.MediaFormat;
+import android.net.Uri;
 import android.os.Bundle;
 import android.view.Surface;
 
@@ -18,6 +19,7 @@ import com.amlogic.asplayer.api.PlaybackControl.TransitionModeAfter;
 import com.amlogic.asplayer.api.PlaybackControl.ScreenColor;
 import com.amlogic.asplayer.api.PlaybackControl.VideoMute;
 
+import java.nio.ByteBuffer;
 
 public interface IASPlayer {
 
@@ -76,6 +78,29 @@ public interface IASPlayer {
      */
     int writeData(InputBuffer inputBuffer, long timeoutMillSecond);
 
+    /**
+     * Write data to ASPlayer instance.
+     * It will only work when TS input's source type is TS_MEMORY.
+     * Data between position and limit of buffer is written, buffer may be a direct buffer.
+     * On success, the position of buffer is advanced by the size written.
+     *
+     * @param buffer
+     * @param timeoutMillSecond
+     */
+    int writeData(ByteBuffer buffer, long timeoutMillSecond);
+
+    /**
+     * Write several data buffers to ASPlayer instance in one call.
+     * It will only work when TS input's source type is TS_MEMORY.
+     * Buffers are written in order, writing stops at the first buffer which is not fully consumed.
+     * For each buffer, mOffset is advanced and mBufferSize is decreased by the size written.
+     *
+     * @param buffers
+     * @param count number of buffers to write, starting from buffers[0]
+     * @param timeoutMillSecond
+     */
+    int writeData(InputBuffer[] buffers, int count, long timeoutMillSecond);
+
     /**
      * Flush data of ASPlayer instance.
      */
@@ -86,6 +111,23 @@ public interface IASPlayer {
      */
     int flushDvr();
 
+    /**
+     * Set the uri ASPlayer reads ts data from, instead of the application calling writeData.
+     * Data is read on a dedicated thread, sized from the fill level of the DVR playback buffer.
+     * It will only work when TS input's source type is TS_MEMORY.
+     *
+     * @param uri local file or fifo, null to stop reading and accept writeData again
+     */
+    int setDataSource(Uri uri);
+
+    /**
+     * Move the source set by setDataSource, data read before is dropped and DvrPlayback is
+     * flushed. Decoders are flushed by {@link #flush()}.
+     *
+     * @param positionInBytes position in the source, a fifo can't be moved
+     */
+    int seekDataSource(long positionInBytes);
+
     /**
      * Set work mode of ASPlayer instance.
      *
@@ -17,4 +17,43 @@ public class Parameters {
     public static final String KEY_SECOND_LANGUAGE = "audio-second-language";
 
     public static final String KEY_SPDIF_PROTECTION_MODE = "spdif-protection-mode";
+
+    // total time writeData spent waiting for free TS playback buffer, in milliseconds
+    public static final String KEY_WRITE_BLOCKED_TIME = "write-blocked-time-ms";
+
+    // bytes dropped and number of sync losses while aligning TS_MEMORY input on ts packets
+    public static final String KEY_TS_DROPPED_BYTES = "ts-dropped-bytes";
+    public static final String KEY_TS_SYNC_LOSS_COUNT = "ts-sync-loss-count";
+
+    // DataSource feeding, see ASPlayer#setDataSource: bytes fed per second, number and total
+    // time in milliseconds of stalls (source had no data while DVR was low), DVR fill level
+    // from 0 (unknown), 1 (empty) to 5 (full), total bytes fed, and a boolean set once the
+    // end of a source which is not growing was reached
+    public static final String KEY_FEED_RATE = "feed-rate-bps";
+    public static final String KEY_FEED_STALL_COUNT = "feed-stall-count";
+    public static final String KEY_FEED_STALL_TIME = "feed-stall-time-ms";
+    public static final String KEY_FEED_FILL_LEVEL = "feed-fill-level";
+    public static final String KEY_FEED_BYTES = "feed-bytes";
+    public static final String KEY_FEED_END_OF_STREAM = "feed-end-of-stream";
+
+    // PtsEvent dropped because the event thread was late, and PtsEvent replaced by a later one
+    // for listeners added with PtsDeliveryMode.LATEST
+    public static final String KEY_PTS_EVENTS_DROPPED = "pts-events-dropped";
+    public static final String KEY_PTS_EVENTS_COALESCED = "pts-events-coalesced";
+
+    // zap (channel change) latency: KEY_ZAP_TIMELINE gives a Bundle of the last zap, with the
+    // offset in milliseconds from setVideoParams of each stage ("start-video-decoding",
+    // "codec-configured", "codec-started", "first-input", "first-decode", "first-video-render",
+    // "first-audio-render", "av-sync-done"), -1 if not reached. KEY_ZAP_HISTOGRAM gives a
+    // String dump of the last zaps
+    public static final String KEY_ZAP_TIMELINE = "zap-timeline";
+    public static final String KEY_ZAP_HISTOGRAM = "zap-histogram";
+
+    // player metrics: KEY_METRICS gives a Bundle with a long per counter and gauge
+    // ("write.bytes", "write.busy", "write.errors", "dvr.write.bytes", "dvr.write.full",
+    // "dvr.status", "video.frames", "audio.frames", "video.data-loss", "audio.data-loss"), and
+    // count, avg, p50, p99 and max in microseconds of each latency histogram ("dvr.write.us",
+    // "renderer.run.us"), e.g. "renderer.run.us.p99". KEY_METRICS_DUMP gives a String dump
+    public static final String KEY_METRICS = "metrics";
+    public static final String KEY_METRICS_DUMP = "metrics-dump";
 }
\ No newline at end of file
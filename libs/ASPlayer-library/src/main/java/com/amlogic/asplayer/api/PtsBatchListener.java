@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.api;
+
+/**
+ * Receives pts of rendered frames in batches, without an object per frame.
+ *
+ * Implemented by a {@link TsPlaybackListener} added to the player, which then receives pts
+ * through {@link #onPtsBatch} only, no {@link TsPlaybackListener.PtsEvent} is sent to it.
+ */
+public interface PtsBatchListener {
+
+    /**
+     * Called on event thread with frames rendered since last call, in rendering order.
+     * Arrays are reused by the notifier, they are only valid during the call.
+     *
+     * @param streamTypes {@link StreamType} of each frame
+     * @param pts pts of each frame, in microseconds
+     * @param renderTimes render time of each frame, as
+     *                    {@link TsPlaybackListener.PtsEvent#getRenderTime()}
+     * @param count number of frames, arrays may be larger
+     */
+    void onPtsBatch(int[] streamTypes, long[] pts, long[] renderTimes, int count);
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.api;
+
+/**
+ * How {@link TsPlaybackListener.PtsEvent} are delivered to a playback listener
+ */
+public class PtsDeliveryMode {
+
+    /**
+     * Every PtsEvent, as soon as possible
+     */
+    public static final int EACH = 0;
+
+    /**
+     * Only the latest PtsEvent of each stream, at most once per interval
+     */
+    public static final int LATEST = 1;
+
+    /**
+     * Every PtsEvent, delivered together once per interval.
+     * The same PtsEvent is given for all frames of a delivery, its values are only valid during
+     * onPlaybackEvent and must be copied to be kept.
+     */
+    public static final int BATCHED = 2;
+}
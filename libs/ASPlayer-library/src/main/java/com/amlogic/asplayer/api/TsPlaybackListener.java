@@ -157,12 +157,20 @@ public interface TsPlaybackListener {
      * pts event
      */
     public static class PtsEvent extends PlaybackEvent {
-        public final int mStreamType;
-        public final long mPts;
-        public final long mRenderTime;
+        // not final, an event delivered with PtsDeliveryMode.BATCHED is reused
+        public int mStreamType;
+        public long mPts;
+        public long mRenderTime;
 
         public PtsEvent(int streamType, long pts, long renderTime) {
             super(EventType.EVENT_TYPE_PTS);
+            set(streamType, pts, renderTime);
+        }
+
+        /**
+         * Reuses the event for another frame, see {@link PtsDeliveryMode#BATCHED}.
+         */
+        public void set(int streamType, long pts, long renderTime) {
             this.mStreamType = streamType;
             this.mPts = pts;
             this.mRenderTime = renderTime;
@@ -16,12 +16,14 @@ import android.media.tv.tuner.Tuner;
 import android.media.tv.tuner.dvr.DvrPlayback;
 import android.media.tv.tuner.dvr.DvrSettings;
 import android.media.tv.tuner.filter.Filter;
+import android.net.Uri;
 import android.os.Bundle;
 import android.os.ConditionVariable;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.Process;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
 import android.view.Surface;
@@ -34,6 +36,7 @@ import com.amlogic.asplayer.api.InputFrameBuffer;
 import com.amlogic.asplayer.api.InputSourceType;
 import com.amlogic.asplayer.api.Parameters;
 import com.amlogic.asplayer.api.Pts;
+import com.amlogic.asplayer.api.PtsDeliveryMode;
 import com.amlogic.asplayer.api.TsPlaybackListener;
 import com.amlogic.asplayer.api.Version;
 import com.amlogic.asplayer.api.VideoFormat;
@@ -42,12 +45,20 @@ import com.amlogic.asplayer.api.IASPlayer;
 import com.amlogic.asplayer.api.VideoTrickMode;
 import com.amlogic.asplayer.api.WorkMode;
 import com.amlogic.asplayer.api.audio.SpdifProtectionMode;
+import com.amlogic.asplayer.core.source.DataSource;
+import com.amlogic.asplayer.core.source.DataSourceLocator;
+import com.amlogic.asplayer.core.source.DataSourceRegistry;
+import com.amlogic.asplayer.core.utils.MetricsRegistry;
 import com.amlogic.asplayer.core.utils.Utils;
 
+import java.nio.ByteBuffer;
 import java.util.HashSet;
 import java.util.Locale;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
 
 import static com.amlogic.asplayer.api.ASPlayer.INFO_BUSY;
 import static com.amlogic.asplayer.api.ASPlayer.INFO_ERROR_RETRY;
@@ -81,6 +92,11 @@ public class ASPlayerImpl implements IASPlayer, AudioOutputPathBase.AudioFormatL
     private RendererScheduler mRendererScheduler;
     private TsPlayback mTsPlayback;
 
+    // total time writers spent waiting for DvrPlayback buffer space, in milliseconds
+    private final AtomicLong mWriteBlockedTimeMs = new AtomicLong();
+    // pulls data from a DataSource, writeData is refused while it is set
+    private volatile DataSourceFeeder mDataSourceFeeder;
+
     private SurfaceControl mFccDummySurfaceControl;
     private Surface mFccDummySurface;
 
@@ -88,9 +104,17 @@ public class ASPlayerImpl implements IASPlayer, AudioOutputPathBase.AudioFormatL
     private Looper mEventLooper;
     private HandlerThread mEventThread;
     private CopyOnWriteArraySet<TsPlaybackListener> mPendingPlaybackListeners;
+    private ConcurrentHashMap<TsPlaybackListener, EventNotifier.PtsDelivery> mPendingPtsDeliveries;
 
     private VideoFormatState mVideoFormatState;
 
+    private final ZapTimeline mZapTimeline;
+
+    private final MetricsRegistry mMetrics;
+    private final MetricsRegistry.Counter mWriteBytesCounter;
+    private final MetricsRegistry.Counter mWriteBusyCounter;
+    private final MetricsRegistry.Counter mWriteErrorCounter;
+
     private final int mId;
     private int mSyncInstanceId = INVALID_SYNC_INSTANCE_ID;
     private int mAvSyncHwId = INVALID_AV_SYNC_ID;
@@ -112,25 +136,53 @@ public class ASPlayerImpl implements IASPlayer, AudioOutputPathBase.AudioFormatL
         mAudioOutputPath = new AudioOutputPathV3(mId);
 
         mPendingPlaybackListeners = new CopyOnWriteArraySet<>();
+        mPendingPtsDeliveries = new ConcurrentHashMap<>();
+
+        mZapTimeline = new ZapTimeline(mId);
+
+        mMetrics = new MetricsRegistry();
+        mWriteBytesCounter = mMetrics.counter("write.bytes");
+        mWriteBusyCounter = mMetrics.counter("write.busy");
+        mWriteErrorCounter = mMetrics.counter("write.errors");
 
         mVideoFormatListener = new VideoFormatListenerAdapter();
     }
 
     @Override
     public void addPlaybackListener(TsPlaybackListener listener) {
+        addPlaybackListener(listener, PtsDeliveryMode.EACH, 0);
+    }
+
+    /**
+     * @param ptsDeliveryMode {@link PtsDeliveryMode}
+     * @param ptsIntervalMs minimum interval between PtsEvent deliveries, for
+     *                      {@link PtsDeliveryMode#LATEST} and {@link PtsDeliveryMode#BATCHED}
+     */
+    public void addPlaybackListener(TsPlaybackListener listener, int ptsDeliveryMode,
+                                    long ptsIntervalMs) {
+        EventNotifier.PtsDelivery ptsDelivery = null;
+        if (ptsDeliveryMode == PtsDeliveryMode.LATEST || ptsDeliveryMode == PtsDeliveryMode.BATCHED) {
+            ptsDelivery = new EventNotifier.PtsDelivery(ptsDeliveryMode, ptsIntervalMs);
+        }
         if (mEventNotifier != null) {
-            mEventNotifier.mPlaybackListeners.add(listener);
+            mEventNotifier.addPlaybackListener(listener, ptsDelivery);
         } else {
             mPendingPlaybackListeners.add(listener);
+            if (ptsDelivery != null) {
+                mPendingPtsDeliveries.put(listener, ptsDelivery);
+            } else {
+                mPendingPtsDeliveries.remove(listener);
+            }
         }
     }
 
     @Override
     public void removePlaybackListener(TsPlaybackListener listener) {
         if (mEventNotifier != null) {
-            mEventNotifier.mPlaybackListeners.remove(listener);
+            mEventNotifier.removePlaybackListener(listener);
         }
         mPendingPlaybackListeners.remove(listener);
+        mPendingPtsDeliveries.remove(listener);
     }
 
     public void setOnGetSyncInstanceIdListener(OnGetSyncInstanceIdListener listener) {
@@ -159,11 +211,16 @@ public class ASPlayerImpl implements IASPlayer, AudioOutputPathBase.AudioFormatL
             mEventLooper = mEventThread.getLooper();
         }
 
-        mEventNotifier.mPlaybackListeners.addAll(mPendingPlaybackListeners);
+        for (TsPlaybackListener listener : mPendingPlaybackListeners) {
+            mEventNotifier.addPlaybackListener(listener, mPendingPtsDeliveries.get(listener));
+        }
         mPendingPlaybackListeners.clear();
+        mPendingPtsDeliveries.clear();
 
         mRendererScheduler = new RendererScheduler(mId, mContext, this, mConfig,
                 mVideoOutputPath, mAudioOutputPath, mEventNotifier);
+        mRendererScheduler.setZapTimeline(mZapTimeline);
+        mRendererScheduler.setMetrics(mMetrics);
 
         mVideoFormatState = new VideoFormatState(mEventNotifier);
 
@@ -245,6 +302,7 @@ public class ASPlayerImpl implements IASPlayer, AudioOutputPathBase.AudioFormatL
         mSyncInstanceId = INVALID_SYNC_INSTANCE_ID;
 
         mPendingPlaybackListeners.clear();
+        mPendingPtsDeliveries.clear();
 
         if (mVideoFormatState != null) {
             mVideoFormatState.release();
@@ -296,6 +354,7 @@ public class ASPlayerImpl implements IASPlayer, AudioOutputPathBase.AudioFormatL
     }
 
     private void releaseTsPlayback() {
+        stopDataSourceFeeder();
         if (mTsPlayback != null) {
             mTsPlayback.release();
             mTsPlayback = null;
@@ -327,7 +386,12 @@ public class ASPlayerImpl implements IASPlayer, AudioOutputPathBase.AudioFormatL
         }
 
         if (mTsPlayback != null) {
-            return writeToTsPlayback(inputBuffer.mBuffer, inputBuffer.mOffset, inputBuffer.mBufferSize);
+            if (mDataSourceFeeder != null) {
+                ASPlayerLog.w("%s writeData failed, data is read from DataSource", getTag());
+                return INFO_INVALID_OPERATION;
+            }
+            return writeToTsPlayback(inputBuffer.mBuffer, inputBuffer.mOffset, inputBuffer.mBufferSize,
+                    timeoutMillSecond);
         } else {
             ASPlayerLog.w("%s writeData failed", getTag());
             return INFO_INVALID_OPERATION;
@@ -348,25 +412,249 @@ public class ASPlayerImpl implements IASPlayer, AudioOutputPathBase.AudioFormatL
         }
 
         if (mTsPlayback != null) {
-            return writeToTsPlayback(buffer, offset, size);
+            if (mDataSourceFeeder != null) {
+                ASPlayerLog.w("%s writeData failed, data is read from DataSource", getTag());
+                return INFO_INVALID_OPERATION;
+            }
+            return writeToTsPlayback(buffer, offset, size, timeoutMillSecond);
+        } else {
+            ASPlayerLog.w("%s writeData failed", getTag());
+            return INFO_INVALID_OPERATION;
+        }
+    }
+
+    @Override
+    public int writeData(ByteBuffer buffer, long timeoutMillSecond) {
+        if (buffer == null) {
+            ASPlayerLog.i("%s writeData failed, invalid param, buffer is null", getTag());
+            return INFO_INVALID_PARAMS;
+        } else if (!buffer.hasRemaining()) {
+            ASPlayerLog.i("%s writeData buffer is empty", getTag());
+            return INFO_ERROR_RETRY;
+        }
+
+        TsPlayback tsPlayback = mTsPlayback;
+        if (tsPlayback != null && mDataSourceFeeder != null) {
+            ASPlayerLog.w("%s writeData failed, data is read from DataSource", getTag());
+            return INFO_INVALID_OPERATION;
+        } else if (tsPlayback != null) {
+            long written = tsPlayback.write(buffer);
+            if (written == 0 && timeoutMillSecond > 0) {
+                written = waitAndWrite(tsPlayback, () -> tsPlayback.write(buffer), timeoutMillSecond);
+            }
+            int ret = toWriteResult(written);
+            if (ret > 0) {
+                buffer.position(buffer.position() + ret);
+            }
+            return ret;
         } else {
             ASPlayerLog.w("%s writeData failed", getTag());
             return INFO_INVALID_OPERATION;
         }
     }
 
-    private int writeToTsPlayback(byte[] buffer, int offset, int size) {
-        long ret = mTsPlayback.write(buffer, offset, size);
+    @Override
+    public int writeData(InputBuffer[] buffers, int count, long timeoutMillSecond) {
+        if (buffers == null || count < 0 || count > buffers.length) {
+            ASPlayerLog.i("%s writeData failed, invalid param, buffers: %s, count: %d",
+                    getTag(), buffers, count);
+            return INFO_INVALID_PARAMS;
+        }
+        for (int i = 0; i < count; i++) {
+            InputBuffer inputBuffer = buffers[i];
+            if (inputBuffer == null || inputBuffer.mBuffer == null
+                    || inputBuffer.mOffset < 0 || inputBuffer.mBufferSize < 0
+                    || inputBuffer.mOffset + inputBuffer.mBufferSize > inputBuffer.mBuffer.length) {
+                ASPlayerLog.i("%s writeData failed, invalid param, buffers[%d] is invalid", getTag(), i);
+                return INFO_INVALID_PARAMS;
+            }
+        }
+
+        if (mTsPlayback == null) {
+            ASPlayerLog.w("%s writeData failed", getTag());
+            return INFO_INVALID_OPERATION;
+        } else if (mDataSourceFeeder != null) {
+            ASPlayerLog.w("%s writeData failed, data is read from DataSource", getTag());
+            return INFO_INVALID_OPERATION;
+        }
+
+        int total = 0;
+        int ret = INFO_ERROR_RETRY;
+        for (int i = 0; i < count; i++) {
+            InputBuffer inputBuffer = buffers[i];
+            if (inputBuffer.mBufferSize == 0) {
+                continue;
+            }
+
+            // only block while nothing is written, return as soon as some data is accepted
+            ret = writeToTsPlayback(inputBuffer.mBuffer, inputBuffer.mOffset, inputBuffer.mBufferSize,
+                    total > 0 ? 0 : timeoutMillSecond);
+            if (ret <= 0) {
+                break;
+            }
+
+            total += ret;
+            inputBuffer.mOffset += ret;
+            inputBuffer.mBufferSize -= ret;
+            if (inputBuffer.mBufferSize > 0) {
+                // playback is full, remaining data should be written later
+                break;
+            }
+        }
+        return total > 0 ? total : ret;
+    }
+
+    private int writeToTsPlayback(byte[] buffer, int offset, int size, long timeoutMillSecond) {
+        TsPlayback tsPlayback = mTsPlayback;
+        long ret = tsPlayback.write(buffer, offset, size);
+        if (ret == 0 && timeoutMillSecond > 0) {
+            ret = waitAndWrite(tsPlayback, () -> tsPlayback.write(buffer, offset, size), timeoutMillSecond);
+        }
+        return toWriteResult(ret);
+    }
+
+    /**
+     * Called when DvrPlayback is full, retry writing each time DvrPlayback reports free space,
+     * until some data is written or timeout expires.
+     */
+    private long waitAndWrite(TsPlayback tsPlayback, LongSupplier writer, long timeoutMillSecond) {
+        long start = SystemClock.elapsedRealtime();
+        long deadline = start + timeoutMillSecond;
+        long ret = 0;
+        long remaining = timeoutMillSecond;
+        while (ret == 0 && remaining > 0) {
+            if (!tsPlayback.waitForSpace(remaining)) {
+                break;
+            }
+            ret = writer.getAsLong();
+            remaining = deadline - SystemClock.elapsedRealtime();
+        }
+        mWriteBlockedTimeMs.addAndGet(SystemClock.elapsedRealtime() - start);
+        return ret;
+    }
+
+    private int toWriteResult(long ret) {
         if (ret > 0) {
+            mWriteBytesCounter.add(ret);
             return (int)ret;
         } else if (ret == 0) {
+            mWriteBusyCounter.inc();
             return INFO_BUSY;
         } else {
+            mWriteErrorCounter.inc();
             ASPlayerLog.w("%s writeData error, ret: %d", getTag(), ret);
             return INFO_ERROR_RETRY;
         }
     }
 
+    @Override
+    public int setDataSource(Uri uri) {
+        if (uri == null) {
+            return setDataSource((DataSource) null);
+        }
+        DataSourceLocator locator = new DataSourceLocator(mContext);
+        locator.rawUri = uri;
+        DataSource source = DataSourceRegistry.create(locator);
+        if (source == null) {
+            ASPlayerLog.e("%s setDataSource failed, no source for uri: %s", getTag(), uri);
+            return ErrorCode.ERROR_INVALID_PARAMS;
+        }
+        return setDataSource(source);
+    }
+
+    /**
+     * Player reads ts data from source on its own thread, instead of application calling
+     * writeData. Only for {@link InputSourceType#TS_MEMORY}.
+     * Player owns the source once set, it is closed when reading stops : on a new source or
+     * on release. It is closed too if it can't be set.
+     *
+     * @param source source to read, null to stop reading and accept writeData again
+     */
+    public int setDataSource(DataSource source) {
+        if (isAlive() && mTsPlayback != null) {
+            ConditionVariable lock = new ConditionVariable();
+            mPlayerHandler.post(() -> {
+                handleSetDataSource(source);
+                lock.open();
+            });
+            lock.block();
+            return ErrorCode.SUCCESS;
+        } else {
+            ASPlayerLog.e("%s setDataSource failed, playerHandler: %s, tsPlayback: %s",
+                    getTag(), mPlayerHandler, mTsPlayback);
+            if (source != null) {
+                source.close();
+            }
+            return ErrorCode.ERROR_INVALID_OPERATION;
+        }
+    }
+
+    private void handleSetDataSource(DataSource source) {
+        stopDataSourceFeeder();
+        if (source == null) {
+            return;
+        }
+        if (mTsPlayback == null) {
+            source.close();
+            return;
+        }
+
+        DataSourceFeeder feeder = new DataSourceFeeder(mId, mTsPlayback, source);
+        feeder.setSyncInstanceId(mSyncInstanceId);
+        feeder.start();
+        mDataSourceFeeder = feeder;
+        ASPlayerLog.i("%s setDataSource, locator: %s", getTag(), source.getLocator());
+    }
+
+    private void stopDataSourceFeeder() {
+        DataSourceFeeder feeder = mDataSourceFeeder;
+        if (feeder != null) {
+            feeder.stop();
+            mDataSourceFeeder = null;
+        }
+    }
+
+    @Override
+    public int seekDataSource(long positionInBytes) {
+        if (positionInBytes < 0) {
+            return ErrorCode.ERROR_INVALID_PARAMS;
+        }
+        if (isAlive() && mTsPlayback != null) {
+            ConditionVariable lock = new ConditionVariable();
+            int[] result = new int[1];
+            mPlayerHandler.post(() -> {
+                result[0] = handleSeekDataSource(positionInBytes);
+                lock.open();
+            });
+            lock.block();
+            return result[0];
+        } else {
+            ASPlayerLog.e("%s seekDataSource failed, playerHandler: %s, tsPlayback: %s",
+                    getTag(), mPlayerHandler, mTsPlayback);
+            return ErrorCode.ERROR_INVALID_OPERATION;
+        }
+    }
+
+    private int handleSeekDataSource(long positionInBytes) {
+        DataSourceFeeder feeder = mDataSourceFeeder;
+        if (feeder == null) {
+            ASPlayerLog.w("%s seekDataSource failed, no DataSource", getTag());
+            return ErrorCode.ERROR_INVALID_OPERATION;
+        }
+        feeder.reposition(positionInBytes, this::flushTsPlayback);
+        return ErrorCode.SUCCESS;
+    }
+
+    // stop, flush and start TsPlayback, on feeder thread when a DataSource is fed
+    private void flushTsPlayback() {
+        TsPlayback tsPlayback = mTsPlayback;
+        if (tsPlayback != null) {
+            tsPlayback.stop();
+            tsPlayback.flush();
+            tsPlayback.start();
+        }
+    }
+
     @Override
     public int flush() {
         if (isAlive()) {
@@ -384,6 +672,11 @@ public class ASPlayerImpl implements IASPlayer, AudioOutputPathBase.AudioFormatL
     }
 
     private void handleFlush() {
+        // data read from DataSource and not written yet must not follow the flush
+        DataSourceFeeder feeder = mDataSourceFeeder;
+        if (feeder != null) {
+            feeder.reposition(-1, null);
+        }
         mRendererScheduler.flush();
     }
 
@@ -392,11 +685,11 @@ public class ASPlayerImpl implements IASPlayer, AudioOutputPathBase.AudioFormatL
         if (isAlive() && mTsPlayback != null) {
             ConditionVariable lock = new ConditionVariable();
             mPlayerHandler.post(() -> {
-                TsPlayback tsPlayback = mTsPlayback;
-                if (tsPlayback != null) {
-                    tsPlayback.stop();
-                    tsPlayback.flush();
-                    tsPlayback.start();
+                DataSourceFeeder feeder = mDataSourceFeeder;
+                if (feeder != null) {
+                    feeder.reposition(-1, this::flushTsPlayback);
+                } else {
+                    flushTsPlayback();
                 }
                 lock.open();
                 ASPlayerLog.i("%s flushDvr success", getTag());
@@ -595,6 +888,7 @@ public class ASPlayerImpl implements IASPlayer, AudioOutputPathBase.AudioFormatL
         }
 
         if (mPlayerHandler != null) {
+            mZapTimeline.begin();
             mPlayerHandler.post(() -> {
                 handleSetVideoParams(params.clone());
             });
@@ -617,6 +911,9 @@ public class ASPlayerImpl implements IASPlayer, AudioOutputPathBase.AudioFormatL
             mVideoOutputPath.setVideoParams(null);
             mVideoOutputPath.setSyncInstanceId(INVALID_SYNC_INSTANCE_ID);
             mRendererScheduler.onSetVideoParams(false);
+            if (mTsPlayback != null) {
+                mTsPlayback.stopVideoIndex();
+            }
         }
     }
 
@@ -640,6 +937,11 @@ public class ASPlayerImpl implements IASPlayer, AudioOutputPathBase.AudioFormatL
         mVideoOutputPath.setVideoParams(params);
         mVideoOutputPath.setSyncInstanceId(getSyncInstanceIdByAvSyncId(avSyncHwId));
         mRendererScheduler.onSetVideoParams(true);
+        if (mTsPlayback != null) {
+            // key frames for trick mode by seek, see RendererTrickBySeek
+            mTsPlayback.startVideoIndex(pid, params.getMimeType(),
+                    mRendererScheduler.getKeyFrameIndex());
+        }
     }
 
     private void handleSetVideoParamsAudioOnly(VideoParams params) {
@@ -651,6 +953,9 @@ public class ASPlayerImpl implements IASPlayer, AudioOutputPathBase.AudioFormatL
         mVideoOutputPath.setVideoParams(params);
         mVideoOutputPath.setSyncInstanceId(INVALID_AV_SYNC_ID);
         mRendererScheduler.onSetVideoParams(true);
+        if (mTsPlayback != null) {
+            mTsPlayback.stopVideoIndex();
+        }
     }
 
     private void setSyncInstanceIdByAvSyncId(int avSyncHwId) {
@@ -667,8 +972,13 @@ public class ASPlayerImpl implements IASPlayer, AudioOutputPathBase.AudioFormatL
         if (mTsPlayback != null) {
             mTsPlayback.setSyncInstanceId(mSyncInstanceId);
         }
+        DataSourceFeeder feeder = mDataSourceFeeder;
+        if (feeder != null) {
+            feeder.setSyncInstanceId(mSyncInstanceId);
+        }
         mRendererScheduler.setSyncInstanceId(mSyncInstanceId);
         mEventNotifier.setSyncInstanceId(mSyncInstanceId);
+        mZapTimeline.setSyncInstanceId(mSyncInstanceId);
 
         if (mOnGetSyncInstanceIdListener != null) {
             mOnGetSyncInstanceIdListener.onGetSyncInstanceId(mSyncInstanceId);
@@ -779,6 +1089,7 @@ public class ASPlayerImpl implements IASPlayer, AudioOutputPathBase.AudioFormatL
     public int startVideoDecoding() {
         if (isAlive()) {
             ConditionVariable lock = new ConditionVariable();
+            mZapTimeline.mark(ZapTimeline.STAGE_START_VIDEO_DECODING);
             mPlayerHandler.post(() -> {
                 if (mVideoFormatState != null) {
                     mVideoFormatState.reset();
@@ -814,6 +1125,8 @@ public class ASPlayerImpl implements IASPlayer, AudioOutputPathBase.AudioFormatL
         }
 
         mTsPlayback = new TsPlayback(mId, mTuner, PLAYBACK_BUFFER_SIZE);
+        mTsPlayback.setMetrics(mMetrics);
+        mTsPlayback.setZapTimeline(mZapTimeline);
         DvrSettings dvrSettings = new DvrSettings.Builder()
                 .setDataFormat(DvrSettings.DATA_FORMAT_TS)
                 .setPacketSize(TS_PACKET_SIZE)
@@ -1434,13 +1747,83 @@ public class ASPlayerImpl implements IASPlayer, AudioOutputPathBase.AudioFormatL
                 case Parameters.KEY_AUDIO_PRESENTATION_ID:
                     bundle.putInt(Parameters.KEY_AUDIO_PRESENTATION_ID, getAudioPresentationId());
                     break;
+                case Parameters.KEY_WRITE_BLOCKED_TIME:
+                    bundle.putLong(Parameters.KEY_WRITE_BLOCKED_TIME, mWriteBlockedTimeMs.get());
+                    break;
+                case Parameters.KEY_TS_DROPPED_BYTES:
+                    bundle.putLong(Parameters.KEY_TS_DROPPED_BYTES,
+                            mTsPlayback != null ? mTsPlayback.getDroppedBytes() : 0);
+                    break;
+                case Parameters.KEY_TS_SYNC_LOSS_COUNT:
+                    bundle.putLong(Parameters.KEY_TS_SYNC_LOSS_COUNT,
+                            mTsPlayback != null ? mTsPlayback.getSyncLossCount() : 0);
+                    break;
+                case Parameters.KEY_METRICS: {
+                    Bundle metrics = new Bundle();
+                    mMetrics.fillBundle(metrics);
+                    bundle.putBundle(Parameters.KEY_METRICS, metrics);
+                    break;
+                }
+                case Parameters.KEY_METRICS_DUMP:
+                    bundle.putString(Parameters.KEY_METRICS_DUMP, mMetrics.dump());
+                    break;
+                case Parameters.KEY_ZAP_TIMELINE:
+                    bundle.putBundle(Parameters.KEY_ZAP_TIMELINE, mZapTimeline.getLastTimeline());
+                    break;
+                case Parameters.KEY_ZAP_HISTOGRAM:
+                    bundle.putString(Parameters.KEY_ZAP_HISTOGRAM, mZapTimeline.dumpHistogram());
+                    break;
+                case Parameters.KEY_PTS_EVENTS_DROPPED:
+                    bundle.putLong(Parameters.KEY_PTS_EVENTS_DROPPED,
+                            mEventNotifier != null ? mEventNotifier.getPtsDroppedCount() : 0);
+                    break;
+                case Parameters.KEY_PTS_EVENTS_COALESCED:
+                    bundle.putLong(Parameters.KEY_PTS_EVENTS_COALESCED,
+                            mEventNotifier != null ? mEventNotifier.getPtsCoalescedCount() : 0);
+                    break;
+                case Parameters.KEY_FEED_RATE: {
+                    DataSourceFeeder feeder = mDataSourceFeeder;
+                    bundle.putLong(Parameters.KEY_FEED_RATE,
+                            feeder != null ? feeder.getFeedRateBytesPerSecond() : 0);
+                    break;
+                }
+                case Parameters.KEY_FEED_STALL_COUNT: {
+                    DataSourceFeeder feeder = mDataSourceFeeder;
+                    bundle.putInt(Parameters.KEY_FEED_STALL_COUNT,
+                            feeder != null ? feeder.getStallCount() : 0);
+                    break;
+                }
+                case Parameters.KEY_FEED_STALL_TIME: {
+                    DataSourceFeeder feeder = mDataSourceFeeder;
+                    bundle.putLong(Parameters.KEY_FEED_STALL_TIME,
+                            feeder != null ? feeder.getStallTimeMs() : 0);
+                    break;
+                }
+                case Parameters.KEY_FEED_BYTES: {
+                    DataSourceFeeder feeder = mDataSourceFeeder;
+                    bundle.putLong(Parameters.KEY_FEED_BYTES,
+                            feeder != null ? feeder.getBytesFed() : 0);
+                    break;
+                }
+                case Parameters.KEY_FEED_END_OF_STREAM: {
+                    DataSourceFeeder feeder = mDataSourceFeeder;
+                    bundle.putBoolean(Parameters.KEY_FEED_END_OF_STREAM,
+                            feeder != null && feeder.isEndOfStream());
+                    break;
+                }
+                case Parameters.KEY_FEED_FILL_LEVEL: {
+                    DataSourceFeeder feeder = mDataSourceFeeder;
+                    bundle.putInt(Parameters.KEY_FEED_FILL_LEVEL,
+                            feeder != null ? feeder.getFillLevel() : 0);
+                    break;
+                }
                 default:
                     ASPlayerLog.i("%s getParameters unhandled key: %s", getTag(), key);
                     break;
             }
         }
 
-        return null;
+        return bundle;
     }
 
     private Bundle getParameters(Set<String> keys) {
@@ -8,24 +8,91 @@
  */
 package com.amlogic.asplayer.core;
 
+import android.os.SystemClock;
 import android.util.Log;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 
 /**
  * Utility to log messages, adding information about the caller
  * Note that these methods are consuming time and memory, so it must be used with care
  * That's why v() (for verbose) and d() (for debug) are not provided
+ *
+ * Level of tag is checked before formatting, a suppressed message costs no allocation when
+ * called with a tag and int or long arguments, or with at most two objects. Other calls still
+ * allocate the varargs array. Arguments are evaluated by the caller anyway, a costly argument
+ * (getTag(), ...) should be guarded with {@link #isLoggable} or a {@link RateLimit}.
  */
 public class ASPlayerLog {
 
     private static final boolean DEBUG = true;
     private static final String TAG = Constant.LOG_TAG;
 
+    // level of tag can be changed with "setprop log.tag.ASPlayer <LEVEL>", read again after
+    private static final long LEVEL_REFRESH_MS = 1000;
+
+    private static volatile int sMinPriority = Log.INFO;
+    private static volatile long sNextLevelRefreshMs;
+
+    /**
+     * Limits a call site to one message per interval, shared by all threads.
+     * Usage: {@code if (mLimit.tryAcquire()) ASPlayerLog.i(...)}
+     */
+    public static class RateLimit {
+        private final long mIntervalMs;
+        private final AtomicLong mNextMs = new AtomicLong();
+        private final AtomicLong mSuppressedCount = new AtomicLong();
+
+        public RateLimit(long intervalMs) {
+            mIntervalMs = intervalMs;
+        }
+
+        /**
+         * @return true if message can be logged now
+         */
+        public boolean tryAcquire() {
+            long nowMs = SystemClock.uptimeMillis();
+            long nextMs = mNextMs.get();
+            if (nowMs >= nextMs && mNextMs.compareAndSet(nextMs, nowMs + mIntervalMs)) {
+                return true;
+            }
+            mSuppressedCount.incrementAndGet();
+            return false;
+        }
+
+        /**
+         * @return number of messages suppressed since last call
+         */
+        public long takeSuppressedCount() {
+            return mSuppressedCount.getAndSet(0);
+        }
+    }
+
+    public static boolean isLoggable(int priority) {
+        long nowMs = SystemClock.uptimeMillis();
+        if (nowMs >= sNextLevelRefreshMs) {
+            sNextLevelRefreshMs = nowMs + LEVEL_REFRESH_MS;
+            sMinPriority = readMinPriority();
+        }
+        return priority >= sMinPriority;
+    }
+
+    private static int readMinPriority() {
+        for (int priority = Log.VERBOSE; priority <= Log.ASSERT; priority++) {
+            if (Log.isLoggable(TAG, priority)) {
+                return priority;
+            }
+        }
+        return Log.ASSERT + 1;
+    }
+
     // depth clarification
     // 0 -> native method VMStack.getThreadStackTrace()
     // 1 -> Thread.getStackTrace()
     // 2 -> TvLog.formatMessage()
     // 3 -> caller of TvLog.formatMessage()
+    // walks the stack, callers should check isLoggable first
     public static String formatMessage(int depth, String format, Object... args) {
         StackTraceElement[] elements = Thread.currentThread().getStackTrace();
         String className = elements[depth].getClassName();
@@ -37,20 +104,84 @@ public class ASPlayerLog {
                 String.format(format, args));
     }
 
+    private static String format(String format) {
+        return format.indexOf('%') < 0 ? format : String.format(format);
+    }
+
+    public static void e(String format) {
+        if (isLoggable(Log.ERROR)) Log.e(TAG, format(format));
+    }
+
+    public static void e(String format, Object arg) {
+        if (isLoggable(Log.ERROR)) Log.e(TAG, String.format(format, arg));
+    }
+
+    public static void e(String format, Object arg1, Object arg2) {
+        if (isLoggable(Log.ERROR)) Log.e(TAG, String.format(format, arg1, arg2));
+    }
+
+    public static void e(String format, String tag, int value) {
+        if (isLoggable(Log.ERROR)) Log.e(TAG, String.format(format, tag, value));
+    }
+
+    public static void e(String format, String tag, long value) {
+        if (isLoggable(Log.ERROR)) Log.e(TAG, String.format(format, tag, value));
+    }
+
     public static void e(String format, Object... args) {
-        Log.e(TAG, String.format(format, args));
+        if (isLoggable(Log.ERROR)) Log.e(TAG, String.format(format, args));
+    }
+
+    public static void w(String format) {
+        if (isLoggable(Log.WARN)) Log.w(TAG, format(format));
+    }
+
+    public static void w(String format, Object arg) {
+        if (isLoggable(Log.WARN)) Log.w(TAG, String.format(format, arg));
+    }
+
+    public static void w(String format, Object arg1, Object arg2) {
+        if (isLoggable(Log.WARN)) Log.w(TAG, String.format(format, arg1, arg2));
+    }
+
+    public static void w(String format, String tag, int value) {
+        if (isLoggable(Log.WARN)) Log.w(TAG, String.format(format, tag, value));
+    }
+
+    public static void w(String format, String tag, long value) {
+        if (isLoggable(Log.WARN)) Log.w(TAG, String.format(format, tag, value));
     }
 
     public static void w(String format, Object... args) {
-        Log.w(TAG, String.format(format, args));
+        if (isLoggable(Log.WARN)) Log.w(TAG, String.format(format, args));
+    }
+
+    public static void i(String format) {
+        if (isLoggable(Log.INFO)) Log.i(TAG, format(format));
+    }
+
+    public static void i(String format, Object arg) {
+        if (isLoggable(Log.INFO)) Log.i(TAG, String.format(format, arg));
+    }
+
+    public static void i(String format, Object arg1, Object arg2) {
+        if (isLoggable(Log.INFO)) Log.i(TAG, String.format(format, arg1, arg2));
+    }
+
+    public static void i(String format, String tag, int value) {
+        if (isLoggable(Log.INFO)) Log.i(TAG, String.format(format, tag, value));
+    }
+
+    public static void i(String format, String tag, long value) {
+        if (isLoggable(Log.INFO)) Log.i(TAG, String.format(format, tag, value));
     }
 
     public static void i(String format, Object... args) {
-        Log.i(TAG, String.format(format, args));
+        if (isLoggable(Log.INFO)) Log.i(TAG, String.format(format, args));
     }
 
     public static void d(String format, Object... args) {
-        if (DEBUG) {
+        if (DEBUG && isLoggable(Log.INFO)) {
             Log.i(TAG, String.format(format, args));
         }
     }
@@ -50,6 +50,9 @@ public class AudioCodecRendererV3 implements AudioCodecRenderer {
     private final ByteBuffer mEmptyPacket = ByteBuffer.allocate(AUDIO_BUFFER_SIZE);
     private final ByteBuffer mMetadataPacket = ByteBuffer.allocate(AUDIO_BUFFER_SIZE);
     private final List<Metadata> mMetadata = new ArrayList<>();
+    // write() runs for every packet, incomplete writes are logged at most once per second
+    private static final long WRITE_LOG_INTERVAL_MS = 1000;
+    private final ASPlayerLog.RateLimit mWriteLogLimit = new ASPlayerLog.RateLimit(WRITE_LOG_INTERVAL_MS);
     private String mErrorMessage;
 
     private int mLastWorkMode = -1;
@@ -367,10 +370,11 @@ public class AudioCodecRendererV3 implements AudioCodecRenderer {
             expectedToWrite = mEmptyPacket.remaining();
             written = mAudioTrack.write(mEmptyPacket, expectedToWrite,
                     AudioTrack.WRITE_NON_BLOCKING);
-            if (expectedToWrite != AUDIO_BUFFER_SIZE ||
-                    expectedToWrite != written && written > 0) {
-                ASPlayerLog.i("%s expected: %d, written: %d",
-                                getTag(), expectedToWrite, written);
+            if ((expectedToWrite != AUDIO_BUFFER_SIZE ||
+                    expectedToWrite != written && written > 0) && mWriteLogLimit.tryAcquire()) {
+                ASPlayerLog.i("%s expected: %d, written: %d, suppressed: %d",
+                                getTag(), expectedToWrite, written,
+                                mWriteLogLimit.takeSuppressedCount());
             }
         }
 
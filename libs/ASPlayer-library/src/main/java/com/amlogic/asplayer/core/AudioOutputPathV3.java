@@ -544,6 +544,7 @@ class AudioOutputPathV3 extends AudioOutputPathBase {
 
         mDataLossListener = new AudioDataLossListener();
         mDataLossChecker = new DataLossChecker(mHandler);
+        mDataLossChecker.setDataLossCounter(getDataLossCounter());
         mDataLossChecker.start(mDataLossListener, getTag(),
                 CHECK_DATA_LOSS_PERIOD, DATA_LOSS_DURATION_MILLISECOND);
     }
@@ -0,0 +1,455 @@
+package com.amlogic.asplayer.core;
+
+import static com.amlogic.asplayer.core.TsPlaybackConfig.PLAYBACK_BUFFER_SIZE;
+import static com.amlogic.asplayer.core.TsPlaybackConfig.TS_PACKET_SIZE;
+
+import android.media.tv.tuner.dvr.DvrPlayback;
+import android.os.ConditionVariable;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.ParcelFileDescriptor;
+import android.os.Process;
+import android.os.SystemClock;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+
+import com.amlogic.asplayer.core.source.DataSource;
+import com.amlogic.asplayer.core.source.MappedFileDataSource;
+
+import java.io.IOException;
+
+/**
+ * Feeds TsPlayback from a DataSource on a dedicated thread, so that applications don't need a
+ * feeding loop of their own.
+ *
+ * Size of each read depends on the fill level reported by DvrPlayback : the emptier it is, the
+ * more is read, nothing is read while it is almost full.
+ * A MappedFileDataSource writes its mapped window to TsPlayback, see
+ * {@link MappedFileDataSource#writeTo(MappedFileDataSource.Sink, int)}.
+ * Otherwise, when the source has a file descriptor and doesn't buffer data itself, DvrPlayback
+ * reads it directly, see {@link TsPlayback#write(long)}, data is then never copied through java.
+ * Otherwise data is read by the source and written to TsPlayback.
+ *
+ * Source and TsPlayback are only used on the feeder thread once started, seeks and flushes go
+ * through {@link #reposition(long, Runnable)}.
+ * The feeder owns the source : it is opened on start if needed and closed on stop.
+ */
+class DataSourceFeeder {
+
+    static final int FILL_LEVEL_UNKNOWN = 0;
+    static final int FILL_LEVEL_EMPTY = 1;
+    static final int FILL_LEVEL_LOW = 2;
+    static final int FILL_LEVEL_NORMAL = 3;
+    static final int FILL_LEVEL_HIGH = 4;
+    static final int FILL_LEVEL_FULL = 5;
+
+    // reads are in ts packets, see low and high thresholds of DvrSettings in ASPlayerImpl
+    private static final int READ_SIZE_EMPTY = align((PLAYBACK_BUFFER_SIZE * 3) / 4);
+    private static final int READ_SIZE_LOW = align(PLAYBACK_BUFFER_SIZE / 2);
+    private static final int READ_SIZE_NORMAL = align(PLAYBACK_BUFFER_SIZE / 4);
+
+    private static final long DELAY_FULL_MS = 10;
+    private static final long DELAY_NO_DATA_MS = 20;
+    private static final long DELAY_END_OF_STREAM_MS = 100;
+    private static final long DELAY_ERROR_MS = 100;
+    private static final long FEED_RATE_PERIOD_MS = 1000;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final int mId;
+    private int mSyncInstanceId = Constant.INVALID_SYNC_INSTANCE_ID;
+    private final TsPlayback mTsPlayback;
+    private final DataSource mSource;
+
+    private HandlerThread mThread;
+    private Handler mHandler;
+    private final Runnable mFeedTask = this::feed;
+    private volatile boolean mRunning;
+
+    // file descriptor read by DvrPlayback, null when data is copied
+    private ParcelFileDescriptor mFd;
+    // offset of mFd, -1 if it must be set again from source position
+    private long mFdOffset = -1;
+
+    // mapped source, null when data is read from fd or copied
+    private MappedFileDataSource mMappedSource;
+    // mapped source : DvrPlayback refused data at last feeding
+    private boolean mMappedRefused;
+    private MappedFileDataSource.Sink mMappedSink;
+
+    // copy path
+    private byte[] mBuffer;
+    private int mPendingOffset;
+    private int mPendingSize;
+
+    private volatile boolean mEndOfStream;
+
+    // metrics
+    private volatile long mBytesFed;
+    private volatile long mFeedRateBytesPerSecond;
+    private long mFeedRateStartMs;
+    private long mFeedRateStartBytes;
+    private volatile int mStallCount;
+    private volatile long mStallTimeMs;
+    private long mStallStartMs = -1;
+
+    DataSourceFeeder(int id, TsPlayback tsPlayback, DataSource source) {
+        mId = id;
+        mTsPlayback = tsPlayback;
+        mSource = source;
+    }
+
+    void setSyncInstanceId(int syncInstanceId) {
+        mSyncInstanceId = syncInstanceId;
+    }
+
+    private String getTag() {
+        return String.format("[No-%d]-[%d]DataSourceFeeder", mSyncInstanceId, mId);
+    }
+
+    DataSource getSource() {
+        return mSource;
+    }
+
+    void start() {
+        if (mThread != null)
+            return;
+        mThread = new HandlerThread(String.format("AsPlayer-feeder:%d", mId),
+                Process.THREAD_PRIORITY_AUDIO);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+        mRunning = true;
+        mHandler.post(this::handleStart);
+    }
+
+    /**
+     * Stops feeding and closes the source.
+     */
+    void stop() {
+        if (mThread == null)
+            return;
+        mRunning = false;
+        mHandler.removeCallbacks(mFeedTask);
+        mThread.quitSafely();
+        // source must not be closed while feeder thread may still use it
+        boolean interrupted = false;
+        while (mThread.isAlive()) {
+            try {
+                mThread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        mThread = null;
+        mHandler = null;
+        // feeder thread is gone, source and TsPlayback can be used here
+        handleStop();
+    }
+
+    /**
+     * Drops data read from source and not written yet, moves source to position, then runs
+     * dvrAction. It is done on the feeder thread, between two feedings, so that no data read
+     * before is written after. Waits until done.
+     *
+     * @param position  position of source in bytes, negative to keep it
+     * @param dvrAction flush of TsPlayback, null if none
+     */
+    void reposition(long position, Runnable dvrAction) {
+        Handler handler = mHandler;
+        if (handler == null) {
+            handleReposition(position, dvrAction);
+            return;
+        }
+        ConditionVariable done = new ConditionVariable();
+        boolean posted = handler.post(() -> {
+            handleReposition(position, dvrAction);
+            done.open();
+        });
+        // not posted if feeder thread is stopping
+        if (posted)
+            done.block();
+    }
+
+    boolean isEndOfStream() {
+        return mEndOfStream;
+    }
+
+    long getBytesFed() {
+        return mBytesFed;
+    }
+
+    /**
+     * @return bytes fed during the last second
+     */
+    long getFeedRateBytesPerSecond() {
+        return mFeedRateBytesPerSecond;
+    }
+
+    /**
+     * @return number of times DvrPlayback was (almost) empty while source had no data
+     */
+    int getStallCount() {
+        return mStallCount;
+    }
+
+    long getStallTimeMs() {
+        return mStallTimeMs;
+    }
+
+    int getFillLevel() {
+        return toFillLevel(mTsPlayback.getPlaybackStatus());
+    }
+
+    private void handleStart() {
+        try {
+            if (!mSource.isOpen())
+                mSource.open();
+        } catch (IOException exception) {
+            ASPlayerLog.e("%s failed to open source: %s", getTag(), exception.getMessage());
+            mRunning = false;
+            return;
+        }
+
+        if (mSource instanceof MappedFileDataSource) {
+            mMappedSource = (MappedFileDataSource) mSource;
+            mMappedSink = mTsPlayback::write;
+        }
+        // a source buffering data reads ahead of the fd, it must be read by itself
+        ParcelFileDescriptor fd = (mMappedSource != null || mSource.isBuffered()) ?
+                null : mSource.getParcelFD();
+        if (fd != null) {
+            mFd = fd;
+            try {
+                seekFd(mSource.getPositionInBytes());
+                mTsPlayback.setFileDescriptor(fd);
+            } catch (IOException exception) {
+                ASPlayerLog.w("%s fd can't be positioned, copy instead: %s", getTag(),
+                        exception.getMessage());
+                mFd = null;
+            }
+        }
+        if (mFd == null && mMappedSource == null)
+            mBuffer = new byte[READ_SIZE_EMPTY];
+        ASPlayerLog.i("%s start, %s", getTag(),
+                mFd != null ? "fd read" : mMappedSource != null ? "mapped" : "copy");
+
+        mFeedRateStartMs = SystemClock.elapsedRealtime();
+        mFeedRateStartBytes = mBytesFed;
+        feed();
+    }
+
+    private void handleStop() {
+        // DvrPlayback must not read the fd once closed with the source
+        if (mFd != null)
+            mTsPlayback.setFileDescriptor(null);
+        mSource.close();
+        mFd = null;
+        mMappedSource = null;
+        mMappedRefused = false;
+        mBuffer = null;
+        mPendingSize = 0;
+        if (mStallStartMs >= 0) {
+            mStallTimeMs += SystemClock.elapsedRealtime() - mStallStartMs;
+            mStallStartMs = -1;
+        }
+        ASPlayerLog.i("%s stop, fed: %d bytes, stalls: %d (%d ms)", getTag(), mBytesFed,
+                mStallCount, mStallTimeMs);
+    }
+
+    private void handleReposition(long position, Runnable dvrAction) {
+        int dropped = mPendingSize;
+        mPendingOffset = 0;
+        mPendingSize = 0;
+        mMappedRefused = false;
+        if (position >= 0)
+            mSource.setPositionInBytes(position);
+        mFdOffset = -1;
+        mEndOfStream = false;
+        if (dvrAction != null)
+            dvrAction.run();
+        ASPlayerLog.i("%s reposition, position: %d, dropped: %d bytes", getTag(),
+                mSource.getPositionInBytes(), dropped);
+    }
+
+    private void feed() {
+        if (!mRunning)
+            return;
+        long delayMs = feedOnce();
+        updateFeedRate();
+        if (mRunning)
+            mHandler.postDelayed(mFeedTask, delayMs);
+    }
+
+    /**
+     * @return delay before next feeding
+     */
+    private long feedOnce() {
+        int status = mTsPlayback.getPlaybackStatus();
+        int readSize = getReadSize(status);
+        if (readSize == 0)
+            return DELAY_FULL_MS;
+
+        long fed;
+        try {
+            if (mFd != null)
+                fed = feedFromFd(readSize);
+            else if (mMappedSource != null)
+                fed = feedFromMapping(readSize);
+            else
+                fed = feedByCopy(readSize);
+        } catch (IOException exception) {
+            ASPlayerLog.w("%s feed failed: %s", getTag(), exception.getMessage());
+            return DELAY_ERROR_MS;
+        }
+
+        boolean starving = (status & (DvrPlayback.PLAYBACK_STATUS_EMPTY
+                | DvrPlayback.PLAYBACK_STATUS_ALMOST_EMPTY)) != 0;
+        if (fed > 0) {
+            mBytesFed += fed;
+            mEndOfStream = false;
+            endStall();
+            return 0;
+        } else if (fed < 0) {
+            if (!mEndOfStream)
+                ASPlayerLog.i("%s end of stream, position: %d", getTag(),
+                        mSource.getPositionInBytes());
+            mEndOfStream = true;
+            return DELAY_END_OF_STREAM_MS;
+        } else if (mPendingSize > 0 || mMappedRefused) {
+            // DvrPlayback refused data
+            return DELAY_FULL_MS;
+        }
+
+        // no data yet, source may be growing
+        if (starving && mStallStartMs < 0) {
+            mStallStartMs = SystemClock.elapsedRealtime();
+            mStallCount++;
+        }
+        mSource.updateTimeline();
+        return DELAY_NO_DATA_MS;
+    }
+
+    /**
+     * @return bytes fed, 0 if source has no data, -1 at end of stream
+     */
+    private long feedFromFd(int readSize) throws IOException {
+        long position = mSource.getPositionInBytes();
+        long end = mSource.getEndPositionInBytes();
+        long size = readSize;
+        if (end >= 0) {
+            size = Math.min(size, end - position);
+            if (size <= 0) {
+                mSource.updateTimeline();
+                end = mSource.getEndPositionInBytes();
+                size = Math.min(readSize, end - position);
+                // an empty read tells end of file from end of a growing file
+                if (size <= 0)
+                    return mSource.read(EMPTY, 0, 0) < 0 ? -1 : 0;
+            }
+        }
+        if (mFdOffset != position)
+            seekFd(position);
+
+        long read = mTsPlayback.write(size);
+        if (read < 0)
+            throw new IOException("DvrPlayback read failed: " + read);
+        if (read > 0) {
+            mFdOffset += read;
+            mSource.setPositionInBytes(position + read);
+        }
+        return read;
+    }
+
+    /**
+     * @return bytes fed, 0 if source has no data or DvrPlayback is full, -1 at end of stream
+     */
+    private long feedFromMapping(int readSize) throws IOException {
+        long position = mMappedSource.getPositionInBytes();
+        int written = mMappedSource.writeTo(mMappedSink, readSize);
+        // nothing written while source had data
+        mMappedRefused = written == 0 && position < mMappedSource.getEndPositionInBytes();
+        return written;
+    }
+
+    /**
+     * Moves mFd to position, a pipe is read from where it is.
+     */
+    private void seekFd(long position) throws IOException {
+        try {
+            Os.lseek(mFd.getFileDescriptor(), position, OsConstants.SEEK_SET);
+        } catch (ErrnoException exception) {
+            if (exception.errno != OsConstants.ESPIPE)
+                throw new IOException(exception);
+        }
+        mFdOffset = position;
+    }
+
+    /**
+     * @return bytes fed, 0 if source has no data or DvrPlayback is full, -1 at end of stream
+     */
+    private long feedByCopy(int readSize) throws IOException {
+        if (mPendingSize == 0) {
+            int read = mSource.read(mBuffer, 0, readSize);
+            if (read <= 0)
+                return read;
+            mPendingOffset = 0;
+            mPendingSize = read;
+        }
+        long written = mTsPlayback.write(mBuffer, mPendingOffset, mPendingSize);
+        if (written < 0)
+            throw new IOException("TsPlayback write failed: " + written);
+        mPendingOffset += (int) written;
+        mPendingSize -= (int) written;
+        return written;
+    }
+
+    private void endStall() {
+        if (mStallStartMs >= 0) {
+            mStallTimeMs += SystemClock.elapsedRealtime() - mStallStartMs;
+            mStallStartMs = -1;
+        }
+    }
+
+    private void updateFeedRate() {
+        long nowMs = SystemClock.elapsedRealtime();
+        long elapsedMs = nowMs - mFeedRateStartMs;
+        if (elapsedMs < FEED_RATE_PERIOD_MS)
+            return;
+        mFeedRateBytesPerSecond = (mBytesFed - mFeedRateStartBytes) * 1000 / elapsedMs;
+        mFeedRateStartMs = nowMs;
+        mFeedRateStartBytes = mBytesFed;
+    }
+
+    private static int getReadSize(int status) {
+        switch (toFillLevel(status)) {
+            case FILL_LEVEL_UNKNOWN:
+            case FILL_LEVEL_EMPTY:
+                return READ_SIZE_EMPTY;
+            case FILL_LEVEL_LOW:
+                return READ_SIZE_LOW;
+            case FILL_LEVEL_NORMAL:
+                return READ_SIZE_NORMAL;
+            default:
+                return 0;
+        }
+    }
+
+    private static int toFillLevel(int status) {
+        if ((status & DvrPlayback.PLAYBACK_STATUS_FULL) != 0)
+            return FILL_LEVEL_FULL;
+        if ((status & DvrPlayback.PLAYBACK_STATUS_ALMOST_FULL) != 0)
+            return FILL_LEVEL_HIGH;
+        if ((status & DvrPlayback.PLAYBACK_STATUS_EMPTY) != 0)
+            return FILL_LEVEL_EMPTY;
+        if ((status & DvrPlayback.PLAYBACK_STATUS_ALMOST_EMPTY) != 0)
+            return FILL_LEVEL_LOW;
+        return status == 0 ? FILL_LEVEL_UNKNOWN : FILL_LEVEL_NORMAL;
+    }
+
+    private static int align(long size) {
+        return (int) (size - size % TS_PACKET_SIZE);
+    }
+}
@@ -4,8 +4,11 @@ import android.media.MediaFormat;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
+import android.os.SystemClock;
 
 import com.amlogic.asplayer.api.EventType;
+import com.amlogic.asplayer.api.PtsBatchListener;
+import com.amlogic.asplayer.api.PtsDeliveryMode;
 import com.amlogic.asplayer.api.StreamType;
 import com.amlogic.asplayer.api.TsPlaybackListener;
 
@@ -23,7 +26,10 @@ import static com.amlogic.asplayer.api.TsPlaybackListener.DecoderDataResumeEvent
 import static com.amlogic.asplayer.api.TsPlaybackListener.PlaybackInfoEvent;
 
 import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 class EventNotifier {
@@ -31,10 +37,92 @@ class EventNotifier {
     // Should be careful enabling this since may produce many traces!
     private static final boolean LOG_PTS_NOTIFICATIONS = true;
 
+    // internal messages, event types are positive
+    private static final int MSG_DRAIN_PTS = -1;
+    private static final int MSG_FLUSH_PTS = -2;
+
+    private static final int PTS_RING_CAPACITY = 256;
+    // frames kept when the ring is full and a listener wants each of them, about 5 s of video
+    // and audio frames
+    private static final int PTS_OVERFLOW_CAPACITY = 1024;
+    private static final int PTS_BATCH_CAPACITY = 64;
+    // stream types with a latest value, see StreamType
+    private static final int PTS_STREAM_TYPE_COUNT = 4;
+
     private final Handler mEventHandler;
 
     final CopyOnWriteArraySet<TsPlaybackListener> mPlaybackListeners;
 
+    /**
+     * PtsEvent delivery of a listener not using {@link PtsDeliveryMode#EACH}.
+     * Only accessed by event thread once listener is added.
+     */
+    static class PtsDelivery {
+        final int mMode;
+        final long mIntervalMs;
+        long mLastDeliveryMs;
+
+        // BATCHED
+        int[] mStreamTypes;
+        long[] mPts;
+        long[] mRenderTimes;
+        int mCount;
+        // given for each frame of a batch, instead of an event per frame
+        PtsEvent mEvent;
+
+        // LATEST, by stream type
+        boolean[] mLatestValid;
+        long[] mLatestPts;
+        long[] mLatestRenderTimes;
+
+        PtsDelivery(int mode, long intervalMs) {
+            mMode = mode;
+            mIntervalMs = Math.max(intervalMs, 0);
+            if (mode == PtsDeliveryMode.BATCHED) {
+                mStreamTypes = new int[PTS_BATCH_CAPACITY];
+                mPts = new long[PTS_BATCH_CAPACITY];
+                mRenderTimes = new long[PTS_BATCH_CAPACITY];
+                mEvent = new PtsEvent(StreamType.VIDEO, 0, 0);
+            } else {
+                mLatestValid = new boolean[PTS_STREAM_TYPE_COUNT];
+                mLatestPts = new long[PTS_STREAM_TYPE_COUNT];
+                mLatestRenderTimes = new long[PTS_STREAM_TYPE_COUNT];
+            }
+        }
+
+        boolean hasPending() {
+            if (mMode == PtsDeliveryMode.BATCHED)
+                return mCount > 0;
+            for (boolean valid : mLatestValid) {
+                if (valid)
+                    return true;
+            }
+            return false;
+        }
+    }
+
+    private final ConcurrentHashMap<TsPlaybackListener, PtsDelivery> mPtsDeliveries;
+
+    final CopyOnWriteArraySet<PtsBatchListener> mPtsBatchListeners;
+
+    // rendered frames, filled by renderer threads, drained by event thread
+    private final PtsEventRing mPtsRing;
+    private final AtomicBoolean mPtsDrainPending = new AtomicBoolean();
+    private final int[] mDrainStreamTypes;
+    private final long[] mDrainPts;
+    private final long[] mDrainRenderTimes;
+    private volatile long mPtsCoalescedCount;
+    private final AtomicLong mPtsDroppedCount = new AtomicLong();
+
+    // a listener wants each frame (EACH, BATCHED, PtsBatchListener), frames rejected by the
+    // full ring go to the overflow queue instead of being dropped
+    private volatile boolean mPtsLossless;
+    // set while overflow queue is used, frames are then queued there to keep them in order
+    private volatile boolean mPtsOverflowing;
+    private final Object mPtsOverflowLock = new Object();
+    // allocated on first overflow, guarded by mPtsOverflowLock
+    private PtsEventRing mPtsOverflow;
+
     private static class WeakHandler extends Handler {
         private final WeakReference<EventNotifier> mOwner;
 
@@ -46,7 +134,14 @@ class EventNotifier {
         @Override
         public void handleMessage(Message msg) {
             EventNotifier owner = mOwner.get();
-            if (owner != null) {
+            if (owner == null) {
+                return;
+            }
+            if (msg.what == MSG_DRAIN_PTS) {
+                owner.drainPtsEvents();
+            } else if (msg.what == MSG_FLUSH_PTS) {
+                owner.flushPtsDeliveries(SystemClock.uptimeMillis());
+            } else {
                 owner.notifyEvent(msg);
             }
         }
@@ -58,7 +153,67 @@ class EventNotifier {
     EventNotifier(int id, Looper looper) {
         mId = id;
         mPlaybackListeners = new CopyOnWriteArraySet<>();
+        mPtsDeliveries = new ConcurrentHashMap<>();
+        mPtsBatchListeners = new CopyOnWriteArraySet<>();
         mEventHandler = new WeakHandler(this, looper);
+
+        mPtsRing = new PtsEventRing(PTS_RING_CAPACITY);
+        mDrainStreamTypes = new int[mPtsRing.getCapacity()];
+        mDrainPts = new long[mPtsRing.getCapacity()];
+        mDrainRenderTimes = new long[mPtsRing.getCapacity()];
+    }
+
+    /**
+     * @param ptsDelivery how PtsEvent are delivered, null for {@link PtsDeliveryMode#EACH},
+     *                    ignored for a listener implementing PtsBatchListener
+     */
+    void addPlaybackListener(TsPlaybackListener listener, PtsDelivery ptsDelivery) {
+        if (listener instanceof PtsBatchListener) {
+            mPtsBatchListeners.add((PtsBatchListener) listener);
+            ptsDelivery = null;
+        }
+        if (ptsDelivery != null) {
+            mPtsDeliveries.put(listener, ptsDelivery);
+        } else {
+            mPtsDeliveries.remove(listener);
+        }
+        mPlaybackListeners.add(listener);
+        updatePtsLossless();
+    }
+
+    void removePlaybackListener(TsPlaybackListener listener) {
+        mPlaybackListeners.remove(listener);
+        mPtsDeliveries.remove(listener);
+        if (listener instanceof PtsBatchListener) {
+            mPtsBatchListeners.remove(listener);
+        }
+        updatePtsLossless();
+    }
+
+    private void updatePtsLossless() {
+        boolean lossless = false;
+        for (TsPlaybackListener listener : mPlaybackListeners) {
+            PtsDelivery delivery = mPtsDeliveries.get(listener);
+            if (delivery == null || delivery.mMode != PtsDeliveryMode.LATEST) {
+                lossless = true;
+                break;
+            }
+        }
+        mPtsLossless = lossless;
+    }
+
+    /**
+     * @return PtsEvent dropped because event thread was late
+     */
+    long getPtsDroppedCount() {
+        return mPtsDroppedCount.get();
+    }
+
+    /**
+     * @return PtsEvent replaced by a later one for {@link PtsDeliveryMode#LATEST} listeners
+     */
+    long getPtsCoalescedCount() {
+        return mPtsCoalescedCount;
     }
 
     void setSyncInstanceId(int syncInstanceId) {
@@ -72,6 +227,9 @@ class EventNotifier {
     void release() {
         mEventHandler.removeCallbacksAndMessages(null);
         mPlaybackListeners.clear();
+        mPtsDeliveries.clear();
+        mPtsBatchListeners.clear();
+        mPtsLossless = false;
     }
 
     void notifyVideoFormatChange(MediaFormat videoFormat) {
@@ -102,8 +260,39 @@ class EventNotifier {
                 new DecodeFirstAudioFrameEvent(positionMs));
     }
 
+    /**
+     * Frames are queued without allocation, event thread is woken up once for all frames
+     * queued until it drains them.
+     * When the ring is full, frames go to the overflow queue if a listener wants each of them,
+     * they are dropped only if it is full too, or for LATEST listeners.
+     */
     private void notifyFrameRendered(int streamType, long presentationTimeUs, long renderTime) {
-         postEvent(EventType.EVENT_TYPE_PTS, new PtsEvent(streamType, presentationTimeUs, renderTime));
+        boolean lossless = mPtsLossless;
+        boolean queued = (!lossless || !mPtsOverflowing)
+                && mPtsRing.offer(streamType, presentationTimeUs, renderTime);
+        if (!queued && lossless) {
+            queued = offerPtsOverflow(streamType, presentationTimeUs, renderTime);
+        }
+        if (!queued) {
+            if (mPtsDroppedCount.incrementAndGet() == 1) {
+                ASPlayerLog.w("%s PtsEvent dropped, event thread is late, pts: %d",
+                        getTag(), presentationTimeUs);
+            }
+            return;
+        }
+        if (mPtsDrainPending.compareAndSet(false, true)) {
+            mEventHandler.sendEmptyMessage(MSG_DRAIN_PTS);
+        }
+    }
+
+    private boolean offerPtsOverflow(int streamType, long presentationTimeUs, long renderTime) {
+        synchronized (mPtsOverflowLock) {
+            if (mPtsOverflow == null) {
+                mPtsOverflow = new PtsEventRing(PTS_OVERFLOW_CAPACITY);
+            }
+            mPtsOverflowing = true;
+            return mPtsOverflow.offer(streamType, presentationTimeUs, renderTime);
+        }
     }
 
     void notifyVideoFrameRendered(long presentationTimeUs, long renderTime) {
@@ -134,19 +323,143 @@ class EventNotifier {
         mEventHandler.obtainMessage(eventType, object).sendToTarget();
     }
 
+    private void drainPtsEvents() {
+        // cleared first, frames offered while draining post a new drain
+        mPtsDrainPending.set(false);
+
+        int count;
+        while ((count = mPtsRing.poll(mDrainStreamTypes, mDrainPts, mDrainRenderTimes,
+                mDrainStreamTypes.length)) > 0) {
+            dispatchPtsEvents(count);
+        }
+
+        // frames of the overflow queue follow those of the ring, producers go back to the ring
+        // once it is empty
+        while (mPtsOverflowing) {
+            synchronized (mPtsOverflowLock) {
+                count = mPtsOverflow.poll(mDrainStreamTypes, mDrainPts, mDrainRenderTimes,
+                        mDrainStreamTypes.length);
+                if (count == 0) {
+                    mPtsOverflowing = false;
+                    break;
+                }
+            }
+            dispatchPtsEvents(count);
+        }
+
+        if (!mPtsDeliveries.isEmpty()) {
+            flushPtsDeliveries(SystemClock.uptimeMillis());
+        }
+    }
+
+    private void dispatchPtsEvents(int count) {
+        for (PtsBatchListener listener : mPtsBatchListeners) {
+            listener.onPtsBatch(mDrainStreamTypes, mDrainPts, mDrainRenderTimes, count);
+        }
+        if (mPlaybackListeners.size() == mPtsBatchListeners.size()) {
+            // no listener wants PtsEvent
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            dispatchPtsEvent(mDrainStreamTypes[i], mDrainPts[i], mDrainRenderTimes[i]);
+        }
+    }
+
+    private void dispatchPtsEvent(int streamType, long pts, long renderTime) {
+        PtsEvent event = null;
+        for (TsPlaybackListener listener : mPlaybackListeners) {
+            if (listener instanceof PtsBatchListener) {
+                continue;
+            }
+            PtsDelivery delivery = mPtsDeliveries.isEmpty() ? null : mPtsDeliveries.get(listener);
+            if (delivery == null) {
+                if (event == null) {
+                    event = newPtsEvent(streamType, pts, renderTime);
+                }
+                listener.onPlaybackEvent(event);
+            } else if (delivery.mMode == PtsDeliveryMode.BATCHED) {
+                delivery.mStreamTypes[delivery.mCount] = streamType;
+                delivery.mPts[delivery.mCount] = pts;
+                delivery.mRenderTimes[delivery.mCount] = renderTime;
+                delivery.mCount++;
+                if (delivery.mCount == delivery.mStreamTypes.length) {
+                    // batch is full, delivered before its interval
+                    deliverPtsEvents(listener, delivery, SystemClock.uptimeMillis());
+                }
+            } else if (streamType >= 0 && streamType < PTS_STREAM_TYPE_COUNT) {
+                if (delivery.mLatestValid[streamType]) {
+                    mPtsCoalescedCount++;
+                }
+                delivery.mLatestValid[streamType] = true;
+                delivery.mLatestPts[streamType] = pts;
+                delivery.mLatestRenderTimes[streamType] = renderTime;
+            }
+        }
+    }
+
+    /**
+     * Delivers pending PtsEvent of listeners whose interval elapsed, and schedules next
+     * delivery for the others.
+     */
+    private void flushPtsDeliveries(long nowMs) {
+        long nextDeliveryMs = Long.MAX_VALUE;
+        for (TsPlaybackListener listener : mPlaybackListeners) {
+            PtsDelivery delivery = mPtsDeliveries.get(listener);
+            if (delivery == null || !delivery.hasPending()) {
+                continue;
+            }
+            long deliveryMs = delivery.mLastDeliveryMs + delivery.mIntervalMs;
+            if (deliveryMs <= nowMs) {
+                deliverPtsEvents(listener, delivery, nowMs);
+            } else {
+                nextDeliveryMs = Math.min(nextDeliveryMs, deliveryMs);
+            }
+        }
+
+        mEventHandler.removeMessages(MSG_FLUSH_PTS);
+        if (nextDeliveryMs != Long.MAX_VALUE) {
+            mEventHandler.sendEmptyMessageAtTime(MSG_FLUSH_PTS, nextDeliveryMs);
+        }
+    }
+
+    private void deliverPtsEvents(TsPlaybackListener listener, PtsDelivery delivery, long nowMs) {
+        if (delivery.mMode == PtsDeliveryMode.BATCHED) {
+            PtsEvent event = delivery.mEvent;
+            for (int i = 0; i < delivery.mCount; i++) {
+                event.set(delivery.mStreamTypes[i], delivery.mPts[i], delivery.mRenderTimes[i]);
+                logPtsEvent(event);
+                listener.onPlaybackEvent(event);
+            }
+            delivery.mCount = 0;
+        } else {
+            for (int streamType = 0; streamType < PTS_STREAM_TYPE_COUNT; streamType++) {
+                if (delivery.mLatestValid[streamType]) {
+                    delivery.mLatestValid[streamType] = false;
+                    listener.onPlaybackEvent(newPtsEvent(streamType,
+                            delivery.mLatestPts[streamType], delivery.mLatestRenderTimes[streamType]));
+                }
+            }
+        }
+        delivery.mLastDeliveryMs = nowMs;
+    }
+
+    private PtsEvent newPtsEvent(int streamType, long pts, long renderTime) {
+        PtsEvent event = new PtsEvent(streamType, pts, renderTime);
+        logPtsEvent(event);
+        return event;
+    }
+
+    private void logPtsEvent(PtsEvent event) {
+        if (LOG_PTS_NOTIFICATIONS) {
+            logPlaybackEvent(event, String.format("%s pts: %d, renderTime: %d",
+                    StreamType.toString(event.mStreamType), event.mPts, event.mRenderTime));
+        }
+    }
+
     private void notifyEvent(Message msg) {
         final int eventType = msg.what;
 
         switch (eventType) {
-            case EventType.EVENT_TYPE_PTS: {
-                PtsEvent event = (PtsEvent) msg.obj;
-                if (LOG_PTS_NOTIFICATIONS) {
-                    logPlaybackEvent(event, String.format("%s pts: %d, renderTime: %d",
-                            StreamType.toString(event.getStreamType()), event.getPts(), event.getRenderTime()));
-                }
-                notifyPlaybackEvent(event);
-            }
-                break;
             case EventType.EVENT_TYPE_VIDEO_CHANGED: {
                 VideoFormatChangeEvent event = (VideoFormatChangeEvent) msg.obj;
                 logPlaybackEvent(event, event.getVideoFormat());
@@ -6,6 +6,7 @@ import android.os.SystemClock;
 
 import com.amlogic.asplayer.api.PIPMode;
 import com.amlogic.asplayer.api.WorkMode;
+import com.amlogic.asplayer.core.utils.MetricsRegistry;
 
 abstract class MediaOutputPath {
     private final int MAX_COUNT_CONFIGURE_RETRY = 20;
@@ -51,6 +52,12 @@ abstract class MediaOutputPath {
     // Input queue
     protected InputBufferQueue mInputBufferQueue;
 
+    private volatile ZapTimeline mZapTimeline;
+
+    // metrics, null until setMetrics
+    private volatile MetricsRegistry.Counter mFramesCounter;
+    private volatile MetricsRegistry.Counter mDataLossCounter;
+
     // input queue contains pes that are waiting to be pushed into codec and infos on pes pushed
     // into codec but not yet handled
     private boolean mAtLeastOneBufferPushed;
@@ -317,6 +324,32 @@ abstract class MediaOutputPath {
         mDecoderListener = listener;
     }
 
+    void setZapTimeline(ZapTimeline zapTimeline) {
+        mZapTimeline = zapTimeline;
+    }
+
+    protected void markZapStage(int stage) {
+        ZapTimeline zapTimeline = mZapTimeline;
+        if (zapTimeline != null) {
+            zapTimeline.mark(stage);
+        }
+    }
+
+    /**
+     * @param prefix prefix of metric names, "video" or "audio"
+     */
+    void setMetrics(MetricsRegistry metrics, String prefix) {
+        mFramesCounter = metrics.counter(prefix + ".frames");
+        mDataLossCounter = metrics.counter(prefix + ".data-loss");
+    }
+
+    /**
+     * @return counter of data loss episodes, for DataLossChecker, null if no metrics
+     */
+    protected MetricsRegistry.Counter getDataLossCounter() {
+        return mDataLossCounter;
+    }
+
     void notifyDecoderInitCompleted() {
         if (mDecoderListener != null) {
             mDecoderListener.onDecoderInitCompleted(this);
@@ -324,6 +357,10 @@ abstract class MediaOutputPath {
     }
 
     void notifyFrameDisplayed(long presentationTimeUs, long renderTime) {
+        MetricsRegistry.Counter framesCounter = mFramesCounter;
+        if (framesCounter != null) {
+            framesCounter.inc();
+        }
         if (mFrameListener != null) {
             mFrameListener.onFrame(this, presentationTimeUs, renderTime);
         }
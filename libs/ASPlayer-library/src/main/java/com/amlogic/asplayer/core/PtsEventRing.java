@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free queue of rendered frames, stored in preallocated primitive arrays.
+ *
+ * Frames are offered by renderer threads (video and audio), and polled by the event thread
+ * only. Each slot has a sequence number telling whether it is free or published, so producers
+ * only compete on the write counter. When the ring is full, new frames are rejected, the caller
+ * decides whether they are dropped.
+ */
+class PtsEventRing {
+
+    private final int mMask;
+    private final int[] mStreamTypes;
+    private final long[] mPts;
+    private final long[] mRenderTimes;
+    private final AtomicLongArray mSequences;
+
+    private final AtomicLong mWritePosition = new AtomicLong();
+    // only modified by consumer
+    private long mReadPosition;
+
+    private final AtomicLong mRejectedCount = new AtomicLong();
+
+    /**
+     * @param capacity rounded up to a power of two
+     */
+    PtsEventRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        mMask = size - 1;
+        mStreamTypes = new int[size];
+        mPts = new long[size];
+        mRenderTimes = new long[size];
+        mSequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            mSequences.set(i, i);
+        }
+    }
+
+    int getCapacity() {
+        return mMask + 1;
+    }
+
+    /**
+     * @return false if ring is full and frame was rejected
+     */
+    boolean offer(int streamType, long pts, long renderTime) {
+        long position;
+        int index;
+        while (true) {
+            position = mWritePosition.get();
+            index = (int) (position & mMask);
+            long diff = mSequences.get(index) - position;
+            if (diff == 0) {
+                if (mWritePosition.compareAndSet(position, position + 1))
+                    break;
+            } else if (diff < 0) {
+                mRejectedCount.incrementAndGet();
+                return false;
+            }
+            // else another producer took this position, try again
+        }
+        mStreamTypes[index] = streamType;
+        mPts[index] = pts;
+        mRenderTimes[index] = renderTime;
+        // publishes slot content to consumer
+        mSequences.set(index, position + 1);
+        return true;
+    }
+
+    /**
+     * Polls frames in order, consumer thread only.
+     *
+     * @return number of frames polled, at most max
+     */
+    int poll(int[] streamTypes, long[] pts, long[] renderTimes, int max) {
+        int count = 0;
+        while (count < max) {
+            int index = (int) (mReadPosition & mMask);
+            if (mSequences.get(index) != mReadPosition + 1)
+                break;
+            streamTypes[count] = mStreamTypes[index];
+            pts[count] = mPts[index];
+            renderTimes[count] = mRenderTimes[index];
+            count++;
+            // frees slot for the producer of next lap
+            mSequences.set(index, mReadPosition + mMask + 1);
+            mReadPosition++;
+        }
+        return count;
+    }
+
+    /**
+     * @return frames rejected because ring was full
+     */
+    long getRejectedCount() {
+        return mRejectedCount.get();
+    }
+}
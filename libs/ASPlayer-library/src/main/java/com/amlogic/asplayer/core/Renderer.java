@@ -4,6 +4,7 @@ import android.content.Context;
 import android.os.Handler;
 
 import com.amlogic.asplayer.api.IASPlayer;
+import com.amlogic.asplayer.core.ts.KeyFrameIndex;
 
 
 abstract class Renderer {
@@ -31,6 +32,7 @@ abstract class Renderer {
     protected long mRequestedPositionUs;
     protected boolean mRequestedPositionSet;
     protected PositionHandler mPositionHandler;
+    protected KeyFrameIndex mKeyFrameIndex;
 
     // speed
     protected double mSpeed;
@@ -44,6 +46,7 @@ abstract class Renderer {
         mVideoOutputPath = rendererScheduler.getVideoOutputPath();
         mAudioOutputPath = rendererScheduler.getAudioOutputPath();
         mPositionHandler = rendererScheduler.getPositionHandler();
+        mKeyFrameIndex = rendererScheduler.getKeyFrameIndex();
     }
 
     protected String getTag() {
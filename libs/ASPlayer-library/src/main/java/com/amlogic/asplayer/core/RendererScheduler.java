@@ -21,7 +21,9 @@ import com.amlogic.asplayer.api.IASPlayer;
 import com.amlogic.asplayer.api.StreamType;
 import com.amlogic.asplayer.api.VideoTrickMode;
 import com.amlogic.asplayer.core.VideoPassthroughParameters.VideoOnlyPlayControl;
+import com.amlogic.asplayer.core.ts.KeyFrameIndex;
 import com.amlogic.asplayer.core.utils.MathUtils;
+import com.amlogic.asplayer.core.utils.MetricsRegistry;
 
 class RendererScheduler implements Runnable, MediaOutputPath.DecoderListener,
         MediaOutputPath.DataListener {
@@ -48,6 +50,8 @@ class RendererScheduler implements Runnable, MediaOutputPath.DecoderListener,
     // speed and position
     private double mSpeed;
     private final PositionHandler mPositionHandler;
+    // key frames of the source, when it is indexed
+    private final KeyFrameIndex mKeyFrameIndex;
 
     private VideoOutputPath mVideoOutputPath;
     private AudioOutputPathBase mAudioOutputPath;
@@ -58,6 +62,9 @@ class RendererScheduler implements Runnable, MediaOutputPath.DecoderListener,
     private AVState mTargetAudioState;
 
     private EventNotifier mEventNotifier;
+    private ZapTimeline mZapTimeline;
+    // time spent in run, in microseconds, null until setMetrics
+    private MetricsRegistry.Histogram mRunLatency;
 
     // renderer, by speed
     private Renderer mCurrentSpeedTask;
@@ -98,6 +105,7 @@ class RendererScheduler implements Runnable, MediaOutputPath.DecoderListener,
         setDataListener(this);
 
         mPositionHandler = new PositionHandler(mId);
+        mKeyFrameIndex = new KeyFrameIndex();
 
         int playbackMode = mConfig.getPlaybackMode();
 
@@ -146,6 +154,10 @@ class RendererScheduler implements Runnable, MediaOutputPath.DecoderListener,
         return mPositionHandler;
     }
 
+    KeyFrameIndex getKeyFrameIndex() {
+        return mKeyFrameIndex;
+    }
+
     void prepare(Handler handler) {
         mHandler = handler;
         mAudioOutputPath.setHandler(handler);
@@ -301,6 +313,7 @@ class RendererScheduler implements Runnable, MediaOutputPath.DecoderListener,
     public void run() {
         if (DEBUG) ASPlayerLog.i("%s run current speed task: %s", getTag(), mCurrentSpeedTask);
         try {
+            long startNs = System.nanoTime();
             long to = SystemClock.elapsedRealtime();
             long delayUs = 10000;
             if (mCurrentSpeedTask != null)
@@ -308,6 +321,8 @@ class RendererScheduler implements Runnable, MediaOutputPath.DecoderListener,
             if (mCurrentSpeedTask == null)
                 selectRendererTask();
             long t1 = SystemClock.elapsedRealtime();
+            if (mRunLatency != null)
+                mRunLatency.record((System.nanoTime() - startNs) / 1000);
             long marginUs = (40 - (t1 - to)) * 1000;
             delayUs = Math.max(0, Math.min(delayUs, marginUs));
             if (DEBUG) ASPlayerLog.i("%s render scheduler post run delay", getTag());
@@ -330,6 +345,37 @@ class RendererScheduler implements Runnable, MediaOutputPath.DecoderListener,
         }
     }
 
+    /**
+     * Zap stages reached by renderers and output paths are recorded in zapTimeline
+     */
+    void setZapTimeline(ZapTimeline zapTimeline) {
+        mZapTimeline = zapTimeline;
+        mVideoOutputPath.setZapTimeline(zapTimeline);
+        mAudioOutputPath.setZapTimeline(zapTimeline);
+    }
+
+    void setMetrics(MetricsRegistry metrics) {
+        mRunLatency = metrics.histogram("renderer.run.us", MetricsRegistry.LATENCY_BOUNDS_US);
+        mVideoOutputPath.setMetrics(metrics, "video");
+        mAudioOutputPath.setMetrics(metrics, "audio");
+    }
+
+    private void markZapStage(int stage) {
+        if (mZapTimeline != null) {
+            mZapTimeline.mark(stage);
+        }
+    }
+
+    /**
+     * Audio and video are in sync once both rendered their first frame, as they are rendered
+     * by the same hardware av sync.
+     */
+    private void markAvSyncDoneIfNeed() {
+        if ((mFirstVideoFrameDisplayed || !mHasVideo) && (mFirstAudioFrameDisplayed || !mHasAudio)) {
+            markZapStage(ZapTimeline.STAGE_AV_SYNC_DONE);
+        }
+    }
+
     void prepareStart() {
         mSpeed = 1.0;
         mCurrentSpeedTask = mPlaybackTask;
@@ -561,6 +607,8 @@ class RendererScheduler implements Runnable, MediaOutputPath.DecoderListener,
             ASPlayerLog.i("%s first video frame", getTag());
             mEventNotifier.notifyRenderFirstVideoFrame(presentationTimeUs, renderTime);
             mFirstVideoFrameDisplayed = true;
+            markZapStage(ZapTimeline.STAGE_FIRST_VIDEO_RENDER);
+            markAvSyncDoneIfNeed();
         }
 
         if (mConfig.isPtsEventEnabled()) {
@@ -573,6 +621,8 @@ class RendererScheduler implements Runnable, MediaOutputPath.DecoderListener,
             ASPlayerLog.i("%s first audio frame", getTag());
             mEventNotifier.notifyRenderFirstAudioFrame(presentationTimeUs, renderTime);
             mFirstAudioFrameDisplayed = true;
+            markZapStage(ZapTimeline.STAGE_FIRST_AUDIO_RENDER);
+            markAvSyncDoneIfNeed();
         }
 
         if (mConfig.isPtsEventEnabled()) {
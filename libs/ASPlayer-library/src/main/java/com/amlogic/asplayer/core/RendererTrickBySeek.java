@@ -2,6 +2,8 @@ package com.amlogic.asplayer.core;
 
 import android.os.SystemClock;
 
+import com.amlogic.asplayer.core.ts.KeyFrameIndex;
+
 
 class RendererTrickBySeek extends Renderer {
 
@@ -181,11 +183,30 @@ class RendererTrickBySeek extends Renderer {
         mRequestedPositionUs = mOriginPositionUs +
                 (long) ((SystemClock.elapsedRealtime() - mOriginPositionWhenMs) * 1000. * mSpeed) -
                 1000000;
+        mRequestedPositionUs = snapToKeyFrame(mRequestedPositionUs);
         mRequestedPositionSet = true;
 
         mVideoOutputPath.flush();
     }
 
+    /**
+     * Moves position to a key frame in the direction of the speed, so that decoder starts on it
+     * instead of waiting for the next one. Key frame already displayed is skipped.
+     */
+    private long snapToKeyFrame(long positionUs) {
+        if (mKeyFrameIndex.size() == 0)
+            return positionUs;
+
+        boolean forward = mSpeed > 0;
+        long keyFrameUs = mKeyFrameIndex.findTimestampUs(positionUs, forward);
+        if (keyFrameUs != KeyFrameIndex.NOT_FOUND && mLastDisplayedPositionSet
+                && keyFrameUs == mLastDisplayedPositionUs) {
+            keyFrameUs = mKeyFrameIndex.findTimestampUs(
+                    forward ? keyFrameUs + 1 : keyFrameUs - 1, forward);
+        }
+        return keyFrameUs != KeyFrameIndex.NOT_FOUND ? keyFrameUs : positionUs;
+    }
+
     private void armNextRequestedPosition() {
         mPendingNextPositionTimeMs = SystemClock.elapsedRealtime() + DELAY_FOR_FLUSH_MS;
     }
@@ -15,24 +15,71 @@ import android.media.tv.tuner.dvr.OnPlaybackStatusChangedListener;
 import android.media.tv.tuner.filter.Filter;
 import android.os.ParcelFileDescriptor;
 import android.os.SystemClock;
+import android.util.Log;
 
+import com.amlogic.asplayer.core.ts.KeyFrameIndex;
+import com.amlogic.asplayer.core.ts.TsPacketAligner;
+import com.amlogic.asplayer.core.ts.TsVideoIndexQueue;
+import com.amlogic.asplayer.core.ts.TsVideoIndexer;
+import com.amlogic.asplayer.core.ts.TsVideoParser;
+import com.amlogic.asplayer.core.utils.MetricsRegistry;
+
+import java.nio.ByteBuffer;
 import java.util.concurrent.TimeUnit;
 
+import static com.amlogic.asplayer.core.TsPlaybackConfig.PLAYBACK_BUFFER_SIZE;
+import static com.amlogic.asplayer.core.TsPlaybackConfig.TS_PACKET_SIZE;
+
 
 public class TsPlayback {
 
     private static final String TAG = Constant.LOG_TAG + "_TsPlayback";
 
+    // upper bound of a single wait for buffer space, playback status may not be
+    // reported for every state change, so writers recheck at least this often
+    private static final long WAIT_SPACE_SLICE_MS = 10;
+
     public interface OnPlaybackStatusChangeListener {
         void onPlaybackStatusChanged(int status);
     }
 
     private Tuner mTuner;
     private DvrPlayback mDvrPlayback;
+    // file descriptor read by write(long), owned by the caller, null if none
+    private volatile ParcelFileDescriptor mFileDescriptor;
 
     private int mId;
     private int mSyncInstanceId = Constant.INVALID_SYNC_INSTANCE_ID;
 
+    // staging area for ByteBuffers without a backing array (direct buffers),
+    // DvrPlayback only accepts byte[], allocated once and reused for every write
+    private byte[] mDirectStagingBuffer;
+
+    // keeps data handed to DvrPlayback aligned on ts packets
+    private final TsPacketAligner mAligner;
+    // writer thread and flush on player thread both use the aligner
+    private final Object mAlignerLock = new Object();
+
+    // key frames of the video pid, indexed on another thread from packets accepted by
+    // DvrPlayback, null if not indexing, guarded by mAlignerLock
+    private TsVideoIndexQueue mIndexQueue;
+    // bytes of a packet partly accepted by DvrPlayback, already given to mIndexQueue
+    private int mIndexSkip;
+
+    private final Object mSpaceLock = new Object();
+    private boolean mPlaybackFull;
+    // last status reported by DvrPlayback, 0 until first report
+    private volatile int mPlaybackStatus;
+
+    // first data accepted by DvrPlayback is marked there, null if none
+    private volatile ZapTimeline mZapTimeline;
+
+    // metrics, null until setMetrics
+    private MetricsRegistry.Counter mWriteBytesCounter;
+    private MetricsRegistry.Counter mFullCounter;
+    private MetricsRegistry.Histogram mWriteLatency;
+    private volatile MetricsRegistry.Gauge mStatusGauge;
+
     public TsPlayback(int id, Tuner tuner, long bufferSize) {
         mId = id;
         mTuner = tuner;
@@ -44,14 +91,28 @@ public class TsPlayback {
 
             @Override
             public void onPlaybackStatusChanged(int status) {
-                if (mLastStatus != status ||
-                        SystemClock.elapsedRealtime() - mLastStatusLog > LOG_DURATION) {
+                if ((mLastStatus != status ||
+                        SystemClock.elapsedRealtime() - mLastStatusLog > LOG_DURATION)
+                        && ASPlayerLog.isLoggable(Log.INFO)) {
                     ASPlayerLog.i("%s onPlaybackStatusChanged, status: %d", getTag(), status);
                     mLastStatusLog = SystemClock.elapsedRealtime();
                 }
                 mLastStatus = status;
+                mPlaybackStatus = status;
+                MetricsRegistry.Gauge statusGauge = mStatusGauge;
+                if (statusGauge != null) {
+                    statusGauge.set(status);
+                }
+
+                synchronized (mSpaceLock) {
+                    mPlaybackFull = (status & DvrPlayback.PLAYBACK_STATUS_FULL) != 0;
+                    if (!mPlaybackFull) {
+                        mSpaceLock.notifyAll();
+                    }
+                }
             }
         });
+        mAligner = new TsPacketAligner(this::writeAligned);
     }
 
     protected void setSyncInstanceId(int syncInstanceId) {
@@ -62,6 +123,20 @@ public class TsPlayback {
         return String.format("[No-%d]-[%d]TsPlayback", mSyncInstanceId, mId);
     }
 
+    void setMetrics(MetricsRegistry metrics) {
+        mWriteBytesCounter = metrics.counter("dvr.write.bytes");
+        mFullCounter = metrics.counter("dvr.write.full");
+        mWriteLatency = metrics.histogram("dvr.write.us", MetricsRegistry.LATENCY_BOUNDS_US);
+        mStatusGauge = metrics.gauge("dvr.status");
+    }
+
+    /**
+     * First data accepted by DvrPlayback after a zap began is its first input stage
+     */
+    void setZapTimeline(ZapTimeline zapTimeline) {
+        mZapTimeline = zapTimeline;
+    }
+
     public int attachFilter(Filter filter) {
         if (mDvrPlayback != null) {
             return mDvrPlayback.attachFilter(filter);
@@ -109,7 +184,15 @@ public class TsPlayback {
     public int flush() {
         ASPlayerLog.i("%s flush called", getTag());
         if (mDvrPlayback != null) {
-            return mDvrPlayback.flush();
+            // no write may run between aligner reset and DvrPlayback flush
+            synchronized (mAlignerLock) {
+                mAligner.reset();
+                if (mIndexQueue != null) {
+                    mIndexQueue.flush();
+                    mIndexSkip = 0;
+                }
+                return mDvrPlayback.flush();
+            }
         } else {
             ASPlayerLog.e("%s flush failed DvrPlayback is null", getTag());
         }
@@ -125,23 +208,90 @@ public class TsPlayback {
             mDvrPlayback = null;
             ASPlayerLog.i("%s close DvrPlayback", getTag());
         }
+
+        // wake up blocked writers, they will see DvrPlayback is closed
+        synchronized (mSpaceLock) {
+            mPlaybackFull = false;
+            mSpaceLock.notifyAll();
+        }
     }
 
     public void release() {
+        setFileDescriptor(null);
         close();
 
         mTuner = null;
     }
 
+    /**
+     * Index key frames of a video pid in index, from data given to write(byte[]) and
+     * write(ByteBuffer). Data read from the file descriptor doesn't go through java and isn't
+     * indexed.
+     *
+     * @param mimeType video mime type, nothing is indexed if not supported by TsVideoParser
+     */
+    public void startVideoIndex(int pid, String mimeType, KeyFrameIndex index) {
+        synchronized (mAlignerLock) {
+            stopVideoIndexLocked();
+            index.clear();
+            if (!TsVideoParser.isSupported(mimeType)) {
+                ASPlayerLog.i("%s no key frame index, mime type: %s", getTag(), mimeType);
+                return;
+            }
+            mIndexQueue = new TsVideoIndexQueue(new TsVideoIndexer(index, mimeType), pid,
+                    TsVideoIndexQueue.DEFAULT_CAPACITY, TsVideoIndexQueue.getDefaultExecutor());
+        }
+    }
+
+    public void stopVideoIndex() {
+        synchronized (mAlignerLock) {
+            stopVideoIndexLocked();
+        }
+    }
+
+    private void stopVideoIndexLocked() {
+        if (mIndexQueue != null) {
+            mIndexQueue.close();
+        }
+        mIndexQueue = null;
+        mIndexSkip = 0;
+    }
+
+    /**
+     * Sets the file descriptor read by {@link #write(long)}, it is not closed by TsPlayback.
+     * DvrPlayback can't forget a file descriptor : once cleared with null, write(long) fails
+     * instead of reading a descriptor closed by its owner, and maybe already reused.
+     */
     public void setFileDescriptor(ParcelFileDescriptor fd) {
-        if (mDvrPlayback != null) {
+        mFileDescriptor = fd;
+        if (fd != null && mDvrPlayback != null) {
             mDvrPlayback.setFileDescriptor(fd);
         }
     }
 
+    /**
+     * @return last status of DvrPlayback, DvrPlayback.PLAYBACK_STATUS_* flags, 0 if unknown
+     */
+    public int getPlaybackStatus() {
+        return mPlaybackStatus;
+    }
+
+    /**
+     * Reads size bytes from the file descriptor given to {@link #setFileDescriptor}, data is
+     * not copied through java.
+     *
+     * @return bytes read, negative value on error
+     */
     public long write(long size) {
+        if (mFileDescriptor == null) {
+            ASPlayerLog.e("%s write failed no file descriptor, size: %d", getTag(), size);
+            return -1;
+        }
         if (mDvrPlayback != null) {
-            return mDvrPlayback.read(size);
+            long startNs = System.nanoTime();
+            long ret = mDvrPlayback.read(size);
+            recordWrite(startNs, ret);
+            return ret;
         } else {
             ASPlayerLog.e("%s write failed DvrPlayback is null, size: %d", getTag(), size);
         }
@@ -150,12 +300,135 @@ public class TsPlayback {
 
     public long write(byte[] bytes, long offset, long size) {
         if (mDvrPlayback != null) {
-            long ret = mDvrPlayback.read(bytes, offset, size);
+            long startNs = System.nanoTime();
+            long ret;
+            synchronized (mAlignerLock) {
+                ret = mAligner.write(bytes, (int) offset, (int) size);
+            }
 //            ASPlayerLog.i("%s write %d bytes, total size: %d", getTag(), ret, size);
+            recordWrite(startNs, ret);
+            if (ret == 0) {
+                markFull();
+            }
             return ret;
         } else {
             ASPlayerLog.e("%s write failed DvrPlayback is null, size: %d", getTag(), size);
         }
         return -1;
     }
+
+    /**
+     * Write data between position and limit of buffer, position of buffer is not changed.
+     * Heap buffers are passed to the packet aligner without copy, direct buffers are staged
+     * in a reused array, at most {@link TsPlaybackConfig#PLAYBACK_BUFFER_SIZE} bytes per call.
+     *
+     * @return bytes written, 0 if DvrPlayback is full, negative value on error
+     */
+    public long write(ByteBuffer buffer) {
+        if (mDvrPlayback == null) {
+            ASPlayerLog.e("%s write failed DvrPlayback is null, size: %d", getTag(), buffer.remaining());
+            return -1;
+        }
+
+        long startNs = System.nanoTime();
+        int position = buffer.position();
+        int size = buffer.remaining();
+        long ret;
+        synchronized (mAlignerLock) {
+            if (buffer.hasArray()) {
+                ret = mAligner.write(buffer.array(), buffer.arrayOffset() + position, size);
+            } else {
+                size = (int) Math.min(size, PLAYBACK_BUFFER_SIZE);
+                if (mDirectStagingBuffer == null || mDirectStagingBuffer.length < size) {
+                    mDirectStagingBuffer = new byte[(int) PLAYBACK_BUFFER_SIZE];
+                }
+                buffer.get(mDirectStagingBuffer, 0, size);
+                buffer.position(position);
+                ret = mAligner.write(mDirectStagingBuffer, 0, size);
+            }
+        }
+        recordWrite(startNs, ret);
+        if (ret == 0) {
+            markFull();
+        }
+        return ret;
+    }
+
+    // output of the aligner, called with mAlignerLock held
+    private long writeAligned(byte[] bytes, int offset, int size) {
+        long ret = mDvrPlayback.read(bytes, offset, size);
+        if (ret > 0 && mIndexQueue != null) {
+            index(bytes, offset, size, (int) ret);
+        }
+        return ret;
+    }
+
+    /**
+     * Queues packets accepted by DvrPlayback for indexing. The aligner writes the rest of
+     * a packet partly accepted in a later call, the whole packet is indexed the first time.
+     */
+    private void index(byte[] bytes, int offset, int size, int written) {
+        int skip = Math.min(mIndexSkip, written);
+        mIndexSkip -= skip;
+        written -= skip;
+        if (written == 0) {
+            return;
+        }
+        int indexed = Math.min(size - skip,
+                (written + TS_PACKET_SIZE - 1) / TS_PACKET_SIZE * TS_PACKET_SIZE);
+        mIndexQueue.offer(bytes, offset + skip, indexed);
+        mIndexSkip = indexed - written;
+    }
+
+    public long getDroppedBytes() {
+        return mAligner.getDroppedBytes();
+    }
+
+    public long getSyncLossCount() {
+        return mAligner.getSyncLossCount();
+    }
+
+    private void recordWrite(long startNs, long ret) {
+        ZapTimeline zapTimeline = mZapTimeline;
+        if (ret > 0 && zapTimeline != null) {
+            zapTimeline.mark(ZapTimeline.STAGE_FIRST_INPUT);
+        }
+        if (mWriteLatency == null) {
+            return;
+        }
+        mWriteLatency.record((System.nanoTime() - startNs) / 1000);
+        if (ret > 0) {
+            mWriteBytesCounter.add(ret);
+        } else if (ret == 0) {
+            mFullCounter.inc();
+        }
+    }
+
+    private void markFull() {
+        synchronized (mSpaceLock) {
+            mPlaybackFull = true;
+        }
+    }
+
+    /**
+     * Wait until DvrPlayback reports free buffer space, or timeout expires.
+     * A single call waits at most {@link #WAIT_SPACE_SLICE_MS}, callers should retry writing
+     * and call again while their own deadline is not reached.
+     *
+     * @return false if interrupted or DvrPlayback is closed
+     */
+    public boolean waitForSpace(long timeoutMillSecond) {
+        long waitMs = Math.min(timeoutMillSecond, WAIT_SPACE_SLICE_MS);
+        synchronized (mSpaceLock) {
+            if (mPlaybackFull && waitMs > 0) {
+                try {
+                    mSpaceLock.wait(waitMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return mDvrPlayback != null;
+    }
 }
@@ -171,7 +171,11 @@ class VideoOutputPathV3 extends VideoOutputPath {
 
         @Override
         public void onOutputFormatChanged(MediaCodec codec, MediaFormat format) {
+            if (codec != mMediaCodec)
+                return;
 
+            // first frame header decoded
+            markZapStage(ZapTimeline.STAGE_FIRST_DECODE);
         }
     }
 
@@ -454,6 +458,7 @@ class VideoOutputPathV3 extends VideoOutputPath {
                         getTag(), mTargetWorkMode, surfaceTag, getCostTime(startTime), mediaCodec);
             }
 
+            markZapStage(ZapTimeline.STAGE_CODEC_CONFIGURED);
             ASPlayerLog.i("%s [KPI-FCC] configure mediacodec start before, mediacodec: %s", getTag(), mediaCodec);
             startTime = System.nanoTime();
             mMediaCodec = mediaCodec;
@@ -464,6 +469,7 @@ class VideoOutputPathV3 extends VideoOutputPath {
             }
 
             startMediaCodec();
+            markZapStage(ZapTimeline.STAGE_CODEC_STARTED);
 
             long endTime = System.nanoTime();
             ASPlayerLog.i("%s [KPI-FCC] configure mediacodec start end, workMode: %d, cost: %d ms",
@@ -833,6 +839,7 @@ class VideoOutputPathV3 extends VideoOutputPath {
 
         mDataLossListener = new VideoDataLossListener();
         mDataLossChecker = new DataLossChecker(mHandler);
+        mDataLossChecker.setDataLossCounter(getDataLossCounter());
         mDataLossChecker.start(mDataLossListener, getTag(),
                 CHECK_DATA_LOSS_PERIOD, DATA_LOSS_DURATION_MILLISECOND);
     }
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core;
+
+import android.os.Bundle;
+
+import java.util.Arrays;
+
+/**
+ * Records when each stage of a zap (channel change) is reached, on a monotonic clock.
+ *
+ * A zap begins with setVideoParams and ends once video and audio are rendered in sync, it is
+ * then kept in a history of the last {@link #HISTORY_SIZE} zaps, dumped as a histogram.
+ * Each stage is recorded once per zap, later occurrences are ignored.
+ */
+class ZapTimeline {
+
+    static final int STAGE_SET_VIDEO_PARAMS = 0;
+    static final int STAGE_START_VIDEO_DECODING = 1;
+    static final int STAGE_CODEC_CONFIGURED = 2;
+    static final int STAGE_CODEC_STARTED = 3;
+    // first ts data accepted by DvrPlayback, in tunneled mode the codec gets no input buffer
+    static final int STAGE_FIRST_INPUT = 4;
+    static final int STAGE_FIRST_DECODE = 5;
+    static final int STAGE_FIRST_VIDEO_RENDER = 6;
+    static final int STAGE_FIRST_AUDIO_RENDER = 7;
+    static final int STAGE_AV_SYNC_DONE = 8;
+    static final int STAGE_COUNT = 9;
+
+    private static final String[] STAGE_NAMES = {
+            "set-video-params",
+            "start-video-decoding",
+            "codec-configured",
+            "codec-started",
+            "first-input",
+            "first-decode",
+            "first-video-render",
+            "first-audio-render",
+            "av-sync-done",
+    };
+
+    static final int HISTORY_SIZE = 32;
+
+    // upper bounds of histogram buckets, in milliseconds, last bucket has no bound
+    private static final long[] BUCKET_BOUNDS_MS = {
+            100, 200, 300, 500, 750, 1000, 1500, 2000, 3000, 5000
+    };
+
+    private static final long NOT_REACHED = -1;
+
+    private final int mId;
+    private int mSyncInstanceId = Constant.INVALID_SYNC_INSTANCE_ID;
+
+    // current zap, in nanoseconds
+    private boolean mStarted;
+    private long mStartNs;
+    private final long[] mStageNs = new long[STAGE_COUNT];
+
+    // stage offsets from start of completed zaps, in milliseconds
+    private final long[][] mHistory = new long[HISTORY_SIZE][STAGE_COUNT];
+    private int mHistoryCount;
+    private int mHistoryNext;
+    private int mIncompleteCount;
+
+    ZapTimeline(int id) {
+        mId = id;
+        Arrays.fill(mStageNs, NOT_REACHED);
+    }
+
+    void setSyncInstanceId(int syncInstanceId) {
+        mSyncInstanceId = syncInstanceId;
+    }
+
+    private String getTag() {
+        return String.format("[No-%d]-[%d]ZapTimeline", mSyncInstanceId, mId);
+    }
+
+    /**
+     * Starts a new zap, a zap still in progress is counted as incomplete.
+     */
+    synchronized void begin() {
+        if (mStarted && mStageNs[STAGE_AV_SYNC_DONE] == NOT_REACHED) {
+            mIncompleteCount++;
+        }
+        Arrays.fill(mStageNs, NOT_REACHED);
+        mStartNs = System.nanoTime();
+        mStageNs[STAGE_SET_VIDEO_PARAMS] = mStartNs;
+        mStarted = true;
+    }
+
+    synchronized void mark(int stage) {
+        if (!mStarted || stage < 0 || stage >= STAGE_COUNT || mStageNs[stage] != NOT_REACHED) {
+            return;
+        }
+        mStageNs[stage] = System.nanoTime();
+
+        if (stage == STAGE_AV_SYNC_DONE) {
+            long[] entry = mHistory[mHistoryNext];
+            for (int i = 0; i < STAGE_COUNT; i++) {
+                entry[i] = getOffsetMs(i);
+            }
+            mHistoryNext = (mHistoryNext + 1) % HISTORY_SIZE;
+            mHistoryCount = Math.min(mHistoryCount + 1, HISTORY_SIZE);
+            ASPlayerLog.i("%s [KPI-FCC] zap done, %s", getTag(), toStringLocked());
+        }
+    }
+
+    private long getOffsetMs(int stage) {
+        long ns = mStageNs[stage];
+        return ns == NOT_REACHED ? NOT_REACHED : (ns - mStartNs) / 1000000;
+    }
+
+    /**
+     * @return offset from setVideoParams of each stage of the current or last zap, in
+     * milliseconds, -1 for stages not reached
+     */
+    synchronized Bundle getLastTimeline() {
+        Bundle bundle = new Bundle();
+        if (!mStarted) {
+            return bundle;
+        }
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            bundle.putLong(STAGE_NAMES[i], getOffsetMs(i));
+        }
+        return bundle;
+    }
+
+    synchronized int getZapCount() {
+        return mHistoryCount;
+    }
+
+    /**
+     * Dumps the histogram of zap times, up to av sync done, and percentiles of each stage over
+     * the last zaps.
+     */
+    synchronized String dumpHistogram() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("zaps: %d, incomplete: %d\n", mHistoryCount, mIncompleteCount));
+        if (mHistoryCount == 0) {
+            return sb.toString();
+        }
+
+        int[] buckets = new int[BUCKET_BOUNDS_MS.length + 1];
+        for (int i = 0; i < mHistoryCount; i++) {
+            long totalMs = mHistory[i][STAGE_AV_SYNC_DONE];
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS_MS.length && totalMs > BUCKET_BOUNDS_MS[bucket]) {
+                bucket++;
+            }
+            buckets[bucket]++;
+        }
+        for (int bucket = 0; bucket < buckets.length; bucket++) {
+            String label = bucket < BUCKET_BOUNDS_MS.length
+                    ? String.format("<= %d ms", BUCKET_BOUNDS_MS[bucket])
+                    : String.format(" > %d ms", BUCKET_BOUNDS_MS[bucket - 1]);
+            sb.append(String.format("%10s: %3d ", label, buckets[bucket]));
+            for (int i = 0; i < buckets[bucket]; i++) {
+                sb.append('#');
+            }
+            sb.append('\n');
+        }
+
+        long[] values = new long[mHistoryCount];
+        for (int stage = 0; stage < STAGE_COUNT; stage++) {
+            int count = 0;
+            for (int i = 0; i < mHistoryCount; i++) {
+                if (mHistory[i][stage] != NOT_REACHED) {
+                    values[count++] = mHistory[i][stage];
+                }
+            }
+            if (count == 0) {
+                sb.append(String.format("%-22s not reached\n", STAGE_NAMES[stage]));
+                continue;
+            }
+            Arrays.sort(values, 0, count);
+            sb.append(String.format("%-22s p50: %5d ms, p90: %5d ms, max: %5d ms\n",
+                    STAGE_NAMES[stage], values[(count - 1) / 2], values[(count * 9 - 1) / 10],
+                    values[count - 1]));
+        }
+        return sb.toString();
+    }
+
+    private String toStringLocked() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(STAGE_NAMES[i]).append(": ").append(getOffsetMs(i));
+        }
+        return sb.toString();
+    }
+}
@@ -5,8 +5,13 @@ import android.util.Log;
 
 import com.amlogic.asplayer.core.Constant;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
-import java.util.Arrays;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
 import java.util.Locale;
 
 
@@ -42,11 +47,31 @@ public class BufferParser {
             "ISO-8859-15", null
     };
 
+    private static final int NO_WINDOW = -16;
+
     private byte[] mBytes;
     private int mOffsetInBytes;
     private int mLength;
     private long mPosInBits;
 
+    // cache of the 8 bytes of mBytes starting at mWindowPosInBytes, big endian,
+    // bytes after the end of mBytes are read as 0.
+    // Content of mBytes must not change until setBytes is called again.
+    private long mWindow;
+    private int mWindowPosInBytes = NO_WINDOW;
+
+    // string decoding, decoders are created on first use and indexed like
+    // sDvbEncodings/sDvbEncodings10, decoders of other encodings are kept by name
+    private final CharsetDecoder[] mDvbDecoders = new CharsetDecoder[sDvbEncodings.length];
+    private final CharsetDecoder[] mDvbDecoders10 = new CharsetDecoder[sDvbEncodings10.length];
+    private CharsetDecoder mDefaultDecoder;
+    private HashMap<String, CharsetDecoder> mNamedDecoders;
+    private ByteBuffer mBytesBuffer;
+    // bytes of strings with substituted control codes
+    private byte[] mScratchBytes;
+    private ByteBuffer mScratchBytesBuffer;
+    private CharBuffer mScratchChars;
+
     public BufferParser() {
     }
 
@@ -63,6 +88,7 @@ public class BufferParser {
         mOffsetInBytes = offset;
         mPosInBits = offset * 8;
         mLength = length;
+        mWindowPosInBytes = NO_WINDOW;
     }
 
     public byte[] getBytes() {
@@ -101,28 +127,83 @@ public class BufferParser {
     }
 
     public long readLong(int nbBits, String description) {
-        long mask = sMasks[nbBits];
-        int posInBytes = (int) (mPosInBits >> 3);
-        long value = 0;
-        int nbBytes;
-
-        if (mPosInBits + nbBits > mLength * 8) {
+        long posInBits = mPosInBits;
+        if (posInBits + nbBits > ((long) mLength << 3)) {
             throw new IllegalArgumentException(String.format(Locale.US, "Out of bounds (pos=%d, nbBits=%d, length=%d) field='%s'",
                     mPosInBits, nbBits, mLength, description));
         }
 
-        nbBytes = (nbBits + (int) (mPosInBits % 8) - 1) / 8 + 1;
-        for (int i = nbBytes; i > 0; i--) {
-            value = (value << 8) | (mBytes[posInBytes + (nbBytes - i)] & 0xFF);
+        int posInBytes = (int) (posInBits >> 3);
+        int bitOffset = (int) (posInBits & 7);
+        long value;
+        if (bitOffset == 0 && (nbBits == 8 || nbBits == 16 || nbBits == 32)) {
+            // byte aligned fields
+            byte[] bytes = mBytes;
+            if (nbBits == 8) {
+                value = bytes[posInBytes] & 0xFF;
+            } else if (nbBits == 16) {
+                value = ((bytes[posInBytes] & 0xFF) << 8) | (bytes[posInBytes + 1] & 0xFF);
+            } else {
+                value = ((long) (bytes[posInBytes] & 0xFF) << 24)
+                        | ((bytes[posInBytes + 1] & 0xFF) << 16)
+                        | ((bytes[posInBytes + 2] & 0xFF) << 8)
+                        | (bytes[posInBytes + 3] & 0xFF);
+            }
+        } else if (bitOffset + nbBits <= 64) {
+            int windowOffsetInBits = ((posInBytes - mWindowPosInBytes) << 3) + bitOffset;
+            if (posInBytes < mWindowPosInBytes || windowOffsetInBits + nbBits > 64) {
+                loadWindow(posInBytes);
+                windowOffsetInBits = bitOffset;
+            }
+            value = nbBits == 0 ? 0 : (mWindow << windowOffsetInBits) >>> (64 - nbBits);
+        } else {
+            // more than 8 bytes covered, only for unaligned 57..64 bits fields
+            int nbBytes = (nbBits + bitOffset - 1) / 8 + 1;
+            value = 0;
+            for (int i = 0; i < nbBytes; i++) {
+                value = (value << 8) | (mBytes[posInBytes + i] & 0xFF);
+            }
+            value = (value >> (nbBytes * 8 - nbBits - bitOffset)) & sMasks[nbBits];
         }
 
-        value = (value >> (nbBytes * 8 - nbBits - mPosInBits % 8)) & mask;
-
-        mPosInBits += nbBits;
+        mPosInBits = posInBits + nbBits;
 
         return value;
     }
 
+    /**
+     * Copy length bytes to dst, current position must be byte aligned or not,
+     * byte aligned reads are done with a single array copy.
+     */
+    public void readBytes(byte[] dst, int dstOffset, int length, String description) {
+        if (mPosInBits + ((long) length << 3) > ((long) mLength << 3)) {
+            throw new IllegalArgumentException(String.format(Locale.US, "Out of bounds (pos=%d, nbBytes=%d, length=%d) field='%s'",
+                    mPosInBits, length, mLength, description));
+        }
+
+        if ((mPosInBits & 7) == 0) {
+            System.arraycopy(mBytes, (int) (mPosInBits >> 3), dst, dstOffset, length);
+            mPosInBits += (long) length << 3;
+        } else {
+            for (int i = 0; i < length; i++) {
+                dst[dstOffset + i] = (byte) readLong(8, description);
+            }
+        }
+    }
+
+    private void loadWindow(int posInBytes) {
+        byte[] bytes = mBytes;
+        long window = 0;
+        int end = Math.min(posInBytes + 8, bytes.length);
+        int i = posInBytes;
+        for (; i < end; i++) {
+            window = (window << 8) | (bytes[i] & 0xFF);
+        }
+        window <<= (posInBytes + 8 - i) << 3;
+        mWindow = window;
+        mWindowPosInBytes = posInBytes;
+    }
+
     // TODO : does not take into account encoding correctly
     // TODO : use a separate class for string conversion and
     //                use ideas from EventInfo.dvbTextToString in dtvplayer
@@ -146,7 +227,7 @@ public class BufferParser {
             return "";
 
         // get encoding
-        String encoding = "ISO-8859-1";
+        CharsetDecoder decoder = getDefaultDecoder();
         byte first = mBytes[posInBytes];
         byte second = 0;
         byte third = 0;
@@ -160,19 +241,19 @@ public class BufferParser {
                 nbBits -= 8;
 
                 if (second != 0x0 || third == 0 || third >= 0x10)
-                    encoding = "ISO-8859-1";
+                    decoder = getDefaultDecoder();
                 else
-                    encoding = sDvbEncodings10[third];
+                    decoder = getDvbDecoder(mDvbDecoders10, third, sDvbEncodings10[third]);
             } else if (first == 0x1f && nbBits >= 8) {
                 posInBytes++;
                 nbBits -= 8;
-                encoding = "ISO-8859-1";
+                decoder = getDefaultDecoder();
             } else {
-                encoding = sDvbEncodings[first];
+                decoder = getDvbDecoder(mDvbDecoders, first, sDvbEncodings[first]);
             }
         }
 
-       return extractString(posInBytes, nbBits, description, encoding);
+       return extractString(posInBytes, nbBits, description, decoder);
     }
 
     public String readString(int nbBits, String description, String encoding) {
@@ -193,10 +274,10 @@ public class BufferParser {
         if (nbBits < 8)
             return "";
 
-        return extractString(posInBytes, nbBits, description, encoding);
+        return extractString(posInBytes, nbBits, description, getNamedDecoder(encoding));
     }
 
-    private String extractString(int posInBytes, int nbBits, String description, String encoding) {
+    private String extractString(int posInBytes, int nbBits, String description, CharsetDecoder decoder) {
 
         // check control codes and invalid characters
         int lastPos = posInBytes + nbBits / 8;
@@ -222,8 +303,9 @@ public class BufferParser {
             // copy/change character
             if (needSubstitution) {
                 if (modifiedBytes == null) {
-                    modifiedBytes = Arrays.copyOfRange(mBytes, posInBytes, lastPos);
+                    modifiedBytes = getScratchBytes(lastPos - posInBytes);
                     modifiedBytesSize = i - posInBytes;
+                    System.arraycopy(mBytes, posInBytes, modifiedBytes, 0, modifiedBytesSize);
                 }
                 switch (currentByte) {
                     case 0x8a: // CR/LF
@@ -241,23 +323,115 @@ public class BufferParser {
             }
         }
 
-        if (encoding.isEmpty()) {
-            Log.w(TAG, "nul encoding unexpected ");
-            encoding = "UTF-8";
-        }
-
         // build and return string
         if (modifiedBytes != null) {
-            return new String(modifiedBytes, 0, modifiedBytesSize, Charset.forName(encoding));
+            return decode(mScratchBytesBuffer, 0, modifiedBytesSize, decoder);
         } else {
-            return new String(mBytes, posInBytes, nbBits / 8, Charset.forName(encoding));
+            if (mBytesBuffer == null || mBytesBuffer.array() != mBytes) {
+                mBytesBuffer = ByteBuffer.wrap(mBytes);
+            }
+            return decode(mBytesBuffer, posInBytes, nbBits / 8, decoder);
         }
     }
 
+    private String decode(ByteBuffer in, int offset, int length, CharsetDecoder decoder) {
+        Charset charset = decoder.charset();
+        if (StandardCharsets.ISO_8859_1.equals(charset) || StandardCharsets.UTF_8.equals(charset)) {
+            // String has intrinsic fast paths for these, without decoder allocation
+            return new String(in.array(), offset, length, charset);
+        }
+
+        in.limit(offset + length);
+        in.position(offset);
+
+        int maxChars = (int) Math.ceil(length * (double) decoder.maxCharsPerByte());
+        if (mScratchChars == null || mScratchChars.capacity() < maxChars) {
+            mScratchChars = CharBuffer.allocate(Math.max(maxChars, 256));
+        }
+        CharBuffer out = mScratchChars;
+        out.clear();
+
+        decoder.reset();
+        decoder.decode(in, out, true);
+        decoder.flush(out);
+        return new String(out.array(), 0, out.position());
+    }
+
+    private byte[] getScratchBytes(int size) {
+        if (mScratchBytes == null || mScratchBytes.length < size) {
+            mScratchBytes = new byte[Math.max(size, 256)];
+            mScratchBytesBuffer = ByteBuffer.wrap(mScratchBytes);
+        }
+        return mScratchBytes;
+    }
+
+    private CharsetDecoder getDefaultDecoder() {
+        if (mDefaultDecoder == null) {
+            mDefaultDecoder = createDecoder("ISO-8859-1");
+        }
+        return mDefaultDecoder;
+    }
+
+    private CharsetDecoder getDvbDecoder(CharsetDecoder[] decoders, int index, String encoding) {
+        CharsetDecoder decoder = decoders[index];
+        if (decoder == null) {
+            decoder = createDecoder(encoding);
+            decoders[index] = decoder;
+        }
+        return decoder;
+    }
+
+    private CharsetDecoder getNamedDecoder(String encoding) {
+        if (mNamedDecoders == null) {
+            mNamedDecoders = new HashMap<>();
+        }
+        CharsetDecoder decoder = mNamedDecoders.get(encoding);
+        if (decoder == null) {
+            decoder = createDecoder(encoding);
+            mNamedDecoders.put(encoding, decoder);
+        }
+        return decoder;
+    }
+
+    private static CharsetDecoder createDecoder(String encoding) {
+        if (encoding.isEmpty()) {
+            Log.w(TAG, "nul encoding unexpected ");
+            encoding = "UTF-8";
+        }
+        // same behavior as String constructor on invalid input
+        return Charset.forName(encoding).newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
     public boolean readBool(String description) {
         return (readInt(1, description) == 1);
     }
 
+    /**
+     * Read an unsigned Exp-Golomb code, ue(v) of H.264/HEVC syntax.
+     */
+    public int readUnsignedExpGolomb(String description) {
+        int leadingZeroBits = 0;
+        while (!readBool(description)) {
+            leadingZeroBits++;
+            if (leadingZeroBits > 31)
+                throw new IllegalArgumentException(String.format(Locale.US,
+                        "Invalid Exp-Golomb code (pos=%d) field='%s'", mPosInBits, description));
+        }
+        if (leadingZeroBits == 0)
+            return 0;
+        return (int) ((1L << leadingZeroBits) - 1 + readLong(leadingZeroBits, description));
+    }
+
+    /**
+     * Read a signed Exp-Golomb code, se(v) of H.264/HEVC syntax.
+     */
+    public int readSignedExpGolomb(String description) {
+        int codeNum = readUnsignedExpGolomb(description);
+        return ((codeNum & 1) != 0) ? (codeNum + 1) / 2 : -(codeNum / 2);
+    }
+
     public void skip(int nbBits, String reason) {
         mPosInBits += nbBits;
 
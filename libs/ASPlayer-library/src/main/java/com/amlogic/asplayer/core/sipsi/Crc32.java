@@ -0,0 +1,41 @@
+package com.amlogic.asplayer.core.sipsi;
+
+/**
+ * CRC32 used by psi sections.
+ * Ref documentation : iso13818-1, Annex A (CRC decoder model), polynomial 0x04C11DB7,
+ * initial value 0xFFFFFFFF, no reflection, no final xor.
+ */
+public class Crc32 {
+
+    private static final int POLYNOMIAL = 0x04C11DB7;
+    private static final int[] sTable = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i << 24;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x80000000) != 0 ? (crc << 1) ^ POLYNOMIAL : crc << 1;
+            }
+            sTable[i] = crc;
+        }
+    }
+
+    private Crc32() {
+    }
+
+    public static int compute(byte[] bytes, int offset, int length) {
+        int crc = 0xFFFFFFFF;
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            crc = (crc << 8) ^ sTable[((crc >>> 24) ^ bytes[i]) & 0xff];
+        }
+        return crc;
+    }
+
+    /**
+     * @return true if crc of the section, CRC_32 field included, is 0
+     */
+    public static boolean check(byte[] section, int offset, int length) {
+        return compute(section, offset, length) == 0;
+    }
+}
@@ -0,0 +1,104 @@
+package com.amlogic.asplayer.core.sipsi;
+
+import com.amlogic.asplayer.core.sipsi.mpeg.Mpeg;
+
+import java.util.Arrays;
+
+/**
+ * Program association table
+ * Ref documentation : iso13818-1, section 2.4.4.3, table 2-30
+ */
+public class Pat {
+
+    public static final int PID = 0x0000;
+    public static final int TABLE_ID = 0x00;
+
+    private int mTransportStreamId;
+    private int mVersion;
+
+    private int mProgramCount;
+    private int[] mProgramNumbers = new int[16];
+    private int[] mPmtPids = new int[16];
+    private int mNetworkPid = -1;
+
+    void clear() {
+        mProgramCount = 0;
+        mNetworkPid = -1;
+    }
+
+    /**
+     * Add programs of a pat section, header is expected to be checked by caller.
+     */
+    void parseSection(BufferParser parser, int sectionLength) {
+        int sectionEnd = parser.getPosInBytes() + Mpeg.PSI_HEADER_SIZE + sectionLength - Mpeg.CRC_SIZE;
+
+        parser.skip(24, "table_id, section_syntax_indicator, '0', reserved, section_length");
+        mTransportStreamId = parser.readInt(16, "transport_stream_id");
+        parser.skip(2, "reserved");
+        mVersion = parser.readInt(5, "version_number");
+        parser.skip(1 + 8 + 8, "current_next_indicator, section_number, last_section_number");
+
+        while (parser.getPosInBytes() + 4 <= sectionEnd) {
+            int programNumber = parser.readInt(16, "program_number");
+            parser.skip(3, "reserved");
+            int pid = parser.readInt(13, "program_map_PID / network_PID");
+            if (programNumber == 0) {
+                mNetworkPid = pid;
+            } else {
+                addProgram(programNumber, pid);
+            }
+        }
+    }
+
+    public int getTransportStreamId() {
+        return mTransportStreamId;
+    }
+
+    public int getVersion() {
+        return mVersion;
+    }
+
+    public int getProgramCount() {
+        return mProgramCount;
+    }
+
+    public int getProgramNumber(int index) {
+        return mProgramNumbers[index];
+    }
+
+    public int getPmtPid(int index) {
+        return mPmtPids[index];
+    }
+
+    /**
+     * @return pid of the pmt of programNumber, -1 if program is not in pat
+     */
+    public int findPmtPid(int programNumber) {
+        for (int i = 0; i < mProgramCount; i++) {
+            if (mProgramNumbers[i] == programNumber) {
+                return mPmtPids[i];
+            }
+        }
+        return -1;
+    }
+
+    public int getNetworkPid() {
+        return mNetworkPid;
+    }
+
+    private void addProgram(int programNumber, int pmtPid) {
+        for (int i = 0; i < mProgramCount; i++) {
+            if (mProgramNumbers[i] == programNumber) {
+                mPmtPids[i] = pmtPid;
+                return;
+            }
+        }
+        if (mProgramCount == mProgramNumbers.length) {
+            mProgramNumbers = Arrays.copyOf(mProgramNumbers, mProgramCount * 2);
+            mPmtPids = Arrays.copyOf(mPmtPids, mProgramCount * 2);
+        }
+        mProgramNumbers[mProgramCount] = programNumber;
+        mPmtPids[mProgramCount] = pmtPid;
+        mProgramCount++;
+    }
+}
@@ -0,0 +1,250 @@
+package com.amlogic.asplayer.core.sipsi;
+
+import android.media.MediaFormat;
+
+import com.amlogic.asplayer.core.sipsi.mpeg.Mpeg;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Program map table
+ * Ref documentation : iso13818-1, section 2.4.4.8, table 2-33
+ * Descriptors : iso13818-1 section 2.6, ETSI EN 300 468 (DVB), ETSI TS 102 366 Annex D
+ */
+public class Pmt {
+
+    public static final int TABLE_ID = 0x02;
+
+    // stream_type, iso13818-1 table 2-34 and ATSC A/52
+    public static final int STREAM_TYPE_MPEG1_VIDEO = 0x01;
+    public static final int STREAM_TYPE_MPEG2_VIDEO = 0x02;
+    public static final int STREAM_TYPE_MPEG1_AUDIO = 0x03;
+    public static final int STREAM_TYPE_MPEG2_AUDIO = 0x04;
+    public static final int STREAM_TYPE_PRIVATE_PES = 0x06;
+    public static final int STREAM_TYPE_AAC_ADTS = 0x0F;
+    public static final int STREAM_TYPE_AAC_LATM = 0x11;
+    public static final int STREAM_TYPE_H264 = 0x1B;
+    public static final int STREAM_TYPE_HEVC = 0x24;
+    public static final int STREAM_TYPE_AC3 = 0x81;
+    public static final int STREAM_TYPE_EAC3 = 0x87;
+
+    private static final int DESCRIPTOR_REGISTRATION = 0x05;
+    private static final int DESCRIPTOR_ISO_639_LANGUAGE = 0x0A;
+    private static final int DESCRIPTOR_AC3 = 0x6A;
+    private static final int DESCRIPTOR_ENHANCED_AC3 = 0x7A;
+    private static final int DESCRIPTOR_AAC = 0x7C;
+    private static final int DESCRIPTOR_EXTENSION = 0x7F;
+    private static final int DESCRIPTOR_EXTENSION_AC4 = 0x15;
+
+    private static final int FORMAT_IDENTIFIER_AC3 = 0x41432D33;   // "AC-3"
+    private static final int FORMAT_IDENTIFIER_EAC3 = 0x45414333;  // "EAC3"
+    private static final int FORMAT_IDENTIFIER_HEVC = 0x48455643;  // "HEVC"
+    private static final int FORMAT_IDENTIFIER_AV1 = 0x41563031;   // "AV01"
+
+    public static class Stream {
+        private int mStreamType;
+        private int mPid;
+        private String mMimeType;
+        private String mLanguage;
+
+        public int getStreamType() {
+            return mStreamType;
+        }
+
+        public int getPid() {
+            return mPid;
+        }
+
+        /**
+         * @return MediaFormat mime type derived from stream_type and descriptors, null if unknown
+         */
+        public String getMimeType() {
+            return mMimeType;
+        }
+
+        /**
+         * @return ISO 639-2 language code, null if not signaled
+         */
+        public String getLanguage() {
+            return mLanguage;
+        }
+
+        public boolean isVideo() {
+            return mMimeType != null && mMimeType.startsWith("video/");
+        }
+
+        public boolean isAudio() {
+            return mMimeType != null && mMimeType.startsWith("audio/");
+        }
+    }
+
+    private int mProgramNumber;
+    private int mVersion;
+    private int mPcrPid;
+    private final List<Stream> mStreams = new ArrayList<>();
+
+    void parseSection(BufferParser parser, int sectionLength) {
+        int sectionEnd = parser.getPosInBytes() + Mpeg.PSI_HEADER_SIZE + sectionLength - Mpeg.CRC_SIZE;
+
+        parser.skip(24, "table_id, section_syntax_indicator, '0', reserved, section_length");
+        mProgramNumber = parser.readInt(16, "program_number");
+        parser.skip(2, "reserved");
+        mVersion = parser.readInt(5, "version_number");
+        parser.skip(1 + 8 + 8, "current_next_indicator, section_number, last_section_number");
+        parser.skip(3, "reserved");
+        mPcrPid = parser.readInt(13, "PCR_PID");
+        parser.skip(4, "reserved");
+        int programInfoLength = parser.readInt(12, "program_info_length");
+        parser.skip(programInfoLength * 8, "program descriptors");
+
+        mStreams.clear();
+        while (parser.getPosInBytes() + 5 <= sectionEnd) {
+            Stream stream = new Stream();
+            stream.mStreamType = parser.readInt(8, "stream_type");
+            parser.skip(3, "reserved");
+            stream.mPid = parser.readInt(13, "elementary_PID");
+            parser.skip(4, "reserved");
+            int esInfoLength = parser.readInt(12, "ES_info_length");
+            int descriptorsEnd = Math.min(parser.getPosInBytes() + esInfoLength, sectionEnd);
+
+            stream.mMimeType = getMimeTypeByStreamType(stream.mStreamType);
+            while (parser.getPosInBytes() + 2 <= descriptorsEnd) {
+                int tag = parser.readInt(8, "descriptor_tag");
+                int length = parser.readInt(8, "descriptor_length");
+                int descriptorEnd = parser.getPosInBytes() + length;
+                if (descriptorEnd > descriptorsEnd) {
+                    break;
+                }
+                parseDescriptor(parser, stream, tag, length);
+                parser.setPosInBits(descriptorEnd * 8L);
+            }
+            parser.setPosInBits(descriptorsEnd * 8L);
+            mStreams.add(stream);
+        }
+    }
+
+    public int getProgramNumber() {
+        return mProgramNumber;
+    }
+
+    public int getVersion() {
+        return mVersion;
+    }
+
+    public int getPcrPid() {
+        return mPcrPid;
+    }
+
+    public List<Stream> getStreams() {
+        return mStreams;
+    }
+
+    /**
+     * @return first video stream of the program, null if none
+     */
+    public Stream getVideoStream() {
+        for (Stream stream : mStreams) {
+            if (stream.isVideo()) {
+                return stream;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return first audio stream of the program in given language, or first audio stream
+     *  if language is null or not found, null if program has no audio
+     */
+    public Stream getAudioStream(String language) {
+        Stream firstAudio = null;
+        for (Stream stream : mStreams) {
+            if (!stream.isAudio()) {
+                continue;
+            }
+            if (language == null || language.equalsIgnoreCase(stream.mLanguage)) {
+                return stream;
+            }
+            if (firstAudio == null) {
+                firstAudio = stream;
+            }
+        }
+        return firstAudio;
+    }
+
+    private static void parseDescriptor(BufferParser parser, Stream stream, int tag, int length) {
+        switch (tag) {
+            case DESCRIPTOR_ISO_639_LANGUAGE:
+                if (length >= 3 && stream.mLanguage == null) {
+                    byte[] bytes = parser.getBytes();
+                    int pos = parser.getPosInBytes();
+                    stream.mLanguage = new String(new char[] {
+                            (char) (bytes[pos] & 0xff),
+                            (char) (bytes[pos + 1] & 0xff),
+                            (char) (bytes[pos + 2] & 0xff)});
+                }
+                break;
+            case DESCRIPTOR_REGISTRATION:
+                if (length >= 4) {
+                    int formatIdentifier = parser.readInt(32, "format_identifier");
+                    if (formatIdentifier == FORMAT_IDENTIFIER_AC3) {
+                        stream.mMimeType = MediaFormat.MIMETYPE_AUDIO_AC3;
+                    } else if (formatIdentifier == FORMAT_IDENTIFIER_EAC3) {
+                        stream.mMimeType = MediaFormat.MIMETYPE_AUDIO_EAC3;
+                    } else if (formatIdentifier == FORMAT_IDENTIFIER_HEVC) {
+                        stream.mMimeType = MediaFormat.MIMETYPE_VIDEO_HEVC;
+                    } else if (formatIdentifier == FORMAT_IDENTIFIER_AV1) {
+                        stream.mMimeType = MediaFormat.MIMETYPE_VIDEO_AV1;
+                    }
+                }
+                break;
+            case DESCRIPTOR_AC3:
+                if (stream.mStreamType == STREAM_TYPE_PRIVATE_PES) {
+                    stream.mMimeType = MediaFormat.MIMETYPE_AUDIO_AC3;
+                }
+                break;
+            case DESCRIPTOR_ENHANCED_AC3:
+                if (stream.mStreamType == STREAM_TYPE_PRIVATE_PES) {
+                    stream.mMimeType = MediaFormat.MIMETYPE_AUDIO_EAC3;
+                }
+                break;
+            case DESCRIPTOR_AAC:
+                if (stream.mStreamType == STREAM_TYPE_PRIVATE_PES) {
+                    stream.mMimeType = MediaFormat.MIMETYPE_AUDIO_AAC;
+                }
+                break;
+            case DESCRIPTOR_EXTENSION:
+                if (length >= 1 && stream.mStreamType == STREAM_TYPE_PRIVATE_PES
+                        && parser.readInt(8, "descriptor_tag_extension") == DESCRIPTOR_EXTENSION_AC4) {
+                    stream.mMimeType = MediaFormat.MIMETYPE_AUDIO_AC4;
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static String getMimeTypeByStreamType(int streamType) {
+        switch (streamType) {
+            case STREAM_TYPE_MPEG1_VIDEO:
+            case STREAM_TYPE_MPEG2_VIDEO:
+                return MediaFormat.MIMETYPE_VIDEO_MPEG2;
+            case STREAM_TYPE_H264:
+                return MediaFormat.MIMETYPE_VIDEO_AVC;
+            case STREAM_TYPE_HEVC:
+                return MediaFormat.MIMETYPE_VIDEO_HEVC;
+            case STREAM_TYPE_MPEG1_AUDIO:
+            case STREAM_TYPE_MPEG2_AUDIO:
+                return MediaFormat.MIMETYPE_AUDIO_MPEG;
+            case STREAM_TYPE_AAC_ADTS:
+            case STREAM_TYPE_AAC_LATM:
+                return MediaFormat.MIMETYPE_AUDIO_AAC;
+            case STREAM_TYPE_AC3:
+                return MediaFormat.MIMETYPE_AUDIO_AC3;
+            case STREAM_TYPE_EAC3:
+                return MediaFormat.MIMETYPE_AUDIO_EAC3;
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.amlogic.asplayer.core.sipsi;
+
+import com.amlogic.asplayer.core.sipsi.mpeg.Mpeg;
+
+import java.util.Arrays;
+
+/**
+ * Collects pat and pmt from a {@link TsDemux}.
+ *
+ * Sections are cached by their header (table_id, table_id_extension, version_number,
+ * current_next_indicator, section_number, last_section_number): a section whose header was
+ * already seen is skipped before crc check and parsing, so repeated tables cost a few byte
+ * compares. Cached headers are only valid for one transport stream, {@link #reset()} must be
+ * called when input changes.
+ *
+ * A pmt pid may carry the pmt of several programs, pmt and cached headers are kept per
+ * program_number (table_id_extension) within the pid.
+ */
+public class ProgramTables implements SectionAssembler.OnSectionListener {
+
+    public interface OnProgramTablesListener {
+        void onPat(Pat pat);
+
+        void onPmt(int pid, Pmt pmt);
+    }
+
+    private static final int LONG_SECTION_MIN_SIZE = 8 + Mpeg.CRC_SIZE;
+    private static final long NO_SIGNATURE = -1;
+    private static final int PAT_KEY = -1;
+
+    // a table carried by a pid: the pat, or the pmt of one program
+    private static class Table {
+        // program_number for a pmt, PAT_KEY for the pat
+        final int mKey;
+        // last header seen, indexed by section_number
+        final long[] mSignatures = new long[256];
+        Pmt mPmt;
+        Table mNext;
+
+        Table(int key) {
+            mKey = key;
+            Arrays.fill(mSignatures, NO_SIGNATURE);
+        }
+    }
+
+    private final BufferParser mParser = new BufferParser();
+
+    private TsDemux mDemux;
+    private OnProgramTablesListener mListener;
+
+    private final Pat mPat = new Pat();
+    private boolean mHasPat;
+    private int mPatVersion = -1;
+    private final boolean[] mPmtPids = new boolean[Mpeg.PID_MAX + 1];
+    private final boolean[] mPidsInPat = new boolean[Mpeg.PID_MAX + 1];
+
+    // tables seen on each pid, linked by Table.mNext
+    private final Table[] mTables = new Table[Mpeg.PID_MAX + 1];
+
+    private long mParsedSectionCount;
+    private long mSkippedSectionCount;
+    private long mCrcErrorCount;
+
+    public void setOnProgramTablesListener(OnProgramTablesListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Start collecting tables, pmt pids are added to demux as soon as pat is received.
+     */
+    public void attach(TsDemux demux) {
+        mDemux = demux;
+        mDemux.addSectionPid(Pat.PID, this);
+    }
+
+    public void detach() {
+        if (mDemux == null) {
+            return;
+        }
+        mDemux.removePid(Pat.PID);
+        for (int pid = 0; pid < mPmtPids.length; pid++) {
+            if (mPmtPids[pid]) {
+                mDemux.removePid(pid);
+            }
+        }
+        mDemux = null;
+        reset();
+    }
+
+    /**
+     * Forget tables and cached headers, pmt pids stay registered until next pat.
+     */
+    public void reset() {
+        mHasPat = false;
+        mPatVersion = -1;
+        mPat.clear();
+        Arrays.fill(mTables, null);
+    }
+
+    public Pat getPat() {
+        return mHasPat ? mPat : null;
+    }
+
+    /**
+     * @return pmt of programNumber, null if not received yet
+     */
+    public Pmt getPmt(int programNumber) {
+        if (!mHasPat) {
+            return null;
+        }
+        int pid = mPat.findPmtPid(programNumber);
+        if (pid < 0) {
+            return null;
+        }
+        Table table = findTable(pid, programNumber);
+        return table != null ? table.mPmt : null;
+    }
+
+    public long getParsedSectionCount() {
+        return mParsedSectionCount;
+    }
+
+    public long getSkippedSectionCount() {
+        return mSkippedSectionCount;
+    }
+
+    public long getCrcErrorCount() {
+        return mCrcErrorCount;
+    }
+
+    @Override
+    public void onSection(int pid, byte[] section, int offset, int length) {
+        if (length < LONG_SECTION_MIN_SIZE || (section[offset + 1] & 0x80) == 0) {
+            return;
+        }
+        int tableId = section[offset] & 0xff;
+        if (tableId != Pat.TABLE_ID && tableId != Pmt.TABLE_ID) {
+            return;
+        }
+        if ((section[offset + 5] & 0x01) == 0) {
+            // not applicable yet
+            return;
+        }
+        int key;
+        if (tableId == Pat.TABLE_ID && pid == Pat.PID) {
+            key = PAT_KEY;
+        } else if (tableId == Pmt.TABLE_ID && mPmtPids[pid]) {
+            key = ((section[offset + 3] & 0xff) << 8) | (section[offset + 4] & 0xff);
+        } else {
+            return;
+        }
+
+        int sectionNumber = section[offset + 6] & 0xff;
+        long signature = ((long) tableId << 40)
+                | ((long) (section[offset + 3] & 0xff) << 32)
+                | ((long) (section[offset + 4] & 0xff) << 24)
+                | ((section[offset + 5] & 0xff) << 16)
+                | (sectionNumber << 8)
+                | (section[offset + 7] & 0xff);
+        Table table = findTable(pid, key);
+        if (table != null && table.mSignatures[sectionNumber] == signature) {
+            mSkippedSectionCount++;
+            return;
+        }
+
+        if (!Crc32.check(section, offset, length)) {
+            mCrcErrorCount++;
+            return;
+        }
+        if (table == null) {
+            table = new Table(key);
+            table.mNext = mTables[pid];
+            mTables[pid] = table;
+        }
+
+        int sectionLength = ((section[offset + 1] & 0x0f) << 8) | (section[offset + 2] & 0xff);
+        mParser.setBytes(section, offset, offset + length);
+        try {
+            if (key == PAT_KEY) {
+                onPatSection(sectionLength, (section[offset + 5] >> 1) & 0x1f);
+            } else {
+                onPmtSection(pid, table, sectionLength);
+            }
+        } catch (IllegalArgumentException e) {
+            // malformed section, not cached so that next occurrence is parsed again
+            return;
+        }
+        table.mSignatures[sectionNumber] = signature;
+        mParsedSectionCount++;
+    }
+
+    private Table findTable(int pid, int key) {
+        for (Table table = mTables[pid]; table != null; table = table.mNext) {
+            if (table.mKey == key) {
+                return table;
+            }
+        }
+        return null;
+    }
+
+    private void onPatSection(int sectionLength, int version) {
+        if (version != mPatVersion) {
+            mPat.clear();
+            mPatVersion = version;
+        }
+        mPat.parseSection(mParser, sectionLength);
+        mHasPat = true;
+
+        if (mDemux != null) {
+            updatePmtPids();
+        }
+        if (mListener != null) {
+            mListener.onPat(mPat);
+        }
+    }
+
+    private void onPmtSection(int pid, Table table, int sectionLength) {
+        Pmt pmt = table.mPmt;
+        if (pmt == null) {
+            pmt = new Pmt();
+            table.mPmt = pmt;
+        }
+        pmt.parseSection(mParser, sectionLength);
+        if (mListener != null) {
+            mListener.onPmt(pid, pmt);
+        }
+    }
+
+    private void updatePmtPids() {
+        boolean[] inPat = mPidsInPat;
+        Arrays.fill(inPat, false);
+        for (int i = 0; i < mPat.getProgramCount(); i++) {
+            inPat[mPat.getPmtPid(i)] = true;
+        }
+        for (int pid = 0; pid <= Mpeg.PID_MAX; pid++) {
+            if (inPat[pid] && !mPmtPids[pid]) {
+                mPmtPids[pid] = true;
+                mDemux.addSectionPid(pid, this);
+            } else if (!inPat[pid] && mPmtPids[pid]) {
+                mPmtPids[pid] = false;
+                mTables[pid] = null;
+                mDemux.removePid(pid);
+            }
+        }
+    }
+}
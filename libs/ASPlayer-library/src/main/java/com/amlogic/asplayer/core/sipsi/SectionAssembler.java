@@ -0,0 +1,175 @@
+package com.amlogic.asplayer.core.sipsi;
+
+import com.amlogic.asplayer.core.sipsi.mpeg.Mpeg;
+import com.amlogic.asplayer.core.sipsi.mpeg.TsPacket;
+
+/**
+ * Reassembles psi sections of several pids from a stream of ts packets.
+ * Ref documentation : iso13818-1, section 2.4.4 (Program specific information)
+ *
+ * Each pid owns one section buffer allocated when the pid is added,
+ * sections given to {@link OnSectionListener} are only valid during the callback.
+ */
+public class SectionAssembler {
+
+    public interface OnSectionListener {
+        void onSection(int pid, byte[] section, int offset, int length);
+    }
+
+    private static final int SECTION_MAX_SIZE = Mpeg.PSI_HEADER_SIZE + Mpeg.PSI_PRIVATE_MAX_SIZE;
+
+    private static class Stream {
+        final int mPid;
+        final byte[] mSection = new byte[SECTION_MAX_SIZE];
+        int mSize;
+        // full section size, known once the 3 bytes of header are received
+        int mExpectedSize = -1;
+        boolean mAccumulating;
+        int mLastContinuityCounter = -1;
+
+        Stream(int pid) {
+            mPid = pid;
+        }
+
+        void reset() {
+            mSize = 0;
+            mExpectedSize = -1;
+            mAccumulating = false;
+        }
+    }
+
+    private final Stream[] mStreams = new Stream[Mpeg.PID_MAX + 1];
+    private OnSectionListener mListener;
+
+    private long mSectionCount;
+    private long mContinuityErrorCount;
+
+    public void setOnSectionListener(OnSectionListener listener) {
+        mListener = listener;
+    }
+
+    public void addPid(int pid) {
+        if (pid < 0 || pid > Mpeg.PID_MAX || mStreams[pid] != null) {
+            return;
+        }
+        mStreams[pid] = new Stream(pid);
+    }
+
+    public void removePid(int pid) {
+        if (pid < 0 || pid > Mpeg.PID_MAX) {
+            return;
+        }
+        mStreams[pid] = null;
+    }
+
+    public boolean hasPid(int pid) {
+        return pid >= 0 && pid <= Mpeg.PID_MAX && mStreams[pid] != null;
+    }
+
+    /**
+     * Drop sections being reassembled on every pid, pids are kept.
+     */
+    public void flush() {
+        for (Stream stream : mStreams) {
+            if (stream != null) {
+                stream.reset();
+                stream.mLastContinuityCounter = -1;
+            }
+        }
+    }
+
+    public void consumePacket(TsPacket packet) {
+        Stream stream = mStreams[packet.getPid()];
+        if (stream == null) {
+            return;
+        }
+        int pos = packet.getPsiPayloadPos();
+        if (pos < 0) {
+            return;
+        }
+        int end = packet.getOffset() + Mpeg.TS_PACKET_SIZE;
+        if (pos >= end) {
+            return;
+        }
+        byte[] bytes = packet.getBytes();
+
+        int continuityCounter = packet.getContinuityCounter();
+        int lastContinuityCounter = stream.mLastContinuityCounter;
+        stream.mLastContinuityCounter = continuityCounter;
+        if (stream.mAccumulating && continuityCounter == lastContinuityCounter) {
+            // duplicated packet
+            return;
+        }
+        if (stream.mAccumulating && ((lastContinuityCounter + 1) & 0xf) != continuityCounter) {
+            mContinuityErrorCount++;
+            stream.reset();
+        }
+
+        if (packet.isUnitStart()) {
+            int pointerField = bytes[pos] & 0xff;
+            pos++;
+            if (stream.mAccumulating) {
+                // end of previous section
+                append(stream, bytes, pos, Math.min(pos + pointerField, end));
+                stream.reset();
+            }
+            pos += pointerField;
+
+            // new sections only start in unit start packets, until stuffing bytes or end of packet
+            while (pos < end && !stream.mAccumulating && (bytes[pos] & 0xff) != 0xff) {
+                stream.mAccumulating = true;
+                pos += append(stream, bytes, pos, end);
+            }
+        } else if (stream.mAccumulating) {
+            append(stream, bytes, pos, end);
+        }
+    }
+
+    public long getSectionCount() {
+        return mSectionCount;
+    }
+
+    public long getContinuityErrorCount() {
+        return mContinuityErrorCount;
+    }
+
+    /**
+     * Append data to current section, give it to listener if complete.
+     *
+     * @return bytes used for current section
+     */
+    private int append(Stream stream, byte[] bytes, int from, int to) {
+        int used = 0;
+        if (stream.mExpectedSize < 0) {
+            int headerBytes = Math.min(Mpeg.PSI_HEADER_SIZE - stream.mSize, to - from);
+            System.arraycopy(bytes, from, stream.mSection, stream.mSize, headerBytes);
+            stream.mSize += headerBytes;
+            used += headerBytes;
+            if (stream.mSize < Mpeg.PSI_HEADER_SIZE) {
+                return used;
+            }
+
+            int sectionLength = ((stream.mSection[1] & 0x0f) << 8) | (stream.mSection[2] & 0xff);
+            if (sectionLength > Mpeg.PSI_PRIVATE_MAX_SIZE) {
+                // corrupted header, wait for next unit start
+                stream.reset();
+                return to - from;
+            }
+            stream.mExpectedSize = Mpeg.PSI_HEADER_SIZE + sectionLength;
+        }
+
+        int length = Math.min(stream.mExpectedSize - stream.mSize, to - from - used);
+        System.arraycopy(bytes, from + used, stream.mSection, stream.mSize, length);
+        stream.mSize += length;
+        used += length;
+
+        if (stream.mSize == stream.mExpectedSize) {
+            mSectionCount++;
+            if (mListener != null) {
+                mListener.onSection(stream.mPid, stream.mSection, 0, stream.mSize);
+            }
+            stream.reset();
+        }
+        return used;
+    }
+}
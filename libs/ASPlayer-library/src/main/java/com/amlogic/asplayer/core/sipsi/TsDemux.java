@@ -0,0 +1,198 @@
+package com.amlogic.asplayer.core.sipsi;
+
+import com.amlogic.asplayer.core.sipsi.mpeg.Mpeg;
+import com.amlogic.asplayer.core.sipsi.mpeg.Pes;
+import com.amlogic.asplayer.core.sipsi.mpeg.PesAssembler;
+import com.amlogic.asplayer.core.sipsi.mpeg.TsPacket;
+
+/**
+ * Software demultiplexer, routes ts packets to pes, section and pcr handlers registered by pid.
+ * Used when packets are not demultiplexed by tuner filters, e.g. offline analysis.
+ *
+ * Input is expected to be aligned on ts packets (see TsPacketAligner),
+ * invalid packets are skipped. Nothing is allocated per packet.
+ */
+public class TsDemux {
+
+    public interface OnPcrListener {
+        void onPcr(int pid, long pcrBase, long pcrExtension);
+    }
+
+    private static final int HANDLER_PES = 0x1;
+    private static final int HANDLER_SECTION = 0x2;
+    private static final int HANDLER_PCR = 0x4;
+
+    // handlers registered on each pid, HANDLER_XXX bits
+    private final byte[] mHandlers = new byte[Mpeg.PID_MAX + 1];
+
+    private final PesAssembler.OnPesListener[] mPesListeners =
+            new PesAssembler.OnPesListener[Mpeg.PID_MAX + 1];
+    private final SectionAssembler.OnSectionListener[] mSectionListeners =
+            new SectionAssembler.OnSectionListener[Mpeg.PID_MAX + 1];
+    private final OnPcrListener[] mPcrListeners = new OnPcrListener[Mpeg.PID_MAX + 1];
+
+    private final PesAssembler mPesAssembler;
+    private final SectionAssembler mSectionAssembler;
+    private final TsPacket mPacket = new TsPacket();
+
+    // position in the stream of the next byte to process
+    private long mPosition;
+    private long mPacketCount;
+    private long mInvalidPacketCount;
+    private long mProcessTimeNs;
+
+    public TsDemux() {
+        mPesAssembler = new PesAssembler();
+        mPesAssembler.setOnPesListener(this::dispatchPes);
+        mSectionAssembler = new SectionAssembler();
+        mSectionAssembler.setOnSectionListener(this::dispatchSection);
+    }
+
+    public void addPesPid(int pid, PesAssembler.OnPesListener listener) {
+        if (!isValidPid(pid)) {
+            return;
+        }
+        mPesListeners[pid] = listener;
+        mPesAssembler.addPid(pid);
+        mHandlers[pid] |= HANDLER_PES;
+    }
+
+    public void addSectionPid(int pid, SectionAssembler.OnSectionListener listener) {
+        if (!isValidPid(pid)) {
+            return;
+        }
+        mSectionListeners[pid] = listener;
+        mSectionAssembler.addPid(pid);
+        mHandlers[pid] |= HANDLER_SECTION;
+    }
+
+    public void addPcrPid(int pid, OnPcrListener listener) {
+        if (!isValidPid(pid)) {
+            return;
+        }
+        mPcrListeners[pid] = listener;
+        mHandlers[pid] |= HANDLER_PCR;
+    }
+
+    /**
+     * Remove every handler registered on pid.
+     */
+    public void removePid(int pid) {
+        if (!isValidPid(pid)) {
+            return;
+        }
+        mHandlers[pid] = 0;
+        mPesAssembler.removePid(pid);
+        mSectionAssembler.removePid(pid);
+        mPesListeners[pid] = null;
+        mSectionListeners[pid] = null;
+        mPcrListeners[pid] = null;
+    }
+
+    /**
+     * Drop pes and sections being reassembled, handlers are kept.
+     */
+    public void flush() {
+        mPesAssembler.flush();
+        mSectionAssembler.flush();
+    }
+
+    /**
+     * Demultiplex every complete ts packet of bytes[offset, offset + size).
+     *
+     * @return bytes processed, always a multiple of ts packet size
+     */
+    public int process(byte[] bytes, int offset, int size) {
+        long startNs = System.nanoTime();
+
+        TsPacket packet = mPacket;
+        byte[] handlers = mHandlers;
+        int end = offset + size - Mpeg.TS_PACKET_SIZE;
+        int pos = offset;
+        for (; pos <= end; pos += Mpeg.TS_PACKET_SIZE) {
+            packet.wrap(bytes, pos);
+            if (!packet.isValid()) {
+                mInvalidPacketCount++;
+                continue;
+            }
+
+            int pid = packet.getPid();
+            int handler = handlers[pid];
+            if (handler == 0) {
+                continue;
+            }
+            if ((handler & HANDLER_PCR) != 0 && packet.hasPcr()) {
+                mPcrListeners[pid].onPcr(pid, packet.getPcr(), packet.getPcrExt());
+            }
+            if ((handler & HANDLER_PES) != 0) {
+                mPesAssembler.setPacketPosition(mPosition + pos - offset);
+                mPesAssembler.consumePacket(packet);
+            }
+            if ((handler & HANDLER_SECTION) != 0) {
+                mSectionAssembler.consumePacket(packet);
+            }
+        }
+
+        int processed = pos - offset;
+        mPosition += processed;
+        mPacketCount += processed / Mpeg.TS_PACKET_SIZE;
+        mProcessTimeNs += System.nanoTime() - startNs;
+        return processed;
+    }
+
+    /**
+     * Sets position in the stream of the next byte given to process, for {@link Pes#getPosition()}.
+     * Position starts at 0 and is incremented by bytes processed.
+     */
+    public void setPosition(long position) {
+        mPosition = position;
+    }
+
+    public long getPosition() {
+        return mPosition;
+    }
+
+    public long getPacketCount() {
+        return mPacketCount;
+    }
+
+    public long getInvalidPacketCount() {
+        return mInvalidPacketCount;
+    }
+
+    /**
+     * @return packets demultiplexed per second of processing time, handlers included
+     */
+    public long getPacketsPerSecond() {
+        if (mProcessTimeNs <= 0) {
+            return 0;
+        }
+        return mPacketCount * 1000000000L / mProcessTimeNs;
+    }
+
+    public PesAssembler getPesAssembler() {
+        return mPesAssembler;
+    }
+
+    public SectionAssembler getSectionAssembler() {
+        return mSectionAssembler;
+    }
+
+    private void dispatchPes(int pid, Pes pes) {
+        PesAssembler.OnPesListener listener = mPesListeners[pid];
+        if (listener != null) {
+            listener.onPes(pid, pes);
+        }
+    }
+
+    private void dispatchSection(int pid, byte[] section, int offset, int length) {
+        SectionAssembler.OnSectionListener listener = mSectionListeners[pid];
+        if (listener != null) {
+            listener.onSection(pid, section, offset, length);
+        }
+    }
+
+    private static boolean isValidPid(int pid) {
+        return pid >= 0 && pid <= Mpeg.PID_MAX;
+    }
+}
@@ -26,6 +26,9 @@ public class Pes {
     private long mDts;
     private boolean mRandomAccessPoint;
     private boolean mHeaderParsed;
+    private long mPosition = -1;
+
+    private final BufferParser mParser = new BufferParser();
 
     // building attributes
     private boolean mAccumulating;
@@ -38,6 +41,18 @@ public class Pes {
         return mRandomAccessPoint;
     }
 
+    /**
+     * @return position in bytes, in the demultiplexed stream, of the ts packet starting the pes,
+     * -1 if unknown
+     */
+    public long getPosition() {
+        return mPosition;
+    }
+
+    public void setPosition(long position) {
+        mPosition = position;
+    }
+
     public void release() {
         reset();
     }
@@ -98,6 +113,7 @@ public class Pes {
         mHasDts = false;
         mDts = 0;
         mHeaderParsed = false;
+        mPosition = -1;
 
         mRandomAccessPoint = false;
     }
@@ -154,7 +170,7 @@ public class Pes {
         if (mData.limit() < Mpeg.PES_MIN_HEADER_SIZE + pesHeaderDataLength)
             return;
 
-        BufferParser parser = new BufferParser();
+        BufferParser parser = mParser;
         parser.setBytes(bytes, 0);
         int startCodePrefix = parser.readInt(24, "Packet start code prefix");
         if (startCodePrefix != 1) {
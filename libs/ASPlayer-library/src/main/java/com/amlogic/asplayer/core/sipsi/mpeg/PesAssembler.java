@@ -0,0 +1,215 @@
+package com.amlogic.asplayer.core.sipsi.mpeg;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reassembles pes of several pids from a stream of ts packets.
+ * Buffers come from a {@link PesBufferPool} and are sized from the previous pes of the same pid,
+ * so once every pid has seen its largest pes, no more allocation happens.
+ *
+ * Completed pes are given to {@link OnPesListener} with header already parsed,
+ * the pes and its data are only valid during the callback.
+ */
+public class PesAssembler {
+
+    public interface OnPesListener {
+        void onPes(int pid, Pes pes);
+    }
+
+    private static class Stream {
+        final int mPid;
+        final Pes mPes = new Pes();
+        ByteBuffer mBuffer;
+        boolean mAccumulating;
+        int mLastContinuityCounter = -1;
+        // size of the largest pes seen on this pid, used to choose buffers
+        int mSizeHint;
+
+        Stream(int pid) {
+            mPid = pid;
+        }
+    }
+
+    private static final int INITIAL_SIZE_HINT = 8 * 1024;
+
+    private final Stream[] mStreams = new Stream[Mpeg.PID_MAX + 1];
+    private final PesBufferPool mPool;
+    private OnPesListener mListener;
+
+    // position of the packet being consumed, given to pes it starts
+    private long mPacketPosition = -1;
+
+    private long mPesCount;
+    private long mContinuityErrorCount;
+    private long mTruncatedPesCount;
+
+    public PesAssembler() {
+        this(new PesBufferPool());
+    }
+
+    public PesAssembler(PesBufferPool pool) {
+        mPool = pool;
+    }
+
+    public void setOnPesListener(OnPesListener listener) {
+        mListener = listener;
+    }
+
+    public void addPid(int pid) {
+        if (pid < 0 || pid > Mpeg.PID_MAX || mStreams[pid] != null) {
+            return;
+        }
+        Stream stream = new Stream(pid);
+        stream.mSizeHint = INITIAL_SIZE_HINT;
+        mStreams[pid] = stream;
+    }
+
+    public void removePid(int pid) {
+        if (pid < 0 || pid > Mpeg.PID_MAX || mStreams[pid] == null) {
+            return;
+        }
+        abort(mStreams[pid]);
+        mStreams[pid] = null;
+    }
+
+    public boolean hasPid(int pid) {
+        return pid >= 0 && pid <= Mpeg.PID_MAX && mStreams[pid] != null;
+    }
+
+    /**
+     * Drop pes being reassembled on every pid, pids are kept.
+     */
+    public void flush() {
+        for (Stream stream : mStreams) {
+            if (stream != null) {
+                abort(stream);
+            }
+        }
+    }
+
+    /**
+     * Sets position in the stream of the next packet given to {@link #consumePacket(TsPacket)},
+     * reported by {@link Pes#getPosition()} of the pes it starts.
+     */
+    public void setPacketPosition(long position) {
+        mPacketPosition = position;
+    }
+
+    public void consumePacket(TsPacket packet) {
+        Stream stream = mStreams[packet.getPid()];
+        if (stream == null || !packet.hasPayload()) {
+            return;
+        }
+
+        int continuityCounter = packet.getContinuityCounter();
+        int lastContinuityCounter = stream.mLastContinuityCounter;
+        stream.mLastContinuityCounter = continuityCounter;
+
+        if (packet.isUnitStart()) {
+            if (stream.mAccumulating) {
+                // pes without length end at the next unit start
+                if (isUnbounded(stream)) {
+                    complete(stream);
+                } else {
+                    mTruncatedPesCount++;
+                    abort(stream);
+                }
+            }
+            start(stream);
+            push(stream, packet);
+        } else if (stream.mAccumulating) {
+            if (continuityCounter == lastContinuityCounter) {
+                // duplicated packet
+                return;
+            } else if (((lastContinuityCounter + 1) & 0xf) != continuityCounter) {
+                // data is missing, drop pes and wait for next unit start
+                mContinuityErrorCount++;
+                abort(stream);
+                return;
+            }
+            push(stream, packet);
+        }
+
+        if (stream.mAccumulating && stream.mPes.isComplete()) {
+            complete(stream);
+        }
+    }
+
+    public long getPesCount() {
+        return mPesCount;
+    }
+
+    public long getContinuityErrorCount() {
+        return mContinuityErrorCount;
+    }
+
+    public long getTruncatedPesCount() {
+        return mTruncatedPesCount;
+    }
+
+    public PesBufferPool getPool() {
+        return mPool;
+    }
+
+    private void start(Stream stream) {
+        stream.mBuffer = mPool.obtain(stream.mSizeHint);
+        stream.mPes.setByteBuffer(stream.mBuffer);
+        stream.mPes.reset();
+        stream.mPes.setPosition(mPacketPosition);
+        stream.mAccumulating = true;
+    }
+
+    private void push(Stream stream, TsPacket packet) {
+        int payloadPos = packet.getPesPayloadPos();
+        if (payloadPos < 0) {
+            return;
+        }
+
+        int required = stream.mBuffer.position() + packet.getOffset() + Mpeg.TS_PACKET_SIZE - payloadPos;
+        if (required > stream.mBuffer.capacity()) {
+            ByteBuffer buffer = mPool.obtain(Math.max(required, stream.mBuffer.capacity() * 2));
+            stream.mBuffer.flip();
+            buffer.put(stream.mBuffer);
+            mPool.recycle(stream.mBuffer);
+            stream.mBuffer = buffer;
+            stream.mPes.setByteBuffer(buffer);
+        }
+        stream.mPes.pushPesPayload(packet);
+    }
+
+    private void complete(Stream stream) {
+        Pes pes = stream.mPes;
+        int size = stream.mBuffer.position();
+        if (size > stream.mSizeHint) {
+            stream.mSizeHint = size;
+        }
+
+        pes.finish();
+        pes.parseHeader();
+        if (pes.isHeaderParsed()) {
+            mPesCount++;
+            if (mListener != null) {
+                mListener.onPes(stream.mPid, pes);
+            }
+        }
+        abort(stream);
+    }
+
+    private void abort(Stream stream) {
+        if (stream.mBuffer != null) {
+            stream.mPes.reset();
+            mPool.recycle(stream.mBuffer);
+            stream.mBuffer = null;
+        }
+        stream.mAccumulating = false;
+    }
+
+    private boolean isUnbounded(Stream stream) {
+        ByteBuffer buffer = stream.mBuffer;
+        if (buffer.position() < Mpeg.PES_MIN_HEADER_SIZE) {
+            return false;
+        }
+        byte[] bytes = buffer.array();
+        return bytes[4] == 0 && bytes[5] == 0;
+    }
+}
@@ -0,0 +1,104 @@
+package com.amlogic.asplayer.core.sipsi.mpeg;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pool of heap ByteBuffers used to reassemble pes.
+ * Buffers are grouped in size classes, requests bigger than the largest class are served by
+ * large buffers rounded up to {@link #LARGE_BUFFER_GRANULARITY} and kept for reuse as well.
+ */
+public class PesBufferPool {
+
+    private static final int[] SIZE_CLASSES = {
+            8 * 1024, 32 * 1024, 128 * 1024, 512 * 1024
+    };
+    private static final int LARGE_BUFFER_GRANULARITY = 1024 * 1024;
+    private static final int MAX_FREE_BUFFERS_PER_CLASS = 8;
+
+    // free buffers of each size class, indexed like SIZE_CLASSES
+    private final List<ArrayDeque<ByteBuffer>> mFreeBuffers;
+    private final ArrayDeque<ByteBuffer> mFreeLargeBuffers;
+
+    private long mAllocationCount;
+
+    public PesBufferPool() {
+        mFreeBuffers = new ArrayList<>(SIZE_CLASSES.length);
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            mFreeBuffers.add(new ArrayDeque<>(MAX_FREE_BUFFERS_PER_CLASS));
+        }
+        mFreeLargeBuffers = new ArrayDeque<>(MAX_FREE_BUFFERS_PER_CLASS);
+    }
+
+    /**
+     * @return a cleared buffer with a backing array starting at offset 0,
+     *  and a capacity of at least minCapacity
+     */
+    public ByteBuffer obtain(int minCapacity) {
+        ByteBuffer buffer = null;
+        int sizeClass = getSizeClass(minCapacity);
+        if (sizeClass >= 0) {
+            buffer = mFreeBuffers.get(sizeClass).pollFirst();
+            if (buffer == null) {
+                buffer = allocate(SIZE_CLASSES[sizeClass]);
+            }
+        } else {
+            int count = mFreeLargeBuffers.size();
+            for (int i = 0; i < count; i++) {
+                ByteBuffer candidate = mFreeLargeBuffers.pollFirst();
+                if (candidate.capacity() >= minCapacity) {
+                    buffer = candidate;
+                    break;
+                }
+                mFreeLargeBuffers.addLast(candidate);
+            }
+            if (buffer == null) {
+                int capacity = (minCapacity + LARGE_BUFFER_GRANULARITY - 1)
+                        / LARGE_BUFFER_GRANULARITY * LARGE_BUFFER_GRANULARITY;
+                buffer = allocate(capacity);
+            }
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    public void recycle(ByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+
+        ArrayDeque<ByteBuffer> freeBuffers = mFreeLargeBuffers;
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            if (buffer.capacity() == SIZE_CLASSES[i]) {
+                freeBuffers = mFreeBuffers.get(i);
+                break;
+            }
+        }
+        if (freeBuffers.size() < MAX_FREE_BUFFERS_PER_CLASS) {
+            freeBuffers.addFirst(buffer);
+        }
+    }
+
+    /**
+     * @return number of buffers allocated since the pool was created
+     */
+    public long getAllocationCount() {
+        return mAllocationCount;
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        mAllocationCount++;
+        return ByteBuffer.allocate(capacity);
+    }
+
+    private static int getSizeClass(int capacity) {
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            if (capacity <= SIZE_CLASSES[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,271 @@
+package com.amlogic.asplayer.core.source;
+
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import com.amlogic.asplayer.core.ASPlayerLog;
+import com.amlogic.asplayer.core.sipsi.mpeg.Mpeg;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Common part of DataSources of a local ts file : opening, positions, and positions in us
+ * found in the sidecar index of the file, see {@link TsIndexWriter}.
+ *
+ * A growing file (recording in progress) has no end, reads at its current end return 0 instead
+ * of -1. {@link #updateTimeline()} takes new size of file and new entries of its index.
+ */
+public abstract class BaseFileDataSource implements DataSource {
+
+    private final boolean mGrowing;
+
+    private DataSourceLocator mLocator;
+    protected File mFile;
+
+    private FileInputStream mInputStream;
+    protected FileChannel mChannel;
+    private ParcelFileDescriptor mParcelFD;
+    private TsIndexReader mIndex;
+
+    // end of file, in whole ts packets
+    protected volatile long mEndPosition;
+    protected long mPosition;
+
+    protected BaseFileDataSource(File file, boolean growing) {
+        mFile = file;
+        mGrowing = growing;
+    }
+
+    protected abstract String getName();
+
+    /**
+     * Called once file is opened, mChannel and mEndPosition are set.
+     */
+    protected void onOpened() throws IOException {
+    }
+
+    /**
+     * Called before file is closed.
+     */
+    protected void onClosing() {
+    }
+
+    public boolean isGrowing() {
+        return mGrowing;
+    }
+
+    @Override
+    public void setLocator(DataSourceLocator locator) {
+        mLocator = locator;
+        Uri uri = (locator.uriForSource != null) ? locator.uriForSource : locator.rawUri;
+        mFile = (uri != null && uri.getPath() != null) ? new File(uri.getPath()) : null;
+    }
+
+    @Override
+    public DataSourceLocator getLocator() {
+        return mLocator;
+    }
+
+    @Override
+    public void setUseCache(boolean use) {
+        if (use && !isCacheable())
+            ASPlayerLog.w("%s %s is not cacheable", getName(), mFile);
+    }
+
+    @Override
+    public void updateTimeline() {
+        if (mChannel == null)
+            return;
+        try {
+            updateEndPosition();
+        } catch (IOException exception) {
+            ASPlayerLog.w("%s %s, failed to get size: %s", getName(), mFile,
+                    exception.getMessage());
+        }
+        if (mIndex != null) {
+            try {
+                mIndex.refresh();
+            } catch (IOException exception) {
+                ASPlayerLog.w("%s %s, failed to refresh index: %s", getName(), mFile,
+                        exception.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return mChannel != null;
+    }
+
+    @Override
+    public void open() throws IOException {
+        if (mChannel != null)
+            return;
+        if (mFile == null)
+            throw new IOException("no file");
+
+        mInputStream = new FileInputStream(mFile);
+        mChannel = mInputStream.getChannel();
+        mPosition = 0;
+        updateEndPosition();
+
+        File indexFile = TsIndexWriter.getIndexFile(mFile);
+        if (indexFile.exists()) {
+            TsIndexReader index = new TsIndexReader(indexFile);
+            try {
+                index.open();
+                mIndex = index;
+            } catch (IOException exception) {
+                // file is still playable, without positions in us
+                ASPlayerLog.w("%s %s, failed to open index: %s", getName(), mFile,
+                        exception.getMessage());
+            }
+        }
+
+        try {
+            onOpened();
+        } catch (IOException exception) {
+            close();
+            throw exception;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (mChannel != null)
+            onClosing();
+        if (mIndex != null) {
+            mIndex.close();
+            mIndex = null;
+        }
+        if (mParcelFD != null) {
+            try {
+                mParcelFD.close();
+            } catch (IOException ignored) {
+            }
+            mParcelFD = null;
+        }
+        if (mInputStream != null) {
+            try {
+                mInputStream.close();
+            } catch (IOException ignored) {
+            }
+            mInputStream = null;
+        }
+        mChannel = null;
+    }
+
+    @Override
+    public int read(byte[] tsPackets) throws IOException {
+        return read(tsPackets, 0, tsPackets.length);
+    }
+
+    @Override
+    public long setPositionInBytes(long position) {
+        mPosition = Math.max(0, Math.min(position, mEndPosition));
+        return mPosition;
+    }
+
+    @Override
+    public long getPositionInBytes() {
+        return mPosition;
+    }
+
+    /**
+     * Moves to the key frame at or before positionUs.
+     *
+     * @return position in us reached, -1 if unknown, position is then not changed
+     */
+    @Override
+    public long setPositionInUs(long positionUs) {
+        long position = getPositionInBytes(positionUs);
+        if (position < 0)
+            return -1;
+        setPositionInBytes(position);
+        return getPositionInUs(position);
+    }
+
+    @Override
+    public long getPositionInUs() {
+        return getPositionInUs(mPosition);
+    }
+
+    @Override
+    public long getEndPositionInBytes() {
+        return mEndPosition;
+    }
+
+    @Override
+    public long getEndPositionInUs() {
+        return mIndex != null ? mIndex.getEndPositionInUs() : -1;
+    }
+
+    @Override
+    public long getStartPositionInBytes() {
+        return 0;
+    }
+
+    @Override
+    public long getStartPositionInUs() {
+        return mIndex != null ? mIndex.getStartPositionInUs() : -1;
+    }
+
+    @Override
+    public long getPositionInBytes(long timestampUs) {
+        return mIndex != null ? mIndex.getPositionInBytes(timestampUs) : -1;
+    }
+
+    @Override
+    public long getPositionInUs(long position) {
+        return mIndex != null ? mIndex.getPositionInUs(position) : -1;
+    }
+
+    @Override
+    public ParcelFileDescriptor getParcelFD() {
+        if (mParcelFD == null && mInputStream != null) {
+            try {
+                mParcelFD = ParcelFileDescriptor.dup(mInputStream.getFD());
+            } catch (IOException exception) {
+                ASPlayerLog.w("%s %s, failed to dup fd: %s", getName(), mFile,
+                        exception.getMessage());
+            }
+        }
+        return mParcelFD;
+    }
+
+    /**
+     * Data is read on demand from page cache, nothing is buffered ahead.
+     */
+    @Override
+    public boolean isBuffered() {
+        return false;
+    }
+
+    /**
+     * @return true if there is data at position, end of file is read again if needed
+     */
+    protected boolean hasDataAtPosition() throws IOException {
+        if (mChannel == null)
+            throw new IOException("not opened");
+        if (mPosition < mEndPosition)
+            return true;
+        // file may be growing
+        updateEndPosition();
+        return mPosition < mEndPosition;
+    }
+
+    /**
+     * @return value returned by read when there is no data at position
+     */
+    protected int getNoDataResult() {
+        return mGrowing ? 0 : -1;
+    }
+
+    private void updateEndPosition() throws IOException {
+        long size = mChannel.size();
+        mEndPosition = size - size % Mpeg.TS_PACKET_SIZE;
+    }
+}
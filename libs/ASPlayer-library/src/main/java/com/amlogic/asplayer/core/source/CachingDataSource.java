@@ -0,0 +1,406 @@
+package com.amlogic.asplayer.core.source;
+
+import android.os.ParcelFileDescriptor;
+
+import com.amlogic.asplayer.core.ASPlayerLog;
+import com.amlogic.asplayer.core.sipsi.mpeg.Mpeg;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * DataSource keeping blocks of another one in a LRU cache, for slow storage (eMMC, USB) used by
+ * time-shift. Blocks are read ahead of position, asynchronously, in the direction of the speed
+ * given by {@link #setSpeed(double)}.
+ *
+ * Reads are served from cache, a missing block is read synchronously. Source is accessed by one
+ * thread at a time, either the reader or the prefetch executor. A block cut by the end of a
+ * growing source is read again once position goes beyond its end.
+ */
+public class CachingDataSource implements DataSource {
+
+    public static final int BLOCK_SIZE = Mpeg.TS_PACKET_SIZE * 1024;
+    public static final int DEFAULT_BLOCK_COUNT = 32;
+    public static final int DEFAULT_PREFETCH_BLOCK_COUNT = 4;
+
+    private static class Block {
+        final byte[] data = new byte[BLOCK_SIZE];
+        int length;
+    }
+
+    private final DataSource mSource;
+    private final int mBlockCount;
+    private final int mPrefetchBlockCount;
+
+    // blocks by index, in access order
+    private final LinkedHashMap<Long, Block> mBlocks;
+    private final ArrayDeque<Block> mFreeBlocks = new ArrayDeque<>();
+    private final Object mSourceLock = new Object();
+
+    private Executor mPrefetchExecutor;
+    private ExecutorService mOwnedExecutor;
+    private boolean mPrefetchPending;
+    private final Runnable mPrefetchTask = this::prefetch;
+
+    private boolean mUseCache = true;
+    private volatile boolean mForward = true;
+    private volatile long mPosition;
+
+    // counters
+    private long mHitCount;
+    private long mMissCount;
+    private long mPrefetchCount;
+    private long mPrefetchTotalTimeNs;
+    private long mPrefetchMaxTimeNs;
+
+    public CachingDataSource(DataSource source) {
+        this(source, DEFAULT_BLOCK_COUNT, DEFAULT_PREFETCH_BLOCK_COUNT, null);
+    }
+
+    /**
+     * @param prefetchExecutor executor running read ahead, a single thread is created when null
+     */
+    public CachingDataSource(DataSource source, int blockCount, int prefetchBlockCount,
+                             Executor prefetchExecutor) {
+        mSource = source;
+        mBlockCount = blockCount;
+        mPrefetchBlockCount = Math.min(prefetchBlockCount, blockCount - 1);
+        mPrefetchExecutor = prefetchExecutor;
+        mBlocks = new LinkedHashMap<Long, Block>(blockCount, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Block> eldest) {
+                if (size() <= mBlockCount)
+                    return false;
+                mFreeBlocks.push(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    public DataSource getSource() {
+        return mSource;
+    }
+
+    /**
+     * Sets direction of read ahead, backward for negative speeds.
+     */
+    public void setSpeed(double speed) {
+        mForward = speed >= 0;
+    }
+
+    @Override
+    public void setLocator(DataSourceLocator locator) {
+        mSource.setLocator(locator);
+    }
+
+    @Override
+    public DataSourceLocator getLocator() {
+        return mSource.getLocator();
+    }
+
+    @Override
+    public boolean isCacheable() {
+        return mSource.isCacheable();
+    }
+
+    @Override
+    public void setUseCache(boolean use) {
+        mUseCache = use;
+        if (!use)
+            clearCache();
+    }
+
+    @Override
+    public void updateTimeline() {
+        synchronized (mSourceLock) {
+            mSource.updateTimeline();
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return mSource.isOpen();
+    }
+
+    @Override
+    public void open() throws IOException {
+        synchronized (mSourceLock) {
+            mSource.open();
+        }
+        if (mPrefetchExecutor == null) {
+            mOwnedExecutor = Executors.newSingleThreadExecutor();
+            mPrefetchExecutor = mOwnedExecutor;
+        }
+        mPosition = 0;
+    }
+
+    @Override
+    public void close() {
+        if (mOwnedExecutor != null) {
+            mOwnedExecutor.shutdownNow();
+            mOwnedExecutor = null;
+            mPrefetchExecutor = null;
+        }
+        synchronized (mSourceLock) {
+            mSource.close();
+        }
+        clearCache();
+    }
+
+    @Override
+    public int read(byte[] tsPackets) throws IOException {
+        return read(tsPackets, 0, tsPackets.length);
+    }
+
+    /**
+     * @return bytes read, up to the end of the block at position, or result of source read
+     * at its end
+     */
+    @Override
+    public int read(byte[] tsPackets, int offset, int length) throws IOException {
+        long position = mPosition;
+        if (!mUseCache) {
+            int read;
+            synchronized (mSourceLock) {
+                mSource.setPositionInBytes(position);
+                read = mSource.read(tsPackets, offset, length);
+            }
+            if (read > 0)
+                mPosition = position + read;
+            return read;
+        }
+
+        long index = position / BLOCK_SIZE;
+        int offsetInBlock = (int) (position % BLOCK_SIZE);
+        int read = copyFromBlock(index, offsetInBlock, tsPackets, offset, length);
+        int endResult = -1;
+        if (read < 0) {
+            synchronized (this) {
+                mMissCount++;
+            }
+            synchronized (mSourceLock) {
+                // block may have been read ahead while waiting
+                read = copyFromBlock(index, offsetInBlock, tsPackets, offset, length);
+                if (read < 0) {
+                    endResult = loadBlock(index);
+                    read = copyFromBlock(index, offsetInBlock, tsPackets, offset, length);
+                }
+            }
+        } else {
+            synchronized (this) {
+                mHitCount++;
+            }
+        }
+        if (read < 0)
+            return endResult;
+
+        mPosition = position + read;
+        schedulePrefetch();
+        return read;
+    }
+
+    @Override
+    public long setPositionInBytes(long position) {
+        mPosition = Math.max(0, position);
+        return mPosition;
+    }
+
+    @Override
+    public long getPositionInBytes() {
+        return mPosition;
+    }
+
+    @Override
+    public long setPositionInUs(long positionUs) {
+        long position = getPositionInBytes(positionUs);
+        if (position < 0)
+            return -1;
+        setPositionInBytes(position);
+        return getPositionInUs(position);
+    }
+
+    @Override
+    public long getPositionInUs() {
+        return getPositionInUs(mPosition);
+    }
+
+    @Override
+    public long getEndPositionInBytes() {
+        return mSource.getEndPositionInBytes();
+    }
+
+    @Override
+    public long getEndPositionInUs() {
+        return mSource.getEndPositionInUs();
+    }
+
+    @Override
+    public long getStartPositionInBytes() {
+        return mSource.getStartPositionInBytes();
+    }
+
+    @Override
+    public long getStartPositionInUs() {
+        return mSource.getStartPositionInUs();
+    }
+
+    @Override
+    public long getPositionInBytes(long timestampUs) {
+        return mSource.getPositionInBytes(timestampUs);
+    }
+
+    @Override
+    public long getPositionInUs(long position) {
+        return mSource.getPositionInUs(position);
+    }
+
+    @Override
+    public ParcelFileDescriptor getParcelFD() {
+        return mSource.getParcelFD();
+    }
+
+    @Override
+    public boolean isBuffered() {
+        return mUseCache;
+    }
+
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * @return ratio of reads served from cache, 0 before first read
+     */
+    public synchronized double getHitRate() {
+        long total = mHitCount + mMissCount;
+        return total == 0 ? 0 : (double) mHitCount / total;
+    }
+
+    public synchronized long getPrefetchCount() {
+        return mPrefetchCount;
+    }
+
+    public synchronized long getPrefetchAverageTimeUs() {
+        return mPrefetchCount == 0 ? 0 : mPrefetchTotalTimeNs / mPrefetchCount / 1000;
+    }
+
+    public synchronized long getPrefetchMaxTimeUs() {
+        return mPrefetchMaxTimeNs / 1000;
+    }
+
+    private void clearCache() {
+        synchronized (mBlocks) {
+            for (Block block : mBlocks.values())
+                mFreeBlocks.push(block);
+            mBlocks.clear();
+        }
+    }
+
+    /**
+     * @return bytes copied, -1 if block is not cached or ends before offsetInBlock
+     */
+    private int copyFromBlock(long index, int offsetInBlock, byte[] dst, int offset, int length) {
+        synchronized (mBlocks) {
+            Block block = mBlocks.get(index);
+            if (block == null || offsetInBlock >= block.length)
+                return -1;
+            int size = Math.min(length, block.length - offsetInBlock);
+            System.arraycopy(block.data, offsetInBlock, dst, offset, size);
+            return size;
+        }
+    }
+
+    private boolean isBlockComplete(long index) {
+        synchronized (mBlocks) {
+            Block block = mBlocks.get(index);
+            return block != null && block.length == BLOCK_SIZE;
+        }
+    }
+
+    /**
+     * Reads a block from source, caller holds mSourceLock.
+     *
+     * @return result of the last source read, when block is not complete
+     */
+    private int loadBlock(long index) throws IOException {
+        Block block;
+        synchronized (mBlocks) {
+            block = mFreeBlocks.isEmpty() ? new Block() : mFreeBlocks.pop();
+        }
+        block.length = 0;
+        mSource.setPositionInBytes(index * BLOCK_SIZE);
+        int read = 0;
+        while (block.length < BLOCK_SIZE) {
+            read = mSource.read(block.data, block.length, BLOCK_SIZE - block.length);
+            if (read <= 0)
+                break;
+            block.length += read;
+        }
+        synchronized (mBlocks) {
+            if (block.length == 0) {
+                mFreeBlocks.push(block);
+                return read;
+            }
+            Block previous = mBlocks.put(index, block);
+            if (previous != null)
+                mFreeBlocks.push(previous);
+        }
+        return read;
+    }
+
+    private void schedulePrefetch() {
+        Executor executor = mPrefetchExecutor;
+        if (executor == null || mPrefetchBlockCount <= 0)
+            return;
+        synchronized (this) {
+            if (mPrefetchPending)
+                return;
+            mPrefetchPending = true;
+        }
+        executor.execute(mPrefetchTask);
+    }
+
+    private void prefetch() {
+        try {
+            for (int i = 1; i <= mPrefetchBlockCount; i++) {
+                // position is read again, reader may have moved
+                long index = mPosition / BLOCK_SIZE + (mForward ? i : -i);
+                if (index < 0 || !mUseCache)
+                    break;
+                long end = mSource.getEndPositionInBytes();
+                if (end >= 0 && index * BLOCK_SIZE >= end)
+                    break;
+                if (isBlockComplete(index))
+                    continue;
+
+                long startNs = System.nanoTime();
+                synchronized (mSourceLock) {
+                    if (!mSource.isOpen())
+                        break;
+                    loadBlock(index);
+                }
+                long elapsedNs = System.nanoTime() - startNs;
+                synchronized (this) {
+                    mPrefetchCount++;
+                    mPrefetchTotalTimeNs += elapsedNs;
+                    mPrefetchMaxTimeNs = Math.max(mPrefetchMaxTimeNs, elapsedNs);
+                }
+            }
+        } catch (IOException exception) {
+            ASPlayerLog.w("CachingDataSource prefetch failed: %s", exception.getMessage());
+        } finally {
+            synchronized (this) {
+                mPrefetchPending = false;
+            }
+        }
+    }
+}
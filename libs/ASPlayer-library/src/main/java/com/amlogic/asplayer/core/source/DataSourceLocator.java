@@ -9,6 +9,11 @@ public class DataSourceLocator {
     public static final int SOURCE_UNKNOWN = 0;
     public static final int SOURCE_FILE = 2;
     public static final int SOURCE_HLS = 3;
+    public static final int SOURCE_MAPPED_FILE = 4;
+    // file being recorded, for time-shift
+    public static final int SOURCE_GROWING_FILE = 5;
+    // unix pipe or fifo
+    public static final int SOURCE_PIPE = 6;
 
     public static final int CONTAINER_UNKNOWN = 0;
     public static final int CONTAINER_TS = 1;
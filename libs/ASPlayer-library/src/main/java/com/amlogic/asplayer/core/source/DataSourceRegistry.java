@@ -0,0 +1,155 @@
+package com.amlogic.asplayer.core.source;
+
+import android.net.Uri;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates DataSources from locators, by source type.
+ * Default factories are registered for file, mapped file, growing file and pipe sources,
+ * an application can register others or replace them.
+ *
+ * Sources created here read ahead on threads shared by every source, so that the player can
+ * pull data at its own pace without a feeder thread per source. Pipes are polled without blocking
+ * on a single scheduled thread, blocking reads of files run on a separate pool, so that a slow
+ * storage doesn't delay the polls.
+ */
+public class DataSourceRegistry {
+
+    public interface Factory {
+        DataSource create(DataSourceLocator locator);
+    }
+
+    private static final String READ_AHEAD_THREAD_NAME = "ASPlayer-readahead";
+    private static final String FILE_READ_AHEAD_THREAD_NAME = "ASPlayer-readahead-io";
+    // a pool thread per player reading ahead at the same time (main and pip)
+    private static final int FILE_READ_AHEAD_THREAD_COUNT = 2;
+    private static final long FILE_READ_AHEAD_KEEP_ALIVE_S = 30;
+
+    private static final Factory[] sFactories = new Factory[16];
+    private static ScheduledExecutorService sReadAheadExecutor;
+    private static ExecutorService sFileReadAheadExecutor;
+
+    static {
+        register(DataSourceLocator.SOURCE_FILE, locator ->
+                new CachingDataSource(new FileDataSource(null, false),
+                        CachingDataSource.DEFAULT_BLOCK_COUNT,
+                        CachingDataSource.DEFAULT_PREFETCH_BLOCK_COUNT,
+                        getFileReadAheadExecutor()));
+        register(DataSourceLocator.SOURCE_MAPPED_FILE, locator -> {
+            MappedFileDataSource source = new MappedFileDataSource(null, false);
+            source.setReadAheadExecutor(getFileReadAheadExecutor());
+            return source;
+        });
+        register(DataSourceLocator.SOURCE_GROWING_FILE, locator ->
+                new CachingDataSource(new FileDataSource(null, true),
+                        CachingDataSource.DEFAULT_BLOCK_COUNT,
+                        CachingDataSource.DEFAULT_PREFETCH_BLOCK_COUNT,
+                        getFileReadAheadExecutor()));
+        register(DataSourceLocator.SOURCE_PIPE, locator -> {
+            PipeDataSource source = new PipeDataSource();
+            source.setReadAheadExecutor(getReadAheadExecutor());
+            return source;
+        });
+    }
+
+    private DataSourceRegistry() {
+    }
+
+    /**
+     * Sets factory of a source type, null to remove it.
+     */
+    public static synchronized void register(int sourceType, Factory factory) {
+        if (sourceType < 0 || sourceType >= sFactories.length)
+            throw new IllegalArgumentException("invalid source type: " + sourceType);
+        sFactories[sourceType] = factory;
+    }
+
+    /**
+     * Creates the source of a locator, its source type is resolved first if unknown.
+     *
+     * @return source with locator set, not opened, null if no factory handles the source type
+     */
+    public static DataSource create(DataSourceLocator locator) {
+        resolve(locator);
+        Factory factory;
+        synchronized (DataSourceRegistry.class) {
+            int sourceType = locator.sourceType;
+            factory = (sourceType >= 0 && sourceType < sFactories.length) ?
+                    sFactories[sourceType] : null;
+        }
+        if (factory == null)
+            return null;
+        DataSource source = factory.create(locator);
+        if (source != null)
+            source.setLocator(locator);
+        return source;
+    }
+
+    /**
+     * Fills unknown source type and uri for source of a local path : a regular file is a
+     * SOURCE_FILE, anything else (fifo) a SOURCE_PIPE.
+     */
+    public static void resolve(DataSourceLocator locator) {
+        if (locator.uriForSource == null)
+            locator.uriForSource = locator.rawUri;
+        if (locator.sourceType != DataSourceLocator.SOURCE_UNKNOWN)
+            return;
+
+        Uri uri = locator.uriForSource;
+        if (uri == null || uri.getPath() == null)
+            return;
+        String scheme = uri.getScheme();
+        if (scheme != null && !"file".equals(scheme))
+            return;
+        File file = new File(uri.getPath());
+        if (!file.exists())
+            return;
+        locator.sourceType = file.isFile() ?
+                DataSourceLocator.SOURCE_FILE : DataSourceLocator.SOURCE_PIPE;
+        if (locator.containerType == DataSourceLocator.CONTAINER_UNKNOWN)
+            locator.containerType = DataSourceLocator.CONTAINER_TS;
+    }
+
+    /**
+     * @return executor shared by sources polling without blocking (pipes), its thread is a daemon
+     */
+    public static synchronized ScheduledExecutorService getReadAheadExecutor() {
+        if (sReadAheadExecutor == null) {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, READ_AHEAD_THREAD_NAME);
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            sReadAheadExecutor = executor;
+        }
+        return sReadAheadExecutor;
+    }
+
+    /**
+     * @return executor shared by sources for blocking reads ahead (files), its threads are
+     * daemons and stop when idle
+     */
+    public static synchronized ExecutorService getFileReadAheadExecutor() {
+        if (sFileReadAheadExecutor == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                    FILE_READ_AHEAD_THREAD_COUNT, FILE_READ_AHEAD_THREAD_COUNT,
+                    FILE_READ_AHEAD_KEEP_ALIVE_S, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, FILE_READ_AHEAD_THREAD_NAME);
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.allowCoreThreadTimeOut(true);
+            sFileReadAheadExecutor = executor;
+        }
+        return sFileReadAheadExecutor;
+    }
+}
@@ -0,0 +1,48 @@
+package com.amlogic.asplayer.core.source;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * DataSource of a local ts file, read with positional reads.
+ * Usually wrapped in a {@link CachingDataSource} to read ahead on slow storage.
+ */
+public class FileDataSource extends BaseFileDataSource {
+
+    public FileDataSource() {
+        this(null, false);
+    }
+
+    /**
+     * @param growing true for a file being recorded, see {@link BaseFileDataSource}
+     */
+    public FileDataSource(File file, boolean growing) {
+        super(file, growing);
+    }
+
+    @Override
+    protected String getName() {
+        return "FileDataSource";
+    }
+
+    @Override
+    public boolean isCacheable() {
+        return true;
+    }
+
+    /**
+     * @return bytes read, -1 at end of file, 0 at end of a growing file
+     */
+    @Override
+    public int read(byte[] tsPackets, int offset, int length) throws IOException {
+        if (!hasDataAtPosition())
+            return getNoDataResult();
+        length = (int) Math.min(length, mEndPosition - mPosition);
+        int read = mChannel.read(ByteBuffer.wrap(tsPackets, offset, length), mPosition);
+        if (read <= 0)
+            return getNoDataResult();
+        mPosition += read;
+        return read;
+    }
+}
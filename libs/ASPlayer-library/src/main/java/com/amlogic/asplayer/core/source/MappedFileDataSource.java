@@ -0,0 +1,204 @@
+package com.amlogic.asplayer.core.source;
+
+import com.amlogic.asplayer.core.ASPlayerLog;
+import com.amlogic.asplayer.core.sipsi.mpeg.Mpeg;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Executor;
+
+/**
+ * DataSource of a local ts file, read through a memory mapped window sliding with position.
+ * Data can be written straight from the mapped window, see {@link #writeTo(Sink, int)},
+ * without read syscalls nor copies to an intermediate buffer.
+ *
+ * With a read ahead executor, the window following the current one is mapped and loaded in
+ * memory before it is reached.
+ */
+public class MappedFileDataSource extends BaseFileDataSource {
+
+    // multiple of ts packet size and of page size, windows never cut a ts packet
+    static final int WINDOW_ALIGNMENT = Mpeg.TS_PACKET_SIZE * 4096;
+    private static final int DEFAULT_WINDOW_COUNT = 16;
+
+    /**
+     * Receives data of the mapped window.
+     */
+    public interface Sink {
+        /**
+         * Writes data between position and limit of buffer, position of buffer doesn't matter
+         * once it returns.
+         *
+         * @return bytes written, negative value on error
+         */
+        long write(ByteBuffer buffer);
+    }
+
+    private static class Window {
+        final long start;
+        final MappedByteBuffer buffer;
+
+        Window(long start, MappedByteBuffer buffer) {
+            this.start = start;
+            this.buffer = buffer;
+        }
+    }
+
+    private final int mWindowSize;
+    private Executor mReadAheadExecutor;
+
+    private Window mWindow;
+    // window mapped and loaded by read ahead
+    private volatile Window mNextWindow;
+    private boolean mReadAheadPending;
+
+    public MappedFileDataSource() {
+        this(null, false);
+    }
+
+    public MappedFileDataSource(File file) {
+        this(file, false);
+    }
+
+    /**
+     * @param growing true for a file being recorded, see {@link BaseFileDataSource}
+     */
+    public MappedFileDataSource(File file, boolean growing) {
+        this(file, growing, DEFAULT_WINDOW_COUNT);
+    }
+
+    /**
+     * @param windowCount size of windows, in WINDOW_ALIGNMENT units
+     */
+    MappedFileDataSource(File file, boolean growing, int windowCount) {
+        super(file, growing);
+        mWindowSize = WINDOW_ALIGNMENT * windowCount;
+    }
+
+    @Override
+    protected String getName() {
+        return "MappedFileDataSource";
+    }
+
+    public void setReadAheadExecutor(Executor executor) {
+        mReadAheadExecutor = executor;
+    }
+
+    /**
+     * File is already in page cache, a cache would only add a copy.
+     */
+    @Override
+    public boolean isCacheable() {
+        return false;
+    }
+
+    @Override
+    protected void onClosing() {
+        // no way to unmap, mapping is released when buffer is collected
+        mWindow = null;
+        mNextWindow = null;
+    }
+
+    /**
+     * @return bytes read, -1 at end of file, 0 at end of a growing file
+     */
+    @Override
+    public int read(byte[] tsPackets, int offset, int length) throws IOException {
+        ByteBuffer window = getWindowAtPosition(length);
+        if (window == null)
+            return getNoDataResult();
+        int size = window.remaining();
+        window.get(tsPackets, offset, size);
+        mPosition += size;
+        return size;
+    }
+
+    /**
+     * Writes data at position to sink, straight from the mapped window, at most maxLength bytes
+     * and never across the end of a window. Position is advanced by the size written.
+     *
+     * @return size written, 0 if sink accepted nothing or at end of a growing file,
+     * -1 at end of file
+     * @throws IOException if sink failed
+     */
+    public int writeTo(Sink sink, int maxLength) throws IOException {
+        ByteBuffer window = getWindowAtPosition(maxLength);
+        if (window == null)
+            return getNoDataResult();
+        long written = sink.write(window);
+        if (written < 0)
+            throw new IOException("write failed: " + written);
+        mPosition += written;
+        return (int) written;
+    }
+
+    /**
+     * @return window positioned at mPosition, limited to maxLength and to the end of window,
+     * null if there is no data
+     */
+    private ByteBuffer getWindowAtPosition(int maxLength) throws IOException {
+        if (!hasDataAtPosition())
+            return null;
+
+        Window window = mWindow;
+        if (window == null || mPosition < window.start
+                || mPosition >= window.start + window.buffer.capacity()) {
+            long windowStart = mPosition - mPosition % WINDOW_ALIGNMENT;
+            Window nextWindow = mNextWindow;
+            if (nextWindow != null && nextWindow.start == windowStart
+                    && mPosition < windowStart + nextWindow.buffer.capacity()) {
+                window = nextWindow;
+            } else {
+                window = map(windowStart);
+            }
+            mWindow = window;
+            mNextWindow = null;
+            scheduleReadAhead(windowStart + window.buffer.capacity());
+        }
+
+        int offset = (int) (mPosition - window.start);
+        int size = Math.min(maxLength, window.buffer.capacity() - offset);
+        window.buffer.limit(offset + size);
+        window.buffer.position(offset);
+        return window.buffer;
+    }
+
+    private Window map(long windowStart) throws IOException {
+        long size = Math.min(mWindowSize, mEndPosition - windowStart);
+        return new Window(windowStart,
+                mChannel.map(FileChannel.MapMode.READ_ONLY, windowStart, size));
+    }
+
+    private void scheduleReadAhead(final long windowStart) {
+        Executor executor = mReadAheadExecutor;
+        // a window cut by end of file would be mapped again
+        if (executor == null || windowStart + mWindowSize > mEndPosition)
+            return;
+        synchronized (this) {
+            if (mReadAheadPending)
+                return;
+            mReadAheadPending = true;
+        }
+        executor.execute(() -> {
+            try {
+                FileChannel channel = mChannel;
+                if (channel == null)
+                    return;
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                        windowStart, mWindowSize);
+                buffer.load();
+                mNextWindow = new Window(windowStart, buffer);
+            } catch (IOException exception) {
+                ASPlayerLog.w("%s %s, read ahead failed: %s", getName(), mFile,
+                        exception.getMessage());
+            } finally {
+                synchronized (this) {
+                    mReadAheadPending = false;
+                }
+            }
+        });
+    }
+}
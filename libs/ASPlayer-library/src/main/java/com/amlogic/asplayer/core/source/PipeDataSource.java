@@ -0,0 +1,330 @@
+package com.amlogic.asplayer.core.source;
+
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+
+import com.amlogic.asplayer.core.ASPlayerLog;
+import com.amlogic.asplayer.core.sipsi.mpeg.Mpeg;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DataSource of a unix pipe or fifo, a stream without positioning.
+ *
+ * With a read ahead executor, the pipe is drained into a ring buffer so that the writer is not
+ * blocked while the reader is busy. As the executor may be shared, it never waits for the pipe :
+ * pipe is opened non blocking, and polled again after a delay when it is empty, longer as long as
+ * it stays empty. While the ring is full, the pipe is not polled, reads resume it.
+ * End of stream is reported once some data was received and the writer closed the pipe.
+ */
+public class PipeDataSource implements DataSource {
+
+    private static final int RING_SIZE = Mpeg.TS_PACKET_SIZE * 2048;
+    private static final long READ_AHEAD_POLL_DELAY_MS = 10;
+    // a 64 KiB pipe fills in about 30 ms at 2 MB/s
+    private static final long READ_AHEAD_MAX_POLL_DELAY_MS = 40;
+
+    private DataSourceLocator mLocator;
+    private File mFile;
+
+    private FileDescriptor mFd;
+    private ParcelFileDescriptor mParcelFD;
+    private ScheduledExecutorService mReadAheadExecutor;
+    private final Runnable mReadAheadTask = this::readAhead;
+
+    // ring buffer, filled by read ahead
+    private final byte[] mRing = new byte[RING_SIZE];
+    private long mRingWriteCount;
+    private long mRingReadCount;
+    private boolean mEndOfStream;
+    private boolean mHasReceivedData;
+    // delay before next poll of an empty pipe
+    private long mPollDelayMs = READ_AHEAD_POLL_DELAY_MS;
+    // read ahead stopped on a full ring, until read() consumes data
+    private boolean mReadAheadWaitingForSpace;
+
+    // bytes consumed by reader
+    private long mPosition;
+
+    public PipeDataSource() {
+    }
+
+    public PipeDataSource(File file) {
+        mFile = file;
+    }
+
+    public void setReadAheadExecutor(ScheduledExecutorService executor) {
+        mReadAheadExecutor = executor;
+    }
+
+    @Override
+    public void setLocator(DataSourceLocator locator) {
+        mLocator = locator;
+        Uri uri = (locator.uriForSource != null) ? locator.uriForSource : locator.rawUri;
+        mFile = (uri != null && uri.getPath() != null) ? new File(uri.getPath()) : null;
+    }
+
+    @Override
+    public DataSourceLocator getLocator() {
+        return mLocator;
+    }
+
+    /**
+     * Data can't be read again.
+     */
+    @Override
+    public boolean isCacheable() {
+        return false;
+    }
+
+    @Override
+    public void setUseCache(boolean use) {
+        if (use)
+            ASPlayerLog.w("PipeDataSource %s is not cacheable", mFile);
+    }
+
+    @Override
+    public void updateTimeline() {
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return mFd != null;
+    }
+
+    @Override
+    public void open() throws IOException {
+        if (isOpen())
+            return;
+        if (mFile == null)
+            throw new IOException("no file");
+
+        FileDescriptor fd;
+        try {
+            // a fifo opened non blocking for reading doesn't wait for a writer
+            fd = Os.open(mFile.getPath(), OsConstants.O_RDONLY | OsConstants.O_NONBLOCK, 0);
+        } catch (ErrnoException exception) {
+            throw new IOException(exception);
+        }
+        synchronized (this) {
+            mFd = fd;
+            mRingWriteCount = 0;
+            mRingReadCount = 0;
+            mEndOfStream = false;
+            mHasReceivedData = false;
+            mPollDelayMs = READ_AHEAD_POLL_DELAY_MS;
+            mReadAheadWaitingForSpace = false;
+            mPosition = 0;
+        }
+        if (mReadAheadExecutor != null)
+            mReadAheadExecutor.execute(mReadAheadTask);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (mParcelFD != null) {
+            try {
+                mParcelFD.close();
+            } catch (IOException ignored) {
+            }
+            mParcelFD = null;
+        }
+        if (mFd != null) {
+            try {
+                Os.close(mFd);
+            } catch (ErrnoException ignored) {
+            }
+            mFd = null;
+        }
+    }
+
+    @Override
+    public int read(byte[] tsPackets) throws IOException {
+        return read(tsPackets, 0, tsPackets.length);
+    }
+
+    /**
+     * @return bytes read, 0 if no data is available yet, -1 at end of stream
+     */
+    @Override
+    public synchronized int read(byte[] tsPackets, int offset, int length) throws IOException {
+        if (mFd == null)
+            throw new IOException("not opened");
+
+        if (mReadAheadExecutor == null) {
+            if (mEndOfStream)
+                return -1;
+            int read = readPipe(tsPackets, offset, length);
+            if (read > 0)
+                mPosition += read;
+            return mEndOfStream ? -1 : read;
+        }
+
+        int available = (int) (mRingWriteCount - mRingReadCount);
+        if (available == 0)
+            return mEndOfStream ? -1 : 0;
+        int size = Math.min(length, available);
+        int ringPos = (int) (mRingReadCount % RING_SIZE);
+        int firstPart = Math.min(size, RING_SIZE - ringPos);
+        System.arraycopy(mRing, ringPos, tsPackets, offset, firstPart);
+        System.arraycopy(mRing, 0, tsPackets, offset + firstPart, size - firstPart);
+        mRingReadCount += size;
+        mPosition += size;
+        if (mReadAheadWaitingForSpace) {
+            mReadAheadWaitingForSpace = false;
+            mReadAheadExecutor.execute(mReadAheadTask);
+        }
+        return size;
+    }
+
+    /**
+     * Pipe can't be positioned.
+     *
+     * @return current position
+     */
+    @Override
+    public long setPositionInBytes(long position) {
+        return getPositionInBytes();
+    }
+
+    @Override
+    public synchronized long getPositionInBytes() {
+        return mPosition;
+    }
+
+    @Override
+    public long setPositionInUs(long positionUs) {
+        return -1;
+    }
+
+    @Override
+    public long getPositionInUs() {
+        return -1;
+    }
+
+    @Override
+    public long getEndPositionInBytes() {
+        return -1;
+    }
+
+    @Override
+    public long getEndPositionInUs() {
+        return -1;
+    }
+
+    @Override
+    public long getStartPositionInBytes() {
+        return 0;
+    }
+
+    @Override
+    public long getStartPositionInUs() {
+        return -1;
+    }
+
+    @Override
+    public long getPositionInBytes(long timestampUs) {
+        return -1;
+    }
+
+    @Override
+    public long getPositionInUs(long position) {
+        return -1;
+    }
+
+    @Override
+    public synchronized ParcelFileDescriptor getParcelFD() {
+        if (mParcelFD == null && mFd != null) {
+            try {
+                mParcelFD = ParcelFileDescriptor.dup(mFd);
+            } catch (IOException exception) {
+                ASPlayerLog.w("PipeDataSource %s, failed to dup fd: %s", mFile,
+                        exception.getMessage());
+            }
+        }
+        return mParcelFD;
+    }
+
+    @Override
+    public boolean isBuffered() {
+        return mReadAheadExecutor != null;
+    }
+
+    /**
+     * @return bytes read ahead and not consumed yet
+     */
+    public synchronized int getBufferedSize() {
+        return (int) (mRingWriteCount - mRingReadCount);
+    }
+
+    private void readAhead() {
+        long delayMs;
+        synchronized (this) {
+            if (mFd == null || mEndOfStream)
+                return;
+            int free = RING_SIZE - (int) (mRingWriteCount - mRingReadCount);
+            if (free == 0) {
+                mReadAheadWaitingForSpace = true;
+                return;
+            }
+            int ringPos = (int) (mRingWriteCount % RING_SIZE);
+            int read = readPipe(mRing, ringPos, Math.min(free, RING_SIZE - ringPos));
+            if (read > 0)
+                mRingWriteCount += read;
+            if (mEndOfStream)
+                return;
+            if (read > 0) {
+                mPollDelayMs = READ_AHEAD_POLL_DELAY_MS;
+                delayMs = 0;
+            } else {
+                // empty pipe (EAGAIN)
+                delayMs = mPollDelayMs;
+                mPollDelayMs = Math.min(mPollDelayMs * 2, READ_AHEAD_MAX_POLL_DELAY_MS);
+            }
+        }
+        // other sources sharing executor get a chance to run between reads
+        if (delayMs == 0)
+            mReadAheadExecutor.execute(mReadAheadTask);
+        else
+            mReadAheadExecutor.schedule(mReadAheadTask, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Non blocking read, sets mEndOfStream when writer is gone.
+     * An interrupted read has consumed nothing, it is reported as an empty pipe.
+     *
+     * @return bytes read, 0 if pipe is empty, ring is full or read was interrupted
+     */
+    private int readPipe(byte[] buffer, int offset, int length) {
+        if (length == 0)
+            return 0;
+        try {
+            int read = Os.read(mFd, buffer, offset, length);
+            if (read > 0) {
+                mHasReceivedData = true;
+            } else if (mHasReceivedData) {
+                // without writer, 0 is also read before first data
+                mEndOfStream = true;
+            }
+            return Math.max(read, 0);
+        } catch (InterruptedIOException exception) {
+            // interrupt is left to the owner of the thread, executor or reader
+            Thread.currentThread().interrupt();
+            return 0;
+        } catch (ErrnoException exception) {
+            if (exception.errno == OsConstants.EAGAIN || exception.errno == OsConstants.EINTR)
+                return 0;
+            ASPlayerLog.w("PipeDataSource %s, read failed: %s", mFile, exception.getMessage());
+            mEndOfStream = true;
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.amlogic.asplayer.core.source;
+
+/**
+ * Layout of the sidecar index of a recorded ts file, written by {@link TsIndexWriter} and read
+ * by {@link TsIndexReader}. Values are big endian.
+ *
+ * header :
+ * - magic (4 bytes), version (4 bytes), entry size (4 bytes), reserved (4 bytes)
+ * entries, one per indexed video pes, strictly increasing in timestamp and position :
+ * - timestamp in us (8 bytes), pts unwrapped and rebased on discontinuities
+ * - position in bytes in the ts file of the packet starting the pes (8 bytes)
+ * - flags (4 bytes), see FLAG_*
+ * - count of entries back to the last key frame (4 bytes), 0 for a key frame,
+ *   NO_KEY_FRAME if none was indexed before
+ */
+final class TsIndexFormat {
+
+    static final String FILE_EXTENSION = ".idx";
+
+    static final int MAGIC = 0x41535049; // "ASPI"
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 16;
+    static final int ENTRY_SIZE = 24;
+
+    static final int ENTRY_TIMESTAMP_OFFSET = 0;
+    static final int ENTRY_POSITION_OFFSET = 8;
+    static final int ENTRY_FLAGS_OFFSET = 16;
+    static final int ENTRY_KEY_FRAME_DISTANCE_OFFSET = 20;
+
+    static final int FLAG_KEY_FRAME = 0x1;
+
+    static final int NO_KEY_FRAME = -1;
+
+    private TsIndexFormat() {
+    }
+}
@@ -0,0 +1,168 @@
+package com.amlogic.asplayer.core.source;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the sidecar index of a ts file, see {@link TsIndexWriter}.
+ * Index is memory mapped, timestamps and positions are found by binary search, and key frames
+ * from the distance stored in each entry, without reading the ts file.
+ * A recording in progress is followed by calling {@link #refresh()}.
+ *
+ * Timestamps are those of the index timeline, rebased on pts discontinuities by the writer :
+ * after a discontinuity they are no longer the pts given to decoders.
+ */
+public class TsIndexReader {
+
+    public static final long NOT_FOUND = -1;
+
+    private final File mFile;
+
+    private FileInputStream mInputStream;
+    private FileChannel mChannel;
+    private MappedByteBuffer mEntries;
+    private int mEntryCount;
+
+    public TsIndexReader(File file) {
+        mFile = file;
+    }
+
+    public synchronized void open() throws IOException {
+        mInputStream = new FileInputStream(mFile);
+        mChannel = mInputStream.getChannel();
+        try {
+            MappedByteBuffer header = mChannel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    TsIndexFormat.HEADER_SIZE);
+            int magic = header.getInt();
+            int version = header.getInt();
+            int entrySize = header.getInt();
+            if (magic != TsIndexFormat.MAGIC || version != TsIndexFormat.VERSION
+                    || entrySize != TsIndexFormat.ENTRY_SIZE) {
+                throw new IOException(String.format("bad index header, magic:%#x version:%d entry size:%d",
+                        magic, version, entrySize));
+            }
+            refresh();
+        } catch (IOException exception) {
+            close();
+            throw exception;
+        }
+    }
+
+    public synchronized void close() {
+        if (mInputStream == null)
+            return;
+        try {
+            mInputStream.close();
+        } catch (IOException ignored) {
+        }
+        mInputStream = null;
+        mChannel = null;
+        mEntries = null;
+        mEntryCount = 0;
+    }
+
+    public synchronized boolean isOpen() {
+        return mChannel != null;
+    }
+
+    /**
+     * Maps entries appended since last call, for an index being written.
+     *
+     * @return true if there are new entries
+     */
+    public synchronized boolean refresh() throws IOException {
+        if (mChannel == null)
+            return false;
+        long size = mChannel.size() - TsIndexFormat.HEADER_SIZE;
+        // an entry being written is ignored until complete
+        int entryCount = (int) Math.min(Math.max(size, 0) / TsIndexFormat.ENTRY_SIZE,
+                Integer.MAX_VALUE / TsIndexFormat.ENTRY_SIZE);
+        if (entryCount <= mEntryCount)
+            return false;
+        mEntries = mChannel.map(FileChannel.MapMode.READ_ONLY, TsIndexFormat.HEADER_SIZE,
+                (long) entryCount * TsIndexFormat.ENTRY_SIZE);
+        mEntryCount = entryCount;
+        return true;
+    }
+
+    public synchronized int getEntryCount() {
+        return mEntryCount;
+    }
+
+    public synchronized long getStartPositionInUs() {
+        return mEntryCount > 0 ? getTimestampUs(0) : NOT_FOUND;
+    }
+
+    public synchronized long getEndPositionInUs() {
+        return mEntryCount > 0 ? getTimestampUs(mEntryCount - 1) : NOT_FOUND;
+    }
+
+    /**
+     * @return position in bytes where decoding must start to display timestampUs, that is the
+     * position of the last key frame at or before timestampUs, NOT_FOUND if none
+     */
+    public synchronized long getPositionInBytes(long timestampUs) {
+        int keyFrame = findKeyFrameEntry(findEntryByTimestamp(timestampUs));
+        return keyFrame < 0 ? NOT_FOUND : getPosition(keyFrame);
+    }
+
+    /**
+     * @return timestamp of the last indexed pes starting at or before position, NOT_FOUND if none
+     */
+    public synchronized long getPositionInUs(long position) {
+        int low = 0;
+        int high = mEntryCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (getPosition(middle) <= position)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low == 0 ? NOT_FOUND : getTimestampUs(low - 1);
+    }
+
+    /**
+     * @return last entry with timestamp at or before timestampUs, -1 if none
+     */
+    private int findEntryByTimestamp(long timestampUs) {
+        int low = 0;
+        int high = mEntryCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (getTimestampUs(middle) <= timestampUs)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low - 1;
+    }
+
+    /**
+     * @return last key frame entry at or before entry, -1 if none
+     */
+    private int findKeyFrameEntry(int entry) {
+        if (entry < 0)
+            return -1;
+        int distance = getKeyFrameDistance(entry);
+        return distance == TsIndexFormat.NO_KEY_FRAME ? -1 : entry - distance;
+    }
+
+    private long getTimestampUs(int entry) {
+        return mEntries.getLong(entry * TsIndexFormat.ENTRY_SIZE
+                + TsIndexFormat.ENTRY_TIMESTAMP_OFFSET);
+    }
+
+    private long getPosition(int entry) {
+        return mEntries.getLong(entry * TsIndexFormat.ENTRY_SIZE
+                + TsIndexFormat.ENTRY_POSITION_OFFSET);
+    }
+
+    private int getKeyFrameDistance(int entry) {
+        return mEntries.getInt(entry * TsIndexFormat.ENTRY_SIZE
+                + TsIndexFormat.ENTRY_KEY_FRAME_DISTANCE_OFFSET);
+    }
+}
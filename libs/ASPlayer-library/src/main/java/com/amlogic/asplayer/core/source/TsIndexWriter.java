@@ -0,0 +1,218 @@
+package com.amlogic.asplayer.core.source;
+
+import com.amlogic.asplayer.core.ASPlayerLog;
+import com.amlogic.asplayer.core.sipsi.TsDemux;
+import com.amlogic.asplayer.core.sipsi.mpeg.Mpeg;
+import com.amlogic.asplayer.core.sipsi.mpeg.Pes;
+import com.amlogic.asplayer.core.sipsi.mpeg.PesAssembler;
+import com.amlogic.asplayer.core.ts.TsVideoParser;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Builds the sidecar index of a ts file while it is recorded.
+ * Bytes written to the recording are given, in the same order, to {@link #write(byte[], int, int)}.
+ * Entries are appended to the index file at each key frame, so that a {@link TsIndexReader}
+ * can follow a recording in progress.
+ *
+ * Pes whose timestamp is not above the last indexed one (B pictures) are not indexed, so that
+ * entries can be searched by timestamp and by position. Pts are unwrapped, and a jump of more
+ * than MAX_PTS_GAP (discontinuity, splice) is rebased to follow the last pts, so that indexing
+ * goes on with a continuous timeline.
+ */
+public class TsIndexWriter implements PesAssembler.OnPesListener {
+
+    // entries kept in memory between two key frames
+    private static final int PENDING_ENTRY_COUNT = 256;
+
+    // larger pts jumps, forward or backward, are discontinuities, 90kHz
+    private static final long MAX_PTS_GAP = 5 * 90000;
+    // pts step given to a discontinuity, a frame at 25 Hz
+    private static final long DISCONTINUITY_PTS_STEP = 3600;
+
+    private final File mFile;
+    private final int mVideoPid;
+    private final TsVideoParser mVideoParser;
+
+    private final TsDemux mDemux = new TsDemux();
+    private final ByteBuffer mPendingEntries =
+            ByteBuffer.allocate(PENDING_ENTRY_COUNT * TsIndexFormat.ENTRY_SIZE);
+    // end of a ts packet cut between two writes
+    private final byte[] mPartialPacket = new byte[Mpeg.TS_PACKET_SIZE];
+    private int mPartialPacketSize;
+
+    private FileOutputStream mOutputStream;
+    private FileChannel mChannel;
+    private IOException mError;
+
+    private long mEntryCount;
+    private long mLastKeyFrameEntry = -1;
+    private long mLastTimestampUs = -1;
+    private long mLastPts = -1;
+    // last pts, unwrapped and rebased on discontinuities
+    private long mTimelinePts;
+    private long mDiscontinuityCount;
+
+    /**
+     * @param file          index file, see {@link #getIndexFile(File)}
+     * @param videoPid      pid of the video to index
+     * @param videoMimeType mime type of video, see {@link TsVideoParser#isSupported(String)}
+     */
+    public TsIndexWriter(File file, int videoPid, String videoMimeType) {
+        mFile = file;
+        mVideoPid = videoPid;
+        mVideoParser = new TsVideoParser(videoMimeType);
+    }
+
+    /**
+     * @return file of the sidecar index of a ts file
+     */
+    public static File getIndexFile(File tsFile) {
+        return new File(tsFile.getPath() + TsIndexFormat.FILE_EXTENSION);
+    }
+
+    /**
+     * Creates the index file, an existing one is replaced.
+     */
+    public void open() throws IOException {
+        mOutputStream = new FileOutputStream(mFile, false);
+        mChannel = mOutputStream.getChannel();
+
+        ByteBuffer header = ByteBuffer.allocate(TsIndexFormat.HEADER_SIZE);
+        header.putInt(TsIndexFormat.MAGIC);
+        header.putInt(TsIndexFormat.VERSION);
+        header.putInt(TsIndexFormat.ENTRY_SIZE);
+        header.putInt(0);
+        header.flip();
+        writeFully(header);
+
+        mDemux.addPesPid(mVideoPid, this);
+    }
+
+    public void close() {
+        if (mChannel == null)
+            return;
+        try {
+            flush();
+        } catch (IOException exception) {
+            ASPlayerLog.w("TsIndexWriter %s, failed to flush: %s", mFile, exception.getMessage());
+        }
+        mDemux.removePid(mVideoPid);
+        try {
+            mOutputStream.close();
+        } catch (IOException exception) {
+            ASPlayerLog.w("TsIndexWriter %s, failed to close: %s", mFile, exception.getMessage());
+        }
+        mOutputStream = null;
+        mChannel = null;
+    }
+
+    /**
+     * Indexes bytes appended to the recording, ts packets may be cut between two calls.
+     */
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        int end = offset + length;
+        if (mPartialPacketSize > 0) {
+            int size = Math.min(Mpeg.TS_PACKET_SIZE - mPartialPacketSize, length);
+            System.arraycopy(bytes, offset, mPartialPacket, mPartialPacketSize, size);
+            mPartialPacketSize += size;
+            offset += size;
+            if (mPartialPacketSize < Mpeg.TS_PACKET_SIZE)
+                return;
+            mDemux.process(mPartialPacket, 0, Mpeg.TS_PACKET_SIZE);
+            mPartialPacketSize = 0;
+        }
+        offset += mDemux.process(bytes, offset, end - offset);
+        mPartialPacketSize = end - offset;
+        System.arraycopy(bytes, offset, mPartialPacket, 0, mPartialPacketSize);
+
+        if (mError != null) {
+            IOException error = mError;
+            mError = null;
+            throw error;
+        }
+    }
+
+    /**
+     * Appends pending entries to the index file.
+     */
+    public void flush() throws IOException {
+        if (mPendingEntries.position() == 0)
+            return;
+        mPendingEntries.flip();
+        try {
+            writeFully(mPendingEntries);
+        } finally {
+            mPendingEntries.clear();
+        }
+    }
+
+    public long getEntryCount() {
+        return mEntryCount;
+    }
+
+    public long getDiscontinuityCount() {
+        return mDiscontinuityCount;
+    }
+
+    @Override
+    public void onPes(int pid, Pes pes) {
+        boolean keyFrame = mVideoParser.setPes(pes);
+        if (!pes.hasPts() || pes.getPosition() < 0)
+            return;
+
+        long timestampUs = Mpeg.ptsToUs(toTimelinePts(pes.getPts()));
+        if (timestampUs <= mLastTimestampUs)
+            return;
+        mLastTimestampUs = timestampUs;
+
+        if (keyFrame)
+            mLastKeyFrameEntry = mEntryCount;
+        int keyFrameDistance = (mLastKeyFrameEntry < 0) ?
+                TsIndexFormat.NO_KEY_FRAME : (int) (mEntryCount - mLastKeyFrameEntry);
+
+        mPendingEntries.putLong(timestampUs);
+        mPendingEntries.putLong(pes.getPosition());
+        mPendingEntries.putInt(keyFrame ? TsIndexFormat.FLAG_KEY_FRAME : 0);
+        mPendingEntries.putInt(keyFrameDistance);
+        mEntryCount++;
+
+        if (keyFrame || !mPendingEntries.hasRemaining()) {
+            try {
+                flush();
+            } catch (IOException exception) {
+                // reported by next write
+                mError = exception;
+            }
+        }
+    }
+
+    private long toTimelinePts(long pts) {
+        if (mLastPts < 0) {
+            mTimelinePts = pts;
+        } else {
+            // signed distance modulo 2^33, a wrap is a small forward step
+            long delta = (pts - mLastPts) & Mpeg.PTS_MAX_VALUE;
+            if (delta > Mpeg.PTS_MAX_VALUE / 2)
+                delta -= Mpeg.PTS_MAX_VALUE + 1;
+            if (Math.abs(delta) > MAX_PTS_GAP) {
+                if (mDiscontinuityCount++ == 0)
+                    ASPlayerLog.i("TsIndexWriter %s, pts discontinuity %d -> %d, rebased",
+                            mFile, mLastPts, pts);
+                delta = DISCONTINUITY_PTS_STEP;
+            }
+            mTimelinePts += delta;
+        }
+        mLastPts = pts;
+        return mTimelinePts;
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            mChannel.write(buffer);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core.ts;
+
+/**
+ * Index of key frames, by timestamp and position in bytes in the source.
+ * Entries are kept ordered by timestamp in a ring, oldest entries are dropped when full.
+ * It is written by the thread parsing the stream and read by renderers, so it is synchronized.
+ */
+public class KeyFrameIndex {
+
+    public static final long NOT_FOUND = -1;
+
+    private static final int DEFAULT_CAPACITY = 4096;
+
+    private final long[] mTimestampsUs;
+    private final long[] mPositions;
+    private int mFirst;
+    private int mSize;
+
+    public KeyFrameIndex() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public KeyFrameIndex(int capacity) {
+        mTimestampsUs = new long[capacity];
+        mPositions = new long[capacity];
+    }
+
+    /**
+     * Adds a key frame. A timestamp not above the last one means a discontinuity (wrap, new
+     * recording), previous entries can't be ordered with new ones and are dropped.
+     */
+    public synchronized void add(long timestampUs, long position) {
+        int capacity = mTimestampsUs.length;
+        if (mSize > 0 && timestampUs <= mTimestampsUs[index(mSize - 1)])
+            clear();
+        if (mSize == capacity) {
+            mFirst = (mFirst + 1) % capacity;
+            mSize--;
+        }
+        int last = index(mSize);
+        mTimestampsUs[last] = timestampUs;
+        mPositions[last] = position;
+        mSize++;
+    }
+
+    public synchronized int size() {
+        return mSize;
+    }
+
+    public synchronized void clear() {
+        mFirst = 0;
+        mSize = 0;
+    }
+
+    /**
+     * @param forward if true, first key frame at or after timestampUs,
+     *                otherwise last key frame at or before timestampUs
+     * @return timestamp of the key frame, NOT_FOUND if none
+     */
+    public synchronized long findTimestampUs(long timestampUs, boolean forward) {
+        int entry = find(timestampUs, forward);
+        return entry < 0 ? NOT_FOUND : mTimestampsUs[index(entry)];
+    }
+
+    /**
+     * @return position of the last key frame at or before timestampUs, NOT_FOUND if none
+     */
+    public synchronized long findPosition(long timestampUs) {
+        int entry = find(timestampUs, false);
+        return entry < 0 ? NOT_FOUND : mPositions[index(entry)];
+    }
+
+    private int find(long timestampUs, boolean forward) {
+        // first entry with timestamp above timestampUs
+        int low = 0;
+        int high = mSize;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (mTimestampsUs[index(middle)] <= timestampUs)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        if (forward) {
+            if (low > 0 && mTimestampsUs[index(low - 1)] == timestampUs)
+                return low - 1;
+            return low < mSize ? low : -1;
+        }
+        return low - 1;
+    }
+
+    private int index(int entry) {
+        return (mFirst + entry) % mTimestampsUs.length;
+    }
+}
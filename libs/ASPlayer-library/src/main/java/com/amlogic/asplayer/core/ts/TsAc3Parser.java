@@ -65,6 +65,12 @@ public class TsAc3Parser extends TsAudioParser {
             1, 2, 3, 6
     };
 
+    /**
+     * strmtyp of a dependent substream (E-AC-3)
+     * section AnnexE 2.3.1.1, see Table E2.1
+     */
+    private static final int STREAM_TYPE_DEPENDENT = 1;
+
     // work data
     private byte[] mPartialHeader;
     private int mPartialHeaderLength;
@@ -73,6 +79,14 @@ public class TsAc3Parser extends TsAudioParser {
     private int mSampleRate;
     private int mFrameSize;
     private int mNbSamplesBySyncFrame;
+    private boolean mIsDependent;
+
+    // timing : timestamp of a syncframe is mTimestampBaseUs plus duration of the samples
+    // since base, base is the last pes PTS. Counting samples keeps timestamps exact at 44.1kHz
+    private long mTimestampBaseUs = NO_TIMESTAMP;
+    private long mSamplesSinceBase;
+    private int mTimestampSampleRate;
+    private long mLastSyncFrameTimestampUs = NO_TIMESTAMP;
 
     public TsAc3Parser() {
         mPartialHeader = new byte[XAC3_MIN_HEADER_SIZE];
@@ -147,6 +161,15 @@ public class TsAc3Parser extends TsAudioParser {
         int streamType = mParser.readInt(2, "strmtyp");
         int substreamId = mParser.readInt(3, "substreamid");
         int frameSize = mParser.readInt(11, "frmsiz");
+        mFrameSize = 2 * (frameSize + 1);
+
+        // a dependent substream carries additional channels of the independent substream
+        // before it, which gives format and timing
+        mIsDependent = (streamType == STREAM_TYPE_DEPENDENT);
+        if (mIsDependent) {
+            return true;
+        }
+
         int fscod = mParser.readInt(2, "fscod");
         int fscod2 = 0;
         int numblkscod;
@@ -168,7 +191,6 @@ public class TsAc3Parser extends TsAudioParser {
         }
         if (fscod == 0x03) mSampleRate = SAMPLE_RATE_BY_FSCOD2[fscod2];
         else mSampleRate = SAMPLE_RATE_BY_FSCOD[fscod];
-        mFrameSize = 2 * (frameSize + 1);
 
         //  E.1.3.1.5 (ETSI TS 102 366)
         mNbSamplesBySyncFrame = SAMPLES_PER_AUDIO_BLOCK * NB_BLOCKS_PER_SYNCFRAME[numblkscod];
@@ -179,9 +201,62 @@ public class TsAc3Parser extends TsAudioParser {
         return (substreamId == 0) && (streamType == 0 || streamType == 2);
     }
 
+    /**
+     * Computes size of the E-AC-3 dependent syncframes following an independent one, so that
+     * they are given to decoder in the same block. Only looks at data of the current pes.
+     *
+     * @return size in bytes of consecutive dependent syncframes starting at pos
+     */
+    private int getDependentFramesSize(int pos, int end, int maxSize) {
+        byte[] bytes = mParser.getBytes();
+        int size = 0;
+        while (pos + XAC3_MIN_HEADER_SIZE <= end && bytes[pos] == 0x0B && bytes[pos + 1] == 0x77) {
+            int bsid = (bytes[pos + 5] >> 3) & 0x1f;
+            int streamType = (bytes[pos + 2] >> 6) & 0x03;
+            if (bsid <= 10 || bsid > 16 || streamType != STREAM_TYPE_DEPENDENT)
+                break;
+            int frameSize = 2 * ((((bytes[pos + 2] & 0x07) << 8) | (bytes[pos + 3] & 0xff)) + 1);
+            if (size + frameSize > maxSize)
+                break;
+            size += frameSize;
+            pos += frameSize;
+        }
+        return size;
+    }
+
+    /**
+     * @return timestamp of the independent syncframe being parsed, then moves timing to the next
+     */
+    private long nextSyncFrameTimestampUs() {
+        if (mTimestampBaseUs == NO_TIMESTAMP)
+            return NO_TIMESTAMP;
+        if (mSampleRate != mTimestampSampleRate) {
+            if (mTimestampSampleRate != 0)
+                mTimestampBaseUs += mSamplesSinceBase * 1000000L / mTimestampSampleRate;
+            mSamplesSinceBase = 0;
+            mTimestampSampleRate = mSampleRate;
+        }
+        long timestampUs = (mTimestampBaseUs + mSamplesSinceBase * 1000000L / mSampleRate)
+                % Mpeg.PTS_MAX_VALUE_IN_US;
+        mSamplesSinceBase += mNbSamplesBySyncFrame;
+        return timestampUs;
+    }
+
+    MediaFormat createMediaFormat() {
+        MediaFormat format = MediaFormat.createAudioFormat(mIsEac3 ? MediaFormat.MIMETYPE_AUDIO_EAC3 : MediaFormat.MIMETYPE_AUDIO_AC3,
+                mSampleRate, mChannelCount);
+        format.setInteger(KEY_NB_SAMPLES_BY_SYNCFRAME, mNbSamplesBySyncFrame);
+        format.setInteger(KEY_SYNCFRAME_SIZE, mFrameSize);
+        return format;
+    }
+
     public void reset() {
         super.reset();
         mPartialHeaderLength = 0;
+        mTimestampBaseUs = NO_TIMESTAMP;
+        mSamplesSinceBase = 0;
+        mTimestampSampleRate = 0;
+        mLastSyncFrameTimestampUs = NO_TIMESTAMP;
     }
 
     void parse(byte[] pesPayload, int offset, int length) throws UnsupportedFeature {
@@ -190,6 +265,8 @@ public class TsAc3Parser extends TsAudioParser {
         mSampleRate = 0;
 
         // partial header
+        // position of pes payload in parsed data
+        int payloadStart = offset + mPartialHeaderLength;
         if (mPartialHeaderLength != 0) {
             byte[] tmpPayload = new byte[length + XAC3_MIN_HEADER_SIZE];
             System.arraycopy(pesPayload, offset, tmpPayload, offset + mPartialHeaderLength, length - offset);
@@ -204,12 +281,19 @@ public class TsAc3Parser extends TsAudioParser {
         // copy partial data
         fillUnitBlock();
 
-        // extract frames
-        int unitBlockIndex = 0;
-        long unitBlockDurationUs;
+        // pes PTS applies to the first syncframe starting in the pes, a syncframe joined from
+        // a header split with previous pes is still timed from previous base,
+        // without PTS timestamps go on from the previous one
         long pesTimestampUs = getPesTimestampUs();
+
+        // extract frames
+        int unitBlockSize = 0;
         while (skipToNextSync()) {
             int marker = mParser.getPosInBytes();
+            if (pesTimestampUs != NO_TIMESTAMP && marker >= payloadStart) {
+                setTimestampBase(pesTimestampUs);
+                pesTimestampUs = NO_TIMESTAMP;
+            }
 
             // check if there is enough data for full header
             if (marker + XAC3_MIN_HEADER_SIZE > length) {
@@ -229,31 +313,42 @@ public class TsAc3Parser extends TsAudioParser {
             mParser.setPosInBits(marker * 8);
 
             boolean mustKeep;
+            long unitBlockTimestampUs = NO_TIMESTAMP;
+            mIsDependent = false;
             if (mIsEac3) {
                 mustKeep = parseEac3();
             } else {
                 mustKeep = parseAc3();
             }
 
-            if (mustKeep) {
+            if (mustKeep && mIsDependent) {
+                // independent syncframe was at the end of previous pes, keep its timestamp
+                unitBlockTimestampUs = mLastSyncFrameTimestampUs;
+            } else if (mustKeep) {
                 MediaFormat oldFormat = getMediaFormat();
                 if ((oldFormat == null) ||
                         (oldFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT) != mChannelCount) ||
                         (oldFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE) != mSampleRate)) {
 
-                    MediaFormat format = MediaFormat.createAudioFormat(mIsEac3 ? MediaFormat.MIMETYPE_AUDIO_EAC3 : MediaFormat.MIMETYPE_AUDIO_AC3,
-                            mSampleRate, mChannelCount);
-                    format.setInteger(KEY_NB_SAMPLES_BY_SYNCFRAME, mNbSamplesBySyncFrame);
-                    format.setInteger(KEY_SYNCFRAME_SIZE, mFrameSize);
-                    setMediaFormat(format);
+                    setMediaFormat(createMediaFormat());
                 }
 
-                unitBlockDurationUs = mNbSamplesBySyncFrame * 1000000L / mSampleRate;
-                setUnitBlockSize(mFrameSize);
-                setUnitBlockTimestampUs((pesTimestampUs + unitBlockIndex * unitBlockDurationUs) % Mpeg.PTS_MAX_VALUE_IN_US);
+                unitBlockTimestampUs = nextSyncFrameTimestampUs();
+                mLastSyncFrameTimestampUs = unitBlockTimestampUs;
+            }
+
+            if (mustKeep) {
+                unitBlockSize = mFrameSize + getDependentFramesSize(marker + mFrameSize, length,
+                        MAX_UNIT_BLOCK_SIZE - mFrameSize);
                 mParser.setPosInBits(marker * 8);
-                fillUnitBlock();
-                unitBlockIndex++;
+                if (canSlice(marker, unitBlockSize)) {
+                    addUnitBlock(unitBlockSize, unitBlockTimestampUs);
+                } else {
+                    // syncframe continues in next pes
+                    setUnitBlockSize(unitBlockSize);
+                    setUnitBlockTimestampUs(unitBlockTimestampUs);
+                    fillUnitBlock();
+                }
             } else {
                 // fallback today : we send the whole pes
                 // In the future to downgrade from 7.1 to 5.1, we should just ignore those frames
@@ -262,7 +357,16 @@ public class TsAc3Parser extends TsAudioParser {
                 break;
             }
 
-            mParser.setPosInBits((marker + mFrameSize) * 8);
+            mParser.setPosInBits((marker + unitBlockSize) * 8);
         }
+
+        // no syncframe starts in the pes, PTS applies to the next one
+        if (pesTimestampUs != NO_TIMESTAMP)
+            setTimestampBase(pesTimestampUs);
+    }
+
+    private void setTimestampBase(long timestampUs) {
+        mTimestampBaseUs = timestampUs;
+        mSamplesSinceBase = 0;
     }
 }
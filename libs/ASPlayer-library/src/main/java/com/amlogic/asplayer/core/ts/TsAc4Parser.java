@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core.ts;
+
+import android.media.MediaFormat;
+
+/**
+ * TsAc4Parser, AC-4 sync frames
+ * Ref document :
+ * - ETSI TS 103 190-1, Annex G "AC-4 bit-stream storage in the MPEG-2 transport stream"
+ *   and section 4.2.1 / 4.3.3 for ac4_toc
+ * Channel count is not in the toc, decoder finds it in presentations.
+ */
+public class TsAc4Parser extends TsSyncFrameParser {
+
+    private static final int SYNC_WORD = 0xAC40;
+    private static final int SYNC_WORD_CRC = 0xAC41;
+    private static final int FRAME_SIZE_ESCAPE = 0xFFFF;
+    private static final int CRC_SIZE = 2;
+    // sync_word, frame_size on up to 40 bits, then ac4_toc up to frame_rate_index
+    private static final int AC4_HEADER_SIZE = 10;
+
+    private static final int DEFAULT_CHANNEL_COUNT = 2;
+    private static final int BITSTREAM_VERSION_ESCAPE = 3;
+
+    /**
+     * Samples per frame at 48kHz, indexed by frame_rate_index
+     * section 4.3.3.2.6, see Table 83, fractional rates are rounded down as decoders do
+     */
+    private static final int[] SAMPLES_PER_FRAME_48KHZ = new int[]{
+            2002, 2000, 1920, 1601, 1600, 1001, 1000, 960, 800, 800, 480, 400, 400, 2048
+    };
+    /**
+     * Only frame_rate_index 13 is allowed at 44.1kHz
+     */
+    private static final int SAMPLES_PER_FRAME_44_1KHZ = 2048;
+    private static final int FRAME_RATE_INDEX_44_1KHZ = 13;
+
+    public TsAc4Parser() {
+        super(0xAC, AC4_HEADER_SIZE);
+    }
+
+    @Override
+    boolean isSync(byte[] bytes, int pos) {
+        return bytes[pos + 1] == (byte) (SYNC_WORD & 0xFF)
+                || bytes[pos + 1] == (byte) (SYNC_WORD_CRC & 0xFF);
+    }
+
+    @Override
+    boolean parseHeader() {
+        // ac4_syncframe : Annex G.2, see Table G.1
+        int syncWord = mParser.readInt(16, "sync_word");
+        int headerSize = 4;
+        int frameSize = mParser.readInt(16, "frame_size");
+        if (frameSize == FRAME_SIZE_ESCAPE) {
+            frameSize = mParser.readInt(24, "frame_size");
+            headerSize += 3;
+        }
+
+        // ac4_toc : section 4.2.1.1, see Table 3
+        int bitstreamVersion = mParser.readInt(2, "bitstream_version");
+        // a false sync is likely when searching sync, so invalid headers are not logged.
+        // Escaped versions, above 2, are not supported
+        if (bitstreamVersion == BITSTREAM_VERSION_ESCAPE || frameSize == 0)
+            return false;
+        mParser.skip(10, "sequence_counter");
+        if (mParser.readBool("b_wait_frames")) {
+            int waitFrames = mParser.readInt(3, "wait_frames");
+            if (waitFrames > 0)
+                mParser.skip(2, "br_code");
+        }
+        int fsIndex = mParser.readInt(1, "fs_index");
+        int frameRateIndex = mParser.readInt(4, "frame_rate_index");
+
+        if (fsIndex == 0) {
+            if (frameRateIndex != FRAME_RATE_INDEX_44_1KHZ)
+                return false;
+            mSampleRate = 44100;
+            mSamplesPerFrame = SAMPLES_PER_FRAME_44_1KHZ;
+        } else {
+            if (frameRateIndex >= SAMPLES_PER_FRAME_48KHZ.length)
+                return false;
+            mSampleRate = 48000;
+            mSamplesPerFrame = SAMPLES_PER_FRAME_48KHZ[frameRateIndex];
+        }
+        mChannelCount = DEFAULT_CHANNEL_COUNT;
+        mFrameSize = headerSize + frameSize + (syncWord == SYNC_WORD_CRC ? CRC_SIZE : 0);
+        return true;
+    }
+
+    @Override
+    MediaFormat createMediaFormat() {
+        return MediaFormat.createAudioFormat(MediaFormat.MIMETYPE_AUDIO_AC4,
+                mSampleRate, mChannelCount);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core.ts;
+
+import android.media.MediaFormat;
+
+/**
+ * TsAdtsParser
+ * Ref document :
+ * - ISO/IEC 14496-3, section 1.A.2 "Audio_Data_Transport_Stream frame, ADTS"
+ * - ISO/IEC 13818-7, section 6.2
+ */
+public class TsAdtsParser extends TsSyncFrameParser {
+
+    private static final int ADTS_HEADER_SIZE = 7;
+
+    /**
+     * The number of samples per raw_data_block
+     */
+    private static final int SAMPLES_PER_RAW_DATA_BLOCK = 1024;
+    /**
+     * Sample rates, indexed by sampling_frequency_index
+     * ISO/IEC 14496-3, section 1.6.3.4, see Table 1.18
+     */
+    static final int[] SAMPLE_RATE_BY_INDEX = new int[]{
+            96000, 88200, 64000, 48000, 44100, 32000, 24000, 22050, 16000, 12000, 11025, 8000, 7350
+    };
+    /**
+     * Channel counts, indexed by channel_configuration
+     * 0 means channels are given by a program_config_element, decoder finds it
+     * ISO/IEC 14496-3, section 1.6.3.5, see Table 1.19
+     */
+    static final int[] CHANNEL_COUNT_BY_CONFIGURATION = new int[]{
+            2, 1, 2, 3, 4, 5, 6, 8
+    };
+
+    // work data
+    private int mProfile;
+
+    public TsAdtsParser() {
+        super(0xFF, ADTS_HEADER_SIZE);
+    }
+
+    @Override
+    boolean isSync(byte[] bytes, int pos) {
+        // syncword 0xFFF and layer 0
+        return (bytes[pos + 1] & 0xF6) == 0xF0;
+    }
+
+    @Override
+    boolean parseHeader() {
+        // adts_fixed_header : section 1.A.2.2.1
+        mParser.skip(12, "syncword");
+        mParser.skip(1, "ID");
+        mParser.skip(2, "layer");
+        mParser.skip(1, "protection_absent");
+        int profile = mParser.readInt(2, "profile_ObjectType");
+        int samplingFrequencyIndex = mParser.readInt(4, "sampling_frequency_index");
+        mParser.skip(1, "private_bit");
+        int channelConfiguration = mParser.readInt(3, "channel_configuration");
+        mParser.skip(1, "original_copy");
+        mParser.skip(1, "home");
+        // adts_variable_header : section 1.A.2.2.2
+        mParser.skip(1, "copyright_identification_bit");
+        mParser.skip(1, "copyright_identification_start");
+        int frameLength = mParser.readInt(13, "frame_length");
+        mParser.skip(11, "adts_buffer_fullness");
+        int numberOfRawDataBlocks = mParser.readInt(2, "number_of_raw_data_blocks_in_frame");
+
+        // a false sync is likely when searching sync, so invalid headers are not logged
+        if (samplingFrequencyIndex >= SAMPLE_RATE_BY_INDEX.length || frameLength < ADTS_HEADER_SIZE)
+            return false;
+
+        mProfile = profile;
+        mSampleRate = SAMPLE_RATE_BY_INDEX[samplingFrequencyIndex];
+        mChannelCount = CHANNEL_COUNT_BY_CONFIGURATION[channelConfiguration];
+        mFrameSize = frameLength;
+        mSamplesPerFrame = SAMPLES_PER_RAW_DATA_BLOCK * (numberOfRawDataBlocks + 1);
+        return true;
+    }
+
+    @Override
+    boolean isFormatChanged(MediaFormat format) {
+        return super.isFormatChanged(format)
+                || format.getInteger(MediaFormat.KEY_AAC_PROFILE) != mProfile + 1;
+    }
+
+    @Override
+    MediaFormat createMediaFormat() {
+        MediaFormat format = MediaFormat.createAudioFormat(MediaFormat.MIMETYPE_AUDIO_AAC,
+                mSampleRate, mChannelCount);
+        format.setInteger(MediaFormat.KEY_IS_ADTS, 1);
+        // audio object type is profile + 1, see section 1.A.2.2.1
+        format.setInteger(MediaFormat.KEY_AAC_PROFILE, mProfile + 1);
+        return format;
+    }
+}
@@ -15,24 +15,30 @@ import java.util.Locale;
  */
 public abstract class TsAudioParser {
 
-    private static final int MAX_UNIT_BLOCK_SIZE = 1024 * 8;
-    private static final int MAX_UNIT_BLOCKS = 32;
+    /**
+     * Timestamp of a pes without PTS, or of a block for which parser computes no timestamp.
+     */
+    public static final long NO_TIMESTAMP = -1;
 
-    private class UnitBlock {
-        UnitBlock() {
-            data = new byte[MAX_UNIT_BLOCK_SIZE];
-        }
+    static final int MAX_UNIT_BLOCK_SIZE = 1024 * 8;
+    // blocks queue grows by UnitBlockQueue.SEGMENT_SIZE blocks, up to 256 blocks
+    private static final int MAX_UNIT_BLOCK_SEGMENTS = 8;
 
-        void clear() {
-            length = 0;
-            writePosition = 0;
-            timestampUs = 0;
-        }
+    /**
+     * View of an access unit, see {@link #getAccessUnit(AccessUnit)}.
+     */
+    public static class AccessUnit {
+        public byte[] array;
+        public int offset;
+        public int length;
+        public long timestampUs;
+    }
 
-        int length;
-        int writePosition;
-        long timestampUs;
-        byte[] data;
+    /**
+     * Gives back a pes given to {@link #setPesByReference(Pes, long)}.
+     */
+    public interface OnPesReleasedListener {
+        void onPesReleased(Pes pes);
     }
 
     class UnsupportedFeature extends Exception {
@@ -47,38 +53,101 @@ public abstract class TsAudioParser {
     // timestamp extracted from current pes;
     private long mPesTimestampUs;
 
-    // chunk extracted from pes
-    private UnitBlock[] mUnitBlocks;
-    private int mUnitBlocksWritePos;
-    private int mUnitBlockReadPos;
+    // chunk extracted from pes, filled by parser thread, may be read from decoder thread
+    private final UnitBlockQueue mUnitBlocks;
 
     // format extracted from pes
     private MediaFormat mFormat;
 
+    // buffer of the pes parsed by setPesByReference, units fully inside are not copied
+    private byte[] mSliceSource;
+    private int mSliceCount;
+
+    // pes referenced by slices, kept until consumer reads past their last block.
+    // Every kept pes has at least one unread block, so there are no more than blocks in queue
+    private final Pes[] mRetainedPes = new Pes[MAX_UNIT_BLOCK_SEGMENTS * UnitBlockQueue.SEGMENT_SIZE];
+    private final long[] mRetainedPesEnd = new long[MAX_UNIT_BLOCK_SEGMENTS * UnitBlockQueue.SEGMENT_SIZE];
+    private int mRetainedPesFirst;
+    private int mRetainedPesCount;
+    private OnPesReleasedListener mPesReleasedListener;
+
+    // pes refused because blocks queue was nearly full
+    private long mRejectedPesCount;
+
     TsAudioParser() {
         mParser = new BufferParser();
-        mUnitBlocks = new UnitBlock[MAX_UNIT_BLOCKS];
-        for (int i = 0; i < MAX_UNIT_BLOCKS; ++i)
-            mUnitBlocks[i] = new UnitBlock();
+        mUnitBlocks = new UnitBlockQueue(MAX_UNIT_BLOCK_SIZE, MAX_UNIT_BLOCK_SEGMENTS);
+    }
+
+    /**
+     * Indicates if blocks queue has room for a new pes. Feeder should wait for blocks to be
+     * consumed when it returns false: setPes and setPesByReference refuse the pes
+     * without parsing any of it.
+     *
+     * @return true if a new pes can be parsed
+     */
+    public boolean canAcceptPes() {
+        releaseConsumedPes();
+        return !mUnitBlocks.isNearlyFull();
+    }
+
+    /**
+     * Sets the listener receiving pes given to {@link #setPesByReference(Pes, long)} once
+     * they are no more referenced. Without listener, such pes are released.
+     */
+    public void setOnPesReleasedListener(OnPesReleasedListener listener) {
+        mPesReleasedListener = listener;
     }
 
     /**
      * Parses a pes to split it into blocks of data
      *
      * @param pes pes to parse.
+     * @param timestamp PTS of the pes in microseconds, or {@link #NO_TIMESTAMP} if it has none.
      * @return true if the pes is successfully parsed, false otherwise. In particular if a parser
-     * detects that a feature is not handled, it will return false.
+     * detects that a feature is not handled, or if blocks queue can't accept the pes (see
+     * {@link #canAcceptPes()}), it will return false and the pes is not released.
      */
     public boolean setPes(Pes pes, long timestamp) {
-        try {
-            mPesTimestampUs = timestamp;
-            parse(pes.getBuffer(), pes.getHeaderLength(), pes.getLength());
-            pes.release();
-            return true;
-        } catch (UnsupportedFeature exception) {
-            ASPlayerLog.w("unsupported feature : %s", exception);
+        if (!acceptPes())
+            return false;
+        if (!parsePes(pes, timestamp))
+            return false;
+        pes.release();
+        return true;
+    }
+
+    /**
+     * Parses a pes like {@link #setPes(Pes, long)}, except that blocks fully contained in the
+     * pes are slices of its buffer instead of copies.
+     * The parser then owns the pes: it must not be modified or reused by caller until it is
+     * given back by {@link OnPesReleasedListener}, once every block referencing it is consumed.
+     * Consumed pes are given back on the parser thread, by setPes, setPesByReference and
+     * canAcceptPes.
+     *
+     * @param pes pes to parse.
+     * @return true if the pes is successfully parsed, false otherwise. A pes refused because
+     * blocks queue is nearly full (see {@link #canAcceptPes()}) is left to caller, untouched,
+     * to be set again once blocks are consumed. Otherwise the parser owns the pes, even if it
+     * could not be parsed.
+     */
+    public boolean setPesByReference(Pes pes, long timestamp) {
+        if (!acceptPes())
             return false;
+        mSliceSource = pes.getBuffer();
+        mSliceCount = 0;
+        boolean parsed = parsePes(pes, timestamp);
+        mSliceSource = null;
+
+        if (mSliceCount == 0) {
+            releasePes(pes);
+        } else {
+            int last = (mRetainedPesFirst + mRetainedPesCount) % mRetainedPes.length;
+            mRetainedPes[last] = pes;
+            mRetainedPesEnd[last] = mUnitBlocks.getWriteCount();
+            mRetainedPesCount++;
         }
+        return parsed;
     }
 
     /**
@@ -97,7 +166,7 @@ public abstract class TsAudioParser {
      * @return true if there are remaining blocks of data
      */
     public boolean hasAudioBuffer() {
-        return (mUnitBlocksWritePos != mUnitBlockReadPos);
+        return mUnitBlocks.hasBlock();
     }
 
     /**
@@ -106,43 +175,60 @@ public abstract class TsAudioParser {
      * @param buffer that will be filled with data of the current block
      */
     public void getAudioBufferData(ByteBuffer buffer) {
-        if (mUnitBlocksWritePos == mUnitBlockReadPos)
+        if (!mUnitBlocks.hasBlock())
             return;
-        UnitBlock block = mUnitBlocks[mUnitBlockReadPos];
+        UnitBlockQueue.UnitBlock block = mUnitBlocks.getReadBlock();
         buffer.clear();
-        buffer.put(block.data, 0, block.length);
+        buffer.put(block.array, block.offset, block.length);
         buffer.flip();
     }
 
     /**
      * Returns timestamp in microseconds of the current timestamp
-     * Current implementation might return the timestamp of the pes if we are not able to compute
-     * the exact timestamp of a buffer. In other words some consecutive buffers might share the
-     * same timestamp.
+     * Parsers able to find frame boundaries give each buffer its own timestamp, interpolated
+     * from the last PTS. Otherwise the timestamp of the pes is returned, and some consecutive
+     * buffers might share the same timestamp.
      *
      * @return timestamp in microseconds
      */
     public long getAudioBufferTimestampUs() {
-        if (mUnitBlocksWritePos == mUnitBlockReadPos)
+        if (!mUnitBlocks.hasBlock())
             return 0;
-        UnitBlock block = mUnitBlocks[mUnitBlockReadPos];
-        if (block.timestampUs != 0)
+        UnitBlockQueue.UnitBlock block = mUnitBlocks.getReadBlock();
+        if (block.timestampUs != NO_TIMESTAMP)
             return block.timestampUs;
         return mPesTimestampUs;
     }
 
 
+    /**
+     * Gets the current block of data without copying it. The view may point into a pes given
+     * to {@link #setPesByReference(Pes, long)}, it is valid until {@link #moveToNext()}.
+     *
+     * @param unit view to fill
+     * @return false if there is no block
+     */
+    public boolean getAccessUnit(AccessUnit unit) {
+        if (!mUnitBlocks.hasBlock())
+            return false;
+        UnitBlockQueue.UnitBlock block = mUnitBlocks.getReadBlock();
+        unit.array = block.array;
+        unit.offset = block.offset;
+        unit.length = block.length;
+        unit.timestampUs = block.timestampUs != NO_TIMESTAMP ? block.timestampUs : mPesTimestampUs;
+        return true;
+    }
+
     /**
      * Move to next buffer
      *
      * @return true if the next buffer is available
      */
     public boolean moveToNext() {
-        if (mUnitBlocksWritePos == mUnitBlockReadPos)
+        if (!mUnitBlocks.hasBlock())
             return false;
-        mUnitBlockReadPos++;
-        mUnitBlockReadPos %= MAX_UNIT_BLOCKS;
-        return (mUnitBlocksWritePos != mUnitBlockReadPos);
+        mUnitBlocks.moveToNext();
+        return mUnitBlocks.hasBlock();
     }
 
     /**
@@ -152,16 +238,25 @@ public abstract class TsAudioParser {
         clearUnitBlocks();
     }
 
+    /**
+     * @return number of pes refused by setPes and setPesByReference because blocks queue was
+     * nearly full
+     */
+    public long getRejectedPesCount() {
+        return mRejectedPesCount;
+    }
+
     abstract void parse(byte[] pesPayload, int offset, int length) throws UnsupportedFeature;
 
-    private void commitBlock() throws UnsupportedFeature {
-        if (((mUnitBlocksWritePos + 1) % MAX_UNIT_BLOCKS) == mUnitBlockReadPos)
-            throw new UnsupportedFeature("too many units : write:%d(read:%d)",
-                    mUnitBlocksWritePos, mUnitBlockReadPos);
+    private UnitBlockQueue.UnitBlock getWriteBlock() throws UnsupportedFeature {
+        UnitBlockQueue.UnitBlock block = mUnitBlocks.getWriteBlock();
+        if (block == null)
+            throw new UnsupportedFeature("too many units in pes, blocks queue full");
+        return block;
+    }
 
-        mUnitBlocksWritePos++;
-        mUnitBlocksWritePos%=MAX_UNIT_BLOCKS;
-        mUnitBlocks[mUnitBlocksWritePos].clear();
+    private void commitBlock() {
+        mUnitBlocks.commit();
     }
 
     void addUnitBlock(int startPos, int frameSize) throws UnsupportedFeature {
@@ -170,54 +265,104 @@ public abstract class TsAudioParser {
     }
 
     void addUnitBlock(int frameSize) throws UnsupportedFeature {
-        UnitBlock block = mUnitBlocks[mUnitBlocksWritePos];
+        addUnitBlock(frameSize, NO_TIMESTAMP);
+    }
+
+    /**
+     * Adds a complete block, as a slice of the pes when possible, see {@link #canSlice(int, int)}.
+     */
+    void addUnitBlock(int frameSize, long timestampUs) throws UnsupportedFeature {
+        UnitBlockQueue.UnitBlock block = getWriteBlock();
         block.clear();
         block.length = frameSize;
         block.writePosition = frameSize;
-        if (mParser.getPosInBits() % 8 == 0) {
-            System.arraycopy(mParser.getBytes(), mParser.getPosInBytes(), block.data, 0, frameSize);
-            mParser.setPosInBits((mParser.getPosInBytes()+frameSize)*8);
+        block.timestampUs = timestampUs;
+        int startPos = mParser.getPosInBytes();
+        if (canSlice(startPos, frameSize)) {
+            block.array = mSliceSource;
+            block.offset = startPos;
+            mParser.skip(frameSize * 8, "payload");
+            mSliceCount++;
         } else {
-            for (int i = 0; i < block.length; ++i) {
-                block.data[i] = (byte) (mParser.readInt(8, "payload") & 0xff);
-            }
+            mParser.readBytes(block.data, 0, frameSize, "payload");
         }
         commitBlock();
     }
 
-    void setUnitBlockSize(int size) {
-        UnitBlock block = mUnitBlocks[mUnitBlocksWritePos];
+    /**
+     * @return true if block can reference the pes being parsed instead of being copied
+     */
+    boolean canSlice(int startPos, int frameSize) {
+        return mSliceSource != null && mParser.getBytes() == mSliceSource
+                && startPos + frameSize <= mParser.getLength();
+    }
+
+    void setUnitBlockSize(int size) throws UnsupportedFeature {
+        UnitBlockQueue.UnitBlock block = getWriteBlock();
         block.clear();
         block.length = size;
     }
 
     void setUnitBlockTimestampUs(long timestampUs) {
-        UnitBlock block = mUnitBlocks[mUnitBlocksWritePos];
-        block.timestampUs = timestampUs;
+        UnitBlockQueue.UnitBlock block = mUnitBlocks.getWriteBlock();
+        if (block != null)
+            block.timestampUs = timestampUs;
     }
 
     void fillUnitBlock() throws UnsupportedFeature {
-        UnitBlock block = mUnitBlocks[mUnitBlocksWritePos];
-        if (block.length == 0)
+        UnitBlockQueue.UnitBlock block = mUnitBlocks.getWriteBlock();
+        if (block == null || block.length == 0)
             return;
         int remaining = mParser.getLength()-mParser.getPosInBytes();
         int toCopy = block.length-block.writePosition;
         toCopy = Math.min(remaining, toCopy);
-        if (mParser.getPosInBits() % 8 == 0) {
-            System.arraycopy(mParser.getBytes(), mParser.getPosInBytes(), block.data, block.writePosition, toCopy);
-            mParser.setPosInBits((mParser.getPosInBytes()+toCopy)*8);
-        } else {
-            for (int i = 0; i < toCopy; ++i) {
-                block.data[i] = (byte) (mParser.readInt(8, "payload") & 0xff);
-            }
-        }
+        mParser.readBytes(block.data, block.writePosition, toCopy, "payload");
         block.writePosition+=toCopy;
         if (block.writePosition == block.length)
             commitBlock();
     }
 
     void clearUnitBlocks() {
-        mUnitBlockReadPos = mUnitBlocksWritePos;
+        mUnitBlocks.discardAll();
+    }
+
+    // a pes is parsed entirely or not at all: a queue filling up in the middle of a pes
+    // would leave parser state and queued blocks out of step
+    private boolean acceptPes() {
+        if (canAcceptPes())
+            return true;
+        if (mRejectedPesCount++ == 0)
+            ASPlayerLog.w("pes rejected, blocks queue nearly full, canAcceptPes not checked by feeder");
+        return false;
+    }
+
+    private boolean parsePes(Pes pes, long timestamp) {
+        try {
+            mPesTimestampUs = timestamp;
+            parse(pes.getBuffer(), pes.getHeaderLength(), pes.getLength());
+            return true;
+        } catch (UnsupportedFeature exception) {
+            ASPlayerLog.w("unsupported feature : %s", exception);
+            return false;
+        }
+    }
+
+    private void releaseConsumedPes() {
+        long readCount = mUnitBlocks.getReadCount();
+        while (mRetainedPesCount > 0 && mRetainedPesEnd[mRetainedPesFirst] <= readCount) {
+            Pes pes = mRetainedPes[mRetainedPesFirst];
+            mRetainedPes[mRetainedPesFirst] = null;
+            mRetainedPesFirst = (mRetainedPesFirst + 1) % mRetainedPes.length;
+            mRetainedPesCount--;
+            releasePes(pes);
+        }
+    }
+
+    private void releasePes(Pes pes) {
+        if (mPesReleasedListener != null)
+            mPesReleasedListener.onPesReleased(pes);
+        else
+            pes.release();
     }
 
     long getPesTimestampUs() {
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core.ts;
+
+import android.media.MediaFormat;
+
+/**
+ * TsLatmParser, AAC in LATM over LOAS AudioSyncStream, as carried by DVB
+ * Ref document :
+ * - ISO/IEC 14496-3, section 1.7.2 "LATM/LOAS" and 1.6.2.1 "AudioSpecificConfig"
+ * Only config of first program and layer is read, blocks are whole AudioSyncStream frames.
+ */
+public class TsLatmParser extends TsSyncFrameParser {
+
+    public static final String KEY_IS_LOAS = "is-loas";
+
+    // syncword and audioMuxLengthBytes
+    private static final int LOAS_HEADER_SIZE = 3;
+    // enough for a StreamMuxConfig up to the channel configuration of the first layer
+    private static final int LATM_MAX_CONFIG_SIZE = 16;
+
+    private static final int SAMPLES_PER_SUBFRAME = 1024;
+    private static final int AUDIO_OBJECT_TYPE_ESCAPE = 31;
+    private static final int SAMPLING_FREQUENCY_INDEX_ESCAPE = 15;
+
+    // work data, kept from the last StreamMuxConfig
+    private boolean mHasConfig;
+    private int mAudioObjectType;
+    private int mConfigSampleRate;
+    private int mConfigChannelCount;
+    private int mConfigSamplesPerFrame;
+
+    public TsLatmParser() {
+        super(0x56, LOAS_HEADER_SIZE + LATM_MAX_CONFIG_SIZE);
+    }
+
+    @Override
+    boolean isSync(byte[] bytes, int pos) {
+        // syncword 0x2B7 on 11 bits
+        return (bytes[pos + 1] & 0xE0) == 0xE0;
+    }
+
+    @Override
+    boolean parseHeader() {
+        // AudioSyncStream : section 1.7.2, see Table 1.28
+        mParser.skip(11, "syncword");
+        int audioMuxLengthBytes = mParser.readInt(13, "audioMuxLengthBytes");
+        // AudioMuxElement(1) : section 1.7.3, see Table 1.32
+        boolean useSameStreamMux = mParser.readBool("useSameStreamMux");
+        if (!useSameStreamMux && !parseStreamMuxConfig())
+            return false;
+        // a frame can not be decoded without a previous config
+        if (!mHasConfig)
+            return false;
+
+        mSampleRate = mConfigSampleRate;
+        mChannelCount = mConfigChannelCount;
+        mSamplesPerFrame = mConfigSamplesPerFrame;
+        mFrameSize = LOAS_HEADER_SIZE + audioMuxLengthBytes;
+        return true;
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        mHasConfig = false;
+    }
+
+    @Override
+    boolean isFormatChanged(MediaFormat format) {
+        return super.isFormatChanged(format)
+                || format.getInteger(MediaFormat.KEY_AAC_PROFILE) != mAudioObjectType;
+    }
+
+    @Override
+    MediaFormat createMediaFormat() {
+        MediaFormat format = MediaFormat.createAudioFormat(MediaFormat.MIMETYPE_AUDIO_AAC,
+                mSampleRate, mChannelCount);
+        format.setInteger(MediaFormat.KEY_IS_ADTS, 0);
+        format.setInteger(KEY_IS_LOAS, 1);
+        format.setInteger(MediaFormat.KEY_AAC_PROFILE, mAudioObjectType);
+        return format;
+    }
+
+    /**
+     * StreamMuxConfig : section 1.7.3, see Table 1.33
+     */
+    private boolean parseStreamMuxConfig() {
+        int audioMuxVersion = mParser.readInt(1, "audioMuxVersion");
+        int audioMuxVersionA = 0;
+        if (audioMuxVersion == 1)
+            audioMuxVersionA = mParser.readInt(1, "audioMuxVersionA");
+        // a false sync is likely when searching sync, so invalid headers are not logged
+        if (audioMuxVersionA != 0)
+            return false;
+
+        if (audioMuxVersion == 1)
+            readLatmValue("taraBufferFullness");
+        mParser.skip(1, "allStreamsSameTimeFraming");
+        int numSubFrames = mParser.readInt(6, "numSubFrames");
+        mParser.skip(4, "numProgram");
+        mParser.skip(3, "numLayer");
+        // first layer of first program has no useSameConfig
+        if (audioMuxVersion == 1)
+            readLatmValue("ascLen");
+        if (!parseAudioSpecificConfig())
+            return false;
+
+        mConfigSamplesPerFrame = SAMPLES_PER_SUBFRAME * (numSubFrames + 1);
+        mHasConfig = true;
+        return true;
+    }
+
+    /**
+     * AudioSpecificConfig : section 1.6.2.1, see Table 1.15
+     */
+    private boolean parseAudioSpecificConfig() {
+        int audioObjectType = mParser.readInt(5, "audioObjectType");
+        if (audioObjectType == AUDIO_OBJECT_TYPE_ESCAPE)
+            audioObjectType = 32 + mParser.readInt(6, "audioObjectTypeExt");
+        int samplingFrequencyIndex = mParser.readInt(4, "samplingFrequencyIndex");
+        int sampleRate;
+        if (samplingFrequencyIndex == SAMPLING_FREQUENCY_INDEX_ESCAPE)
+            sampleRate = mParser.readInt(24, "samplingFrequency");
+        else if (samplingFrequencyIndex < TsAdtsParser.SAMPLE_RATE_BY_INDEX.length)
+            sampleRate = TsAdtsParser.SAMPLE_RATE_BY_INDEX[samplingFrequencyIndex];
+        else
+            return false;
+        int channelConfiguration = mParser.readInt(4, "channelConfiguration");
+        if (sampleRate == 0 || audioObjectType == 0
+                || channelConfiguration >= TsAdtsParser.CHANNEL_COUNT_BY_CONFIGURATION.length)
+            return false;
+
+        mAudioObjectType = audioObjectType;
+        mConfigSampleRate = sampleRate;
+        mConfigChannelCount = TsAdtsParser.CHANNEL_COUNT_BY_CONFIGURATION[channelConfiguration];
+        return true;
+    }
+
+    /**
+     * LatmGetValue : section 1.7.3, see Table 1.34
+     */
+    private int readLatmValue(String description) {
+        int bytesForValue = mParser.readInt(2, "bytesForValue");
+        int value = 0;
+        for (int i = 0; i <= bytesForValue; i++)
+            value = (value << 8) | mParser.readInt(8, description);
+        return value;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core.ts;
+
+import android.media.MediaFormat;
+
+/**
+ * TsMpegAudioParser, frames of MPEG-1/MPEG-2 audio, layer I, II and III
+ * Ref document :
+ * - ISO/IEC 11172-3, section 2.4.1.3 and 2.4.2.3 "Header"
+ * - ISO/IEC 13818-3, section 2.4.2.3 for lower sampling frequencies
+ * Free format bit rate is not supported.
+ */
+public class TsMpegAudioParser extends TsSyncFrameParser {
+
+    public static final String KEY_LAYER = "mpeg-audio-layer";
+
+    private static final int MPEG_AUDIO_HEADER_SIZE = 4;
+
+    private static final int VERSION_2_5 = 0;
+    private static final int VERSION_2 = 2;
+    private static final int VERSION_1 = 3;
+
+    private static final int LAYER_3 = 1;
+    private static final int LAYER_2 = 2;
+    private static final int LAYER_1 = 3;
+
+    private static final int MODE_SINGLE_CHANNEL = 3;
+
+    /**
+     * Sample rates for MPEG-1, indexed by sampling_frequency
+     * MPEG-2 divides them by 2, MPEG-2.5 by 4
+     */
+    private static final int[] SAMPLE_RATE_BY_INDEX = new int[]{44100, 48000, 32000};
+    /**
+     * Bit rates in kbit/s, indexed by bitrate_index. Index 0 is free format, 15 is forbidden
+     * ISO/IEC 11172-3 section 2.4.2.3, ISO/IEC 13818-3 section 2.4.2.3
+     */
+    private static final int[] BITRATE_V1_L1 = new int[]{
+            0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448};
+    private static final int[] BITRATE_V1_L2 = new int[]{
+            0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384};
+    private static final int[] BITRATE_V1_L3 = new int[]{
+            0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320};
+    private static final int[] BITRATE_V2_L1 = new int[]{
+            0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256};
+    private static final int[] BITRATE_V2_L2_L3 = new int[]{
+            0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160};
+
+    // work data
+    private int mLayer;
+
+    public TsMpegAudioParser() {
+        super(0xFF, MPEG_AUDIO_HEADER_SIZE);
+    }
+
+    @Override
+    boolean isSync(byte[] bytes, int pos) {
+        // 11 bits of sync, MPEG-2.5 uses the last bit of the MPEG-1 syncword as version
+        return (bytes[pos + 1] & 0xE0) == 0xE0;
+    }
+
+    @Override
+    boolean parseHeader() {
+        mParser.skip(11, "syncword");
+        int version = mParser.readInt(2, "ID");
+        int layer = mParser.readInt(2, "layer");
+        mParser.skip(1, "protection_bit");
+        int bitrateIndex = mParser.readInt(4, "bitrate_index");
+        int samplingFrequency = mParser.readInt(2, "sampling_frequency");
+        int padding = mParser.readInt(1, "padding_bit");
+        mParser.skip(1, "private_bit");
+        int mode = mParser.readInt(2, "mode");
+
+        // a false sync is likely when searching sync, so invalid headers are not logged
+        if (version == 1 || layer == 0 || bitrateIndex == 0 || bitrateIndex == 15
+                || samplingFrequency == 3)
+            return false;
+
+        int sampleRate = SAMPLE_RATE_BY_INDEX[samplingFrequency];
+        if (version == VERSION_2)
+            sampleRate /= 2;
+        else if (version == VERSION_2_5)
+            sampleRate /= 4;
+
+        int bitrate;
+        if (layer == LAYER_1)
+            bitrate = (version == VERSION_1 ? BITRATE_V1_L1 : BITRATE_V2_L1)[bitrateIndex];
+        else if (version != VERSION_1)
+            bitrate = BITRATE_V2_L2_L3[bitrateIndex];
+        else if (layer == LAYER_2)
+            bitrate = BITRATE_V1_L2[bitrateIndex];
+        else
+            bitrate = BITRATE_V1_L3[bitrateIndex];
+        bitrate *= 1000;
+
+        // section 2.4.3.1, a slot is 4 bytes for layer I, 1 byte for layer II and III
+        if (layer == LAYER_1) {
+            mSamplesPerFrame = 384;
+            mFrameSize = (12 * bitrate / sampleRate + padding) * 4;
+        } else if (layer == LAYER_3 && version != VERSION_1) {
+            mSamplesPerFrame = 576;
+            mFrameSize = 72 * bitrate / sampleRate + padding;
+        } else {
+            mSamplesPerFrame = 1152;
+            mFrameSize = 144 * bitrate / sampleRate + padding;
+        }
+
+        mLayer = layer;
+        mSampleRate = sampleRate;
+        mChannelCount = (mode == MODE_SINGLE_CHANNEL) ? 1 : 2;
+        return true;
+    }
+
+    @Override
+    boolean isFormatChanged(MediaFormat format) {
+        return super.isFormatChanged(format) || format.getInteger(KEY_LAYER) != getLayerNumber();
+    }
+
+    @Override
+    MediaFormat createMediaFormat() {
+        MediaFormat format = MediaFormat.createAudioFormat(MediaFormat.MIMETYPE_AUDIO_MPEG,
+                mSampleRate, mChannelCount);
+        format.setInteger(KEY_LAYER, getLayerNumber());
+        return format;
+    }
+
+    private int getLayerNumber() {
+        // layer field is 4 - layer number
+        return 4 - mLayer;
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core.ts;
+
+import com.amlogic.asplayer.core.sipsi.mpeg.Mpeg;
+import com.amlogic.asplayer.core.sipsi.mpeg.TsPacket;
+
+/**
+ * Streaming sync stage in front of the DVR.
+ * Input may be split at any byte position and may contain garbage, output written to
+ * {@link Output} always starts on a packet boundary and only contains valid packets.
+ *
+ * When sync is lost, the stream is scanned for a sync byte followed by
+ * {@link #SYNC_CONFIRM_PACKETS} - 1 more valid packets before locking again.
+ * Bytes skipped while searching sync are counted as dropped.
+ *
+ * Aligned input is written to output without copy, only partial packets and data
+ * of an unconfirmed sync candidate are kept between two calls.
+ * Not thread safe, callers must serialize {@link #write} and {@link #reset}.
+ */
+public class TsPacketAligner {
+
+    private static final int SYNC_CONFIRM_PACKETS = 3;
+    private static final int PACKET_SIZE = Mpeg.TS_PACKET_SIZE;
+
+    public interface Output {
+        /**
+         * @return bytes accepted, 0 if output is full, negative value on error
+         */
+        long write(byte[] bytes, int offset, int size);
+    }
+
+    private final Output mOutput;
+    private final TsPacket mPacket = new TsPacket();
+
+    private boolean mLocked;
+
+    // input bytes consumed but not processed yet: a partial packet when locked,
+    // data not long enough to confirm a sync candidate when unlocked
+    private final byte[] mCarry = new byte[PACKET_SIZE * SYNC_CONFIRM_PACKETS];
+    private int mCarrySize;
+
+    // end of a packet partially accepted by output, must be written before anything else
+    private final byte[] mPending = new byte[PACKET_SIZE];
+    private int mPendingOffset;
+    private int mPendingSize;
+
+    private boolean mOutputBusy;
+    private long mOutputError;
+
+    private long mDroppedBytes;
+    private long mSyncLossCount;
+
+    public TsPacketAligner(Output output) {
+        mOutput = output;
+    }
+
+    /**
+     * @return bytes consumed from input, 0 if output is full,
+     *  negative value if output reports an error and nothing is consumed
+     */
+    public long write(byte[] bytes, int offset, int size) {
+        mOutputBusy = false;
+        mOutputError = 0;
+
+        if (!drainPending()) {
+            return mOutputError < 0 ? mOutputError : 0;
+        }
+
+        int consumed = 0;
+        while (mCarrySize > 0) {
+            int processed = processRegion(mCarry, 0, mCarrySize);
+            if (processed > 0) {
+                mCarrySize -= processed;
+                System.arraycopy(mCarry, processed, mCarry, 0, mCarrySize);
+            }
+            if (mOutputBusy || mCarrySize == 0 || consumed == size) {
+                break;
+            }
+
+            // when locked complete the partial packet only, then go back to input
+            int wanted = (mLocked ? PACKET_SIZE : mCarry.length) - mCarrySize;
+            int taken = Math.min(wanted, size - consumed);
+            System.arraycopy(bytes, offset + consumed, mCarry, mCarrySize, taken);
+            mCarrySize += taken;
+            consumed += taken;
+        }
+
+        if (!mOutputBusy && mCarrySize == 0 && consumed < size) {
+            consumed += processRegion(bytes, offset + consumed, size - consumed);
+            if (!mOutputBusy && consumed < size) {
+                // tail shorter than a packet or than a sync confirmation
+                mCarrySize = size - consumed;
+                System.arraycopy(bytes, offset + consumed, mCarry, 0, mCarrySize);
+                consumed = size;
+            }
+        }
+
+        if (consumed == 0 && mOutputError < 0) {
+            return mOutputError;
+        }
+        return consumed;
+    }
+
+    /**
+     * Drop buffered data and search sync again, called when input is flushed.
+     */
+    public void reset() {
+        mLocked = false;
+        mCarrySize = 0;
+        mPendingOffset = 0;
+        mPendingSize = 0;
+    }
+
+    public long getDroppedBytes() {
+        return mDroppedBytes;
+    }
+
+    public long getSyncLossCount() {
+        return mSyncLossCount;
+    }
+
+    /**
+     * @return bytes processed, either written to output or dropped
+     */
+    private int processRegion(byte[] bytes, int offset, int size) {
+        int pos = offset;
+        int end = offset + size;
+        while (true) {
+            if (mLocked) {
+                int alignedEnd = pos;
+                while (end - alignedEnd >= PACKET_SIZE && isValidPacket(bytes, alignedEnd)) {
+                    alignedEnd += PACKET_SIZE;
+                }
+                if (alignedEnd > pos) {
+                    pos += emit(bytes, pos, alignedEnd - pos);
+                    if (mOutputBusy) {
+                        return pos - offset;
+                    }
+                }
+                if (end - pos < PACKET_SIZE) {
+                    return pos - offset;
+                }
+                mLocked = false;
+                mSyncLossCount++;
+            }
+
+            int syncPos = findSync(bytes, pos, end);
+            mDroppedBytes += syncPos - pos;
+            pos = syncPos;
+            if (!mLocked) {
+                return pos - offset;
+            }
+        }
+    }
+
+    /**
+     * Search a sync byte confirmed by following packets, lock on it if found.
+     *
+     * @return position of the confirmed sync, or of the first candidate which can not
+     *  be confirmed yet for lack of data
+     */
+    private int findSync(byte[] bytes, int pos, int end) {
+        for (int candidate = pos; candidate < end; candidate++) {
+            if (bytes[candidate] != 0x47) {
+                continue;
+            }
+            if (end - candidate < PACKET_SIZE * (SYNC_CONFIRM_PACKETS - 1) + 2) {
+                return candidate;
+            }
+
+            boolean confirmed = true;
+            for (int i = 0; i < SYNC_CONFIRM_PACKETS; i++) {
+                if (!isValidPacket(bytes, candidate + i * PACKET_SIZE)) {
+                    confirmed = false;
+                    break;
+                }
+            }
+            if (confirmed) {
+                mLocked = true;
+                return candidate;
+            }
+        }
+        return end;
+    }
+
+    private boolean isValidPacket(byte[] bytes, int offset) {
+        mPacket.wrap(bytes, offset);
+        return mPacket.isValid();
+    }
+
+    /**
+     * Write aligned packets to output. If output accepts only a part of a packet,
+     * the rest of it is kept as pending so that output stays aligned.
+     *
+     * @return bytes processed
+     */
+    private int emit(byte[] bytes, int offset, int size) {
+        long ret = mOutput.write(bytes, offset, size);
+        if (ret < 0) {
+            mOutputError = ret;
+            mOutputBusy = true;
+            return 0;
+        }
+
+        int written = (int) ret;
+        if (written < size) {
+            mOutputBusy = true;
+            int partial = written % PACKET_SIZE;
+            if (partial > 0) {
+                mPendingOffset = 0;
+                mPendingSize = PACKET_SIZE - partial;
+                System.arraycopy(bytes, offset + written, mPending, 0, mPendingSize);
+                written += mPendingSize;
+            }
+        }
+        return written;
+    }
+
+    private boolean drainPending() {
+        if (mPendingSize == 0) {
+            return true;
+        }
+
+        long ret = mOutput.write(mPending, mPendingOffset, mPendingSize);
+        if (ret < 0) {
+            mOutputError = ret;
+            return false;
+        }
+        mPendingOffset += (int) ret;
+        mPendingSize -= (int) ret;
+        return mPendingSize == 0;
+    }
+}
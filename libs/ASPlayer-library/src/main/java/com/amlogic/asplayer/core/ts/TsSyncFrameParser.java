@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core.ts;
+
+import android.media.MediaFormat;
+
+import com.amlogic.asplayer.core.sipsi.mpeg.Mpeg;
+
+/**
+ * Base class of audio parsers for formats made of self-delimited frames, each starting with a
+ * sync word followed by a header giving the frame size.
+ *
+ * It handles what does not depend on the format : sync search, headers and frames split between
+ * two pes, timestamp of every frame and MediaFormat updates. Every frame becomes a unit block,
+ * a slice of the pes when possible.
+ *
+ * A header is only trusted if it is valid, frame is dropped byte by byte until a valid header
+ * is found.
+ */
+abstract class TsSyncFrameParser extends TsAudioParser {
+
+    // first byte of the sync word, used for the fast scan
+    private final int mSyncByte;
+    // number of bytes parseHeader may read
+    private final int mMinHeaderSize;
+
+    // filled by parseHeader
+    int mFrameSize;
+    int mSampleRate;
+    int mChannelCount;
+    int mSamplesPerFrame;
+
+    // header split between previous pes and this one
+    private final byte[] mPartialHeader;
+    private int mPartialHeaderLength;
+    // partial header followed by pes payload, reused from pes to pes
+    private byte[] mJoinedPayload = new byte[0];
+
+    // timing : timestamp of a frame is mTimestampBaseUs plus duration of the samples
+    // since base, base is the PTS of the pes where the last timed frame started
+    private long mTimestampBaseUs = NO_TIMESTAMP;
+    private long mSamplesSinceBase;
+    private int mTimestampSampleRate;
+
+    TsSyncFrameParser(int syncByte, int minHeaderSize) {
+        mSyncByte = syncByte;
+        mMinHeaderSize = minHeaderSize;
+        mPartialHeader = new byte[minHeaderSize];
+    }
+
+    /**
+     * Checks sync word, first byte of it is already known to match.
+     *
+     * @param bytes data, two bytes are available from pos
+     */
+    abstract boolean isSync(byte[] bytes, int pos);
+
+    /**
+     * Parses frame header. mParser is at the start of the frame, with at least min header size
+     * bytes available. Fills mFrameSize, mSampleRate, mChannelCount and mSamplesPerFrame.
+     *
+     * @return false if header is not valid
+     */
+    abstract boolean parseHeader();
+
+    abstract MediaFormat createMediaFormat();
+
+    /**
+     * @return true if format built from the current header differs from format
+     */
+    boolean isFormatChanged(MediaFormat format) {
+        return format.getInteger(MediaFormat.KEY_CHANNEL_COUNT) != mChannelCount
+                || format.getInteger(MediaFormat.KEY_SAMPLE_RATE) != mSampleRate;
+    }
+
+    public void reset() {
+        super.reset();
+        mPartialHeaderLength = 0;
+        mTimestampBaseUs = NO_TIMESTAMP;
+        mSamplesSinceBase = 0;
+        mTimestampSampleRate = 0;
+    }
+
+    void parse(byte[] pesPayload, int offset, int length) throws UnsupportedFeature {
+        // position of pes payload in parsed data
+        int payloadStart;
+        if (mPartialHeaderLength != 0) {
+            int size = mPartialHeaderLength + length - offset;
+            if (mJoinedPayload.length < size)
+                mJoinedPayload = new byte[size];
+            System.arraycopy(mPartialHeader, 0, mJoinedPayload, 0, mPartialHeaderLength);
+            System.arraycopy(pesPayload, offset, mJoinedPayload, mPartialHeaderLength, length - offset);
+            mParser.setBytes(mJoinedPayload, 0, size);
+            length = size;
+            payloadStart = mPartialHeaderLength;
+            mPartialHeaderLength = 0;
+        } else {
+            mParser.setBytes(pesPayload, offset, length);
+            payloadStart = offset;
+        }
+
+        // end of the frame started in previous pes
+        fillUnitBlock();
+
+        // pes PTS applies to the first frame starting in the pes, a frame joined from a header
+        // split with previous pes is still timed from previous base
+        long pesTimestampUs = getPesTimestampUs();
+
+        byte[] bytes = mParser.getBytes();
+        int pos = mParser.getPosInBytes();
+        while ((pos = findSync(bytes, pos, length)) < length) {
+            if (pesTimestampUs != NO_TIMESTAMP && pos >= payloadStart) {
+                setTimestampBase(pesTimestampUs);
+                pesTimestampUs = NO_TIMESTAMP;
+            }
+
+            if (pos + mMinHeaderSize > length) {
+                mPartialHeaderLength = length - pos;
+                System.arraycopy(bytes, pos, mPartialHeader, 0, mPartialHeaderLength);
+                break;
+            }
+
+            mParser.setPosInBits(pos * 8);
+            if (!parseHeader() || mFrameSize <= 0 || mFrameSize > MAX_UNIT_BLOCK_SIZE) {
+                pos++;
+                continue;
+            }
+
+            MediaFormat format = getMediaFormat();
+            if (format == null || isFormatChanged(format))
+                setMediaFormat(createMediaFormat());
+
+            long timestampUs = nextFrameTimestampUs();
+            mParser.setPosInBits(pos * 8);
+            if (canSlice(pos, mFrameSize)) {
+                addUnitBlock(mFrameSize, timestampUs);
+            } else {
+                // frame continues in next pes
+                setUnitBlockSize(mFrameSize);
+                setUnitBlockTimestampUs(timestampUs);
+                fillUnitBlock();
+            }
+            pos += mFrameSize;
+        }
+
+        // no frame starts in the pes, PTS applies to the next one
+        if (pesTimestampUs != NO_TIMESTAMP)
+            setTimestampBase(pesTimestampUs);
+    }
+
+    private void setTimestampBase(long timestampUs) {
+        mTimestampBaseUs = timestampUs;
+        mSamplesSinceBase = 0;
+    }
+
+    /**
+     * @return position of the next sync word, or of a sync byte ending data, end if none
+     */
+    private int findSync(byte[] bytes, int pos, int end) {
+        for (; pos < end; pos++) {
+            if ((bytes[pos] & 0xff) != mSyncByte)
+                continue;
+            if (pos + 1 == end || isSync(bytes, pos))
+                return pos;
+        }
+        return end;
+    }
+
+    private long nextFrameTimestampUs() {
+        if (mTimestampBaseUs == NO_TIMESTAMP)
+            return NO_TIMESTAMP;
+        if (mSampleRate != mTimestampSampleRate) {
+            if (mTimestampSampleRate != 0)
+                mTimestampBaseUs += mSamplesSinceBase * 1000000L / mTimestampSampleRate;
+            mSamplesSinceBase = 0;
+            mTimestampSampleRate = mSampleRate;
+        }
+        long timestampUs = (mTimestampBaseUs + mSamplesSinceBase * 1000000L / mSampleRate)
+                % Mpeg.PTS_MAX_VALUE_IN_US;
+        mSamplesSinceBase += mSamplesPerFrame;
+        return timestampUs;
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core.ts;
+
+import com.amlogic.asplayer.core.sipsi.TsDemux;
+import com.amlogic.asplayer.core.sipsi.mpeg.Mpeg;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a {@link TsVideoIndexer} on another thread than the one writing the stream.
+ *
+ * The writer only copies the packets of the video pid to a bounded queue, demux and video
+ * parsing are done by the executor. When the queue is full, packets are dropped and the pes
+ * being reassembled is dropped with them : under load, key frames are sampled instead of
+ * slowing writes down.
+ */
+public class TsVideoIndexQueue {
+
+    // about 1.5s of a 2 Mbit/s video
+    public static final int DEFAULT_CAPACITY = 2048;
+
+    private static final int TS_PACKET_SIZE = Mpeg.TS_PACKET_SIZE;
+    // packets taken from the queue at once by the executor
+    private static final int BATCH_SIZE = 64;
+
+    private static final String THREAD_NAME = "ASPlayer-index";
+    private static final long KEEP_ALIVE_S = 30;
+
+    private static ThreadPoolExecutor sExecutor;
+
+    private final TsVideoIndexer mIndexer;
+    private final int mPid;
+    private final Executor mExecutor;
+    private final Runnable mDrainTask = this::drain;
+
+    private final Object mLock = new Object();
+    // ring of packets and their position in the stream, guarded by mLock
+    private final byte[] mPackets;
+    private final long[] mPositions;
+    // packet follows dropped packets
+    private final boolean[] mGaps;
+    private int mFirst;
+    private int mCount;
+    private boolean mGap;
+    private boolean mFlushPending;
+    private boolean mDrainPending;
+    private boolean mClosed;
+    // position in the stream of the next byte offered
+    private long mPosition;
+    private long mDroppedCount;
+
+    // held while packets are given to the demux, close waits for it
+    private final Object mDrainLock = new Object();
+    // only used by the executor
+    private final TsDemux mDemux = new TsDemux();
+    private final byte[] mBatch = new byte[BATCH_SIZE * TS_PACKET_SIZE];
+    private final long[] mBatchPositions = new long[BATCH_SIZE];
+    private final boolean[] mBatchGaps = new boolean[BATCH_SIZE];
+
+    /**
+     * @param capacity number of packets of the queue
+     */
+    public TsVideoIndexQueue(TsVideoIndexer indexer, int pid, int capacity, Executor executor) {
+        mIndexer = indexer;
+        mPid = pid;
+        mExecutor = executor;
+        mPackets = new byte[capacity * TS_PACKET_SIZE];
+        mPositions = new long[capacity];
+        mGaps = new boolean[capacity];
+        mIndexer.attach(mDemux, pid);
+    }
+
+    /**
+     * @return executor shared by the index queues of all players, its thread is a daemon and
+     * stops when idle
+     */
+    public static synchronized Executor getDefaultExecutor() {
+        if (sExecutor == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1,
+                    KEEP_ALIVE_S, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, THREAD_NAME);
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.allowCoreThreadTimeOut(true);
+            sExecutor = executor;
+        }
+        return sExecutor;
+    }
+
+    /**
+     * Queues the packets of the video pid found in bytes[offset, offset + size), data must be
+     * aligned on ts packets. Positions of packets follow those of the previous call.
+     */
+    public void offer(byte[] bytes, int offset, int size) {
+        boolean schedule = false;
+        synchronized (mLock) {
+            if (mClosed)
+                return;
+            int capacity = mPositions.length;
+            int end = offset + size - TS_PACKET_SIZE;
+            for (int pos = offset; pos <= end; pos += TS_PACKET_SIZE) {
+                long position = mPosition;
+                mPosition += TS_PACKET_SIZE;
+                if ((((bytes[pos + 1] & 0x1f) << 8) | (bytes[pos + 2] & 0xff)) != mPid)
+                    continue;
+                if (mCount == capacity) {
+                    mDroppedCount++;
+                    mGap = true;
+                    continue;
+                }
+                int slot = (mFirst + mCount) % capacity;
+                System.arraycopy(bytes, pos, mPackets, slot * TS_PACKET_SIZE, TS_PACKET_SIZE);
+                mPositions[slot] = position;
+                mGaps[slot] = mGap;
+                mGap = false;
+                mCount++;
+            }
+            if (mCount > 0 && !mDrainPending) {
+                mDrainPending = true;
+                schedule = true;
+            }
+        }
+        if (schedule)
+            execute();
+    }
+
+    /**
+     * Drops queued packets and the pes being reassembled, key frames already indexed are kept.
+     */
+    public void flush() {
+        synchronized (mLock) {
+            mCount = 0;
+            mGap = false;
+            mFlushPending = true;
+        }
+    }
+
+    /**
+     * Stops indexing, no key frame is added to the index once it returns.
+     */
+    public void close() {
+        synchronized (mLock) {
+            mClosed = true;
+            mCount = 0;
+        }
+        synchronized (mDrainLock) {
+            mIndexer.detach();
+        }
+    }
+
+    /**
+     * @return packets of the video pid dropped because queue was full
+     */
+    public long getDroppedCount() {
+        synchronized (mLock) {
+            return mDroppedCount;
+        }
+    }
+
+    private void execute() {
+        try {
+            mExecutor.execute(mDrainTask);
+        } catch (RejectedExecutionException exception) {
+            synchronized (mLock) {
+                mDrainPending = false;
+            }
+        }
+    }
+
+    private void drain() {
+        synchronized (mDrainLock) {
+            while (true) {
+                int count;
+                boolean flush;
+                synchronized (mLock) {
+                    if (mClosed || mCount == 0) {
+                        mDrainPending = false;
+                        return;
+                    }
+                    flush = mFlushPending;
+                    mFlushPending = false;
+                    count = Math.min(mCount, BATCH_SIZE);
+                    int capacity = mPositions.length;
+                    for (int i = 0; i < count; i++) {
+                        int slot = (mFirst + i) % capacity;
+                        System.arraycopy(mPackets, slot * TS_PACKET_SIZE,
+                                mBatch, i * TS_PACKET_SIZE, TS_PACKET_SIZE);
+                        mBatchPositions[i] = mPositions[slot];
+                        mBatchGaps[i] = mGaps[slot];
+                    }
+                    mFirst = (mFirst + count) % capacity;
+                    mCount -= count;
+                }
+
+                if (flush)
+                    mDemux.flush();
+                for (int i = 0; i < count; i++) {
+                    if (mBatchGaps[i])
+                        mDemux.flush();
+                    mDemux.setPosition(mBatchPositions[i]);
+                    mDemux.process(mBatch, i * TS_PACKET_SIZE, TS_PACKET_SIZE);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core.ts;
+
+import com.amlogic.asplayer.core.sipsi.TsDemux;
+import com.amlogic.asplayer.core.sipsi.mpeg.Mpeg;
+import com.amlogic.asplayer.core.sipsi.mpeg.Pes;
+import com.amlogic.asplayer.core.sipsi.mpeg.PesAssembler;
+
+/**
+ * Fills a {@link KeyFrameIndex} with key frames of a video pid of a {@link TsDemux}.
+ * Positions are those given by the demux, see {@link TsDemux#setPosition(long)}.
+ */
+public class TsVideoIndexer implements PesAssembler.OnPesListener {
+
+    private final KeyFrameIndex mIndex;
+    private final TsVideoParser mParser;
+
+    private TsDemux mDemux;
+    private int mPid = -1;
+
+    public TsVideoIndexer(KeyFrameIndex index, String mimeType) {
+        mIndex = index;
+        mParser = new TsVideoParser(mimeType);
+    }
+
+    /**
+     * Start indexing pes of pid.
+     */
+    public void attach(TsDemux demux, int pid) {
+        mDemux = demux;
+        mPid = pid;
+        mDemux.addPesPid(pid, this);
+    }
+
+    public void detach() {
+        if (mDemux == null) {
+            return;
+        }
+        mDemux.removePid(mPid);
+        mDemux = null;
+        mPid = -1;
+        mParser.reset();
+    }
+
+    public TsVideoParser getParser() {
+        return mParser;
+    }
+
+    @Override
+    public void onPes(int pid, Pes pes) {
+        // a key frame without pts or position can't be reached by a seek
+        if (!mParser.setPes(pes) || !pes.hasPts() || pes.getPosition() < 0)
+            return;
+        mIndex.add(Mpeg.ptsToUs(pes.getPts()), pes.getPosition());
+    }
+}
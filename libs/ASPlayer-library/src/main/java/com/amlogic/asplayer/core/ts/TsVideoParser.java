@@ -0,0 +1,534 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core.ts;
+
+import android.media.MediaFormat;
+
+import com.amlogic.asplayer.core.sipsi.BufferParser;
+import com.amlogic.asplayer.core.sipsi.mpeg.Pes;
+
+/**
+ * Parser of video elementary streams, split into units by start codes.
+ * For each pes, it tells if it holds a random access point (IDR/IRAP/I picture/key frame) and
+ * keeps resolution and aspect ratio found in sequence headers. Data is not copied, only the few
+ * bytes of headers are unescaped.
+ *
+ * Video pes are expected to be aligned on access units, as done by broadcast streams.
+ * Ref document :
+ * - ITU-T H.264, section 7.3.2.1 (SPS) and 7.3.3 (slice header)
+ * - ITU-T H.265, section 7.3.2.2 (SPS) and 7.4.2.2 (nal unit types)
+ * - ISO/IEC 13818-2, section 6.2.2 (sequence header) and 6.2.3 (picture header)
+ * - AV1 bitstream specification, section 5.5 (sequence header), 5.9 (frame header),
+ *   with start codes and emulation prevention as for carriage of AV1 in MPEG-2 TS
+ */
+public class TsVideoParser {
+
+    private static final int CODEC_AVC = 0;
+    private static final int CODEC_HEVC = 1;
+    private static final int CODEC_MPEG2 = 2;
+    private static final int CODEC_AV1 = 3;
+
+    // H.264, Table 7-1
+    private static final int AVC_NAL_SLICE = 1;
+    private static final int AVC_NAL_IDR = 5;
+    private static final int AVC_NAL_SPS = 7;
+    private static final int AVC_SLICE_TYPE_I = 2;
+    private static final int AVC_SLICE_TYPE_SI = 4;
+    // H.264, Table E-1
+    private static final int AVC_EXTENDED_SAR = 255;
+
+    // H.265, Table 7-1
+    private static final int HEVC_NAL_IRAP_FIRST = 16;
+    private static final int HEVC_NAL_IRAP_LAST = 23;
+    private static final int HEVC_NAL_SPS = 33;
+
+    // ISO/IEC 13818-2, Table 6-1
+    private static final int MPEG2_PICTURE_START = 0x00;
+    private static final int MPEG2_SEQUENCE_HEADER = 0xB3;
+    private static final int MPEG2_EXTENSION_START = 0xB5;
+    private static final int MPEG2_SEQUENCE_EXTENSION_ID = 1;
+    private static final int MPEG2_PICTURE_TYPE_I = 1;
+
+    // AV1, section 6.2.2
+    private static final int AV1_OBU_SEQUENCE_HEADER = 1;
+    private static final int AV1_OBU_FRAME_HEADER = 3;
+    private static final int AV1_OBU_FRAME = 6;
+    private static final int AV1_KEY_FRAME = 0;
+
+    // sequence headers are parsed from their first bytes, unescaped
+    private static final int MAX_HEADER_SIZE = 256;
+
+    private final int mCodec;
+    private final BufferParser mParser = new BufferParser();
+    private final byte[] mHeader = new byte[MAX_HEADER_SIZE];
+
+    private boolean mKeyFrame;
+    private int mWidth;
+    private int mHeight;
+    private int mPixelAspectRatio;
+    // AV1 : frames of a reduced still picture sequence are all key frames
+    private boolean mReducedStillPictureHeader;
+
+    private long mKeyFrameCount;
+
+    /**
+     * @param mimeType one of MediaFormat video mime types, see {@link #isSupported(String)}
+     */
+    public TsVideoParser(String mimeType) {
+        mCodec = getCodec(mimeType);
+        if (mCodec < 0)
+            throw new IllegalArgumentException("unsupported video mime type: " + mimeType);
+    }
+
+    public static boolean isSupported(String mimeType) {
+        return getCodec(mimeType) >= 0;
+    }
+
+    /**
+     * Parses every unit of a pes.
+     *
+     * @return true if pes holds a random access point
+     */
+    public boolean setPes(Pes pes) {
+        return parse(pes.getBuffer(), pes.getHeaderLength(), pes.getLength());
+    }
+
+    /**
+     * Parses every unit of an access unit in bytes[offset, end).
+     *
+     * @return true if it holds a random access point
+     */
+    public boolean parse(byte[] bytes, int offset, int end) {
+        mKeyFrame = false;
+        int unitStart = findStartCode(bytes, offset, end);
+        while (unitStart >= 0) {
+            int nextUnitStart = findStartCode(bytes, unitStart, end);
+            // unit ends before start code of next one, trailing zeros are not an issue
+            int unitEnd = nextUnitStart >= 0 ? nextUnitStart - 3 : end;
+            if (unitStart < unitEnd)
+                parseUnit(bytes, unitStart, unitEnd);
+            unitStart = nextUnitStart;
+        }
+        if (mKeyFrame)
+            mKeyFrameCount++;
+        return mKeyFrame;
+    }
+
+    public boolean isKeyFrame() {
+        return mKeyFrame;
+    }
+
+    /**
+     * @return coded width without cropping area, 0 until a sequence header is found
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * @return aspect ratio code of the stream, aspect_ratio_idc for H.264,
+     * aspect_ratio_information for MPEG-2, 0 if unknown
+     */
+    public int getPixelAspectRatio() {
+        return mPixelAspectRatio;
+    }
+
+    public long getKeyFrameCount() {
+        return mKeyFrameCount;
+    }
+
+    public void reset() {
+        mKeyFrame = false;
+        mWidth = 0;
+        mHeight = 0;
+        mPixelAspectRatio = 0;
+        mReducedStillPictureHeader = false;
+    }
+
+    /**
+     * Finds the next 0x000001 start code. Bytes are tested at a stride of 3 : if a byte is
+     * above 1, no start code can end on it or on the next two bytes.
+     *
+     * @return position following the start code, -1 if none
+     */
+    static int findStartCode(byte[] bytes, int pos, int end) {
+        int i = pos + 2;
+        while (i < end) {
+            int b = bytes[i];
+            if (b == 0) {
+                i++;
+            } else if (b == 1 && bytes[i - 1] == 0 && bytes[i - 2] == 0) {
+                return i + 1;
+            } else {
+                i += 3;
+            }
+        }
+        return -1;
+    }
+
+    private static int getCodec(String mimeType) {
+        if (MediaFormat.MIMETYPE_VIDEO_AVC.equals(mimeType))
+            return CODEC_AVC;
+        if (MediaFormat.MIMETYPE_VIDEO_HEVC.equals(mimeType))
+            return CODEC_HEVC;
+        if (MediaFormat.MIMETYPE_VIDEO_MPEG2.equals(mimeType))
+            return CODEC_MPEG2;
+        if (MediaFormat.MIMETYPE_VIDEO_AV1.equals(mimeType))
+            return CODEC_AV1;
+        return -1;
+    }
+
+    private void parseUnit(byte[] bytes, int start, int end) {
+        // malformed headers are ignored, as if unit was missing
+        try {
+            switch (mCodec) {
+                case CODEC_AVC:
+                    parseAvcNalUnit(bytes, start, end);
+                    break;
+                case CODEC_HEVC:
+                    parseHevcNalUnit(bytes, start, end);
+                    break;
+                case CODEC_MPEG2:
+                    parseMpeg2Unit(bytes, start, end);
+                    break;
+                case CODEC_AV1:
+                    parseAv1Obu(bytes, start, end);
+                    break;
+            }
+        } catch (IllegalArgumentException exception) {
+            // out of bounds
+        }
+    }
+
+    /**
+     * Copies the beginning of a unit to mHeader, without emulation prevention bytes,
+     * and sets mParser on it.
+     */
+    private void setUnescapedHeader(byte[] bytes, int start, int end) {
+        int size = 0;
+        int zeros = 0;
+        for (int i = start; i < end && size < MAX_HEADER_SIZE; i++) {
+            byte b = bytes[i];
+            if (zeros >= 2 && b == 3) {
+                zeros = 0;
+                continue;
+            }
+            zeros = (b == 0) ? zeros + 1 : 0;
+            mHeader[size++] = b;
+        }
+        mParser.setBytes(mHeader, 0, size);
+    }
+
+    private void parseAvcNalUnit(byte[] bytes, int start, int end) {
+        int nalUnitType = bytes[start] & 0x1F;
+        switch (nalUnitType) {
+            case AVC_NAL_IDR:
+                mKeyFrame = true;
+                break;
+            case AVC_NAL_SLICE:
+                // I slices without IDR, as used with recovery points by broadcast streams
+                setUnescapedHeader(bytes, start + 1, end);
+                int firstMbInSlice = mParser.readUnsignedExpGolomb("first_mb_in_slice");
+                int sliceType = mParser.readUnsignedExpGolomb("slice_type") % 5;
+                if (firstMbInSlice == 0
+                        && (sliceType == AVC_SLICE_TYPE_I || sliceType == AVC_SLICE_TYPE_SI))
+                    mKeyFrame = true;
+                break;
+            case AVC_NAL_SPS:
+                setUnescapedHeader(bytes, start + 1, end);
+                parseAvcSps();
+                break;
+        }
+    }
+
+    private void parseAvcSps() {
+        BufferParser parser = mParser;
+        int profileIdc = parser.readInt(8, "profile_idc");
+        parser.skip(8, "constraint_set_flags");
+        parser.skip(8, "level_idc");
+        parser.readUnsignedExpGolomb("seq_parameter_set_id");
+
+        int chromaFormatIdc = 1;
+        boolean separateColourPlane = false;
+        if (profileIdc == 100 || profileIdc == 110 || profileIdc == 122 || profileIdc == 244
+                || profileIdc == 44 || profileIdc == 83 || profileIdc == 86 || profileIdc == 118
+                || profileIdc == 128 || profileIdc == 138 || profileIdc == 139
+                || profileIdc == 134 || profileIdc == 135) {
+            chromaFormatIdc = parser.readUnsignedExpGolomb("chroma_format_idc");
+            if (chromaFormatIdc == 3)
+                separateColourPlane = parser.readBool("separate_colour_plane_flag");
+            parser.readUnsignedExpGolomb("bit_depth_luma_minus8");
+            parser.readUnsignedExpGolomb("bit_depth_chroma_minus8");
+            parser.skip(1, "qpprime_y_zero_transform_bypass_flag");
+            if (parser.readBool("seq_scaling_matrix_present_flag")) {
+                int count = (chromaFormatIdc != 3) ? 8 : 12;
+                for (int i = 0; i < count; i++) {
+                    if (parser.readBool("seq_scaling_list_present_flag"))
+                        skipAvcScalingList(i < 6 ? 16 : 64);
+                }
+            }
+        }
+
+        parser.readUnsignedExpGolomb("log2_max_frame_num_minus4");
+        int picOrderCntType = parser.readUnsignedExpGolomb("pic_order_cnt_type");
+        if (picOrderCntType == 0) {
+            parser.readUnsignedExpGolomb("log2_max_pic_order_cnt_lsb_minus4");
+        } else if (picOrderCntType == 1) {
+            parser.skip(1, "delta_pic_order_always_zero_flag");
+            parser.readSignedExpGolomb("offset_for_non_ref_pic");
+            parser.readSignedExpGolomb("offset_for_top_to_bottom_field");
+            int numRefFramesInPicOrderCntCycle =
+                    parser.readUnsignedExpGolomb("num_ref_frames_in_pic_order_cnt_cycle");
+            for (int i = 0; i < numRefFramesInPicOrderCntCycle; i++)
+                parser.readSignedExpGolomb("offset_for_ref_frame");
+        }
+        parser.readUnsignedExpGolomb("max_num_ref_frames");
+        parser.skip(1, "gaps_in_frame_num_value_allowed_flag");
+        int picWidthInMbs = parser.readUnsignedExpGolomb("pic_width_in_mbs_minus1") + 1;
+        int picHeightInMapUnits = parser.readUnsignedExpGolomb("pic_height_in_map_units_minus1") + 1;
+        boolean frameMbsOnly = parser.readBool("frame_mbs_only_flag");
+        if (!frameMbsOnly)
+            parser.skip(1, "mb_adaptive_frame_field_flag");
+        parser.skip(1, "direct_8x8_inference_flag");
+
+        int width = picWidthInMbs * 16;
+        int height = (frameMbsOnly ? 1 : 2) * picHeightInMapUnits * 16;
+        if (parser.readBool("frame_cropping_flag")) {
+            // section 7.4.2.1.1, CropUnitX and CropUnitY
+            int chromaArrayType = separateColourPlane ? 0 : chromaFormatIdc;
+            int cropUnitX = (chromaArrayType == 0 || chromaArrayType == 3) ? 1 : 2;
+            int cropUnitY = (chromaArrayType == 1 ? 2 : 1) * (frameMbsOnly ? 1 : 2);
+            width -= cropUnitX * (parser.readUnsignedExpGolomb("frame_crop_left_offset")
+                    + parser.readUnsignedExpGolomb("frame_crop_right_offset"));
+            height -= cropUnitY * (parser.readUnsignedExpGolomb("frame_crop_top_offset")
+                    + parser.readUnsignedExpGolomb("frame_crop_bottom_offset"));
+        }
+
+        int aspectRatio = 0;
+        if (parser.readBool("vui_parameters_present_flag")
+                && parser.readBool("aspect_ratio_info_present_flag")) {
+            aspectRatio = parser.readInt(8, "aspect_ratio_idc");
+            if (aspectRatio == AVC_EXTENDED_SAR)
+                aspectRatio = 0;
+        }
+
+        mWidth = width;
+        mHeight = height;
+        mPixelAspectRatio = aspectRatio;
+    }
+
+    private void skipAvcScalingList(int size) {
+        int lastScale = 8;
+        int nextScale = 8;
+        for (int i = 0; i < size && nextScale != 0; i++) {
+            int deltaScale = mParser.readSignedExpGolomb("delta_scale");
+            nextScale = (lastScale + deltaScale + 256) % 256;
+            if (nextScale != 0)
+                lastScale = nextScale;
+        }
+    }
+
+    private void parseHevcNalUnit(byte[] bytes, int start, int end) {
+        int nalUnitType = (bytes[start] >> 1) & 0x3F;
+        if (nalUnitType >= HEVC_NAL_IRAP_FIRST && nalUnitType <= HEVC_NAL_IRAP_LAST) {
+            mKeyFrame = true;
+        } else if (nalUnitType == HEVC_NAL_SPS) {
+            // nal_unit_header is 2 bytes
+            setUnescapedHeader(bytes, start + 2, end);
+            parseHevcSps();
+        }
+    }
+
+    private void parseHevcSps() {
+        BufferParser parser = mParser;
+        parser.skip(4, "sps_video_parameter_set_id");
+        int maxSubLayersMinus1 = parser.readInt(3, "sps_max_sub_layers_minus1");
+        parser.skip(1, "sps_temporal_id_nesting_flag");
+
+        // profile_tier_level, section 7.3.3
+        parser.skip(96, "general profile, tier and level");
+        boolean[] subLayerProfilePresent = new boolean[maxSubLayersMinus1];
+        boolean[] subLayerLevelPresent = new boolean[maxSubLayersMinus1];
+        for (int i = 0; i < maxSubLayersMinus1; i++) {
+            subLayerProfilePresent[i] = parser.readBool("sub_layer_profile_present_flag");
+            subLayerLevelPresent[i] = parser.readBool("sub_layer_level_present_flag");
+        }
+        if (maxSubLayersMinus1 > 0)
+            parser.skip(2 * (8 - maxSubLayersMinus1), "reserved_zero_2bits");
+        for (int i = 0; i < maxSubLayersMinus1; i++) {
+            if (subLayerProfilePresent[i])
+                parser.skip(88, "sub_layer profile");
+            if (subLayerLevelPresent[i])
+                parser.skip(8, "sub_layer_level_idc");
+        }
+
+        parser.readUnsignedExpGolomb("sps_seq_parameter_set_id");
+        int chromaFormatIdc = parser.readUnsignedExpGolomb("chroma_format_idc");
+        boolean separateColourPlane = false;
+        if (chromaFormatIdc == 3)
+            separateColourPlane = parser.readBool("separate_colour_plane_flag");
+        int width = parser.readUnsignedExpGolomb("pic_width_in_luma_samples");
+        int height = parser.readUnsignedExpGolomb("pic_height_in_luma_samples");
+        if (parser.readBool("conformance_window_flag")) {
+            // section 6.2, SubWidthC and SubHeightC
+            int chromaArrayType = separateColourPlane ? 0 : chromaFormatIdc;
+            int subWidthC = (chromaArrayType == 1 || chromaArrayType == 2) ? 2 : 1;
+            int subHeightC = (chromaArrayType == 1) ? 2 : 1;
+            width -= subWidthC * (parser.readUnsignedExpGolomb("conf_win_left_offset")
+                    + parser.readUnsignedExpGolomb("conf_win_right_offset"));
+            height -= subHeightC * (parser.readUnsignedExpGolomb("conf_win_top_offset")
+                    + parser.readUnsignedExpGolomb("conf_win_bottom_offset"));
+        }
+
+        mWidth = width;
+        mHeight = height;
+    }
+
+    private void parseMpeg2Unit(byte[] bytes, int start, int end) {
+        int startCode = bytes[start] & 0xFF;
+        switch (startCode) {
+            case MPEG2_PICTURE_START:
+                mParser.setBytes(bytes, start + 1, end);
+                mParser.skip(10, "temporal_reference");
+                if (mParser.readInt(3, "picture_coding_type") == MPEG2_PICTURE_TYPE_I)
+                    mKeyFrame = true;
+                break;
+            case MPEG2_SEQUENCE_HEADER:
+                mParser.setBytes(bytes, start + 1, end);
+                mWidth = mParser.readInt(12, "horizontal_size_value");
+                mHeight = mParser.readInt(12, "vertical_size_value");
+                mPixelAspectRatio = mParser.readInt(4, "aspect_ratio_information");
+                break;
+            case MPEG2_EXTENSION_START:
+                mParser.setBytes(bytes, start + 1, end);
+                if (mParser.readInt(4, "extension_start_code_identifier")
+                        != MPEG2_SEQUENCE_EXTENSION_ID)
+                    break;
+                mParser.skip(8, "profile_and_level_indication");
+                mParser.skip(1, "progressive_sequence");
+                mParser.skip(2, "chroma_format");
+                mWidth |= mParser.readInt(2, "horizontal_size_extension") << 12;
+                mHeight |= mParser.readInt(2, "vertical_size_extension") << 12;
+                break;
+        }
+    }
+
+    private void parseAv1Obu(byte[] bytes, int start, int end) {
+        setUnescapedHeader(bytes, start, end);
+        BufferParser parser = mParser;
+
+        // obu_header, section 5.3.2
+        parser.skip(1, "obu_forbidden_bit");
+        int obuType = parser.readInt(4, "obu_type");
+        boolean extension = parser.readBool("obu_extension_flag");
+        boolean hasSizeField = parser.readBool("obu_has_size_field");
+        parser.skip(1, "obu_reserved_1bit");
+        if (extension)
+            parser.skip(8, "obu_extension_header");
+        if (hasSizeField)
+            readLeb128();
+
+        switch (obuType) {
+            case AV1_OBU_SEQUENCE_HEADER:
+                parseAv1SequenceHeader();
+                break;
+            case AV1_OBU_FRAME_HEADER:
+            case AV1_OBU_FRAME:
+                // uncompressed_header, section 5.9.2
+                if (mReducedStillPictureHeader) {
+                    mKeyFrame = true;
+                } else if (!parser.readBool("show_existing_frame")
+                        && parser.readInt(2, "frame_type") == AV1_KEY_FRAME) {
+                    mKeyFrame = true;
+                }
+                break;
+        }
+    }
+
+    private void parseAv1SequenceHeader() {
+        BufferParser parser = mParser;
+        parser.skip(3, "seq_profile");
+        parser.skip(1, "still_picture");
+        mReducedStillPictureHeader = parser.readBool("reduced_still_picture_header");
+        if (mReducedStillPictureHeader) {
+            parser.skip(5, "seq_level_idx");
+        } else {
+            boolean decoderModelInfoPresent = false;
+            int bufferDelayLength = 0;
+            if (parser.readBool("timing_info_present_flag")) {
+                // timing_info, section 5.5.3
+                parser.skip(32, "num_units_in_display_tick");
+                parser.skip(32, "time_scale");
+                if (parser.readBool("equal_picture_interval"))
+                    readUvlc();
+                decoderModelInfoPresent = parser.readBool("decoder_model_info_present_flag");
+                if (decoderModelInfoPresent) {
+                    // decoder_model_info, section 5.5.4
+                    bufferDelayLength = parser.readInt(5, "buffer_delay_length_minus_1") + 1;
+                    parser.skip(32, "num_units_in_decoding_tick");
+                    parser.skip(5, "buffer_removal_time_length_minus_1");
+                    parser.skip(5, "frame_presentation_time_length_minus_1");
+                }
+            }
+            boolean initialDisplayDelayPresent =
+                    parser.readBool("initial_display_delay_present_flag");
+            int operatingPointsCount = parser.readInt(5, "operating_points_cnt_minus_1") + 1;
+            for (int i = 0; i < operatingPointsCount; i++) {
+                parser.skip(12, "operating_point_idc");
+                int seqLevelIdx = parser.readInt(5, "seq_level_idx");
+                if (seqLevelIdx > 7)
+                    parser.skip(1, "seq_tier");
+                if (decoderModelInfoPresent && parser.readBool("decoder_model_present_for_this_op")) {
+                    // operating_parameters_info, section 5.5.5
+                    parser.skip(bufferDelayLength, "decoder_buffer_delay");
+                    parser.skip(bufferDelayLength, "encoder_buffer_delay");
+                    parser.skip(1, "low_delay_mode_flag");
+                }
+                if (initialDisplayDelayPresent
+                        && parser.readBool("initial_display_delay_present_for_this_op"))
+                    parser.skip(4, "initial_display_delay_minus_1");
+            }
+        }
+        int frameWidthBits = parser.readInt(4, "frame_width_bits_minus_1") + 1;
+        int frameHeightBits = parser.readInt(4, "frame_height_bits_minus_1") + 1;
+        mWidth = parser.readInt(frameWidthBits, "max_frame_width_minus_1") + 1;
+        mHeight = parser.readInt(frameHeightBits, "max_frame_height_minus_1") + 1;
+    }
+
+    /**
+     * leb128(), section 4.10.5
+     */
+    private long readLeb128() {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            int leb128Byte = mParser.readInt(8, "leb128_byte");
+            value |= (long) (leb128Byte & 0x7F) << (i * 7);
+            if ((leb128Byte & 0x80) == 0)
+                break;
+        }
+        return value;
+    }
+
+    /**
+     * uvlc(), section 4.10.3
+     */
+    private long readUvlc() {
+        int leadingZeros = 0;
+        while (!mParser.readBool("uvlc")) {
+            leadingZeros++;
+            if (leadingZeros >= 32)
+                return (1L << 32) - 1;
+        }
+        return mParser.readLong(leadingZeros, "uvlc") + (1L << leadingZeros) - 1;
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core.ts;
+
+/**
+ * Single producer / single consumer queue of unit blocks, without lock.
+ *
+ * Blocks are stored in segments linked in a circle. The producer fills blocks in order and only
+ * enters a segment the consumer is not reading, when the next segment is still being read a new
+ * segment is inserted, up to a maximum number of segments. Blocks are published by incrementing
+ * mWriteCount and released by incrementing mReadCount, both volatile, so block content written
+ * by one thread is visible to the other.
+ *
+ * Producer side: {@link #getWriteBlock()}, {@link #commit()}, {@link #discardAll()}.
+ * Consumer side: {@link #hasBlock()}, {@link #getReadBlock()}, {@link #moveToNext()}.
+ */
+class UnitBlockQueue {
+
+    static final int SEGMENT_SIZE = 32;
+
+    static class UnitBlock {
+        UnitBlock(int size) {
+            data = new byte[size];
+            array = data;
+            timestampUs = TsAudioParser.NO_TIMESTAMP;
+        }
+
+        void clear() {
+            length = 0;
+            writePosition = 0;
+            timestampUs = TsAudioParser.NO_TIMESTAMP;
+            array = data;
+            offset = 0;
+        }
+
+        int length;
+        int writePosition;
+        long timestampUs;
+        byte[] data;
+        // where the unit is: data when copied, a pes buffer when the unit is a slice of it
+        byte[] array;
+        int offset;
+    }
+
+    private static class Segment {
+        final UnitBlock[] mBlocks = new UnitBlock[SEGMENT_SIZE];
+        volatile Segment mNext;
+
+        Segment(int blockSize) {
+            for (int i = 0; i < SEGMENT_SIZE; i++) {
+                mBlocks[i] = new UnitBlock(blockSize);
+            }
+        }
+    }
+
+    private final int mBlockSize;
+    private final int mMaxSegments;
+
+    // producer
+    private Segment mWriteSegment;
+    private int mWriteIndex;
+    private int mSegmentCount;
+    private volatile long mWriteCount;
+    // blocks published before this count must be skipped by consumer
+    private volatile long mDiscardCount;
+
+    // consumer
+    private volatile Segment mReadSegment;
+    private int mReadIndex;
+    private volatile long mReadCount;
+
+    UnitBlockQueue(int blockSize, int maxSegments) {
+        if (maxSegments < 2)
+            throw new IllegalArgumentException("maxSegments must be at least 2");
+        mBlockSize = blockSize;
+        mMaxSegments = maxSegments;
+
+        Segment segment = new Segment(blockSize);
+        segment.mNext = segment;
+        mSegmentCount = 1;
+        mWriteSegment = segment;
+        mReadSegment = segment;
+    }
+
+    /**
+     * Producer: block being filled, null if queue is full.
+     */
+    UnitBlock getWriteBlock() {
+        if (mWriteIndex == SEGMENT_SIZE && !advanceWriteSegment()) {
+            return null;
+        }
+        return mWriteSegment.mBlocks[mWriteIndex];
+    }
+
+    /**
+     * Producer: publish block returned by {@link #getWriteBlock()}, and prepare the next one.
+     */
+    void commit() {
+        mWriteIndex++;
+        mWriteCount++;
+        UnitBlock next = getWriteBlock();
+        if (next != null) {
+            next.clear();
+        }
+    }
+
+    /**
+     * Producer: drop every published block and the block being filled.
+     */
+    void discardAll() {
+        mDiscardCount = mWriteCount;
+        UnitBlock block = getWriteBlock();
+        if (block != null) {
+            block.clear();
+        }
+    }
+
+    /**
+     * Producer: true if less than a segment of blocks may still be published.
+     * Consumer leaves a segment when it reads the first block of the next one, until then the
+     * blocks it released in the segment can't be reused: one more segment is kept for them.
+     */
+    boolean isNearlyFull() {
+        long pending = mWriteCount - mReadCount;
+        return pending > (long) (mMaxSegments - 2) * SEGMENT_SIZE;
+    }
+
+    /**
+     * Number of blocks published since creation.
+     */
+    long getWriteCount() {
+        return mWriteCount;
+    }
+
+    /**
+     * Number of blocks released or skipped by consumer since creation.
+     */
+    long getReadCount() {
+        return mReadCount;
+    }
+
+    /**
+     * Consumer: true if a published block is available.
+     */
+    boolean hasBlock() {
+        long discardCount = mDiscardCount;
+        while (mReadCount < discardCount) {
+            moveToReadPosition();
+            moveToNext();
+        }
+        return mReadCount < mWriteCount;
+    }
+
+    /**
+     * Consumer: current block, {@link #hasBlock()} must have returned true.
+     */
+    UnitBlock getReadBlock() {
+        moveToReadPosition();
+        return mReadSegment.mBlocks[mReadIndex];
+    }
+
+    /**
+     * Consumer: release current block.
+     */
+    void moveToNext() {
+        mReadIndex++;
+        mReadCount++;
+    }
+
+    private void moveToReadPosition() {
+        // only called when a block is published after the current segment, producer has
+        // already linked the segment holding it, possibly a newly inserted one
+        if (mReadIndex == SEGMENT_SIZE) {
+            mReadSegment = mReadSegment.mNext;
+            mReadIndex = 0;
+        }
+    }
+
+    private boolean advanceWriteSegment() {
+        Segment next = mWriteSegment.mNext;
+        if (next == mReadSegment) {
+            if (mSegmentCount >= mMaxSegments) {
+                return false;
+            }
+            Segment segment = new Segment(mBlockSize);
+            segment.mNext = next;
+            mWriteSegment.mNext = segment;
+            mSegmentCount++;
+            next = segment;
+        }
+        mWriteSegment = next;
+        mWriteIndex = 0;
+        return true;
+    }
+}
@@ -31,6 +31,9 @@ public class DataLossChecker {
     private boolean mDataLossReported;
     private long mLastDataLossReportTimestamp;
 
+    // counts data loss episodes, repeated reports of the same loss are not counted
+    private MetricsRegistry.Counter mDataLossCounter;
+
     private static AtomicInteger sId = new AtomicInteger();
     private final int mId;
 
@@ -46,6 +49,10 @@ public class DataLossChecker {
         mHandlerToken = String.format("DataLossChecker-%d", mId);
     }
 
+    public void setDataLossCounter(MetricsRegistry.Counter counter) {
+        mDataLossCounter = counter;
+    }
+
     public void start(DataLossListener listener,
                       String logTag,
                       long checkPeriodMilliSecond,
@@ -180,6 +187,9 @@ public class DataLossChecker {
                 }
 
                 if (reportDataLoss) {
+                    if (!mDataLossReported && mDataLossCounter != null) {
+                        mDataLossCounter.inc();
+                    }
                     notifyDataLoss();
                     mDataLossReported = true;
                     mLastDataLossReportTimestamp = currentTime;
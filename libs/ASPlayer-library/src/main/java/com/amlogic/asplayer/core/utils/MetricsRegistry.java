@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core.utils;
+
+import android.os.Bundle;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Named counters, gauges and latency histograms of a player instance.
+ *
+ * Metrics are looked up by name once, and kept by their owner: updating them never locks nor
+ * allocates. Counters are striped (LongAdder), so threads updating the same counter don't
+ * contend on a single cache line.
+ */
+public class MetricsRegistry {
+
+    // upper bounds of latency buckets, in microseconds, last bucket has no bound
+    public static final long[] LATENCY_BOUNDS_US = {
+            50, 100, 250, 500, 1000, 2500, 5000, 10000, 25000, 50000, 100000
+    };
+
+    public static class Counter {
+        private final LongAdder mValue = new LongAdder();
+
+        public void inc() {
+            mValue.increment();
+        }
+
+        public void add(long delta) {
+            mValue.add(delta);
+        }
+
+        public long get() {
+            return mValue.sum();
+        }
+    }
+
+    public static class Gauge {
+        private volatile long mValue;
+
+        public void set(long value) {
+            mValue = value;
+        }
+
+        public long get() {
+            return mValue;
+        }
+    }
+
+    public static class Histogram {
+        private final long[] mBounds;
+        private final AtomicLongArray mBuckets;
+        private final LongAdder mSum = new LongAdder();
+        private final AtomicLong mMax = new AtomicLong();
+
+        Histogram(long[] bounds) {
+            mBounds = bounds;
+            mBuckets = new AtomicLongArray(bounds.length + 1);
+        }
+
+        public void record(long value) {
+            int bucket = 0;
+            while (bucket < mBounds.length && value > mBounds[bucket]) {
+                bucket++;
+            }
+            mBuckets.incrementAndGet(bucket);
+            mSum.add(value);
+            long max = mMax.get();
+            while (value > max && !mMax.compareAndSet(max, value)) {
+                max = mMax.get();
+            }
+        }
+
+        public long getCount() {
+            long count = 0;
+            for (int i = 0; i < mBuckets.length(); i++) {
+                count += mBuckets.get(i);
+            }
+            return count;
+        }
+
+        public long getSum() {
+            return mSum.sum();
+        }
+
+        public long getMax() {
+            return mMax.get();
+        }
+
+        /**
+         * @return upper bound of the bucket holding the percentile, max for the last bucket,
+         * 0 if nothing was recorded
+         */
+        public long getPercentile(int percent) {
+            long[] buckets = new long[mBuckets.length()];
+            long count = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = mBuckets.get(i);
+                count += buckets[i];
+            }
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (count * percent + 99) / 100);
+            long seen = 0;
+            for (int i = 0; i < mBounds.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return Math.min(mBounds[i], getMax());
+                }
+            }
+            return getMax();
+        }
+    }
+
+    private final ConcurrentHashMap<String, Counter> mCounters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Gauge> mGauges = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Histogram> mHistograms = new ConcurrentHashMap<>();
+
+    public Counter counter(String name) {
+        return mCounters.computeIfAbsent(name, key -> new Counter());
+    }
+
+    public Gauge gauge(String name) {
+        return mGauges.computeIfAbsent(name, key -> new Gauge());
+    }
+
+    /**
+     * @param bounds upper bounds of buckets, ascending, only used when the histogram is created
+     */
+    public Histogram histogram(String name, long[] bounds) {
+        return mHistograms.computeIfAbsent(name, key -> new Histogram(bounds));
+    }
+
+    /**
+     * Fills bundle with a long per counter and gauge, and for each histogram "name.count",
+     * "name.avg", "name.p50", "name.p99" and "name.max".
+     */
+    public void fillBundle(Bundle bundle) {
+        for (Map.Entry<String, Counter> entry : mCounters.entrySet()) {
+            bundle.putLong(entry.getKey(), entry.getValue().get());
+        }
+        for (Map.Entry<String, Gauge> entry : mGauges.entrySet()) {
+            bundle.putLong(entry.getKey(), entry.getValue().get());
+        }
+        for (Map.Entry<String, Histogram> entry : mHistograms.entrySet()) {
+            String name = entry.getKey();
+            Histogram histogram = entry.getValue();
+            long count = histogram.getCount();
+            bundle.putLong(name + ".count", count);
+            bundle.putLong(name + ".avg", count > 0 ? histogram.getSum() / count : 0);
+            bundle.putLong(name + ".p50", histogram.getPercentile(50));
+            bundle.putLong(name + ".p99", histogram.getPercentile(99));
+            bundle.putLong(name + ".max", histogram.getMax());
+        }
+    }
+
+    public String dump() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Counter> entry : new TreeMap<>(mCounters).entrySet()) {
+            sb.append(String.format("%-32s %d\n", entry.getKey(), entry.getValue().get()));
+        }
+        for (Map.Entry<String, Gauge> entry : new TreeMap<>(mGauges).entrySet()) {
+            sb.append(String.format("%-32s %d\n", entry.getKey(), entry.getValue().get()));
+        }
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(mHistograms).entrySet()) {
+            Histogram histogram = entry.getValue();
+            long count = histogram.getCount();
+            sb.append(String.format("%-32s count: %d, avg: %d, p50: %d, p99: %d, max: %d\n",
+                    entry.getKey(), count, count > 0 ? histogram.getSum() / count : 0,
+                    histogram.getPercentile(50), histogram.getPercentile(99),
+                    histogram.getMax()));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assume.assumeTrue;
+
+import android.util.Log;
+
+import org.junit.Test;
+
+/**
+ * Cost of a log call whose level is disabled, as made on the renderer and feeder paths.
+ *
+ * "eager format" is the former ASPlayerLog: message formatted before the level was checked.
+ * On the JVM, android stubs return default values: Log.isLoggable() is false, so every call
+ * is suppressed, and SystemClock.uptimeMillis() is 0, so the level is read again on each call
+ * instead of once per second. Cost of Log.println() to logd can only be measured on device.
+ */
+public class ASPlayerLogBenchmark {
+
+    private static final int ITERATIONS = 1000000;
+    private static final String TAG = "[No-0]-[0]RendererScheduler";
+
+    @Test
+    public void suppressedCalls() {
+        assumeTrue(MicroBenchmark.isEnabled());
+        assertFalse(ASPlayerLog.isLoggable(Log.INFO));
+
+        MicroBenchmark.run("log, eager format", ITERATIONS / 10,
+                iteration -> String.format("%s render video frame, pts: %d",
+                        TAG, (long) iteration).length());
+        MicroBenchmark.run("log, suppressed, tag and long", ITERATIONS,
+                iteration -> {
+                    ASPlayerLog.i("%s render video frame, pts: %d", TAG, (long) iteration);
+                    return iteration;
+                });
+        MicroBenchmark.run("log, suppressed, two objects", ITERATIONS,
+                iteration -> {
+                    ASPlayerLog.i("%s render video frame: %s", TAG, this);
+                    return iteration;
+                });
+        MicroBenchmark.run("log, suppressed, varargs", ITERATIONS,
+                iteration -> {
+                    ASPlayerLog.i("%s render video frame, pts: %d, render time: %d",
+                            TAG, iteration, iteration + 1);
+                    return iteration;
+                });
+    }
+
+    @Test
+    public void rateLimit() {
+        assumeTrue(MicroBenchmark.isEnabled());
+
+        ASPlayerLog.RateLimit limit = new ASPlayerLog.RateLimit(1000);
+        MicroBenchmark.run("rate limit, tryAcquire", ITERATIONS,
+                iteration -> limit.tryAcquire() ? 1 : 0);
+        limit.takeSuppressedCount();
+    }
+}
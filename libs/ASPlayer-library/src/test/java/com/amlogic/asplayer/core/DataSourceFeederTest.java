@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.os.ParcelFileDescriptor;
+
+import com.amlogic.asplayer.core.source.DataSource;
+import com.amlogic.asplayer.core.source.DataSourceLocator;
+
+import org.junit.Test;
+
+public class DataSourceFeederTest {
+
+    // source of no data, counts open and close
+    private static class CountingDataSource implements DataSource {
+        int mOpenCount;
+        int mCloseCount;
+        boolean mOpen;
+
+        @Override
+        public void setLocator(DataSourceLocator locator) {
+        }
+
+        @Override
+        public DataSourceLocator getLocator() {
+            return null;
+        }
+
+        @Override
+        public boolean isCacheable() {
+            return false;
+        }
+
+        @Override
+        public void setUseCache(boolean use) {
+        }
+
+        @Override
+        public void updateTimeline() {
+        }
+
+        @Override
+        public boolean isOpen() {
+            return mOpen;
+        }
+
+        @Override
+        public void open() {
+            mOpenCount++;
+            mOpen = true;
+        }
+
+        @Override
+        public void close() {
+            mCloseCount++;
+            mOpen = false;
+        }
+
+        @Override
+        public int read(byte[] tsPackets) {
+            return 0;
+        }
+
+        @Override
+        public int read(byte[] tsPackets, int offset, int length) {
+            return 0;
+        }
+
+        @Override
+        public long setPositionInBytes(long position) {
+            return 0;
+        }
+
+        @Override
+        public long getPositionInBytes() {
+            return 0;
+        }
+
+        @Override
+        public long setPositionInUs(long positionUs) {
+            return -1;
+        }
+
+        @Override
+        public long getPositionInUs() {
+            return -1;
+        }
+
+        @Override
+        public long getEndPositionInBytes() {
+            return -1;
+        }
+
+        @Override
+        public long getEndPositionInUs() {
+            return -1;
+        }
+
+        @Override
+        public long getStartPositionInBytes() {
+            return 0;
+        }
+
+        @Override
+        public long getStartPositionInUs() {
+            return -1;
+        }
+
+        @Override
+        public long getPositionInBytes(long timestampUs) {
+            return -1;
+        }
+
+        @Override
+        public long getPositionInUs(long position) {
+            return -1;
+        }
+
+        @Override
+        public ParcelFileDescriptor getParcelFD() {
+            return null;
+        }
+
+        @Override
+        public boolean isBuffered() {
+            return false;
+        }
+    }
+
+    // feeding is not run on the JVM, android.os.Handler doesn't run tasks there, but stop
+    // releases the source on the calling thread once feeder thread is gone
+
+    @Test
+    public void stopClosesSource() {
+        CountingDataSource source = new CountingDataSource();
+        DataSourceFeeder feeder = new DataSourceFeeder(0, null, source);
+        feeder.start();
+        source.open();
+
+        feeder.stop();
+        assertEquals(1, source.mCloseCount);
+        assertFalse(source.isOpen());
+
+        // already stopped
+        feeder.stop();
+        assertEquals(1, source.mCloseCount);
+    }
+
+    @Test
+    public void interruptedStopStillClosesSource() {
+        CountingDataSource source = new CountingDataSource();
+        DataSourceFeeder feeder = new DataSourceFeeder(0, null, source);
+        feeder.start();
+
+        // an interrupt doesn't cut the wait for the feeder thread
+        Thread.currentThread().interrupt();
+        feeder.stop();
+        assertEquals(1, source.mCloseCount);
+        // interrupt is kept for the caller
+        assertTrue(Thread.interrupted());
+    }
+}
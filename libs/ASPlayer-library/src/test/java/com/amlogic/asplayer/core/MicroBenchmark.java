@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Minimal harness for the JVM microbenchmarks of the library.
+ *
+ * Benchmarks are skipped by default, they run with "./gradlew test -Pbenchmark".
+ * Each one is warmed up with as many iterations as it is measured, and reports time and
+ * bytes allocated by the calling thread per operation.
+ */
+public class MicroBenchmark {
+
+    public interface Operation {
+        /**
+         * @return any value depending on the work done, so that it can't be optimized away
+         */
+        long run(int iteration);
+    }
+
+    public static class Result {
+        public final String mName;
+        public final long mOperations;
+        public final long mElapsedNs;
+        // -1 if the VM can't count allocations
+        public final long mAllocatedBytes;
+
+        Result(String name, long operations, long elapsedNs, long allocatedBytes) {
+            mName = name;
+            mOperations = operations;
+            mElapsedNs = elapsedNs;
+            mAllocatedBytes = allocatedBytes;
+        }
+
+        public double getNsPerOperation() {
+            return (double) mElapsedNs / mOperations;
+        }
+
+        public double getOperationsPerSecond() {
+            return mOperations * 1e9 / mElapsedNs;
+        }
+
+        public double getAllocatedBytesPerOperation() {
+            return mAllocatedBytes < 0 ? -1 : (double) mAllocatedBytes / mOperations;
+        }
+    }
+
+    private static volatile long sSink;
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean("asplayer.benchmark");
+    }
+
+    public static Result run(String name, int iterations, Operation operation) {
+        long sink = 0;
+        for (int i = 0; i < iterations; i++) {
+            sink += operation.run(i);
+        }
+
+        long startAllocated = getAllocatedBytes();
+        long startNs = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += operation.run(i);
+        }
+        long elapsedNs = System.nanoTime() - startNs;
+        long endAllocated = getAllocatedBytes();
+        sSink = sink;
+
+        Result result = new Result(name, iterations, elapsedNs,
+                startAllocated < 0 ? -1 : endAllocated - startAllocated);
+        System.out.println(String.format("%-48s %12.1f ns/op %14.0f op/s %10.1f B/op",
+                name, result.getNsPerOperation(), result.getOperationsPerSecond(),
+                result.getAllocatedBytesPerOperation()));
+        return result;
+    }
+
+    private static long getAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PtsEventRingTest {
+
+    private static final int MAX = 64;
+
+    private final int[] mStreamTypes = new int[MAX];
+    private final long[] mPts = new long[MAX];
+    private final long[] mRenderTimes = new long[MAX];
+
+    private int poll(PtsEventRing ring) {
+        return ring.poll(mStreamTypes, mPts, mRenderTimes, MAX);
+    }
+
+    @Test
+    public void capacityIsRoundedUpToPowerOfTwo() {
+        assertEquals(8, new PtsEventRing(5).getCapacity());
+        assertEquals(8, new PtsEventRing(8).getCapacity());
+        assertEquals(256, new PtsEventRing(200).getCapacity());
+    }
+
+    @Test
+    public void framesArePolledInOrder() {
+        PtsEventRing ring = new PtsEventRing(8);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(ring.offer(i % 2, i * 1000, i * 10));
+        }
+
+        assertEquals(5, poll(ring));
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i % 2, mStreamTypes[i]);
+            assertEquals(i * 1000, mPts[i]);
+            assertEquals(i * 10, mRenderTimes[i]);
+        }
+        assertEquals(0, poll(ring));
+    }
+
+    @Test
+    public void fullRingRejectsFrames() {
+        PtsEventRing ring = new PtsEventRing(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ring.offer(0, i, 0));
+        }
+        assertFalse(ring.offer(0, 4, 0));
+        assertFalse(ring.offer(0, 5, 0));
+        assertEquals(2, ring.getRejectedCount());
+
+        // rejected frames are not queued, slots are free again once polled
+        assertEquals(2, ring.poll(mStreamTypes, mPts, mRenderTimes, 2));
+        assertTrue(ring.offer(0, 6, 0));
+        assertTrue(ring.offer(0, 7, 0));
+        assertEquals(4, poll(ring));
+        assertEquals(2, mPts[0]);
+        assertEquals(3, mPts[1]);
+        assertEquals(6, mPts[2]);
+        assertEquals(7, mPts[3]);
+        assertEquals(2, ring.getRejectedCount());
+    }
+
+    @Test
+    public void ringWrapsAround() {
+        PtsEventRing ring = new PtsEventRing(4);
+        long next = 0;
+        long expected = 0;
+        for (int lap = 0; lap < 10; lap++) {
+            for (int i = 0; i < 3; i++) {
+                assertTrue(ring.offer(0, next++, 0));
+            }
+            int count = poll(ring);
+            assertEquals(3, count);
+            for (int i = 0; i < count; i++) {
+                assertEquals(expected++, mPts[i]);
+            }
+        }
+        assertEquals(0, ring.getRejectedCount());
+    }
+
+    @Test
+    public void framesOfConcurrentProducersAreAllPolledInOrder() throws InterruptedException {
+        final int producerCount = 4;
+        final int framesPerProducer = 20000;
+        PtsEventRing ring = new PtsEventRing(16);
+
+        Thread[] producers = new Thread[producerCount];
+        for (int p = 0; p < producerCount; p++) {
+            final int streamType = p;
+            producers[p] = new Thread(() -> {
+                for (int i = 0; i < framesPerProducer; i++) {
+                    while (!ring.offer(streamType, i, i)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            producers[p].start();
+        }
+
+        long[] nextPts = new long[producerCount];
+        long total = 0;
+        while (total < (long) producerCount * framesPerProducer) {
+            int count = poll(ring);
+            for (int i = 0; i < count; i++) {
+                int streamType = mStreamTypes[i];
+                assertEquals(nextPts[streamType], mPts[i]);
+                assertEquals(mPts[i], mRenderTimes[i]);
+                nextPts[streamType]++;
+            }
+            total += count;
+            if (count == 0) {
+                Thread.yield();
+            }
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+
+        assertEquals(0, poll(ring));
+        for (int p = 0; p < producerCount; p++) {
+            assertEquals(framesPerProducer, nextPts[p]);
+        }
+    }
+}
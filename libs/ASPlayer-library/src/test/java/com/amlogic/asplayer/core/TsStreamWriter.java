@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Builds synthetic transport streams for tests and benchmarks: pes are split in ts packets
+ * with continuity counters, the last packet of a pes is padded with adaptation field stuffing.
+ */
+public class TsStreamWriter {
+
+    public static final int PACKET_SIZE = 188;
+    public static final int NULL_PID = 0x1fff;
+
+    private final ByteArrayOutputStream mOutput = new ByteArrayOutputStream();
+    private final int[] mContinuityCounters = new int[NULL_PID + 1];
+
+    /**
+     * @param pts pts in 90 kHz, -1 for none
+     * @param bounded false to write a pes length of 0, as video pes usually do
+     */
+    public static byte[] pes(int streamId, long pts, byte[] payload, boolean bounded) {
+        int headerDataLength = pts >= 0 ? 5 : 0;
+        ByteArrayOutputStream pes = new ByteArrayOutputStream();
+        pes.write(0);
+        pes.write(0);
+        pes.write(1);
+        pes.write(streamId);
+        int length = bounded ? 3 + headerDataLength + payload.length : 0;
+        pes.write(length >> 8);
+        pes.write(length);
+        pes.write(0x80);
+        pes.write(pts >= 0 ? 0x80 : 0);
+        pes.write(headerDataLength);
+        if (pts >= 0) {
+            pes.write(0x21 | (int) ((pts >> 29) & 0x0e));
+            pes.write((int) (pts >> 22));
+            pes.write(0x01 | (int) ((pts >> 14) & 0xfe));
+            pes.write((int) (pts >> 7));
+            pes.write(0x01 | (int) ((pts << 1) & 0xfe));
+        }
+        pes.write(payload, 0, payload.length);
+        return pes.toByteArray();
+    }
+
+    public TsStreamWriter writePes(int pid, int streamId, long pts, byte[] payload, boolean bounded) {
+        return writeUnit(pid, pes(streamId, pts, payload, bounded));
+    }
+
+    /**
+     * Splits unit in packets of pid, the first one with payload_unit_start_indicator set.
+     */
+    public TsStreamWriter writeUnit(int pid, byte[] unit) {
+        int pos = 0;
+        while (pos < unit.length) {
+            int size = Math.min(PACKET_SIZE - 4, unit.length - pos);
+            writePacket(pid, pos == 0, unit, pos, size);
+            pos += size;
+        }
+        return this;
+    }
+
+    public TsStreamWriter writeNullPacket() {
+        byte[] payload = new byte[PACKET_SIZE - 4];
+        Arrays.fill(payload, (byte) 0xff);
+        return writePacket(NULL_PID, false, payload, 0, payload.length);
+    }
+
+    private TsStreamWriter writePacket(int pid, boolean unitStart, byte[] payload, int offset,
+                                       int size) {
+        byte[] packet = new byte[PACKET_SIZE];
+        int counter = mContinuityCounters[pid];
+        mContinuityCounters[pid] = (counter + 1) & 0xf;
+        packet[0] = 0x47;
+        packet[1] = (byte) ((unitStart ? 0x40 : 0) | (pid >> 8));
+        packet[2] = (byte) pid;
+        int stuffing = PACKET_SIZE - 4 - size;
+        int pos = 4;
+        if (stuffing > 0) {
+            packet[3] = (byte) (0x30 | counter);
+            // adaptation_field_length, then flags and stuffing bytes
+            packet[pos++] = (byte) (stuffing - 1);
+            if (stuffing > 1) {
+                packet[pos++] = 0;
+                for (int i = 2; i < stuffing; i++) {
+                    packet[pos++] = (byte) 0xff;
+                }
+            }
+        } else {
+            packet[3] = (byte) (0x10 | counter);
+        }
+        System.arraycopy(payload, offset, packet, pos, size);
+        mOutput.write(packet, 0, PACKET_SIZE);
+        return this;
+    }
+
+    public int size() {
+        return mOutput.size();
+    }
+
+    public byte[] toByteArray() {
+        return mOutput.toByteArray();
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core.sipsi;
+
+import static org.junit.Assume.assumeTrue;
+
+import com.amlogic.asplayer.core.MicroBenchmark;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Fields per second of BufferParser.readLong against the former byte loop, on the field
+ * layout of PES headers and PMT entries, and strings per second of readString against the
+ * former charset lookup by name, on EPG-like strings of mixed encodings.
+ */
+public class BufferParserBenchmark {
+
+    // PES header up to PTS/DTS, then PMT stream entries
+    private static final int[] FIELDS = {
+            24, 8, 16, 2, 2, 1, 1, 1, 1, 2, 1, 1, 1, 1, 1, 1, 8,
+            4, 3, 1, 15, 1, 15, 1, 4, 3, 1, 15, 1, 15, 1,
+            8, 3, 13, 4, 12, 8, 3, 13, 4, 12, 32
+    };
+    private static final int BYTES = 4096;
+    private static final int ITERATIONS = 2000;
+    private static final int STRINGS = 1000;
+
+    // number of times FIELDS are read from the buffer per iteration
+    private static int passes() {
+        int bits = 0;
+        for (int nbBits : FIELDS) {
+            bits += nbBits;
+        }
+        return BYTES * 8 / bits;
+    }
+
+    private static void report(MicroBenchmark.Result result) {
+        System.out.println(String.format("  %.1f M fields/s",
+                passes() * FIELDS.length * result.getOperationsPerSecond() / 1e6));
+    }
+
+    @Test
+    public void fieldsPerSecond() {
+        assumeTrue(MicroBenchmark.isEnabled());
+
+        byte[] bytes = new byte[BYTES];
+        new Random(0).nextBytes(bytes);
+        int passes = passes();
+
+        ByteLoopBitReader reference = new ByteLoopBitReader();
+        report(MicroBenchmark.run("readLong, byte loop", ITERATIONS, iteration -> {
+            long sum = 0;
+            reference.setBytes(bytes, 0, bytes.length);
+            for (int pass = 0; pass < passes; pass++) {
+                for (int nbBits : FIELDS) {
+                    sum += reference.readLong(nbBits);
+                }
+            }
+            return sum;
+        }));
+
+        BufferParser parser = new BufferParser();
+        report(MicroBenchmark.run("readLong, BufferParser", ITERATIONS, iteration -> {
+            long sum = 0;
+            parser.setBytes(bytes, 0, bytes.length);
+            for (int pass = 0; pass < passes; pass++) {
+                for (int nbBits : FIELDS) {
+                    sum += parser.readLong(nbBits, "field");
+                }
+            }
+            return sum;
+        }));
+    }
+
+    @Test
+    public void stringsPerSecond() {
+        assumeTrue(MicroBenchmark.isEnabled());
+
+        byte[] bytes = DvbStrings.create(STRINGS);
+
+        MicroBenchmark.Result result = MicroBenchmark.run("readString, Charset.forName",
+                ITERATIONS, iteration -> {
+                    long sum = 0;
+                    for (int pos = 0; pos < bytes.length; pos += 1 + (bytes[pos] & 0xff)) {
+                        sum += ForNameStringReader.readString(bytes, pos + 1, bytes[pos] & 0xff)
+                                .length();
+                    }
+                    return sum;
+                });
+        System.out.println(String.format("  %.0f strings/s",
+                STRINGS * result.getOperationsPerSecond()));
+
+        BufferParser parser = new BufferParser();
+        result = MicroBenchmark.run("readString, BufferParser", ITERATIONS, iteration -> {
+            long sum = 0;
+            parser.setBytes(bytes, 0, bytes.length);
+            while (parser.remaining() > 0) {
+                int length = parser.readInt(8, "length");
+                sum += parser.readString(length * 8, "text").length();
+            }
+            return sum;
+        });
+        System.out.println(String.format("  %.0f strings/s",
+                STRINGS * result.getOperationsPerSecond()));
+    }
+}
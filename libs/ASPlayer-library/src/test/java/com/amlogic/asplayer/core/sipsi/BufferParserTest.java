@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core.sipsi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class BufferParserTest {
+
+    private static byte[] randomBytes(Random random, int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void readLongMatchesByteLoop() {
+        Random random = new Random(0);
+        byte[] bytes = randomBytes(random, 4096);
+        BufferParser parser = new BufferParser();
+        ByteLoopBitReader reference = new ByteLoopBitReader();
+
+        for (int run = 0; run < 200; run++) {
+            int offset = random.nextInt(16);
+            int end = bytes.length - random.nextInt(16);
+            parser.setBytes(bytes, offset, end);
+            reference.setBytes(bytes, offset, end);
+            while (true) {
+                // byte aligned 8/16/32 bits fields are frequent, unaligned reads stop at 57 bits
+                int nbBits = random.nextBoolean() ? 8 << random.nextInt(3) : 1 + random.nextInt(57);
+                if (reference.getPosInBits() + nbBits > end * 8L) {
+                    break;
+                }
+                assertEquals("pos " + reference.getPosInBits() + " nbBits " + nbBits,
+                        reference.readLong(nbBits), parser.readLong(nbBits, "field"));
+                assertEquals(reference.getPosInBits(), parser.getPosInBits());
+            }
+        }
+    }
+
+    @Test
+    public void readLongAfterSetPosInBits() {
+        Random random = new Random(1);
+        byte[] bytes = randomBytes(random, 64);
+        BufferParser parser = new BufferParser();
+        ByteLoopBitReader reference = new ByteLoopBitReader();
+        parser.setBytes(bytes, 0, bytes.length);
+
+        for (int i = 0; i < 1000; i++) {
+            int nbBits = 1 + random.nextInt(32);
+            long pos = random.nextInt(bytes.length * 8 - nbBits + 1);
+            parser.setPosInBits(pos);
+            reference.setBytes(bytes, 0, bytes.length);
+            reference.readLong(0);
+            skipBits(reference, pos);
+            assertEquals(reference.readLong(nbBits), parser.readLong(nbBits, "field"));
+        }
+    }
+
+    private static void skipBits(ByteLoopBitReader reader, long nbBits) {
+        while (nbBits > 0) {
+            int step = (int) Math.min(nbBits, 32);
+            reader.readLong(step);
+            nbBits -= step;
+        }
+    }
+
+    @Test
+    public void readLongOutOfBoundsDoesNotMove() {
+        BufferParser parser = new BufferParser();
+        parser.setBytes(new byte[] {1, 2, 3, 4}, 1, 3);
+        assertEquals(0x0203, parser.readLong(16, "field"));
+        try {
+            parser.readLong(9, "field");
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(24, parser.getPosInBits());
+    }
+
+    @Test
+    public void readBytesAlignedAndUnaligned() {
+        byte[] bytes = randomBytes(new Random(2), 32);
+        BufferParser parser = new BufferParser();
+        parser.setBytes(bytes, 0, bytes.length);
+
+        byte[] aligned = new byte[10];
+        parser.skip(16, "header");
+        parser.readBytes(aligned, 0, aligned.length, "aligned");
+        assertArrayEquals(Arrays.copyOfRange(bytes, 2, 12), aligned);
+
+        parser.skip(4, "flags");
+        byte[] unaligned = new byte[8];
+        parser.readBytes(unaligned, 0, unaligned.length, "unaligned");
+        ByteLoopBitReader reference = new ByteLoopBitReader();
+        reference.setBytes(bytes, 0, bytes.length);
+        skipBits(reference, 12 * 8 + 4);
+        for (byte value : unaligned) {
+            assertEquals(reference.readLong(8), value & 0xff);
+        }
+        assertEquals(reference.getPosInBits(), parser.getPosInBits());
+    }
+
+    @Test
+    public void readStringMatchesForNameDecoding() {
+        byte[] bytes = DvbStrings.create(DvbStrings.getSampleCount() * 2);
+        BufferParser parser = new BufferParser();
+        parser.setBytes(bytes, 0, bytes.length);
+        while (parser.remaining() > 0) {
+            int length = parser.readInt(8, "length");
+            String expected = ForNameStringReader.readString(bytes, parser.getPosInBytes(), length);
+            assertEquals(expected, parser.readString(length * 8, "text"));
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core.sipsi;
+
+/**
+ * Former BufferParser.readLong, reading every field byte by byte.
+ * Reference for the results and the throughput of BufferParser.
+ */
+class ByteLoopBitReader {
+
+    private byte[] mBytes;
+    private int mLength;
+    private long mPosInBits;
+
+    void setBytes(byte[] bytes, int offset, int length) {
+        mBytes = bytes;
+        mPosInBits = offset * 8L;
+        mLength = length;
+    }
+
+    long readLong(int nbBits) {
+        long mask = nbBits == 64 ? -1 : (1L << nbBits) - 1;
+        int posInBytes = (int) (mPosInBits >> 3);
+        long value = 0;
+        int nbBytes;
+
+        if (mPosInBits + nbBits > mLength * 8L) {
+            throw new IllegalArgumentException("Out of bounds");
+        }
+
+        nbBytes = (nbBits + (int) (mPosInBits % 8) - 1) / 8 + 1;
+        for (int i = nbBytes; i > 0; i--) {
+            value = (value << 8) | (mBytes[posInBytes + (nbBytes - i)] & 0xFF);
+        }
+
+        value = (value >> (nbBytes * 8 - nbBits - mPosInBits % 8)) & mask;
+
+        mPosInBits += nbBits;
+
+        return value;
+    }
+
+    long getPosInBits() {
+        return mPosInBits;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core.sipsi;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * EPG-like DVB strings: each one is a length byte followed by the string, with the
+ * encoding selection bytes of EN 300 468 annex A when not in the default table.
+ */
+class DvbStrings {
+
+    private static final byte[] NONE = {};
+
+    // selection bytes, charset, text; text of the default table contains emphasis and CR/LF
+    private static final Object[][] SAMPLES = {
+            {NONE, "ISO-8859-1", "\u0086Le journal\u0087 de 20h\u008aInformations"},
+            {NONE, "ISO-8859-1", "Film: Les Mis\u00e9rables"},
+            {new byte[] {0x05}, "ISO-8859-9", "Haberler ve hava durumu, \u0130stanbul"},
+            {new byte[] {0x10, 0x00, 0x02}, "ISO-8859-2", "Wiadomo\u015bci, pogoda, sport"},
+            {new byte[] {0x01}, "ISO-8859-5", "\u041d\u043e\u0432\u043e\u0441\u0442\u0438 \u0438 \u043f\u043e\u0433\u043e\u0434\u0430"},
+            {new byte[] {0x03}, "ISO-8859-7", "\u0395\u03b9\u03b4\u03ae\u03c3\u03b5\u03b9\u03c2 \u03ba\u03b1\u03b9 \u03ba\u03b1\u03b9\u03c1\u03cc\u03c2"},
+            {new byte[] {0x15}, "UTF-8", "\u30cb\u30e5\u30fc\u30b9\u3068\u5929\u6c17 \u2013 Nachrichten"},
+            {new byte[] {0x11}, "UTF-16BE", "\u65b0\u95fb\u4e0e\u5929\u6c14"},
+            {new byte[] {0x13}, "GB2312", "\u65b0\u95fb\u4e0e\u5929\u6c14\u9884\u62a5"},
+    };
+
+    static int getSampleCount() {
+        return SAMPLES.length;
+    }
+
+    /**
+     * @return count strings cycling over the samples
+     */
+    static byte[] create(int count) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < count; i++) {
+            Object[] sample = SAMPLES[i % SAMPLES.length];
+            byte[] selection = (byte[]) sample[0];
+            Charset charset = Charset.forName((String) sample[1]);
+            String text = (String) sample[2];
+            byte[] encoded = text.getBytes(charset);
+            if (selection == NONE) {
+                // control codes of the default table are single bytes
+                encoded = new byte[text.length()];
+                for (int c = 0; c < text.length(); c++) {
+                    encoded[c] = (byte) text.charAt(c);
+                }
+            }
+            out.write(selection.length + encoded.length);
+            out.write(selection, 0, selection.length);
+            out.write(encoded, 0, encoded.length);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core.sipsi;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Former BufferParser DVB string decoding, looking up the charset by name and copying
+ * strings with control codes for every string.
+ * Reference for the results and the throughput of BufferParser.readString.
+ */
+class ForNameStringReader {
+
+    private static final String[] DVB_ENCODINGS = {
+            "", "ISO-8859-5", "ISO-8859-6", "ISO-8859-7", "ISO-8859-8",
+            "ISO-8859-9", "ISO-8859-10", "ISO-8859-11", "", "ISO-8859-13",
+            "ISO-8859-14", "ISO-8859-15", "", "", "", "",
+            "", "UTF-16", "KSC5601-1987", "GB2312", "BIG-5", "UTF-8",
+            "", "", "", "", "", "", "", "", "", "", null
+    };
+    private static final String[] DVB_ENCODINGS_10 = {
+            "", "ISO-8859-1", "ISO-8859-2", "ISO-8859-3", "ISO-8859-4",
+            "ISO-8859-5", "ISO-8859-6", "ISO-8859-7", "ISO-8859-8", "ISO-8859-9",
+            "ISO-8859-10", "ISO-8859-11", "", "ISO-8859-13", "ISO-8859-14",
+            "ISO-8859-15", null
+    };
+
+    static String readString(byte[] bytes, int posInBytes, int length) {
+        if (length < 1) {
+            return "";
+        }
+        String encoding = "ISO-8859-1";
+        byte first = bytes[posInBytes];
+        if (first > 0 && first < 0x20) {
+            posInBytes++;
+            length--;
+            if (first == 0x10 && length >= 2) {
+                byte second = bytes[posInBytes++];
+                byte third = bytes[posInBytes++];
+                length -= 2;
+                if (second == 0 && third != 0 && third < 0x10) {
+                    encoding = DVB_ENCODINGS_10[third];
+                }
+            } else if (first == 0x1f && length >= 1) {
+                posInBytes++;
+                length--;
+            } else {
+                encoding = DVB_ENCODINGS[first];
+            }
+        }
+
+        int lastPos = posInBytes + length;
+        byte[] modifiedBytes = null;
+        int modifiedBytesSize = 0;
+        for (int i = posInBytes; i < lastPos; ++i) {
+            int currentByte = bytes[i] & 0xFF;
+            boolean needSubstitution = (currentByte < 0x20 && currentByte != 0x09
+                    && currentByte != 0x0A && currentByte != 0x0D)
+                    || (currentByte >= 0x80 && currentByte <= 0x9F);
+            if (needSubstitution) {
+                if (modifiedBytes == null) {
+                    modifiedBytes = Arrays.copyOfRange(bytes, posInBytes, lastPos);
+                    modifiedBytesSize = i - posInBytes;
+                }
+                if (currentByte == 0x8a) {
+                    modifiedBytes[modifiedBytesSize++] = '\n';
+                }
+            } else if (modifiedBytes != null) {
+                modifiedBytes[modifiedBytesSize++] = bytes[i];
+            }
+        }
+
+        if (encoding.isEmpty()) {
+            encoding = "UTF-8";
+        }
+        if (modifiedBytes != null) {
+            return new String(modifiedBytes, 0, modifiedBytesSize, Charset.forName(encoding));
+        }
+        return new String(bytes, posInBytes, length, Charset.forName(encoding));
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core.sipsi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+public class ProgramTablesTest {
+
+    private static final int PMT_PID = 0x100;
+
+    private ProgramTables mTables;
+
+    @Before
+    public void setUp() {
+        mTables = new ProgramTables();
+        mTables.attach(new TsDemux());
+    }
+
+    private static byte[] section(int tableId, int tableIdExtension, int version, byte[] body) {
+        int sectionLength = 5 + body.length + 4;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(tableId);
+        out.write(0xb0 | (sectionLength >> 8));
+        out.write(sectionLength & 0xff);
+        out.write(tableIdExtension >> 8);
+        out.write(tableIdExtension & 0xff);
+        out.write(0xc1 | (version << 1));
+        out.write(0);
+        out.write(0);
+        out.write(body, 0, body.length);
+        byte[] bytes = out.toByteArray();
+        int crc = Crc32.compute(bytes, 0, bytes.length);
+        out.write(crc >>> 24);
+        out.write(crc >>> 16);
+        out.write(crc >>> 8);
+        out.write(crc);
+        return out.toByteArray();
+    }
+
+    private static byte[] pat(int version, int... programs) {
+        byte[] body = new byte[programs.length / 2 * 4];
+        for (int i = 0; i < programs.length / 2; i++) {
+            body[i * 4] = (byte) (programs[i * 2] >> 8);
+            body[i * 4 + 1] = (byte) programs[i * 2];
+            body[i * 4 + 2] = (byte) (0xe0 | (programs[i * 2 + 1] >> 8));
+            body[i * 4 + 3] = (byte) programs[i * 2 + 1];
+        }
+        return section(Pat.TABLE_ID, 1, version, body);
+    }
+
+    private static byte[] pmt(int programNumber, int version, int audioPid) {
+        byte[] body = {
+                (byte) 0xe0, 0x00, (byte) 0xf0, 0x00,
+                (byte) Pmt.STREAM_TYPE_MPEG2_AUDIO,
+                (byte) (0xe0 | (audioPid >> 8)), (byte) audioPid, (byte) 0xf0, 0x00
+        };
+        return section(Pmt.TABLE_ID, programNumber, version, body);
+    }
+
+    private void feed(int pid, byte[] section) {
+        mTables.onSection(pid, section, 0, section.length);
+    }
+
+    @Test
+    public void programsSharingPmtPidAreKeptApart() {
+        feed(Pat.PID, pat(0, 1, PMT_PID, 2, PMT_PID));
+        feed(PMT_PID, pmt(1, 0, 0x101));
+        feed(PMT_PID, pmt(2, 0, 0x201));
+
+        Pmt first = mTables.getPmt(1);
+        Pmt second = mTables.getPmt(2);
+        assertNotNull(first);
+        assertNotNull(second);
+        assertEquals(1, first.getProgramNumber());
+        assertEquals(0x101, first.getStreams().get(0).getPid());
+        assertEquals(2, second.getProgramNumber());
+        assertEquals(0x201, second.getStreams().get(0).getPid());
+    }
+
+    @Test
+    public void repeatedSectionsAreSkippedPerProgram() {
+        feed(Pat.PID, pat(0, 1, PMT_PID, 2, PMT_PID));
+        for (int i = 0; i < 3; i++) {
+            feed(PMT_PID, pmt(1, 0, 0x101));
+            feed(PMT_PID, pmt(2, 0, 0x201));
+        }
+        assertEquals(3, mTables.getParsedSectionCount());
+        assertEquals(4, mTables.getSkippedSectionCount());
+
+        // new version of one program doesn't invalidate the other
+        feed(PMT_PID, pmt(2, 1, 0x202));
+        feed(PMT_PID, pmt(1, 0, 0x101));
+        assertEquals(4, mTables.getParsedSectionCount());
+        assertEquals(5, mTables.getSkippedSectionCount());
+        assertEquals(0x101, mTables.getPmt(1).getStreams().get(0).getPid());
+        assertEquals(0x202, mTables.getPmt(2).getStreams().get(0).getPid());
+    }
+
+    @Test
+    public void pmtRemovedFromPatIsForgotten() {
+        feed(Pat.PID, pat(0, 1, PMT_PID));
+        feed(PMT_PID, pmt(1, 0, 0x101));
+        assertNotNull(mTables.getPmt(1));
+
+        feed(Pat.PID, pat(1, 3, 0x300));
+        assertNull(mTables.getPmt(1));
+
+        // pid is no longer a pmt pid
+        feed(PMT_PID, pmt(1, 0, 0x101));
+        assertNull(mTables.getPmt(1));
+    }
+
+    @Test
+    public void corruptedSectionIsNotCached() {
+        feed(Pat.PID, pat(0, 1, PMT_PID));
+        byte[] corrupted = pmt(1, 0, 0x101);
+        corrupted[corrupted.length - 1] ^= 1;
+        feed(PMT_PID, corrupted);
+        assertEquals(1, mTables.getCrcErrorCount());
+        assertNull(mTables.getPmt(1));
+
+        feed(PMT_PID, pmt(1, 0, 0x101));
+        assertNotNull(mTables.getPmt(1));
+    }
+}
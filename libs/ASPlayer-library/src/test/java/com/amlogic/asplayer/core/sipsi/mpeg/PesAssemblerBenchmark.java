@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core.sipsi.mpeg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import com.amlogic.asplayer.core.MicroBenchmark;
+import com.amlogic.asplayer.core.TsStreamWriter;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * PES reassembly throughput on a synthetic 40 Mbit/s capture: one video pid at 25 pes/s,
+ * two audio pids at 31 pes/s, null packets for the rest of the bitrate.
+ */
+public class PesAssemblerBenchmark {
+
+    private static final int VIDEO_PID = 0x100;
+    private static final int AUDIO_PID_1 = 0x101;
+    private static final int AUDIO_PID_2 = 0x102;
+    private static final int BITRATE = 40_000_000;
+    private static final int SECONDS = 2;
+
+    private static byte[] createCapture(int[] pesCount) {
+        Random random = new Random(0);
+        TsStreamWriter writer = new TsStreamWriter();
+        int packetsPerSecond = BITRATE / 8 / TsStreamWriter.PACKET_SIZE;
+        for (int second = 0; second < SECONDS; second++) {
+            int start = writer.size();
+            for (int frame = 0; frame < 31; frame++) {
+                long pts = (second * 31L + frame) * 2880;
+                if (frame < 25) {
+                    byte[] video = new byte[100_000 + random.nextInt(100_000)];
+                    random.nextBytes(video);
+                    writer.writePes(VIDEO_PID, 0xe0, pts, video, false);
+                    pesCount[0]++;
+                }
+                byte[] audio = new byte[1536];
+                random.nextBytes(audio);
+                writer.writePes(AUDIO_PID_1, 0xc0, pts, audio, true);
+                writer.writePes(AUDIO_PID_2, 0xc1, pts, audio, true);
+                pesCount[0] += 2;
+            }
+            int packets = (writer.size() - start) / TsStreamWriter.PACKET_SIZE;
+            for (int i = packets; i < packetsPerSecond; i++) {
+                writer.writeNullPacket();
+            }
+        }
+        // unbounded video pes of the capture ends at next unit start
+        writer.writePes(VIDEO_PID, 0xe0, 0, new byte[16], false);
+        return writer.toByteArray();
+    }
+
+    @Test
+    public void pesPerSecond() {
+        assumeTrue(MicroBenchmark.isEnabled());
+
+        int[] pesCount = new int[1];
+        byte[] capture = createCapture(pesCount);
+
+        PesAssembler assembler = new PesAssembler();
+        assembler.addPid(VIDEO_PID);
+        assembler.addPid(AUDIO_PID_1);
+        assembler.addPid(AUDIO_PID_2);
+        long[] payloadBytes = new long[1];
+        assembler.setOnPesListener((pid, pes) -> payloadBytes[0] += pes.getData().remaining());
+        TsPacket packet = new TsPacket();
+
+        MicroBenchmark.Result result = MicroBenchmark.run("PesAssembler 40 Mbit/s capture pass",
+                20, iteration -> {
+                    long before = assembler.getPesCount();
+                    for (int pos = 0; pos < capture.length; pos += TsStreamWriter.PACKET_SIZE) {
+                        packet.wrap(capture, pos);
+                        assembler.consumePacket(packet);
+                    }
+                    assembler.flush();
+                    return assembler.getPesCount() - before;
+                });
+
+        double pesPerSecond = pesCount[0] * result.getOperationsPerSecond();
+        double realtime = result.getOperationsPerSecond() * SECONDS;
+        System.out.println(String.format("  %.0f pes/s, %.0f Mbit/s, %.1fx real time, "
+                        + "pool allocations: %d", pesPerSecond, capture.length * 8
+                        * result.getOperationsPerSecond() / 1e6, realtime,
+                assembler.getPool().getAllocationCount()));
+        assertEquals(0, assembler.getContinuityErrorCount());
+        assertEquals(0, assembler.getTruncatedPesCount());
+    }
+}
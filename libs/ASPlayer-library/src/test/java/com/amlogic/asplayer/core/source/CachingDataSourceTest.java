@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core.source;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.amlogic.asplayer.core.sipsi.mpeg.Mpeg;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+public class CachingDataSourceTest {
+
+    private static final int BLOCK_SIZE = CachingDataSource.BLOCK_SIZE;
+    private static final int READ_SIZE = Mpeg.TS_PACKET_SIZE * 50;
+
+    private static class CountingFileDataSource extends FileDataSource {
+        int mReadCount;
+
+        CountingFileDataSource(File file, boolean growing) {
+            super(file, growing);
+        }
+
+        @Override
+        public int read(byte[] tsPackets, int offset, int length) throws IOException {
+            mReadCount++;
+            return super.read(tsPackets, offset, length);
+        }
+    }
+
+    private File mFile;
+    private CountingFileDataSource mSource;
+    private CachingDataSource mCache;
+    // prefetch tasks, run by the test
+    private final List<Runnable> mTasks = new ArrayList<>();
+    private final Executor mExecutor = mTasks::add;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("cache", ".ts");
+    }
+
+    @After
+    public void tearDown() {
+        if (mCache != null) {
+            mCache.close();
+        }
+        mFile.delete();
+    }
+
+    private static byte valueAt(long position) {
+        return (byte) (position % 251);
+    }
+
+    private void append(long size) throws IOException {
+        long position = mFile.length();
+        byte[] bytes = new byte[(int) size];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = valueAt(position + i);
+        }
+        try (FileOutputStream output = new FileOutputStream(mFile, true)) {
+            output.write(bytes);
+        }
+    }
+
+    private void open(boolean growing, int blockCount, int prefetchBlockCount) throws IOException {
+        mSource = new CountingFileDataSource(mFile, growing);
+        mCache = new CachingDataSource(mSource, blockCount, prefetchBlockCount, mExecutor);
+        mCache.open();
+    }
+
+    private void runTasks() {
+        while (!mTasks.isEmpty()) {
+            mTasks.remove(0).run();
+        }
+    }
+
+    /**
+     * Reads size bytes from position and checks them against the file content.
+     */
+    private void readAndCheck(long position, int size) throws IOException {
+        mCache.setPositionInBytes(position);
+        byte[] buffer = new byte[READ_SIZE];
+        while (size > 0) {
+            int read = mCache.read(buffer, 0, Math.min(size, buffer.length));
+            assertTrue("read at " + mCache.getPositionInBytes() + ": " + read, read > 0);
+            for (int i = 0; i < read; i++) {
+                assertEquals(valueAt(position + i), buffer[i]);
+            }
+            position += read;
+            size -= read;
+        }
+    }
+
+    @Test
+    public void blocksAreReplayedFromCache() throws IOException {
+        long length = BLOCK_SIZE * 3L + BLOCK_SIZE / 2;
+        append(length);
+        open(false, 8, 0);
+
+        readAndCheck(0, (int) length);
+        assertEquals(4, mCache.getMissCount());
+        // end of source is not cached
+        assertEquals(-1, mCache.read(new byte[READ_SIZE]));
+        assertEquals(5, mCache.getMissCount());
+        int sourceReads = mSource.mReadCount;
+
+        readAndCheck(0, (int) length);
+        readAndCheck(BLOCK_SIZE + 1000, BLOCK_SIZE);
+        assertEquals(sourceReads, mSource.mReadCount);
+        assertEquals(5, mCache.getMissCount());
+    }
+
+    @Test
+    public void leastRecentlyUsedBlockIsEvicted() throws IOException {
+        append(BLOCK_SIZE * 4L);
+        open(false, 2, 0);
+
+        readAndCheck(0, READ_SIZE);
+        readAndCheck(BLOCK_SIZE, READ_SIZE);
+        // block 0 used last, block 1 is evicted by block 2
+        readAndCheck(READ_SIZE, READ_SIZE);
+        readAndCheck(BLOCK_SIZE * 2L, READ_SIZE);
+        assertEquals(3, mCache.getMissCount());
+
+        readAndCheck(READ_SIZE * 2L, READ_SIZE);
+        assertEquals(3, mCache.getMissCount());
+        readAndCheck(BLOCK_SIZE + READ_SIZE, READ_SIZE);
+        assertEquals(4, mCache.getMissCount());
+    }
+
+    @Test
+    public void blocksAreReadAheadInDirectionOfSpeed() throws IOException {
+        append(BLOCK_SIZE * 6L);
+        open(false, 8, 2);
+
+        readAndCheck(0, READ_SIZE);
+        runTasks();
+        assertEquals(2, mCache.getPrefetchCount());
+        readAndCheck(BLOCK_SIZE, BLOCK_SIZE * 2);
+        assertEquals(1, mCache.getMissCount());
+
+        mCache.setSpeed(-1);
+        readAndCheck(BLOCK_SIZE * 5L, READ_SIZE);
+        runTasks();
+        assertEquals(4, mCache.getPrefetchCount());
+        int sourceReads = mSource.mReadCount;
+        readAndCheck(BLOCK_SIZE * 3L, BLOCK_SIZE * 2);
+        assertEquals(sourceReads, mSource.mReadCount);
+        assertEquals(2, mCache.getMissCount());
+    }
+
+    @Test
+    public void blockCutByEndOfGrowingSourceIsReadAgain() throws IOException {
+        append(BLOCK_SIZE / 2);
+        open(true, 8, 0);
+
+        readAndCheck(0, BLOCK_SIZE / 2);
+        assertEquals(0, mCache.read(new byte[READ_SIZE]));
+
+        append(BLOCK_SIZE);
+        mCache.updateTimeline();
+        readAndCheck(BLOCK_SIZE / 2, BLOCK_SIZE);
+        assertEquals(0, mCache.read(new byte[READ_SIZE]));
+    }
+}
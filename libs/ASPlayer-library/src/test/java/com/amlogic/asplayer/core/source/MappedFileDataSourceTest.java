@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core.source;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.amlogic.asplayer.core.sipsi.mpeg.Mpeg;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+public class MappedFileDataSourceTest {
+
+    private static final int PACKET_SIZE = Mpeg.TS_PACKET_SIZE;
+    private static final int WINDOW_SIZE = MappedFileDataSource.WINDOW_ALIGNMENT;
+    // two windows and a half, and the start of a packet cut by end of file
+    private static final int FILE_SIZE = 2 * WINDOW_SIZE + WINDOW_SIZE / 2 + 100;
+    private static final long END_POSITION = FILE_SIZE - FILE_SIZE % PACKET_SIZE;
+
+    private File mFile;
+    private MappedFileDataSource mSource;
+
+    private static byte valueAt(long position) {
+        return (byte) (position * 31 + position / PACKET_SIZE);
+    }
+
+    private static void assertData(long position, byte[] bytes, int offset, int size) {
+        for (int i = 0; i < size; i++) {
+            if (bytes[offset + i] != valueAt(position + i))
+                fail("bad data at " + (position + i));
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("mapped", ".ts");
+        byte[] bytes = new byte[FILE_SIZE];
+        for (int i = 0; i < FILE_SIZE; i++) {
+            bytes[i] = valueAt(i);
+        }
+        try (FileOutputStream output = new FileOutputStream(mFile)) {
+            output.write(bytes);
+        }
+        // windows of WINDOW_ALIGNMENT, so that a small file has several of them
+        mSource = new MappedFileDataSource(mFile, false, 1);
+        mSource.open();
+    }
+
+    @After
+    public void tearDown() {
+        mSource.close();
+        mFile.delete();
+    }
+
+    @Test
+    public void windowAlignmentIsMultipleOfPacketAndPageSize() {
+        assertEquals(0, WINDOW_SIZE % PACKET_SIZE);
+        assertEquals(0, WINDOW_SIZE % 4096);
+        assertEquals(END_POSITION, mSource.getEndPositionInBytes());
+    }
+
+    @Test
+    public void readStopsAtEndOfWindow() throws IOException {
+        byte[] bytes = new byte[10 * PACKET_SIZE];
+        long position = WINDOW_SIZE - 2 * PACKET_SIZE;
+        mSource.setPositionInBytes(position);
+
+        assertEquals(2 * PACKET_SIZE, mSource.read(bytes, 0, bytes.length));
+        assertData(position, bytes, 0, 2 * PACKET_SIZE);
+        assertEquals(WINDOW_SIZE, mSource.getPositionInBytes());
+
+        // next window starts at the boundary
+        assertEquals(bytes.length, mSource.read(bytes, 0, bytes.length));
+        assertData(WINDOW_SIZE, bytes, 0, bytes.length);
+    }
+
+    @Test
+    public void windowIsAlignedOnPosition() throws IOException {
+        byte[] bytes = new byte[WINDOW_SIZE];
+        // windows start at a multiple of WINDOW_ALIGNMENT, whatever the position
+        long[] positions = {
+                WINDOW_SIZE + 5 * PACKET_SIZE,
+                7 * PACKET_SIZE,
+                2 * WINDOW_SIZE - PACKET_SIZE,
+                WINDOW_SIZE,
+        };
+        for (long position : positions) {
+            mSource.setPositionInBytes(position);
+            int read = mSource.read(bytes, 0, bytes.length);
+            assertEquals(WINDOW_SIZE - position % WINDOW_SIZE, read);
+            assertData(position, bytes, 0, read);
+        }
+    }
+
+    @Test
+    public void lastWindowIsCutByEndOfFile() throws IOException {
+        byte[] bytes = new byte[WINDOW_SIZE];
+        long position = 2 * WINDOW_SIZE + PACKET_SIZE;
+        mSource.setPositionInBytes(position);
+        int read = mSource.read(bytes, 0, bytes.length);
+        assertEquals(END_POSITION - position, read);
+        assertData(position, bytes, 0, read);
+
+        // packet cut by end of file is not read
+        assertEquals(-1, mSource.read(bytes, 0, bytes.length));
+        assertEquals(END_POSITION, mSource.getPositionInBytes());
+    }
+
+    @Test
+    public void wholeFileIsReadAcrossWindows() throws IOException {
+        // read ahead maps next window when current one is mapped
+        List<Runnable> readAheads = new ArrayList<>();
+        mSource.setReadAheadExecutor(task -> {
+            readAheads.add(task);
+            task.run();
+        });
+
+        byte[] bytes = new byte[100 * PACKET_SIZE];
+        long position = 0;
+        int reads = 0;
+        int read;
+        while ((read = mSource.read(bytes, 0, bytes.length)) > 0) {
+            assertData(position, bytes, 0, read);
+            position += read;
+            reads++;
+        }
+        assertEquals(-1, read);
+        assertEquals(END_POSITION, position);
+        assertTrue(reads > 3);
+        // second window is read ahead, third one is cut by end of file and mapped when reached
+        assertEquals(1, readAheads.size());
+    }
+
+    @Test
+    public void writeToAdvancesBySizeAccepted() throws IOException {
+        long position = WINDOW_SIZE - 3 * PACKET_SIZE;
+        mSource.setPositionInBytes(position);
+        List<ByteBuffer> buffers = new ArrayList<>();
+        // accepts a packet at most
+        MappedFileDataSource.Sink sink = buffer -> {
+            buffers.add(buffer.duplicate());
+            int size = Math.min(buffer.remaining(), PACKET_SIZE);
+            buffer.position(buffer.position() + size);
+            return size;
+        };
+
+        byte[] bytes = new byte[PACKET_SIZE];
+        for (int i = 0; i < 5; i++) {
+            assertEquals(PACKET_SIZE, mSource.writeTo(sink, 10 * PACKET_SIZE));
+            ByteBuffer buffer = buffers.get(i);
+            // data given to sink never crosses the end of window
+            assertEquals(Math.min(10 * PACKET_SIZE, WINDOW_SIZE - position % WINDOW_SIZE),
+                    buffer.remaining());
+            buffer.get(bytes);
+            assertData(position, bytes, 0, PACKET_SIZE);
+            position += PACKET_SIZE;
+            assertEquals(position, mSource.getPositionInBytes());
+        }
+    }
+
+    @Test
+    public void writeToReportsEndOfFileAndErrors() throws IOException {
+        mSource.setPositionInBytes(END_POSITION);
+        List<ByteBuffer> buffers = new ArrayList<>();
+        assertEquals(-1, mSource.writeTo(buffer -> {
+            buffers.add(buffer);
+            return buffer.remaining();
+        }, PACKET_SIZE));
+        assertTrue(buffers.isEmpty());
+
+        mSource.setPositionInBytes(0);
+        // full sink
+        assertEquals(0, mSource.writeTo(buffer -> 0, PACKET_SIZE));
+        assertEquals(0, mSource.getPositionInBytes());
+        try {
+            mSource.writeTo(buffer -> -1, PACKET_SIZE);
+            fail("sink error not reported");
+        } catch (IOException expected) {
+        }
+        assertEquals(0, mSource.getPositionInBytes());
+    }
+
+    @Test
+    public void growingFileHasNoEnd() throws IOException {
+        mSource.close();
+        mSource = new MappedFileDataSource(mFile, true, 1);
+        mSource.open();
+        mSource.setPositionInBytes(END_POSITION);
+        assertEquals(0, mSource.read(new byte[PACKET_SIZE], 0, PACKET_SIZE));
+
+        // end of packet cut by end of file is appended
+        try (FileOutputStream output = new FileOutputStream(mFile, true)) {
+            byte[] bytes = new byte[PACKET_SIZE - FILE_SIZE % PACKET_SIZE];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = valueAt(FILE_SIZE + i);
+            }
+            output.write(bytes);
+        }
+        byte[] bytes = new byte[PACKET_SIZE];
+        assertEquals(PACKET_SIZE, mSource.read(bytes, 0, PACKET_SIZE));
+        assertData(END_POSITION, bytes, 0, PACKET_SIZE);
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core.source;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.media.MediaFormat;
+
+import com.amlogic.asplayer.core.TsStreamWriter;
+import com.amlogic.asplayer.core.sipsi.mpeg.Mpeg;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TsIndexReaderTest {
+
+    private static final int VIDEO_PID = 0x100;
+    private static final long FRAME_PTS = 3600;
+    private static final long FRAME_US = 40000;
+    private static final int GOP_SIZE = 5;
+
+    private File mIndexFile;
+    private TsIndexWriter mWriter;
+    private TsIndexReader mReader;
+    private final TsStreamWriter mStream = new TsStreamWriter();
+    // bytes of mStream already given to mWriter
+    private int mIndexedSize;
+    // position of each pes in the stream
+    private final List<Long> mPositions = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        mIndexFile = File.createTempFile("record", ".ts" + TsIndexFormat.FILE_EXTENSION);
+        mWriter = new TsIndexWriter(mIndexFile, VIDEO_PID, MediaFormat.MIMETYPE_VIDEO_AVC);
+        mWriter.open();
+        mReader = new TsIndexReader(mIndexFile);
+    }
+
+    @After
+    public void tearDown() {
+        mWriter.close();
+        mReader.close();
+        mIndexFile.delete();
+    }
+
+    /**
+     * Writes gops of GOP_SIZE pictures, starting with a key frame.
+     */
+    private void writeGops(long firstPts, int gopCount) {
+        for (int i = 0; i < gopCount * GOP_SIZE; i++) {
+            writePicture(firstPts + i * FRAME_PTS, i % GOP_SIZE == 0);
+        }
+    }
+
+    private void writePicture(long pts, boolean keyFrame) {
+        // start code and nal header of an idr or non idr slice
+        byte[] payload = new byte[300];
+        payload[3] = 1;
+        payload[4] = (byte) (keyFrame ? 0x65 : 0x41);
+        for (int i = 5; i < payload.length; i++) {
+            payload[i] = (byte) (0x10 + i % 0x60);
+        }
+        mPositions.add((long) mStream.size());
+        mStream.writePes(VIDEO_PID, 0xe0, pts & Mpeg.PTS_MAX_VALUE, payload, true);
+    }
+
+    private void index() throws IOException {
+        byte[] bytes = mStream.toByteArray();
+        mWriter.write(bytes, mIndexedSize, bytes.length - mIndexedSize);
+        mWriter.flush();
+        mIndexedSize = bytes.length;
+    }
+
+    private long position(int picture) {
+        return mPositions.get(picture);
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        long firstPts = 900000;
+        writeGops(firstPts, 3);
+        index();
+        mReader.open();
+
+        assertTrue(mReader.isOpen());
+        assertEquals(15, mReader.getEntryCount());
+        long firstUs = Mpeg.ptsToUs(firstPts);
+        assertEquals(firstUs, mReader.getStartPositionInUs());
+        assertEquals(firstUs + 14 * FRAME_US, mReader.getEndPositionInUs());
+
+        for (int picture = 0; picture < 15; picture++) {
+            long timestampUs = firstUs + picture * FRAME_US;
+            int keyFrame = picture / GOP_SIZE * GOP_SIZE;
+            // decoding starts at the key frame of the gop
+            assertEquals(position(keyFrame), mReader.getPositionInBytes(timestampUs));
+            assertEquals(position(keyFrame), mReader.getPositionInBytes(timestampUs + 1));
+            // any byte of a pes gives the timestamp of the pes
+            assertEquals(timestampUs, mReader.getPositionInUs(position(picture)));
+            assertEquals(timestampUs, mReader.getPositionInUs(position(picture) + 187));
+        }
+        assertEquals(TsIndexReader.NOT_FOUND, mReader.getPositionInBytes(firstUs - 1));
+        assertEquals(TsIndexReader.NOT_FOUND, mReader.getPositionInUs(-1));
+    }
+
+    @Test
+    public void picturesBeforeFirstKeyFrameCantBeReached() throws IOException {
+        writePicture(90000, false);
+        writePicture(90000 + FRAME_PTS, false);
+        writeGops(90000 + 2 * FRAME_PTS, 1);
+        index();
+        mReader.open();
+
+        assertEquals(7, mReader.getEntryCount());
+        assertEquals(TsIndexReader.NOT_FOUND,
+                mReader.getPositionInBytes(Mpeg.ptsToUs(90000 + FRAME_PTS)));
+        assertEquals(position(2), mReader.getPositionInBytes(Mpeg.ptsToUs(90000 + 4 * FRAME_PTS)));
+    }
+
+    @Test
+    public void refreshFollowsRecordingInProgress() throws IOException {
+        writeGops(90000, 1);
+        index();
+        mReader.open();
+        assertEquals(5, mReader.getEntryCount());
+        assertFalse(mReader.refresh());
+
+        writeGops(90000 + 5 * FRAME_PTS, 2);
+        index();
+        assertEquals(5, mReader.getEntryCount());
+        assertTrue(mReader.refresh());
+        assertEquals(15, mReader.getEntryCount());
+        assertEquals(position(10),
+                mReader.getPositionInBytes(Mpeg.ptsToUs(90000) + 12 * FRAME_US));
+
+        // an entry being written is ignored until complete
+        try (FileOutputStream output = new FileOutputStream(mIndexFile, true)) {
+            output.write(new byte[TsIndexFormat.ENTRY_SIZE - 1]);
+        }
+        assertFalse(mReader.refresh());
+        assertEquals(15, mReader.getEntryCount());
+    }
+
+    @Test
+    public void wrapAndDiscontinuityAreRebased() throws IOException {
+        // pts wrap in the second gop, then pts jump to 100s
+        long firstPts = Mpeg.PTS_MAX_VALUE + 1 - 7 * FRAME_PTS;
+        writeGops(firstPts, 2);
+        writeGops(100 * 90000, 2);
+        index();
+        mReader.open();
+
+        assertEquals(20, mReader.getEntryCount());
+        assertEquals(1, mWriter.getDiscontinuityCount());
+
+        // timeline goes on across the wrap and the discontinuity
+        long firstUs = Mpeg.ptsToUs(firstPts);
+        for (int picture = 0; picture < 20; picture++) {
+            long timestampUs = firstUs + picture * FRAME_US;
+            assertEquals(timestampUs, mReader.getPositionInUs(position(picture)));
+            assertEquals(position(picture / GOP_SIZE * GOP_SIZE),
+                    mReader.getPositionInBytes(timestampUs));
+        }
+        assertEquals(firstUs + 19 * FRAME_US, mReader.getEndPositionInUs());
+
+        // timestamps of the index are not the pts given to decoders after a discontinuity
+        long restartPtsUs = Mpeg.ptsToUs(100 * 90000);
+        assertNotEquals(restartPtsUs, mReader.getPositionInUs(position(10)));
+        assertEquals(TsIndexReader.NOT_FOUND, mReader.getPositionInBytes(restartPtsUs));
+    }
+
+    @Test
+    public void badHeaderIsRejected() throws IOException {
+        try (FileOutputStream output = new FileOutputStream(mIndexFile, false)) {
+            output.write(new byte[TsIndexFormat.HEADER_SIZE + TsIndexFormat.ENTRY_SIZE]);
+        }
+        try {
+            mReader.open();
+            fail("index with a bad header was opened");
+        } catch (IOException expected) {
+        }
+        assertFalse(mReader.isOpen());
+        assertEquals(0, mReader.getEntryCount());
+        assertEquals(TsIndexReader.NOT_FOUND, mReader.getStartPositionInUs());
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core.source;
+
+import static org.junit.Assert.assertEquals;
+
+import android.media.MediaFormat;
+
+import com.amlogic.asplayer.core.TsStreamWriter;
+import com.amlogic.asplayer.core.sipsi.mpeg.Mpeg;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TsIndexWriterTest {
+
+    private static final int VIDEO_PID = 0x100;
+    private static final long FRAME_PTS = 3600;
+
+    private File mIndexFile;
+    private TsIndexWriter mWriter;
+    private TsIndexReader mReader;
+    private final TsStreamWriter mStream = new TsStreamWriter();
+    // position of each pes in the stream
+    private final List<Long> mPositions = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        mIndexFile = File.createTempFile("record", ".ts" + TsIndexFormat.FILE_EXTENSION);
+        mWriter = new TsIndexWriter(mIndexFile, VIDEO_PID, MediaFormat.MIMETYPE_VIDEO_AVC);
+        mWriter.open();
+    }
+
+    @After
+    public void tearDown() {
+        mWriter.close();
+        if (mReader != null) {
+            mReader.close();
+        }
+        mIndexFile.delete();
+    }
+
+    private void writePictures(long firstPts, int count) {
+        for (int i = 0; i < count; i++) {
+            writePicture(firstPts + i * FRAME_PTS, i == 0);
+        }
+    }
+
+    private void writePicture(long pts, boolean keyFrame) {
+        // start code and nal header of an idr or non idr slice
+        byte[] payload = new byte[400];
+        payload[3] = 1;
+        payload[4] = (byte) (keyFrame ? 0x65 : 0x41);
+        for (int i = 5; i < payload.length; i++) {
+            payload[i] = (byte) (0x10 + i % 0x60);
+        }
+        mPositions.add((long) mStream.size());
+        mStream.writePes(VIDEO_PID, 0xe0, pts & Mpeg.PTS_MAX_VALUE, payload, true);
+    }
+
+    private void index() throws IOException {
+        byte[] bytes = mStream.toByteArray();
+        mWriter.write(bytes, 0, bytes.length);
+        mWriter.flush();
+        mReader = new TsIndexReader(mIndexFile);
+        mReader.open();
+    }
+
+    @Test
+    public void backwardJumpIsRebased() throws IOException {
+        writePictures(900000, 10);
+        writePictures(90000, 10);
+        index();
+
+        assertEquals(20, mReader.getEntryCount());
+        assertEquals(1, mWriter.getDiscontinuityCount());
+        long startUs = Mpeg.ptsToUs(900000);
+        assertEquals(startUs, mReader.getStartPositionInUs());
+        // first pes after the jump follows the last one before it
+        long rebasedUs = Mpeg.ptsToUs(900000 + 10 * FRAME_PTS);
+        assertEquals(rebasedUs, mReader.getPositionInUs(mPositions.get(10)));
+        assertEquals(mPositions.get(10).longValue(), mReader.getPositionInBytes(rebasedUs));
+        assertEquals(Mpeg.ptsToUs(900000 + 19 * FRAME_PTS), mReader.getEndPositionInUs());
+    }
+
+    @Test
+    public void forwardJumpIsRebased() throws IOException {
+        writePictures(90000, 5);
+        writePictures(90000 * 100, 5);
+        index();
+
+        assertEquals(10, mReader.getEntryCount());
+        assertEquals(1, mWriter.getDiscontinuityCount());
+        assertEquals(Mpeg.ptsToUs(90000 + 9 * FRAME_PTS), mReader.getEndPositionInUs());
+    }
+
+    @Test
+    public void wrapIsNotADiscontinuity() throws IOException {
+        long firstPts = Mpeg.PTS_MAX_VALUE + 1 - 5 * FRAME_PTS;
+        writePictures(firstPts, 10);
+        index();
+
+        assertEquals(10, mReader.getEntryCount());
+        assertEquals(0, mWriter.getDiscontinuityCount());
+        assertEquals(Mpeg.ptsToUs(firstPts + 9 * FRAME_PTS), mReader.getEndPositionInUs());
+    }
+
+    @Test
+    public void reorderedPicturesAreSkipped() throws IOException {
+        writePicture(90000, true);
+        writePicture(90000 + 3 * FRAME_PTS, false);
+        writePicture(90000 + FRAME_PTS, false);
+        writePicture(90000 + 2 * FRAME_PTS, false);
+        writePicture(90000 + 6 * FRAME_PTS, false);
+        index();
+
+        assertEquals(3, mReader.getEntryCount());
+        assertEquals(0, mWriter.getDiscontinuityCount());
+        assertEquals(Mpeg.ptsToUs(90000 + 6 * FRAME_PTS), mReader.getEndPositionInUs());
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core.ts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import com.amlogic.asplayer.core.MicroBenchmark;
+import com.amlogic.asplayer.core.sipsi.mpeg.Pes;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+/**
+ * AAC frames from pes to a decoder input buffer, copied into unit blocks then into the
+ * buffer (setPes, getAudioBufferData), or sliced from the pes then copied into the buffer
+ * (setPesByReference, getAccessUnit).
+ */
+public class AccessUnitBenchmark {
+
+    // 48kHz stereo at 256 kbit/s
+    private static final int FRAME_SIZE = 682;
+    private static final int FRAMES_PER_PES = 8;
+    private static final int ITERATIONS = 200_000;
+
+    private static Pes createPes() {
+        byte[][] frames = new byte[FRAMES_PER_PES][];
+        for (int i = 0; i < FRAMES_PER_PES; i++) {
+            frames[i] = AudioFrames.adts(3, 2, FRAME_SIZE);
+        }
+        return AudioFrames.pes(AudioFrames.concat(frames), 0);
+    }
+
+    private static void report(MicroBenchmark.Result result, int copies) {
+        double framesPerSecond = FRAMES_PER_PES * result.getOperationsPerSecond();
+        System.out.println(String.format("  %.0f frames/s, %d copies per frame, "
+                        + "%.0f copies/s, %.0f MB/s moved", framesPerSecond, copies,
+                framesPerSecond * copies, framesPerSecond * copies * FRAME_SIZE / 1e6));
+    }
+
+    @Test
+    public void copiedUnits() {
+        assumeTrue(MicroBenchmark.isEnabled());
+
+        TsAudioParser parser = new AudioFrames.AdtsParser();
+        Pes pes = createPes();
+        ByteBuffer decoderInput = ByteBuffer.allocate(FRAME_SIZE);
+
+        MicroBenchmark.Result result = MicroBenchmark.run("AAC frames, copied", ITERATIONS,
+                iteration -> {
+                    pes.parseHeader();
+                    parser.setPes(pes, 0);
+                    long sum = 0;
+                    while (parser.hasAudioBuffer()) {
+                        parser.getAudioBufferData(decoderInput);
+                        sum += decoderInput.remaining();
+                        parser.moveToNext();
+                    }
+                    assertEquals(FRAME_SIZE * FRAMES_PER_PES, sum);
+                    return sum;
+                });
+        assertEquals(0, parser.getRejectedPesCount());
+        report(result, 2);
+    }
+
+    @Test
+    public void slicedUnits() {
+        assumeTrue(MicroBenchmark.isEnabled());
+
+        TsAudioParser parser = new AudioFrames.AdtsParser();
+        // pes is given back once its frames are read, and parsed again
+        parser.setOnPesReleasedListener(pes -> { });
+        Pes pes = createPes();
+        ByteBuffer decoderInput = ByteBuffer.allocate(FRAME_SIZE);
+        TsAudioParser.AccessUnit unit = new TsAudioParser.AccessUnit();
+
+        MicroBenchmark.Result result = MicroBenchmark.run("AAC frames, sliced", ITERATIONS,
+                iteration -> {
+                    pes.parseHeader();
+                    parser.setPesByReference(pes, 0);
+                    long sum = 0;
+                    while (parser.getAccessUnit(unit)) {
+                        decoderInput.clear();
+                        decoderInput.put(unit.array, unit.offset, unit.length);
+                        sum += unit.length;
+                        parser.moveToNext();
+                    }
+                    assertEquals(FRAME_SIZE * FRAMES_PER_PES, sum);
+                    return sum;
+                });
+        assertEquals(0, parser.getRejectedPesCount());
+        report(result, 1);
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core.ts;
+
+import android.media.MediaFormat;
+
+import com.amlogic.asplayer.core.TsStreamWriter;
+import com.amlogic.asplayer.core.sipsi.mpeg.Pes;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Builds audio frames and pes for the parser tests.
+ *
+ * MediaFormat.createAudioFormat returns null in JVM unit tests, parsers are tested through
+ * subclasses creating no MediaFormat.
+ */
+class AudioFrames {
+
+    static class AdtsParser extends TsAdtsParser {
+        @Override
+        MediaFormat createMediaFormat() {
+            return null;
+        }
+    }
+
+    static class LatmParser extends TsLatmParser {
+        @Override
+        MediaFormat createMediaFormat() {
+            return null;
+        }
+    }
+
+    static class MpegAudioParser extends TsMpegAudioParser {
+        @Override
+        MediaFormat createMediaFormat() {
+            return null;
+        }
+    }
+
+    static class Ac4Parser extends TsAc4Parser {
+        @Override
+        MediaFormat createMediaFormat() {
+            return null;
+        }
+    }
+
+    static class Ac3Parser extends TsAc3Parser {
+        @Override
+        MediaFormat createMediaFormat() {
+            return null;
+        }
+    }
+
+    // msb first bit writer
+    private static class BitWriter {
+        private final byte[] mBytes;
+        private int mPosInBits;
+
+        BitWriter(byte[] bytes) {
+            mBytes = bytes;
+        }
+
+        BitWriter write(int nbBits, long value) {
+            for (int i = nbBits - 1; i >= 0; i--) {
+                if (((value >> i) & 1) != 0) {
+                    mBytes[mPosInBits >> 3] |= (byte) (0x80 >> (mPosInBits & 7));
+                }
+                mPosInBits++;
+            }
+            return this;
+        }
+    }
+
+    private static void fillPayload(byte[] frame, int from) {
+        for (int i = from; i < frame.length; i++) {
+            frame[i] = (byte) (frame.length + i);
+            // no sync byte in payload, so that a lost sync is not found again inside
+            if (frame[i] == (byte) 0xff || frame[i] == 0x56 || frame[i] == (byte) 0xac) {
+                frame[i] = 0;
+            }
+        }
+    }
+
+    /**
+     * ADTS frame, AAC LC, no crc, single raw data block, payload filled with frameLength.
+     *
+     * @param samplingFrequencyIndex 3 for 48kHz, 4 for 44.1kHz
+     */
+    static byte[] adts(int samplingFrequencyIndex, int channelConfiguration, int frameLength) {
+        byte[] frame = new byte[frameLength];
+        int fullness = 0x7ff;
+        frame[0] = (byte) 0xff;
+        frame[1] = (byte) 0xf1;
+        frame[2] = (byte) ((1 << 6) | (samplingFrequencyIndex << 2) | (channelConfiguration >> 2));
+        frame[3] = (byte) (((channelConfiguration & 3) << 6) | ((frameLength >> 11) & 3));
+        frame[4] = (byte) (frameLength >> 3);
+        frame[5] = (byte) (((frameLength & 7) << 5) | (fullness >> 6));
+        frame[6] = (byte) ((fullness & 0x3f) << 2);
+        fillPayload(frame, 7);
+        return frame;
+    }
+
+    /**
+     * LOAS frame of an AudioMuxElement(1), audioMuxVersion 0, one subframe of AAC LC.
+     *
+     * @param withConfig false for useSameStreamMux
+     */
+    static byte[] latm(boolean withConfig, int samplingFrequencyIndex, int channelConfiguration,
+                       int frameSize) {
+        byte[] frame = new byte[frameSize];
+        BitWriter writer = new BitWriter(frame)
+                .write(11, 0x2b7)
+                .write(13, frameSize - 3)
+                .write(1, withConfig ? 0 : 1);
+        if (withConfig) {
+            writer.write(1, 0) // audioMuxVersion
+                    .write(1, 1) // allStreamsSameTimeFraming
+                    .write(6, 0) // numSubFrames
+                    .write(4, 0) // numProgram
+                    .write(3, 0) // numLayer
+                    .write(5, 2) // audioObjectType
+                    .write(4, samplingFrequencyIndex)
+                    .write(4, channelConfiguration);
+        }
+        fillPayload(frame, 8);
+        return frame;
+    }
+
+    /**
+     * MPEG audio frame, size is computed by caller from bitrate and sample rate.
+     *
+     * @param version 3 for MPEG-1, 2 for MPEG-2
+     * @param layer 3 for layer I, 2 for layer II, 1 for layer III
+     */
+    static byte[] mpegAudio(int version, int layer, int bitrateIndex, int samplingFrequency,
+                            int padding, int frameSize) {
+        byte[] frame = new byte[frameSize];
+        new BitWriter(frame)
+                .write(11, 0x7ff)
+                .write(2, version)
+                .write(2, layer)
+                .write(1, 1) // protection_bit, no crc
+                .write(4, bitrateIndex)
+                .write(2, samplingFrequency)
+                .write(1, padding)
+                .write(1, 0) // private_bit
+                .write(2, 0); // mode stereo
+        fillPayload(frame, 4);
+        return frame;
+    }
+
+    /**
+     * AC-4 syncframe at 48kHz, 25 frames per second.
+     *
+     * @param withCrc sync word 0xAC41, followed by a 2 bytes crc
+     * @param escaped frame_size written on 24 bits after 0xFFFF
+     */
+    static byte[] ac4(boolean withCrc, boolean escaped, int rawFrameSize) {
+        int headerSize = escaped ? 7 : 4;
+        byte[] frame = new byte[headerSize + rawFrameSize + (withCrc ? 2 : 0)];
+        BitWriter writer = new BitWriter(frame).write(16, withCrc ? 0xac41 : 0xac40);
+        if (escaped) {
+            writer.write(16, 0xffff).write(24, rawFrameSize);
+        } else {
+            writer.write(16, rawFrameSize);
+        }
+        writer.write(2, 2) // bitstream_version
+                .write(10, 0) // sequence_counter
+                .write(1, 0) // b_wait_frames
+                .write(1, 1) // fs_index 48kHz
+                .write(4, 2); // frame_rate_index 25 fps, 1920 samples
+        fillPayload(frame, headerSize + 3);
+        return frame;
+    }
+
+    /**
+     * AC-3 syncframe, bsid 8, stereo, 1536 samples.
+     *
+     * @param fscod 0 for 48kHz, 1 for 44.1kHz
+     * @param frmsizecod frame size code, 8 is 256 bytes at 48kHz
+     */
+    static byte[] ac3(int fscod, int frmsizecod, int frameSize) {
+        byte[] frame = new byte[frameSize];
+        new BitWriter(frame)
+                .write(16, 0x0b77)
+                .write(16, 0) // crc1
+                .write(2, fscod)
+                .write(6, frmsizecod)
+                .write(5, 8) // bsid
+                .write(3, 0) // bsmod
+                .write(3, 2) // acmod 2/0
+                .write(2, 0) // dsurmod
+                .write(1, 0); // lfeon
+        fillPayload(frame, 7);
+        return frame;
+    }
+
+    static byte[] concat(byte[]... frames) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] frame : frames) {
+            out.write(frame, 0, frame.length);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @param pts90k PTS in 90kHz units, -1 for a pes without PTS
+     */
+    static Pes pes(byte[] payload, long pts90k) {
+        Pes pes = new Pes();
+        pes.setByteBuffer(ByteBuffer.wrap(TsStreamWriter.pes(0xc0, pts90k, payload, true)));
+        pes.parseHeader();
+        return pes;
+    }
+}
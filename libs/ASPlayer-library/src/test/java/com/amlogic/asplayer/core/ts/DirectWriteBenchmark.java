@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core.ts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import com.amlogic.asplayer.core.MicroBenchmark;
+import com.amlogic.asplayer.core.TsStreamWriter;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Java side of a TS_MEMORY write, from the buffer handed over by JNI to the packet aligner.
+ *
+ * "array per call" is the former JNI path: a byte[] allocated and filled for every chunk.
+ * "direct buffer" is the path of TsPlayback.write(ByteBuffer): caller memory wrapped in a
+ * direct buffer, staged in one reused array.
+ * TsPlayback and DvrPlayback need the tuner framework, output of the aligner is a sink here.
+ */
+public class DirectWriteBenchmark {
+
+    private static final int CHUNK_SIZE = 188 * 1024;
+    private static final int CHUNKS = 64;
+    private static final int ITERATIONS = 2000;
+
+    private static class Sink implements TsPacketAligner.Output {
+        long mBytes;
+
+        @Override
+        public long write(byte[] bytes, int offset, int size) {
+            mBytes += size;
+            return size;
+        }
+    }
+
+    private static ByteBuffer createSource() {
+        TsStreamWriter writer = new TsStreamWriter();
+        while (writer.size() < CHUNK_SIZE * CHUNKS) {
+            writer.writeNullPacket();
+        }
+        byte[] data = writer.toByteArray();
+        ByteBuffer source = ByteBuffer.allocateDirect(data.length);
+        source.put(data).flip();
+        return source;
+    }
+
+    private static ByteBuffer chunk(ByteBuffer source, int iteration) {
+        ByteBuffer chunk = source.duplicate();
+        int position = (iteration % CHUNKS) * CHUNK_SIZE;
+        chunk.limit(position + CHUNK_SIZE).position(position);
+        return chunk;
+    }
+
+    private static void report(MicroBenchmark.Result result) {
+        System.out.println(String.format("  %.0f MB/s",
+                CHUNK_SIZE * result.getOperationsPerSecond() / 1e6));
+    }
+
+    @Test
+    public void arrayPerCall() {
+        assumeTrue(MicroBenchmark.isEnabled());
+
+        ByteBuffer source = createSource();
+        Sink sink = new Sink();
+        TsPacketAligner aligner = new TsPacketAligner(sink);
+
+        MicroBenchmark.Result result = MicroBenchmark.run("write, array per call", ITERATIONS,
+                iteration -> {
+                    ByteBuffer chunk = chunk(source, iteration);
+                    byte[] bytes = new byte[chunk.remaining()];
+                    chunk.get(bytes);
+                    return aligner.write(bytes, 0, bytes.length);
+                });
+        report(result);
+        assertEquals(0, aligner.getDroppedBytes());
+    }
+
+    @Test
+    public void directBuffer() {
+        assumeTrue(MicroBenchmark.isEnabled());
+
+        ByteBuffer source = createSource();
+        Sink sink = new Sink();
+        TsPacketAligner aligner = new TsPacketAligner(sink);
+        byte[] staging = new byte[CHUNK_SIZE];
+
+        MicroBenchmark.Result result = MicroBenchmark.run("write, direct buffer", ITERATIONS,
+                iteration -> {
+                    ByteBuffer chunk = chunk(source, iteration);
+                    int position = chunk.position();
+                    int size = chunk.remaining();
+                    chunk.get(staging, 0, size);
+                    chunk.position(position);
+                    return aligner.write(staging, 0, size);
+                });
+        report(result);
+        assertEquals(0, aligner.getDroppedBytes());
+    }
+}
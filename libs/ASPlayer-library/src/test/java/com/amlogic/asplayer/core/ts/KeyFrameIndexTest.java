@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core.ts;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class KeyFrameIndexTest {
+
+    // key frames every second, 1 MB apart
+    private static KeyFrameIndex index(int capacity, int count) {
+        KeyFrameIndex index = new KeyFrameIndex(capacity);
+        for (int i = 0; i < count; i++) {
+            index.add(i * 1000000L, i * 1000000L);
+        }
+        return index;
+    }
+
+    @Test
+    public void emptyIndex() {
+        KeyFrameIndex index = new KeyFrameIndex();
+        assertEquals(0, index.size());
+        assertEquals(KeyFrameIndex.NOT_FOUND, index.findTimestampUs(0, true));
+        assertEquals(KeyFrameIndex.NOT_FOUND, index.findTimestampUs(0, false));
+        assertEquals(KeyFrameIndex.NOT_FOUND, index.findPosition(0));
+    }
+
+    @Test
+    public void findBackward() {
+        KeyFrameIndex index = index(16, 5);
+        assertEquals(2000000, index.findTimestampUs(2000000, false));
+        assertEquals(2000000, index.findTimestampUs(2999999, false));
+        assertEquals(4000000, index.findTimestampUs(60000000, false));
+        assertEquals(KeyFrameIndex.NOT_FOUND, index.findTimestampUs(-1, false));
+        assertEquals(3000000, index.findPosition(3500000));
+    }
+
+    @Test
+    public void findForward() {
+        KeyFrameIndex index = index(16, 5);
+        assertEquals(2000000, index.findTimestampUs(2000000, true));
+        assertEquals(3000000, index.findTimestampUs(2000001, true));
+        assertEquals(0, index.findTimestampUs(-5000000, true));
+        assertEquals(KeyFrameIndex.NOT_FOUND, index.findTimestampUs(4000001, true));
+    }
+
+    @Test
+    public void oldestEntriesAreDroppedWhenFull() {
+        KeyFrameIndex index = index(4, 10);
+        assertEquals(4, index.size());
+        assertEquals(6000000, index.findTimestampUs(0, true));
+        assertEquals(KeyFrameIndex.NOT_FOUND, index.findPosition(5999999));
+        assertEquals(9000000, index.findPosition(9000000));
+        assertEquals(7000000, index.findTimestampUs(7500000, false));
+    }
+
+    @Test
+    public void discontinuityClearsIndex() {
+        KeyFrameIndex index = index(16, 5);
+        // timestamps restart, as after a pts wrap
+        index.add(500000, 9000000);
+        assertEquals(1, index.size());
+        assertEquals(9000000, index.findPosition(600000));
+        assertEquals(KeyFrameIndex.NOT_FOUND, index.findPosition(400000));
+        // same timestamp is a discontinuity too
+        index.add(500000, 9100000);
+        assertEquals(1, index.size());
+        assertEquals(9100000, index.findPosition(500000));
+    }
+}
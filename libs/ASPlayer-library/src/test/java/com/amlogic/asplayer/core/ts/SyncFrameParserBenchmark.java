@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core.ts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import com.amlogic.asplayer.core.MicroBenchmark;
+import com.amlogic.asplayer.core.sipsi.mpeg.Pes;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Frames per second of the sync frame parsers, on one second of audio cut in pes of 2000
+ * bytes, so that frames and headers are split between pes as on air.
+ */
+public class SyncFrameParserBenchmark {
+
+    private static final int PES_SIZE = 2000;
+    private static final int ITERATIONS = 500;
+
+    private static void run(String name, TsAudioParser parser, byte[] frame, int framesPerSecond) {
+        byte[][] frames = new byte[framesPerSecond][];
+        Arrays.fill(frames, frame);
+        byte[] stream = AudioFrames.concat(frames);
+        Pes[] pes = new Pes[(stream.length + PES_SIZE - 1) / PES_SIZE];
+        for (int i = 0; i < pes.length; i++) {
+            pes[i] = AudioFrames.pes(Arrays.copyOfRange(stream, i * PES_SIZE,
+                    Math.min(stream.length, (i + 1) * PES_SIZE)), -1);
+        }
+        // pes are given back once their frames are read, and parsed again
+        parser.setOnPesReleasedListener(released -> { });
+        TsAudioParser.AccessUnit unit = new TsAudioParser.AccessUnit();
+
+        MicroBenchmark.Result result = MicroBenchmark.run(name, ITERATIONS, iteration -> {
+            long count = 0;
+            for (Pes p : pes) {
+                p.parseHeader();
+                parser.setPesByReference(p, 0);
+                while (parser.getAccessUnit(unit)) {
+                    count++;
+                    parser.moveToNext();
+                }
+            }
+            assertEquals(framesPerSecond, count);
+            return count;
+        });
+        System.out.println(String.format("  %.0f frames/s, %.0f MB/s, %.0fx real time",
+                framesPerSecond * result.getOperationsPerSecond(),
+                stream.length * result.getOperationsPerSecond() / 1e6,
+                result.getOperationsPerSecond()));
+    }
+
+    @Test
+    public void framesPerSecond() {
+        assumeTrue(MicroBenchmark.isEnabled());
+
+        // AAC 256 kbit/s at 48kHz
+        run("ADTS", new AudioFrames.AdtsParser(), AudioFrames.adts(3, 2, 682), 47);
+        AudioFrames.LatmParser latm = new AudioFrames.LatmParser();
+        latm.setPes(AudioFrames.pes(AudioFrames.latm(true, 3, 2, 682), -1), 0);
+        while (latm.moveToNext()) {
+            // config frame
+        }
+        run("LATM", latm, AudioFrames.latm(false, 3, 2, 682), 47);
+        // MPEG-1 layer II 192 kbit/s at 48kHz
+        run("MPEG audio", new AudioFrames.MpegAudioParser(),
+                AudioFrames.mpegAudio(3, 2, 10, 1, 0, 576), 42);
+        // AC-4 25 fps at 48kHz, 128 kbit/s
+        run("AC-4", new AudioFrames.Ac4Parser(), AudioFrames.ac4(false, false, 636), 25);
+    }
+}
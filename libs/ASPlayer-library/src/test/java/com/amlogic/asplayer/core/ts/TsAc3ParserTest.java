@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core.ts;
+
+import static com.amlogic.asplayer.core.ts.TsSyncFrameParserTest.assertUnits;
+import static com.amlogic.asplayer.core.ts.TsSyncFrameParserTest.parse;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class TsAc3ParserTest {
+
+    // 48kHz, 256 bytes, 1536 samples: 32ms
+    private static byte[] syncFrame() {
+        return AudioFrames.ac3(0, 8, 256);
+    }
+
+    @Test
+    public void syncFramesHaveInterpolatedTimestamps() {
+        byte[] f1 = syncFrame();
+        byte[] f2 = syncFrame();
+        byte[] f3 = syncFrame();
+        List<TsSyncFrameParserTest.Unit> units = parse(new AudioFrames.Ac3Parser(),
+                new long[] {1_000_000}, AudioFrames.concat(f1, f2, f3));
+        assertUnits(units, new long[] {1_000_000, 1_032_000, 1_064_000}, f1, f2, f3);
+    }
+
+    @Test
+    public void headerSplitAcrossTimedPes() {
+        byte[] f1 = syncFrame();
+        byte[] f2 = syncFrame();
+        byte[] f3 = syncFrame();
+        byte[] stream = AudioFrames.concat(f1, f2, f3);
+        // second pes starts in the header of f2, its PTS is the one of f3
+        int split = 256 + 3;
+        List<TsSyncFrameParserTest.Unit> units = parse(new AudioFrames.Ac3Parser(),
+                new long[] {1_000_000, 2_000_000},
+                Arrays.copyOf(stream, split), Arrays.copyOfRange(stream, split, stream.length));
+        assertUnits(units, new long[] {1_000_000, 1_032_000, 2_000_000}, f1, f2, f3);
+    }
+
+    @Test
+    public void payloadSplitAcrossTimedPes() {
+        byte[] f1 = syncFrame();
+        byte[] f2 = syncFrame();
+        byte[] f3 = syncFrame();
+        byte[] stream = AudioFrames.concat(f1, f2, f3);
+        int split = 256 + 100;
+        List<TsSyncFrameParserTest.Unit> units = parse(new AudioFrames.Ac3Parser(),
+                new long[] {1_000_000, 2_000_000},
+                Arrays.copyOf(stream, split), Arrays.copyOfRange(stream, split, stream.length));
+        assertUnits(units, new long[] {1_000_000, 1_032_000, 2_000_000}, f1, f2, f3);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core.ts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.amlogic.asplayer.core.TsStreamWriter;
+import com.amlogic.asplayer.core.sipsi.mpeg.Pes;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TsAudioParserTest {
+
+    private static final int UNIT_SIZE = 100;
+    private static final int UNITS_PER_PES = 10;
+
+    // splits payload in units of UNIT_SIZE bytes
+    private static class FixedUnitParser extends TsAudioParser {
+        @Override
+        void parse(byte[] pesPayload, int offset, int length) throws UnsupportedFeature {
+            mParser.setBytes(pesPayload, offset, length);
+            while (mParser.remaining() >= UNIT_SIZE) {
+                addUnitBlock(UNIT_SIZE);
+            }
+        }
+    }
+
+    private FixedUnitParser mParser;
+    private final List<Pes> mReleasedPes = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mParser = new FixedUnitParser();
+        mParser.setOnPesReleasedListener(mReleasedPes::add);
+    }
+
+    private static Pes createPes() {
+        Pes pes = new Pes();
+        pes.setByteBuffer(ByteBuffer.wrap(TsStreamWriter.pes(0xc0, 0,
+                new byte[UNIT_SIZE * UNITS_PER_PES], true)));
+        pes.parseHeader();
+        return pes;
+    }
+
+    private int countBlocks() {
+        int count = 0;
+        if (mParser.hasAudioBuffer()) {
+            count++;
+            while (mParser.moveToNext()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void pesIsRejectedWholeWhenQueueIsNearlyFull() {
+        int accepted = 0;
+        while (mParser.canAcceptPes()) {
+            assertTrue(mParser.setPes(createPes(), 0));
+            accepted++;
+        }
+        Pes rejected = createPes();
+        assertFalse(mParser.setPes(rejected, 0));
+        assertEquals(1, mParser.getRejectedPesCount());
+        // rejected pes is left to caller
+        assertTrue(rejected.isHeaderParsed());
+
+        // no unit of the rejected pes was queued
+        assertEquals(accepted * UNITS_PER_PES, countBlocks());
+        assertTrue(mParser.canAcceptPes());
+        assertTrue(mParser.setPes(rejected, 0));
+        assertEquals(UNITS_PER_PES, countBlocks());
+    }
+
+    @Test
+    public void pesByReferenceRejectedIsLeftToCaller() {
+        int accepted = 0;
+        while (mParser.canAcceptPes()) {
+            assertTrue(mParser.setPesByReference(createPes(), 0));
+            accepted++;
+        }
+        mReleasedPes.clear();
+
+        Pes rejected = createPes();
+        assertFalse(mParser.setPesByReference(rejected, 0));
+        assertEquals(1, mParser.getRejectedPesCount());
+        // neither released nor given back, caller sets it again later
+        assertTrue(mReleasedPes.isEmpty());
+        assertTrue(rejected.isHeaderParsed());
+
+        assertEquals(accepted * UNITS_PER_PES, countBlocks());
+        assertTrue(mParser.canAcceptPes());
+        assertTrue(mParser.setPesByReference(rejected, 0));
+        assertEquals(UNITS_PER_PES, countBlocks());
+    }
+}
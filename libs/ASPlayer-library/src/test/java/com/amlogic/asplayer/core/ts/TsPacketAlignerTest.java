@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core.ts;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+public class TsPacketAlignerTest {
+
+    private static final int PACKET_SIZE = 188;
+
+    /**
+     * Collects output, accepting at most mLimit bytes per call when mLimit >= 0.
+     */
+    private static class Collector implements TsPacketAligner.Output {
+        final ByteArrayOutputStream mData = new ByteArrayOutputStream();
+        int mLimit = -1;
+
+        @Override
+        public long write(byte[] bytes, int offset, int size) {
+            int accepted = mLimit >= 0 ? Math.min(size, mLimit) : size;
+            mData.write(bytes, offset, accepted);
+            return accepted;
+        }
+    }
+
+    // packet number is stored in pid and payload, so that packets can be told apart
+    private static byte[] packet(int number) {
+        byte[] packet = new byte[PACKET_SIZE];
+        packet[0] = 0x47;
+        packet[1] = (byte) ((number >> 8) & 0x1f);
+        packet[2] = (byte) number;
+        packet[3] = (byte) (0x10 | (number & 0x0f));
+        for (int i = 4; i < PACKET_SIZE; i++) {
+            packet[i] = (byte) (number + i);
+            if (packet[i] == 0x47) {
+                packet[i] = 0;
+            }
+        }
+        return packet;
+    }
+
+    private static byte[] packets(int first, int count) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < count; i++) {
+            out.write(packet(first + i), 0, PACKET_SIZE);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] garbage(int size) {
+        byte[] garbage = new byte[size];
+        for (int i = 0; i < size; i++) {
+            garbage[i] = (byte) (0x80 + i % 64);
+        }
+        return garbage;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+
+    // writes input in chunks of random size, retrying while output is busy
+    private static void feed(TsPacketAligner aligner, byte[] input, Random random, int maxChunk) {
+        int pos = 0;
+        while (pos < input.length) {
+            int size = Math.min(input.length - pos, 1 + random.nextInt(maxChunk));
+            long consumed = aligner.write(input, pos, size);
+            assertTrue(consumed >= 0);
+            pos += (int) consumed;
+        }
+    }
+
+    private static void assertAligned(byte[] output) {
+        assertEquals(0, output.length % PACKET_SIZE);
+        for (int i = 0; i < output.length; i += PACKET_SIZE) {
+            assertEquals("packet at " + i, 0x47, output[i]);
+        }
+    }
+
+    @Test
+    public void cleanStreamSplitAnywhereIsUnchanged() {
+        byte[] input = packets(0, 200);
+        for (int seed = 0; seed < 20; seed++) {
+            Collector collector = new Collector();
+            TsPacketAligner aligner = new TsPacketAligner(collector);
+            feed(aligner, input, new Random(seed), 3 * PACKET_SIZE);
+
+            assertArrayEquals(input, collector.mData.toByteArray());
+            assertEquals(0, aligner.getDroppedBytes());
+            assertEquals(0, aligner.getSyncLossCount());
+        }
+    }
+
+    @Test
+    public void garbageBetweenPacketsIsDropped() {
+        byte[] input = concat(
+                garbage(77),
+                packets(0, 10),
+                garbage(5),
+                packets(10, 10),
+                garbage(400),
+                packets(20, 10));
+        for (int seed = 0; seed < 20; seed++) {
+            Collector collector = new Collector();
+            TsPacketAligner aligner = new TsPacketAligner(collector);
+            feed(aligner, input, new Random(seed), 500);
+
+            assertArrayEquals(packets(0, 30), collector.mData.toByteArray());
+            assertEquals(77 + 5 + 400, aligner.getDroppedBytes());
+            assertEquals(2, aligner.getSyncLossCount());
+        }
+    }
+
+    @Test
+    public void truncatedPacketKeepsOutputAligned() {
+        byte[] truncated = new byte[100];
+        System.arraycopy(packet(10), 0, truncated, 0, truncated.length);
+        byte[] input = concat(packets(0, 10), truncated, packets(11, 20));
+        for (int seed = 0; seed < 20; seed++) {
+            Collector collector = new Collector();
+            TsPacketAligner aligner = new TsPacketAligner(collector);
+            feed(aligner, input, new Random(seed), 300);
+
+            byte[] output = collector.mData.toByteArray();
+            assertAligned(output);
+            // sync is found again on a packet boundary, following packets are intact
+            byte[] tail = packets(12, 19);
+            byte[] outputTail = new byte[tail.length];
+            System.arraycopy(output, output.length - tail.length, outputTail, 0, tail.length);
+            assertArrayEquals(tail, outputTail);
+            assertEquals(1, aligner.getSyncLossCount());
+        }
+    }
+
+    @Test
+    public void busyOutputAcceptingPartialPacketsStaysAligned() {
+        byte[] input = concat(garbage(33), packets(0, 50));
+        for (int seed = 0; seed < 20; seed++) {
+            Random random = new Random(seed);
+            Collector collector = new Collector();
+            TsPacketAligner aligner = new TsPacketAligner(collector);
+            int pos = 0;
+            while (pos < input.length) {
+                collector.mLimit = random.nextInt(2 * PACKET_SIZE);
+                int size = Math.min(input.length - pos, 1 + random.nextInt(1000));
+                pos += (int) aligner.write(input, pos, size);
+            }
+            // flush pending data
+            collector.mLimit = -1;
+            aligner.write(input, input.length, 0);
+
+            assertArrayEquals(packets(0, 50), collector.mData.toByteArray());
+        }
+    }
+
+    @Test
+    public void outputErrorIsReported() {
+        TsPacketAligner aligner = new TsPacketAligner((bytes, offset, size) -> -5);
+        byte[] input = packets(0, 5);
+        assertEquals(-5, aligner.write(input, 0, input.length));
+    }
+
+    @Test
+    public void resetDropsCarriedData() {
+        Collector collector = new Collector();
+        TsPacketAligner aligner = new TsPacketAligner(collector);
+        byte[] input = packets(0, 10);
+        // leaves half a packet in carry
+        aligner.write(input, 0, 5 * PACKET_SIZE + PACKET_SIZE / 2);
+        aligner.reset();
+        byte[] next = packets(100, 10);
+        aligner.write(next, 0, next.length);
+
+        assertArrayEquals(concat(packets(0, 5), next), collector.mData.toByteArray());
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core.ts;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.amlogic.asplayer.core.sipsi.mpeg.Pes;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class TsSyncFrameParserTest {
+
+    static class Unit {
+        final byte[] mData;
+        final long mTimestampUs;
+        final byte[] mArray;
+
+        Unit(TsAudioParser.AccessUnit unit) {
+            mData = Arrays.copyOfRange(unit.array, unit.offset, unit.offset + unit.length);
+            mTimestampUs = unit.timestampUs;
+            mArray = unit.array;
+        }
+    }
+
+    private static List<Unit> readUnits(TsAudioParser parser) {
+        List<Unit> units = new ArrayList<>();
+        TsAudioParser.AccessUnit unit = new TsAudioParser.AccessUnit();
+        while (parser.getAccessUnit(unit)) {
+            units.add(new Unit(unit));
+            parser.moveToNext();
+        }
+        return units;
+    }
+
+    static void assertUnits(List<Unit> units, long[] timestampsUs, byte[]... frames) {
+        assertEquals(frames.length, units.size());
+        for (int i = 0; i < frames.length; i++) {
+            assertArrayEquals("frame " + i, frames[i], units.get(i).mData);
+            assertEquals("timestamp " + i, timestampsUs[i], units.get(i).mTimestampUs);
+        }
+    }
+
+    private static List<Unit> parse(TsAudioParser parser, long timestampUs, byte[]... payloads) {
+        for (byte[] payload : payloads) {
+            assertTrue(parser.setPes(AudioFrames.pes(payload, -1), timestampUs));
+            timestampUs = TsAudioParser.NO_TIMESTAMP;
+        }
+        return readUnits(parser);
+    }
+
+    /**
+     * @param pesTimestampsUs PTS of each pes
+     */
+    static List<Unit> parse(TsAudioParser parser, long[] pesTimestampsUs, byte[]... payloads) {
+        for (int i = 0; i < payloads.length; i++) {
+            assertTrue(parser.setPes(AudioFrames.pes(payloads[i], -1), pesTimestampsUs[i]));
+        }
+        return readUnits(parser);
+    }
+
+    @Test
+    public void adtsFramesHaveInterpolatedTimestamps() {
+        byte[] f1 = AudioFrames.adts(3, 2, 300);
+        byte[] f2 = AudioFrames.adts(3, 2, 420);
+        byte[] f3 = AudioFrames.adts(3, 2, 380);
+        List<Unit> units = parse(new AudioFrames.AdtsParser(), 1_000_000,
+                AudioFrames.concat(f1, f2, f3));
+        // 1024 samples at 48kHz
+        assertUnits(units, new long[] {1_000_000, 1_021_333, 1_042_666}, f1, f2, f3);
+    }
+
+    @Test
+    public void adtsFrameSplitAcrossPes() {
+        byte[] f1 = AudioFrames.adts(4, 2, 300);
+        byte[] f2 = AudioFrames.adts(4, 2, 500);
+        byte[] f3 = AudioFrames.adts(4, 2, 200);
+        byte[] stream = AudioFrames.concat(f1, f2, f3);
+        // split in the payload of f2, then in the header of f3
+        int split1 = 300 + 123;
+        int split2 = 800 + 3;
+        List<Unit> units = parse(new AudioFrames.AdtsParser(), 0,
+                Arrays.copyOfRange(stream, 0, split1),
+                Arrays.copyOfRange(stream, split1, split2),
+                Arrays.copyOfRange(stream, split2, stream.length));
+        // 1024 samples at 44.1kHz
+        assertUnits(units, new long[] {0, 23_219, 46_439}, f1, f2, f3);
+    }
+
+    @Test
+    public void adtsHeaderSplitAcrossTimedPes() {
+        byte[] f1 = AudioFrames.adts(3, 2, 300);
+        byte[] f2 = AudioFrames.adts(3, 2, 300);
+        byte[] f3 = AudioFrames.adts(3, 2, 300);
+        byte[] stream = AudioFrames.concat(f1, f2, f3);
+        // second pes starts in the header of f2, its PTS is the one of f3
+        int split = 300 + 3;
+        List<Unit> units = parse(new AudioFrames.AdtsParser(), new long[] {1_000_000, 2_000_000},
+                Arrays.copyOf(stream, split), Arrays.copyOfRange(stream, split, stream.length));
+        assertUnits(units, new long[] {1_000_000, 1_021_333, 2_000_000}, f1, f2, f3);
+    }
+
+    @Test
+    public void adtsPayloadSplitAcrossTimedPes() {
+        byte[] f1 = AudioFrames.adts(3, 2, 300);
+        byte[] f2 = AudioFrames.adts(3, 2, 300);
+        byte[] f3 = AudioFrames.adts(3, 2, 300);
+        byte[] stream = AudioFrames.concat(f1, f2, f3);
+        int split = 300 + 100;
+        List<Unit> units = parse(new AudioFrames.AdtsParser(), new long[] {1_000_000, 2_000_000},
+                Arrays.copyOf(stream, split), Arrays.copyOfRange(stream, split, stream.length));
+        assertUnits(units, new long[] {1_000_000, 1_021_333, 2_000_000}, f1, f2, f3);
+    }
+
+    @Test
+    public void adtsGarbageAndInvalidHeadersAreSkipped() {
+        byte[] f1 = AudioFrames.adts(3, 2, 300);
+        byte[] f2 = AudioFrames.adts(3, 2, 300);
+        byte[] invalid = AudioFrames.adts(3, 2, 300);
+        // sampling_frequency_index 15 is reserved
+        invalid[2] = (byte) ((invalid[2] & 0xc3) | (15 << 2));
+        byte[] garbage = {0x12, 0x34, (byte) 0xff, 0x00, 0x56};
+        List<Unit> units = parse(new AudioFrames.AdtsParser(), 0,
+                AudioFrames.concat(garbage, f1, Arrays.copyOf(invalid, 20), f2));
+        assertUnits(units, new long[] {0, 21_333}, f1, f2);
+    }
+
+    @Test
+    public void adtsFramesInsidePesAreSlices() {
+        byte[] f1 = AudioFrames.adts(3, 2, 300);
+        byte[] f2 = AudioFrames.adts(3, 2, 300);
+        byte[] stream = AudioFrames.concat(f1, f2);
+        AudioFrames.AdtsParser parser = new AudioFrames.AdtsParser();
+        List<Pes> released = new ArrayList<>();
+        parser.setOnPesReleasedListener(released::add);
+
+        Pes first = AudioFrames.pes(Arrays.copyOf(stream, 400), -1);
+        Pes second = AudioFrames.pes(Arrays.copyOfRange(stream, 400, stream.length), -1);
+        parser.setPesByReference(first, 0);
+        parser.setPesByReference(second, TsAudioParser.NO_TIMESTAMP);
+        List<Unit> units = readUnits(parser);
+
+        assertUnits(units, new long[] {0, 21_333}, f1, f2);
+        // f1 is inside the first pes, f2 is split and copied
+        assertSame(first.getBuffer(), units.get(0).mArray);
+        assertNotSame(second.getBuffer(), units.get(1).mArray);
+        // second pes has no slice, given back at once, first once its block is read
+        assertEquals(1, released.size());
+        assertSame(second, released.get(0));
+        assertTrue(parser.canAcceptPes());
+        assertEquals(2, released.size());
+        assertSame(first, released.get(1));
+    }
+
+    @Test
+    public void latmFramesNeedAConfig() {
+        byte[] noConfig = AudioFrames.latm(false, 3, 2, 200);
+        byte[] config = AudioFrames.latm(true, 3, 2, 250);
+        byte[] sameConfig = AudioFrames.latm(false, 3, 2, 180);
+        List<Unit> units = parse(new AudioFrames.LatmParser(), 0,
+                AudioFrames.concat(noConfig, config, sameConfig));
+        assertUnits(units, new long[] {0, 21_333}, config, sameConfig);
+    }
+
+    @Test
+    public void latmFrameSplitAcrossPes() {
+        byte[] f1 = AudioFrames.latm(true, 4, 2, 250);
+        byte[] f2 = AudioFrames.latm(false, 4, 2, 300);
+        byte[] stream = AudioFrames.concat(f1, f2);
+        // split inside the 19 bytes read for the header of f2
+        int split = 250 + 10;
+        List<Unit> units = parse(new AudioFrames.LatmParser(), 0,
+                Arrays.copyOf(stream, split), Arrays.copyOfRange(stream, split, stream.length));
+        assertUnits(units, new long[] {0, 23_219}, f1, f2);
+    }
+
+    @Test
+    public void mpegAudioLayersAndPadding() {
+        // MPEG-1 layer II, 192 kbit/s, 48kHz: 576 bytes, 1152 samples
+        byte[] l2 = AudioFrames.mpegAudio(3, 2, 10, 1, 0, 576);
+        // MPEG-1 layer III, 128 kbit/s, 44.1kHz, padded: 418 bytes, 1152 samples
+        byte[] l3 = AudioFrames.mpegAudio(3, 1, 9, 0, 1, 418);
+        // MPEG-2 layer III, 64 kbit/s, 24kHz: 192 bytes, 576 samples
+        byte[] l3v2 = AudioFrames.mpegAudio(2, 1, 8, 1, 0, 192);
+        List<Unit> units = parse(new AudioFrames.MpegAudioParser(), 0,
+                AudioFrames.concat(l2, l3, l3v2, l3v2));
+        // sample rate changes rebase timing on the last frame
+        assertUnits(units, new long[] {0, 24_000, 50_122, 74_122}, l2, l3, l3v2, l3v2);
+    }
+
+    @Test
+    public void mpegAudioFreeFormatIsSkipped() {
+        byte[] free = AudioFrames.mpegAudio(3, 2, 0, 1, 0, 100);
+        byte[] frame = AudioFrames.mpegAudio(3, 2, 10, 1, 0, 576);
+        List<Unit> units = parse(new AudioFrames.MpegAudioParser(), 0,
+                AudioFrames.concat(free, frame));
+        assertUnits(units, new long[] {0}, frame);
+    }
+
+    @Test
+    public void ac4FrameSizes() {
+        byte[] plain = AudioFrames.ac4(false, false, 300);
+        byte[] crc = AudioFrames.ac4(true, false, 300);
+        byte[] escaped = AudioFrames.ac4(false, true, 400);
+        List<Unit> units = parse(new AudioFrames.Ac4Parser(), 0,
+                AudioFrames.concat(plain, crc, escaped));
+        // 1920 samples at 48kHz
+        assertUnits(units, new long[] {0, 40_000, 80_000}, plain, crc, escaped);
+    }
+
+    @Test
+    public void resetDropsPartialFrame() {
+        byte[] f1 = AudioFrames.adts(3, 2, 300);
+        byte[] f2 = AudioFrames.adts(3, 2, 300);
+        AudioFrames.AdtsParser parser = new AudioFrames.AdtsParser();
+        parser.setPes(AudioFrames.pes(Arrays.copyOf(f1, 150), -1), 0);
+        parser.reset();
+        List<Unit> units = parse(parser, 500_000,
+                AudioFrames.concat(Arrays.copyOfRange(f1, 150, 300), f2));
+        assertUnits(units, new long[] {500_000}, f2);
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core.ts;
+
+import static org.junit.Assert.assertEquals;
+
+import android.media.MediaFormat;
+
+import com.amlogic.asplayer.core.TsStreamWriter;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+
+public class TsVideoIndexQueueTest {
+
+    private static final int PID = 0x100;
+    private static final int STREAM_ID = 0xE0;
+    private static final int PACKET_SIZE = TsStreamWriter.PACKET_SIZE;
+    // 40 ms in 90 kHz
+    private static final long FRAME_DURATION = 3600;
+    private static final long FRAME_DURATION_US = 40000;
+
+    // runs tasks when asked, as the index thread would
+    private static class QueuedExecutor implements Executor {
+        private final ArrayDeque<Runnable> mTasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable task) {
+            mTasks.add(task);
+        }
+
+        int runAll() {
+            int count = 0;
+            while (!mTasks.isEmpty()) {
+                mTasks.poll().run();
+                count++;
+            }
+            return count;
+        }
+    }
+
+    private final KeyFrameIndex mIndex = new KeyFrameIndex();
+    private final QueuedExecutor mExecutor = new QueuedExecutor();
+
+    private TsVideoIndexQueue queue(int capacity) {
+        TsVideoIndexer indexer = new TsVideoIndexer(mIndex, MediaFormat.MIMETYPE_VIDEO_AVC);
+        return new TsVideoIndexQueue(indexer, PID, capacity, mExecutor);
+    }
+
+    /**
+     * Writes a frame of 2 packets, followed by a null packet.
+     *
+     * @return position of the frame
+     */
+    private static int writeFrame(TsStreamWriter writer, int frame, boolean keyFrame) {
+        int position = writer.size();
+        byte[] slice = keyFrame ? TsVideoParserTest.AVC_IDR : TsVideoParserTest.AVC_P_SLICE;
+        byte[] payload = new byte[250];
+        byte[] accessUnit = TsVideoParserTest.accessUnit(slice);
+        System.arraycopy(accessUnit, 0, payload, 0, accessUnit.length);
+        writer.writePes(PID, STREAM_ID, frame * FRAME_DURATION, payload, false);
+        writer.writeNullPacket();
+        return position;
+    }
+
+    /**
+     * @return stream of frames, one key frame every 5 frames, and positions of key frames
+     */
+    private static byte[] stream(int frameCount, int[] keyFramePositions) {
+        TsStreamWriter writer = new TsStreamWriter();
+        for (int frame = 0; frame < frameCount; frame++) {
+            int position = writeFrame(writer, frame, frame % 5 == 0);
+            if (frame % 5 == 0)
+                keyFramePositions[frame / 5] = position;
+        }
+        return writer.toByteArray();
+    }
+
+    @Test
+    public void keyFramesAreIndexedOnExecutor() {
+        int[] keyFramePositions = new int[4];
+        // last frame ends the pes of the last key frame
+        byte[] stream = stream(17, keyFramePositions);
+        TsVideoIndexQueue queue = queue(TsVideoIndexQueue.DEFAULT_CAPACITY);
+
+        // writes of various sizes, aligned on packets
+        int offset = 0;
+        int packets = 1;
+        while (offset < stream.length) {
+            int size = Math.min(packets * PACKET_SIZE, stream.length - offset);
+            queue.offer(stream, offset, size);
+            offset += size;
+            packets = packets % 7 + 1;
+        }
+        assertEquals(0, mIndex.size());
+
+        mExecutor.runAll();
+        assertEquals(4, mIndex.size());
+        for (int i = 0; i < 4; i++) {
+            long timestampUs = i * 5 * FRAME_DURATION_US;
+            assertEquals(timestampUs, mIndex.findTimestampUs(timestampUs + 1000, false));
+            assertEquals(keyFramePositions[i], mIndex.findPosition(timestampUs));
+        }
+        assertEquals(0, queue.getDroppedCount());
+    }
+
+    @Test
+    public void drainIsScheduledOnce() {
+        int[] keyFramePositions = new int[2];
+        byte[] stream = stream(7, keyFramePositions);
+        TsVideoIndexQueue queue = queue(TsVideoIndexQueue.DEFAULT_CAPACITY);
+        for (int offset = 0; offset < stream.length; offset += PACKET_SIZE) {
+            queue.offer(stream, offset, PACKET_SIZE);
+        }
+        assertEquals(1, mExecutor.runAll());
+        assertEquals(2, mIndex.size());
+
+        queue.offer(stream, 0, PACKET_SIZE);
+        assertEquals(1, mExecutor.runAll());
+        // nothing queued, nothing to schedule
+        queue.offer(stream, 2 * PACKET_SIZE, PACKET_SIZE);
+        assertEquals(0, mExecutor.runAll());
+    }
+
+    @Test
+    public void fullQueueDropsPesWithDroppedPackets() {
+        int[] keyFramePositions = new int[3];
+        byte[] stream = stream(11, keyFramePositions);
+        // a key frame and the following frame fit, 2 packets per frame
+        TsVideoIndexQueue queue = queue(4);
+
+        int frameSize = 3 * PACKET_SIZE;
+        queue.offer(stream, 0, 5 * frameSize + PACKET_SIZE);
+        assertEquals(7, queue.getDroppedCount());
+        mExecutor.runAll();
+        // pes of frame 0 is only ended by frame 1, not by a later one
+        assertEquals(1, mIndex.size());
+
+        // first packet of frame 5 was dropped, its pes is not indexed, nor is the one of
+        // frame 10 which doesn't fit
+        int offset = 5 * frameSize + PACKET_SIZE;
+        queue.offer(stream, offset, stream.length - offset);
+        assertEquals(14, queue.getDroppedCount());
+        mExecutor.runAll();
+        assertEquals(1, mIndex.size());
+        assertEquals(0, mIndex.findPosition(5 * FRAME_DURATION_US));
+    }
+
+    @Test
+    public void flushDropsQueuedPackets() {
+        int[] keyFramePositions = new int[3];
+        byte[] stream = stream(12, keyFramePositions);
+        TsVideoIndexQueue queue = queue(TsVideoIndexQueue.DEFAULT_CAPACITY);
+
+        int frameSize = 3 * PACKET_SIZE;
+        queue.offer(stream, 0, 6 * frameSize);
+        queue.flush();
+        mExecutor.runAll();
+        assertEquals(0, mIndex.size());
+
+        // key frame 5 was dropped with the queued packets
+        queue.offer(stream, 6 * frameSize, stream.length - 6 * frameSize);
+        mExecutor.runAll();
+        assertEquals(1, mIndex.size());
+        assertEquals(keyFramePositions[2], mIndex.findPosition(10 * FRAME_DURATION_US));
+    }
+
+    @Test
+    public void nothingIsIndexedOnceClosed() {
+        int[] keyFramePositions = new int[2];
+        byte[] stream = stream(6, keyFramePositions);
+        TsVideoIndexQueue queue = queue(TsVideoIndexQueue.DEFAULT_CAPACITY);
+        queue.offer(stream, 0, stream.length);
+        queue.close();
+        mExecutor.runAll();
+        assertEquals(0, mIndex.size());
+
+        queue.offer(stream, 0, stream.length);
+        assertEquals(0, mExecutor.runAll());
+    }
+}
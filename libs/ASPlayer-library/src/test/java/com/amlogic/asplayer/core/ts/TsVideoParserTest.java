@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core.ts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.media.MediaFormat;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+public class TsVideoParserTest {
+
+    // H.264 nal units, header byte with nal_ref_idc 3
+    static final byte[] AVC_IDR = {0x65, (byte) 0x88, (byte) 0x84, 0x00};
+    // slice_type 0 (P), first_mb_in_slice 0
+    static final byte[] AVC_P_SLICE = {0x41, (byte) 0xC0, 0x10};
+    // slice_type 7 (I), first_mb_in_slice 0
+    static final byte[] AVC_I_SLICE = {0x41, (byte) 0x88, 0x10};
+
+    /**
+     * Writes fields of a header msb first, as read by BufferParser.
+     */
+    static class Bits {
+        private final ByteArrayOutputStream mBytes = new ByteArrayOutputStream();
+        private int mByte;
+        private int mBitCount;
+
+        Bits bits(int count, long value) {
+            for (int i = count - 1; i >= 0; i--) {
+                mByte = (mByte << 1) | (int) ((value >> i) & 1);
+                if (++mBitCount == 8) {
+                    mBytes.write(mByte);
+                    mByte = 0;
+                    mBitCount = 0;
+                }
+            }
+            return this;
+        }
+
+        Bits bool(boolean value) {
+            return bits(1, value ? 1 : 0);
+        }
+
+        Bits ue(int value) {
+            int code = value + 1;
+            int length = 32 - Integer.numberOfLeadingZeros(code);
+            bits(length - 1, 0);
+            return bits(length, code);
+        }
+
+        /**
+         * @return bytes with rbsp trailing bits, emulation prevention bytes inserted
+         */
+        byte[] toEscapedBytes() {
+            bits(1, 1);
+            while (mBitCount != 0)
+                bits(1, 0);
+            ByteArrayOutputStream escaped = new ByteArrayOutputStream();
+            int zeros = 0;
+            for (byte b : mBytes.toByteArray()) {
+                if (zeros >= 2 && (b & 0xff) <= 3) {
+                    escaped.write(3);
+                    zeros = 0;
+                }
+                zeros = (b == 0) ? zeros + 1 : 0;
+                escaped.write(b);
+            }
+            return escaped.toByteArray();
+        }
+    }
+
+    /**
+     * @return units, each one preceded by a 4 bytes start code
+     */
+    static byte[] accessUnit(byte[]... units) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        for (byte[] unit : units) {
+            output.write(0);
+            output.write(0);
+            output.write(0);
+            output.write(1);
+            output.write(unit, 0, unit.length);
+        }
+        return output.toByteArray();
+    }
+
+    static byte[] unit(int header, byte[] payload) {
+        byte[] unit = new byte[1 + payload.length];
+        unit[0] = (byte) header;
+        System.arraycopy(payload, 0, unit, 1, payload.length);
+        return unit;
+    }
+
+    /**
+     * High profile SPS, frame cropping to 1080 lines and aspect_ratio_idc.
+     */
+    static byte[] avcHighSps(int widthInMbs, int heightInMbs, int cropBottom, int aspectRatio) {
+        Bits bits = new Bits()
+                .bits(8, 100).bits(8, 0).bits(8, 40).ue(0)
+                // chroma_format_idc, bit depths, qpprime, no scaling matrix
+                .ue(1).ue(0).ue(0).bool(false).bool(false)
+                // log2_max_frame_num_minus4, pic_order_cnt_type 0
+                .ue(0).ue(0).ue(2)
+                .ue(4).bool(false)
+                .ue(widthInMbs - 1).ue(heightInMbs - 1)
+                // frame_mbs_only_flag, direct_8x8_inference_flag
+                .bool(true).bool(true);
+        bits.bool(cropBottom > 0);
+        if (cropBottom > 0)
+            bits.ue(0).ue(0).ue(0).ue(cropBottom);
+        bits.bool(true).bool(true).bits(8, aspectRatio);
+        return unit(0x67, bits.toEscapedBytes());
+    }
+
+    private static boolean parse(TsVideoParser parser, byte[] accessUnit) {
+        return parser.parse(accessUnit, 0, accessUnit.length);
+    }
+
+    @Test
+    public void startCodeIsFoundAtAnyAlignment() {
+        for (int prefix = 0; prefix < 7; prefix++) {
+            byte[] bytes = new byte[prefix + 8];
+            for (int i = 0; i < prefix; i++)
+                bytes[i] = (byte) 0xAA;
+            bytes[prefix + 2] = 1;
+            bytes[prefix + 3] = 0x65;
+            assertEquals(prefix + 3, TsVideoParser.findStartCode(bytes, 0, bytes.length));
+        }
+    }
+
+    @Test
+    public void startCodeFollowsLongZeroRuns() {
+        byte[] bytes = {0x12, 0, 0, 0, 0, 0, 0, 0, 1, 0x09};
+        assertEquals(9, TsVideoParser.findStartCode(bytes, 0, bytes.length));
+        // search starts at pos
+        assertEquals(-1, TsVideoParser.findStartCode(bytes, 7, bytes.length));
+    }
+
+    @Test
+    public void noStartCode() {
+        byte[] bytes = {0, 0, 2, 0, 1, 0, 0, 0, 3, 1, 0, 0};
+        assertEquals(-1, TsVideoParser.findStartCode(bytes, 0, bytes.length));
+        // start code must end before end
+        byte[] cut = {0x10, 0, 0, 1};
+        assertEquals(-1, TsVideoParser.findStartCode(cut, 0, 3));
+        assertEquals(4, TsVideoParser.findStartCode(cut, 0, 4));
+    }
+
+    @Test
+    public void supportedMimeTypes() {
+        assertTrue(TsVideoParser.isSupported(MediaFormat.MIMETYPE_VIDEO_AVC));
+        assertTrue(TsVideoParser.isSupported(MediaFormat.MIMETYPE_VIDEO_HEVC));
+        assertTrue(TsVideoParser.isSupported(MediaFormat.MIMETYPE_VIDEO_MPEG2));
+        assertTrue(TsVideoParser.isSupported(MediaFormat.MIMETYPE_VIDEO_AV1));
+        assertFalse(TsVideoParser.isSupported(MediaFormat.MIMETYPE_VIDEO_DOLBY_VISION));
+        assertFalse(TsVideoParser.isSupported(null));
+    }
+
+    @Test
+    public void avcKeyFrames() {
+        TsVideoParser parser = new TsVideoParser(MediaFormat.MIMETYPE_VIDEO_AVC);
+        // access unit delimiter, then IDR
+        assertTrue(parse(parser, accessUnit(new byte[]{0x09, (byte) 0xF0}, AVC_IDR)));
+        assertTrue(parser.isKeyFrame());
+        assertFalse(parse(parser, accessUnit(AVC_P_SLICE)));
+        assertFalse(parser.isKeyFrame());
+        // I slice without IDR, recovery point streams
+        assertTrue(parse(parser, accessUnit(AVC_I_SLICE)));
+        // I slice which is not the first of its picture
+        assertFalse(parse(parser, accessUnit(new byte[]{0x41, 0x48, 0x10})));
+        assertEquals(2, parser.getKeyFrameCount());
+    }
+
+    @Test
+    public void avcSpsWithCropping() {
+        TsVideoParser parser = new TsVideoParser(MediaFormat.MIMETYPE_VIDEO_AVC);
+        assertTrue(parse(parser, accessUnit(avcHighSps(120, 68, 4, 1), AVC_IDR)));
+        assertEquals(1920, parser.getWidth());
+        assertEquals(1080, parser.getHeight());
+        assertEquals(1, parser.getPixelAspectRatio());
+
+        parser.reset();
+        assertEquals(0, parser.getWidth());
+        assertEquals(0, parser.getHeight());
+    }
+
+    @Test
+    public void avcBaselineSpsWithFields() {
+        TsVideoParser parser = new TsVideoParser(MediaFormat.MIMETYPE_VIDEO_AVC);
+        parse(parser, accessUnit(avcHighSps(1, 1, 0, 255)));
+        assertEquals(16, parser.getWidth());
+        assertEquals(16, parser.getHeight());
+        // extended SAR is not an aspect ratio code
+        assertEquals(0, parser.getPixelAspectRatio());
+
+        // no chroma fields, pic_order_cnt_type 2, field pictures, no VUI
+        Bits bits = new Bits().bits(8, 66).bits(8, 0xC0).bits(8, 30).ue(0)
+                .ue(0).ue(2).ue(1).bool(false)
+                .ue(44).ue(17).bool(false).bool(true).bool(true).bool(false).bool(false);
+        parse(parser, accessUnit(unit(0x67, bits.toEscapedBytes())));
+        assertEquals(720, parser.getWidth());
+        // height is twice the map units
+        assertEquals(576, parser.getHeight());
+        assertEquals(0, parser.getPixelAspectRatio());
+    }
+
+    @Test
+    public void hevcSpsAndIrap() {
+        Bits bits = new Bits()
+                // vps id, max_sub_layers_minus1, temporal_id_nesting_flag
+                .bits(4, 0).bits(3, 0).bool(true)
+                .bits(32, 0x01600000).bits(32, 0x00900000).bits(32, 0x0000005D)
+                // sps id, chroma_format_idc, size
+                .ue(0).ue(1).ue(3840).ue(2176)
+                .bool(true).ue(0).ue(0).ue(0).ue(8);
+        byte[] sps = bits.toEscapedBytes();
+        // constraint flags are zeros, escape bytes are dropped before fields are read
+        assertEquals(3, sps[5]);
+        assertEquals(3, sps[10]);
+        byte[] spsUnit = new byte[2 + sps.length];
+        spsUnit[0] = 33 << 1;
+        spsUnit[1] = 1;
+        System.arraycopy(sps, 0, spsUnit, 2, sps.length);
+
+        TsVideoParser parser = new TsVideoParser(MediaFormat.MIMETYPE_VIDEO_HEVC);
+        // IDR_W_RADL
+        assertTrue(parse(parser, accessUnit(spsUnit, new byte[]{19 << 1, 1, (byte) 0xAF})));
+        assertEquals(3840, parser.getWidth());
+        assertEquals(2160, parser.getHeight());
+        // TRAIL_R
+        assertFalse(parse(parser, accessUnit(new byte[]{1 << 1, 1, (byte) 0xD0})));
+        // CRA
+        assertTrue(parse(parser, accessUnit(new byte[]{21 << 1, 1, (byte) 0xAF})));
+    }
+
+    @Test
+    public void mpeg2SequenceHeaderAndPictureType() {
+        byte[] sequenceHeader = unit(0xB3, new Bits()
+                .bits(12, 720).bits(12, 576).bits(4, 2).bits(4, 3).toEscapedBytes());
+        byte[] iPicture = unit(0x00, new Bits().bits(10, 0).bits(3, 1).bits(16, 0xffff)
+                .toEscapedBytes());
+        byte[] pPicture = unit(0x00, new Bits().bits(10, 1).bits(3, 2).bits(16, 0xffff)
+                .toEscapedBytes());
+
+        TsVideoParser parser = new TsVideoParser(MediaFormat.MIMETYPE_VIDEO_MPEG2);
+        byte[] bytes = accessUnit(sequenceHeader, iPicture);
+        // mpeg-2 start codes are 3 bytes
+        assertTrue(parser.parse(bytes, 1, bytes.length));
+        assertEquals(720, parser.getWidth());
+        assertEquals(576, parser.getHeight());
+        assertEquals(2, parser.getPixelAspectRatio());
+        assertFalse(parse(parser, accessUnit(pPicture)));
+    }
+}
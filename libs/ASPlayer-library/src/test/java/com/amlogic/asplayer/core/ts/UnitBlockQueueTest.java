@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core.ts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class UnitBlockQueueTest {
+
+    private static final int BLOCK_SIZE = 64;
+    private static final int MAX_SEGMENTS = 4;
+
+    private static void writeBlock(UnitBlockQueue queue, long sequence) {
+        UnitBlockQueue.UnitBlock block = queue.getWriteBlock();
+        int length = 8 + (int) (sequence % (BLOCK_SIZE - 8));
+        for (int i = 0; i < length; i++) {
+            block.data[i] = (byte) (sequence + i);
+        }
+        block.length = length;
+        block.timestampUs = sequence;
+        queue.commit();
+    }
+
+    /**
+     * @return sequence of the block, after checking its content
+     */
+    private static long readBlock(UnitBlockQueue queue) {
+        UnitBlockQueue.UnitBlock block = queue.getReadBlock();
+        long sequence = block.timestampUs;
+        assertEquals(8 + (int) (sequence % (BLOCK_SIZE - 8)), block.length);
+        for (int i = 0; i < block.length; i++) {
+            assertEquals((byte) (sequence + i), block.array[block.offset + i]);
+        }
+        queue.moveToNext();
+        return sequence;
+    }
+
+    @Test
+    public void fillsUpToMaxSegments() {
+        UnitBlockQueue queue = new UnitBlockQueue(BLOCK_SIZE, MAX_SEGMENTS);
+        int capacity = MAX_SEGMENTS * UnitBlockQueue.SEGMENT_SIZE;
+        for (int i = 0; i < capacity; i++) {
+            assertNotNull(queue.getWriteBlock());
+            assertEquals(i > (MAX_SEGMENTS - 2) * UnitBlockQueue.SEGMENT_SIZE, queue.isNearlyFull());
+            writeBlock(queue, i);
+        }
+        assertNull(queue.getWriteBlock());
+
+        // first segment is released but consumer is still in it
+        for (int i = 0; i < UnitBlockQueue.SEGMENT_SIZE; i++) {
+            assertTrue(queue.hasBlock());
+            assertEquals(i, readBlock(queue));
+        }
+        assertNull(queue.getWriteBlock());
+        assertTrue(queue.isNearlyFull());
+
+        // consumer left it, it is reused
+        assertEquals(UnitBlockQueue.SEGMENT_SIZE, readBlock(queue));
+        assertNotNull(queue.getWriteBlock());
+    }
+
+    @Test
+    public void notNearlyFullMeansASegmentCanBePublished() {
+        UnitBlockQueue queue = new UnitBlockQueue(BLOCK_SIZE, MAX_SEGMENTS);
+        long written = 0;
+        long read = 0;
+        // any interleaving of reads and writes, consumer possibly holding a released segment
+        Random random = new Random(0);
+        for (int step = 0; step < 100_000; step++) {
+            if (random.nextInt(3) > 0 && !queue.isNearlyFull()) {
+                for (int i = 0; i < UnitBlockQueue.SEGMENT_SIZE; i++) {
+                    assertNotNull(queue.getWriteBlock());
+                    writeBlock(queue, written++);
+                }
+            } else {
+                int count = random.nextInt(UnitBlockQueue.SEGMENT_SIZE * 2);
+                for (int i = 0; i < count && queue.hasBlock(); i++) {
+                    assertEquals(read++, readBlock(queue));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void discardAllSkipsPublishedBlocks() {
+        UnitBlockQueue queue = new UnitBlockQueue(BLOCK_SIZE, MAX_SEGMENTS);
+        for (int i = 0; i < 40; i++) {
+            writeBlock(queue, i);
+        }
+        queue.discardAll();
+        assertFalse(queue.hasBlock());
+        writeBlock(queue, 40);
+        assertTrue(queue.hasBlock());
+        assertEquals(40, readBlock(queue));
+        assertFalse(queue.hasBlock());
+    }
+
+    private static Thread startConsumer(UnitBlockQueue queue, long lastSequence, boolean exact,
+                                        AtomicReference<Throwable> error) {
+        Thread consumer = new Thread(() -> {
+            try {
+                long expected = 0;
+                long sequence = -1;
+                while (sequence < lastSequence) {
+                    if (!queue.hasBlock()) {
+                        Thread.yield();
+                        continue;
+                    }
+                    sequence = readBlock(queue);
+                    if (exact) {
+                        assertEquals(expected, sequence);
+                    } else {
+                        assertTrue(sequence >= expected);
+                    }
+                    expected = sequence + 1;
+                }
+            } catch (Throwable e) {
+                error.set(e);
+            }
+        });
+        consumer.start();
+        return consumer;
+    }
+
+    @Test(timeout = 60000)
+    public void producerAndConsumerThreads() throws Exception {
+        UnitBlockQueue queue = new UnitBlockQueue(BLOCK_SIZE, MAX_SEGMENTS);
+        long count = 2_000_000;
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread consumer = startConsumer(queue, count - 1, true, error);
+
+        for (long sequence = 0; sequence < count && error.get() == null; ) {
+            if (queue.getWriteBlock() == null) {
+                Thread.yield();
+                continue;
+            }
+            writeBlock(queue, sequence++);
+        }
+        consumer.join();
+        if (error.get() != null) {
+            throw new AssertionError(error.get());
+        }
+        assertEquals(count, queue.getWriteCount());
+        assertEquals(count, queue.getReadCount());
+    }
+
+    @Test(timeout = 60000)
+    public void producerDiscardingWhileConsumerReads() throws Exception {
+        UnitBlockQueue queue = new UnitBlockQueue(BLOCK_SIZE, MAX_SEGMENTS);
+        long count = 2_000_000;
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread consumer = startConsumer(queue, count - 1, false, error);
+
+        for (long sequence = 0; sequence < count && error.get() == null; ) {
+            if (queue.getWriteBlock() == null) {
+                Thread.yield();
+                continue;
+            }
+            writeBlock(queue, sequence++);
+            // last block is never discarded, consumer stops on it
+            if (sequence % 1000 == 0 && sequence < count) {
+                queue.discardAll();
+            }
+        }
+        consumer.join();
+        if (error.get() != null) {
+            throw new AssertionError(error.get());
+        }
+        assertEquals(count, queue.getWriteCount());
+        assertEquals(count, queue.getReadCount());
+    }
+}
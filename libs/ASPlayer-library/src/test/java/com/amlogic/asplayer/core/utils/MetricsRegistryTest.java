@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2019 Amlogic, Inc. All rights reserved.
+ *
+ * This source code is subject to the terms and conditions defined in the
+ * file 'LICENSE' which is part of this source code package.
+ *
+ * Description:
+ */
+package com.amlogic.asplayer.core.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class MetricsRegistryTest {
+
+    private static MetricsRegistry.Histogram histogram() {
+        return new MetricsRegistry().histogram("latency", MetricsRegistry.LATENCY_BOUNDS_US);
+    }
+
+    @Test
+    public void emptyHistogramHasNoPercentile() {
+        MetricsRegistry.Histogram histogram = histogram();
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(0, histogram.getPercentile(99));
+        assertEquals(0, histogram.getCount());
+    }
+
+    @Test
+    public void percentileIsCappedByMax() {
+        MetricsRegistry.Histogram histogram = histogram();
+        histogram.record(70);
+        // bucket (50, 100], but nothing above 70 was recorded
+        assertEquals(70, histogram.getPercentile(0));
+        assertEquals(70, histogram.getPercentile(50));
+        assertEquals(70, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void percentileIsUpperBoundOfItsBucket() {
+        MetricsRegistry.Histogram histogram = histogram();
+        for (int i = 0; i < 90; i++) {
+            histogram.record(30);
+        }
+        for (int i = 0; i < 9; i++) {
+            histogram.record(400);
+        }
+        histogram.record(3000);
+        assertEquals(100, histogram.getCount());
+
+        assertEquals(50, histogram.getPercentile(50));
+        assertEquals(50, histogram.getPercentile(90));
+        assertEquals(500, histogram.getPercentile(91));
+        assertEquals(500, histogram.getPercentile(99));
+        // bucket (2500, 5000] capped by max
+        assertEquals(3000, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void rankIsRoundedUp() {
+        MetricsRegistry.Histogram histogram = histogram();
+        histogram.record(40);
+        histogram.record(90);
+        histogram.record(200);
+        // rank of p50 of 3 values is 2
+        assertEquals(100, histogram.getPercentile(50));
+        assertEquals(50, histogram.getPercentile(33));
+        assertEquals(100, histogram.getPercentile(34));
+        assertEquals(200, histogram.getPercentile(67));
+    }
+
+    @Test
+    public void lastBucketReturnsMax() {
+        MetricsRegistry.Histogram histogram = histogram();
+        histogram.record(10);
+        histogram.record(150000);
+        histogram.record(400000);
+        assertEquals(50, histogram.getPercentile(33));
+        assertEquals(400000, histogram.getPercentile(50));
+        assertEquals(400000, histogram.getPercentile(99));
+        assertEquals(400000, histogram.getMax());
+        assertEquals(550010, histogram.getSum());
+    }
+}
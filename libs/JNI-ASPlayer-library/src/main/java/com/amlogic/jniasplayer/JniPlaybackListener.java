@@ -8,10 +8,11 @@
  */
 package com.amlogic.jniasplayer;
 
+import com.amlogic.asplayer.api.PtsBatchListener;
 import com.amlogic.asplayer.api.TsPlaybackListener;
 import com.amlogic.asplayer.core.ASPlayerLog;
 
-public class JniPlaybackListener implements TsPlaybackListener {
+public class JniPlaybackListener implements TsPlaybackListener, PtsBatchListener {
 
     private long mNativeContext;
 
@@ -24,5 +25,16 @@ public class JniPlaybackListener implements TsPlaybackListener {
         native_notifyPlaybackEvent(event);
     }
 
+    /**
+     * Pts of a whole batch are forwarded in one native call, instead of one PtsEvent per frame
+     */
+    @Override
+    public void onPtsBatch(int[] streamTypes, long[] pts, long[] renderTimes, int count) {
+        native_notifyPtsBatch(streamTypes, pts, renderTimes, count);
+    }
+
     private native void native_notifyPlaybackEvent(PlaybackEvent event);
+
+    private native void native_notifyPtsBatch(int[] streamTypes, long[] pts, long[] renderTimes,
+                                              int count);
 }
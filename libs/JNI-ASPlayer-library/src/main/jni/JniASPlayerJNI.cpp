@@ -58,7 +58,7 @@ struct asplayer_t {
     jmethodID switchAudioTrackMID;
     jmethodID flushMID;
     jmethodID flushDvrMID;
-//    jmethodID writeByteBufferMID;
+    jmethodID writeByteBufferMID;
     jmethodID writeDataMID;
     jmethodID setSurfaceMID;
     jmethodID setAudioMuteMID;
@@ -145,14 +145,6 @@ struct audio_param_t {
     jfieldID extraInfoJson;
 };
 
-// InputBuffer
-struct input_buffer_t {
-    jmethodID constructorMID;
-    jfieldID buffer;
-    jfieldID offset;
-    jfieldID bufferSize;
-};
-
 struct exceptions_t {
     jclass nullPointerExceptionCls;
     jclass illegalArgumentExceptionCls;
@@ -169,8 +161,6 @@ static jclass gAudioLanguageCls;
 static audio_language_t gAudioLanguageCtx;
 static jclass gAudioParamsCls;
 static audio_param_t gAudioParamsCtx;
-static jclass gInputBufferCls;
-static input_buffer_t gInputBufferCtx;
 
 static exceptions_t gExceptionsCtx;
 
@@ -532,52 +522,6 @@ bool JniASPlayerJNI::createAudioParams(JNIEnv *env, jni_asplayer_audio_params *p
     return true;
 }
 
-bool JniASPlayerJNI::createInputBuffer(JNIEnv *env, jni_asplayer_input_buffer *inputBuffer, jobject *outJInputBuffer) {
-    if (env == nullptr) {
-        AP_LOGE("create InputBuffer failed, env is null");
-        return false;
-    } else if (inputBuffer == nullptr) {
-        AP_LOGE("create InputBuffer failed, invalid in input_buffer");
-        return false;
-    } else if (outJInputBuffer == nullptr) {
-        AP_LOGE("create InputBuffer failed, invalid out param");
-        return false;
-    }
-
-    CHECK_JNI_EXCEPTION(env);
-
-    jobject buffer = env->NewObject(gInputBufferCls, gInputBufferCtx.constructorMID);
-    if (env->IsSameObject(buffer, nullptr)) {
-        AP_LOGE("create InputBuffer failed");
-        CHECK_JNI_EXCEPTION(env);
-        return false;
-    }
-
-    int32_t offset = inputBuffer->offset;
-    int32_t bufferSize = inputBuffer->buf_size;
-    env->SetIntField(buffer, gInputBufferCtx.offset, (jlong) offset);
-    env->SetIntField(buffer, gInputBufferCtx.bufferSize, (jlong) bufferSize);
-
-    jbyte *byteBuffer = static_cast<jbyte *>(inputBuffer->buf_data);
-    if (byteBuffer != nullptr && bufferSize > 0) {
-        jbyteArray buf = env->NewByteArray(bufferSize);
-        jbyte *tempBuffer = new jbyte[bufferSize];
-        memcpy(tempBuffer, ((jbyte*)inputBuffer->buf_data) + offset, bufferSize);
-        env->SetByteArrayRegion(buf, 0, bufferSize, tempBuffer);
-        delete [] tempBuffer;
-        // offset start from 0 in tempBuffer
-        env->SetIntField(buffer, gInputBufferCtx.offset, 0);
-        env->SetObjectField(buffer, gInputBufferCtx.buffer, buf);
-    } else {
-        env->SetObjectField(buffer, gInputBufferCtx.buffer, nullptr);
-        AP_LOGE("set InputBuffer buffer failed, buffer is null");
-    }
-
-    *outJInputBuffer = buffer;
-
-    return true;
-}
-
 bool JniASPlayerJNI::initASPlayerJNI(JNIEnv *jniEnv) {
     JNIEnv *env = jniEnv;
     if (env == nullptr) {
@@ -595,7 +539,6 @@ bool JniASPlayerJNI::initASPlayerJNI(JNIEnv *jniEnv) {
     jclass videoParamCls = nullptr;
     jclass audioLangCls = nullptr;
     jclass audioParamCls = nullptr;
-    jclass inputBufferCls = nullptr;
     jclass nullPointerExceptionCls = nullptr;
     jclass illegalArgumentExceptionCls = nullptr;
     jclass illegalStateExceptionCls = nullptr;
@@ -659,8 +602,9 @@ bool JniASPlayerJNI::initASPlayerJNI(JNIEnv *jniEnv) {
                 env, gASPlayerCls, "flush", "()I");
         gASPlayerCtx.flushDvrMID = NativeHelper::GetMethodID(
                 env, gASPlayerCls, "flushDvr", "()I");
-//    gASPlayerCtx.writeByteBufferMID = NativeHelper::GetMethodID(
-//              env, gASPlayerCls, "writeData", "(I[BJJJ)I");
+        gASPlayerCtx.writeByteBufferMID = NativeHelper::GetMethodID(
+                env, gASPlayerCls,
+                "writeData", "(Ljava/nio/ByteBuffer;J)I");
         gASPlayerCtx.writeDataMID = NativeHelper::GetMethodID(
                 env, gASPlayerCls,
                 "writeData", "(Lcom/amlogic/asplayer/api/InputBuffer;J)I");
@@ -882,30 +826,6 @@ bool JniASPlayerJNI::initASPlayerJNI(JNIEnv *jniEnv) {
         // Bundle
         JniBundle::initJni(env);
 
-        // InputBuffer
-        inputBufferCls = NativeHelper::FindClass(env, "com/amlogic/asplayer/api/InputBuffer");
-        if (inputBufferCls == nullptr) {
-            error = true;
-            break;
-        }
-
-        gInputBufferCls = NativeHelper::MakeGlobalRef(env, inputBufferCls, "class<InputBuffer>");
-        if (gInputBufferCls == nullptr) {
-            error = true;
-            break;
-        }
-
-        DELETE_LOCAL_REF(env, inputBufferCls);
-
-        gInputBufferCtx.constructorMID = NativeHelper::GetMethodID(
-                env, gInputBufferCls, "<init>", "()V");
-        gInputBufferCtx.buffer = NativeHelper::GetFieldID(
-                env, gInputBufferCls, "mBuffer", "[B");
-        gInputBufferCtx.offset = NativeHelper::GetFieldID(
-                env, gInputBufferCls, "mOffset", "I");
-        gInputBufferCtx.bufferSize = NativeHelper::GetFieldID(
-                env, gInputBufferCls, "mBufferSize", "I");
-
         initASPlayerNotify(env);
 
         nullPointerExceptionCls = NativeHelper::FindClass(
@@ -932,7 +852,6 @@ bool JniASPlayerJNI::initASPlayerJNI(JNIEnv *jniEnv) {
     DELETE_LOCAL_REF(env, videoParamCls);
     DELETE_LOCAL_REF(env, audioLangCls);
     DELETE_LOCAL_REF(env, audioParamCls);
-    DELETE_LOCAL_REF(env, inputBufferCls);
     DELETE_LOCAL_REF(env, nullPointerExceptionCls);
     DELETE_LOCAL_REF(env, illegalArgumentExceptionCls);
     DELETE_LOCAL_REF(env, illegalStateExceptionCls);
@@ -1459,14 +1378,25 @@ jni_asplayer_result JniASPlayer::writeData(jni_asplayer_input_buffer *buffer, ui
         return JNI_ASPLAYER_ERROR_INVALID_OBJECT;
     }
 
-    jobject inputBuffer = nullptr;
-    if (!JniASPlayerJNI::createInputBuffer(env, buffer, &inputBuffer)) {
-        AP_LOGE("failed to convert InputBuffer");
+    if (buffer->buf_data == nullptr || buffer->offset < 0 || buffer->buf_size <= 0) {
+        AP_LOGE("writeData failed, invalid param, data: %p, offset: %d, size: %d",
+                buffer->buf_data, buffer->offset, buffer->buf_size);
+        return JNI_ASPLAYER_ERROR_INVALID_PARAMS;
+    }
+
+    // wrap caller memory in a direct ByteBuffer, data is not copied on the way to TsPlayback.
+    // caller buffer stays valid until writeData returns.
+    jbyte *data = static_cast<jbyte*>(buffer->buf_data) + buffer->offset;
+
+    jobject byteBuffer = env->NewDirectByteBuffer(data, buffer->buf_size);
+    if (byteBuffer == nullptr) {
+        AP_LOGE("failed to create direct ByteBuffer");
+        CHECK_JNI_EXCEPTION(env);
         return JNI_ASPLAYER_ERROR_INVALID_OPERATION;
     }
 
-    int result = env->CallIntMethod(mJavaPlayer, gASPlayerCtx.writeDataMID, inputBuffer, timeout_ms);
-    DELETE_LOCAL_REF(env, inputBuffer);
+    int result = env->CallIntMethod(mJavaPlayer, gASPlayerCtx.writeByteBufferMID, byteBuffer, timeout_ms);
+    DELETE_LOCAL_REF(env, byteBuffer);
 
     if (result <= 0 && result != JNI_ASPLAYER_ERROR_RETRY && result != JNI_ASPLAYER_ERROR_BUSY) {
         AP_LOGE("writeData error: %d", result);
@@ -45,7 +45,6 @@ public:
     static bool createAudioPresentation(JNIEnv *env, jni_asplayer_audio_presentation *presentation, jobject *outAudioPresentation);
     static bool createAudioLanguage(JNIEnv *env, jni_asplayer_audio_lang *lang, jobject *outJAudioLang);
     static bool createAudioParams(JNIEnv *env, jni_asplayer_audio_params *params, jobject *outJAudioParams);
-    static bool createInputBuffer(JNIEnv *env, jni_asplayer_input_buffer *inputBuffer, jobject *outJInputBuffer);
 
     static bool initASPlayerJNI(JNIEnv *env);
 
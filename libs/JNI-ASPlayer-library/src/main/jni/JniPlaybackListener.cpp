@@ -121,8 +121,22 @@ static jint native_notifyPlaybackEvent(JNIEnv *env, jobject jListener, jobject j
     return 0;
 }
 
+static jint native_notifyPtsBatch(JNIEnv *env, jobject jListener, jintArray jStreamTypes,
+                                  jlongArray jPts, jlongArray jRenderTimes, jint count) {
+    JniPlaybackListener *listener = JniPlaybackListener::getNativeListener(env, jListener);
+    if (listener == nullptr) {
+        AP_LOGE("notifyPtsBatch failed, listener is null");
+        return 0;
+    }
+
+    listener->notifyPtsBatch(env, jStreamTypes, jPts, jRenderTimes, count);
+
+    return 0;
+}
+
 static const JNINativeMethod gJniPlaybackListenerMethods[] = {
-        { "native_notifyPlaybackEvent", "(Lcom/amlogic/asplayer/api/TsPlaybackListener$PlaybackEvent;)V", (void*)native_notifyPlaybackEvent}
+        { "native_notifyPlaybackEvent", "(Lcom/amlogic/asplayer/api/TsPlaybackListener$PlaybackEvent;)V", (void*)native_notifyPlaybackEvent},
+        { "native_notifyPtsBatch", "([I[J[JI)V", (void*)native_notifyPtsBatch}
 };
 
 bool JniPlaybackListener::init(JNIEnv *env) {
@@ -302,6 +316,45 @@ void JniPlaybackListener::notifyPlaybackEvent(JNIEnv *env, jobject jEvent) {
     // env->DeleteLocalRef(jEvent);
 }
 
+void JniPlaybackListener::notifyPtsBatch(JNIEnv *env, jintArray jStreamTypes, jlongArray jPts,
+                                         jlongArray jRenderTimes, jint count) {
+    if (env == nullptr || jStreamTypes == nullptr || jPts == nullptr || jRenderTimes == nullptr) {
+        AP_LOGI("env is null or pts batch is null");
+        return;
+    } else if (count <= 0) {
+        return;
+    } else if (count > env->GetArrayLength(jStreamTypes) || count > env->GetArrayLength(jPts)
+            || count > env->GetArrayLength(jRenderTimes)) {
+        AP_LOGE("notifyPtsBatch invalid count: %d", count);
+        return;
+    }
+
+    // copied, callback may block and must not run inside a critical region
+    if (mBatchPts.size() < static_cast<size_t>(count)) {
+        mBatchStreamTypes.resize(count);
+        mBatchPts.resize(count);
+        mBatchRenderTimes.resize(count);
+    }
+    env->GetIntArrayRegion(jStreamTypes, 0, count, mBatchStreamTypes.data());
+    env->GetLongArrayRegion(jPts, 0, count, mBatchPts.data());
+    env->GetLongArrayRegion(jRenderTimes, 0, count, mBatchRenderTimes.data());
+
+    for (jint i = 0; i < count; i++) {
+        jni_asplayer_pts_t pts = {
+            .stream_type = static_cast<jni_asplayer_stream_type>(mBatchStreamTypes[i]),
+            .pts = static_cast<uint64_t>(mBatchPts[i]),
+            .renderTime = static_cast<uint64_t>(mBatchRenderTimes[i])
+        };
+
+        jni_asplayer_event event = {
+            .type = JNI_ASPLAYER_EVENT_TYPE_PTS,
+            .event = { .pts = pts, },
+        };
+
+        notifyCallbackEvent(&event);
+    }
+}
+
 void JniPlaybackListener::handleVideoFormatChangeEvent(JNIEnv *env, jobject jEvent) {
     if (env == nullptr || jEvent == nullptr) {
         return;
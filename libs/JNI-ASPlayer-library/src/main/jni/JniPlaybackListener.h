@@ -11,6 +11,7 @@
 #define JNI_ASPLAYER_JNIPLAYBACKLISTENER_H
 
 #include <mutex>
+#include <vector>
 #include <jni.h>
 #include <JNIASPlayer.h>
 
@@ -27,6 +28,9 @@ public:
 
     void notifyPlaybackEvent(JNIEnv *env, jobject jEvent);
 
+    void notifyPtsBatch(JNIEnv *env, jintArray jStreamTypes, jlongArray jPts,
+                        jlongArray jRenderTimes, jint count);
+
     void release(JNIEnv *env);
 
     static JniPlaybackListener* getNativeListener(JNIEnv *env, jobject jListener);
@@ -61,6 +65,10 @@ private:
     event_callback mCallback;
     void *mUserData;
     std::mutex mMutex;
+    // copies of pts batch arrays, reused between batches
+    std::vector<jint> mBatchStreamTypes;
+    std::vector<jlong> mBatchPts;
+    std::vector<jlong> mBatchRenderTimes;
     static bool gInited;
 };
 